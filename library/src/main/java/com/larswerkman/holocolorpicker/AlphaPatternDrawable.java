@@ -17,7 +17,6 @@ package com.larswerkman.holocolorpicker;
  */
 
 import android.graphics.Bitmap;
-import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.ColorFilter;
@@ -40,9 +39,12 @@ public class AlphaPatternDrawable extends Drawable {
     private final Paint mGrayPaint;
     private final int mSquareSize;
 
-    // alpha pattern caching Bitmap
+    // alpha pattern caching Bitmap, of the previous bounds until the job is done
     private Bitmap mBitmap;
 
+    // job generating mBitmap, null when done
+    private RasterPipeline.Job mRasterJob;
+
     public AlphaPatternDrawable(int squareSize) {
         mSquareSize = squareSize;
 
@@ -57,8 +59,11 @@ public class AlphaPatternDrawable extends Drawable {
 
     @Override
     public void draw(Canvas canvas) {
-        if (mBitmap != null && !mBitmap.isRecycled()) {
+        if (mBitmap != null) {
             canvas.drawBitmap(mBitmap, null, getBounds(), mPaint);
+        } else {
+            // placeholder until the first pattern has been generated
+            canvas.drawRect(getBounds(), mWhitePaint);
         }
     }
 
@@ -81,33 +86,47 @@ public class AlphaPatternDrawable extends Drawable {
     protected void onBoundsChange(Rect bounds) {
         super.onBoundsChange(bounds);
 
+        if (mRasterJob != null) {
+            mRasterJob.cancel();
+            mRasterJob = null;
+        }
+
         if (getBounds().isEmpty()) {
             return;
         }
 
-        // recreate bitmap with the pattern
-
-        int numHorizSquares = (int) Math.ceil(bounds.width() / (float) mSquareSize);
-        int numVertSquares = (int) Math.ceil(bounds.height() / (float) mSquareSize);
-
-        mBitmap = Bitmap.createBitmap(getBounds().width(), getBounds().height(), Config.ARGB_8888);
-        Canvas canvas = new Canvas(mBitmap);
-
-        Rect rect = new Rect();
-        for (int i = 0; i <= numVertSquares; i++) {
-
-            rect.top = i * mSquareSize;
-            rect.bottom = rect.top + mSquareSize;
-
-            boolean isWhite = (i & 0x02) == 0;
-            for (int j = 0; j <= numHorizSquares; j++) {
-                rect.left = j * mSquareSize;
-                rect.right = rect.left + mSquareSize;
-
-                canvas.drawRect(rect, isWhite ? mWhitePaint : mGrayPaint);
-                isWhite = !isWhite;
-            }
-        }
+        // recreate bitmap with the pattern, off the UI thread for large bounds
+        final int squareSize = mSquareSize;
+        final int white = mWhitePaint.getColor();
+        final int gray = mGrayPaint.getColor();
+        mRasterJob = new RasterPipeline.Job(bounds.width(), bounds.height(),
+                new RasterPipeline.RowRenderer() {
+                    @Override
+                    public void renderRows(int[] pixels, int width, int height,
+                                           int rowStart, int rowEnd) {
+                        for (int row = rowStart; row < rowEnd; row++) {
+                            boolean isWhiteRow = ((row / squareSize) & 0x02) == 0;
+                            int offset = row * width;
+                            for (int col = 0; col < width; col++) {
+                                boolean isWhite = isWhiteRow == (((col / squareSize) & 0x01) == 0);
+                                pixels[offset + col] = isWhite ? white : gray;
+                            }
+                        }
+                    }
+                },
+                new RasterPipeline.Callback() {
+                    @Override
+                    public void onRasterReady(Bitmap bitmap, long durationNanos) {
+                        mRasterJob = null;
+                        if (mBitmap != null) {
+                            mBitmap.recycle();
+                        }
+                        mBitmap = bitmap;
+                        invalidateSelf();
+                    }
+                });
+        // kept before starting, small patterns are delivered right away
+        mRasterJob.start();
     }
 
 }
@@ -26,20 +26,19 @@ import android.graphics.Point;
 import android.graphics.RectF;
 import android.graphics.Shader;
 import android.os.Bundle;
+import android.os.Parcel;
 import android.os.Parcelable;
 import android.util.AttributeSet;
+import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewParent;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityManager;
+import android.view.accessibility.AccessibilityNodeInfo;
 
 public abstract class ColorBar extends View {
 
-    /*
-     * Constants used to save/restore the instance state.
-     */
-    protected static final String STATE_PARENT = "parent";
-    protected static final String STATE_COLOR = "color";
-    protected static final String STATE_ORIENTATION = "orientation";
-
     /**
      * Constants used to identify orientation.
      */
@@ -103,12 +102,20 @@ public abstract class ColorBar extends View {
     protected Shader shader;
 
     /**
-     * {@code true} if the user clicked on the pointer to start the move mode. <br>
-     * {@code false} once the user stops touching the screen.
+     * Base color {@code shader} was built for by {@link #setColor(int)}.
+     * Only valid while {@code mShaderColorValid} is {@code true}.
+     */
+    private int mShaderColor;
+    private boolean mShaderColorValid;
+
+    /**
+     * Id of the pointer that moves the bar pointer. <br>
+     * {@code MotionEvent.INVALID_POINTER_ID} while the bar isn't touched.
+     * Further pointers touching the bar are ignored.
      *
-     * @see #onTouchEvent(MotionEvent)
+     * @see #startTrackingPointer(MotionEvent)
      */
-    protected boolean mIsMovingPointer;
+    protected int mActivePointerId = MotionEvent.INVALID_POINTER_ID;
 
     /**
      * The ARGB value of the currently selected color.
@@ -121,6 +128,24 @@ public abstract class ColorBar extends View {
      */
     protected float[] mHSVColor = new float[3];
 
+    /**
+     * Scratch array for the conversions of the subclasses, so no array is
+     * allocated per call.
+     */
+    protected final float[] mTempHSV = new float[3];
+
+    /**
+     * Returned by {@link #getTopLeft()}.
+     */
+    private final Point mTopLeft = new Point();
+
+    /**
+     * Pointer position relative to the bar length, restored from the instance
+     * state and applied on the next {@link #onSizeChanged(int, int, int, int)}.
+     * {@code NaN} if there is nothing to apply.
+     */
+    private float mRestoredPointerFraction = Float.NaN;
+
     /**
      * Factor used to calculate the position to the value on the bar.
      */
@@ -161,6 +186,82 @@ public abstract class ColorBar extends View {
      */
     protected int mBarCornerRadius;
 
+    /**
+     * Number of levels the pointer snaps to when moved by the user. 0 means
+     * continuous.
+     */
+    protected int mBarSteps;
+
+    /**
+     * Marks the parts of the bar whose colors fail the minimum contrast, see
+     * {@link #setContrastEvaluator(ContrastEvaluator)}.
+     */
+    private ContrastEvaluator mContrastEvaluator;
+    private Paint mContrastOverlayPaint;
+
+    /**
+     * One bit per section of the bar, set if the color of the section fails
+     * the minimum contrast.
+     */
+    private long mContrastMask;
+
+    /**
+     * The colors at the start, middle and end of the bar and the evaluator
+     * version {@code mContrastMask} was computed for. The colors only change
+     * with the hue or the components the bar doesn't select, so the mask is
+     * kept while the bar itself is dragged.
+     */
+    private int mContrastStart;
+    private int mContrastMiddle;
+    private int mContrastEnd;
+    private int mContrastVersion;
+    private boolean mContrastMaskValid;
+
+    /**
+     * Number of sections the bar is evaluated in, one per bit of
+     * {@code mContrastMask}.
+     */
+    private static final int CONTRAST_SECTIONS = 64;
+
+    /**
+     * Number of key presses or accessibility actions it takes to move the
+     * pointer over a continuous bar, like the default of a {@code SeekBar}.
+     */
+    private static final int KEY_INCREMENTS = 20;
+
+    /**
+     * Class name reported to accessibility services, so the bar is announced
+     * and adjusted like a {@code SeekBar}.
+     */
+    static final String ACCESSIBILITY_CLASS_NAME = "android.widget.SeekBar";
+
+    /**
+     * Delay in milliseconds for coalescing the accessibility events of
+     * quick successive pointer moves into one.
+     */
+    static final long ACCESSIBILITY_EVENT_DELAY = 200;
+
+    private boolean mAccessibilityEventPending;
+    private final Runnable mSendAccessibilityEvent = new Runnable() {
+        @Override
+        public void run() {
+            mAccessibilityEventPending = false;
+            sendAccessibilityEvent(AccessibilityEvent.TYPE_VIEW_SELECTED);
+        }
+    };
+
+    /**
+     * Collects the data reported to the {@code PickerMetrics} instance.
+     */
+    final MetricsTracker mTracker = new MetricsTracker(this, getClass().getSimpleName());
+
+    /**
+     * {@code InteractionRecorder} writing the touch events of this bar and
+     * the id of this bar in the recording.
+     */
+    private InteractionRecorder mRecorder;
+    private int mRecorderViewId;
+
     /**
      * Set the bar color. <br>
      * <br>
@@ -170,6 +271,20 @@ public abstract class ColorBar extends View {
      */
     public abstract void setColor(int color);
 
+    /**
+     * Show a color set on the {@code ColorPicker} without calling back into
+     * the picker or the listeners. Only the drawing state is updated, which
+     * is used for animation frames.
+     * <br>
+     * The default implementation calls {@link #setColor(int)}.
+     *
+     * @param color the ARGB color set on the picker.
+     * @param hsv   hue, saturation and value of the color.
+     */
+    protected void syncColor(int color, float[] hsv) {
+        setColor(color);
+    }
+
     public ColorBar(Context context) {
         super(context);
         init(null, 0);
@@ -216,6 +331,10 @@ public abstract class ColorBar extends View {
         mBarCornerRadius = a.getInteger(
                 R.styleable.ColorBar_bar_corner_radius,
                 b.getInteger(R.integer.bar_corner_radius));
+        setSteps(a.getInteger(R.styleable.ColorBar_bar_steps, 0));
+        int contrastOverlayColor = a.getColor(
+                R.styleable.ColorBar_bar_contrast_overlay_color,
+                b.getColor(R.color.bar_contrast_overlay_color, null));
         a.recycle();
 
         mBarPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
@@ -228,6 +347,11 @@ public abstract class ColorBar extends View {
 
         mBarPointerPaint = new FixedColorPaint(mBarPointerDefaultColor, mBarPointerColorFixed);
         mBarPointerPaint.setAntiAlias(true);
+
+        mContrastOverlayPaint = new Paint();
+        mContrastOverlayPaint.setColor(contrastOverlayColor);
+
+        setFocusable(true);
     }
 
     @Override
@@ -269,6 +393,9 @@ public abstract class ColorBar extends View {
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
 
+        // The subclass builds a new shader for the new length.
+        mShaderColorValid = false;
+
         // Fill the rectangle instance based on orientation
         if (mOrientation == ORIENTATION_HORIZONTAL) {
             mBarLength = w - (mBarPointerHaloRadius * 2);
@@ -285,12 +412,46 @@ public abstract class ColorBar extends View {
         }
     }
 
+    @Override
+    public void draw(Canvas canvas) {
+        mTracker.beginDraw();
+        try {
+            super.draw(canvas);
+        } finally {
+            mTracker.endDraw();
+        }
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent event) {
+        if (mRecorder != null) {
+            mRecorder.record(mRecorderViewId, event);
+        }
+        ColorPicker picker = mPicker;
+        mTracker.beginTouch();
+        if (picker != null) {
+            picker.beginBarTouch(this);
+        }
+        try {
+            return super.dispatchTouchEvent(event);
+        } finally {
+            if (picker != null) {
+                picker.endBarTouch();
+            }
+            mTracker.endTouch();
+        }
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
 
         // Draw the bar.
         canvas.drawRoundRect(mBarRect, mBarCornerRadius, mBarCornerRadius, mBarPaint);
 
+        if (mContrastEvaluator != null) {
+            drawContrastOverlay(canvas);
+        }
+
         // Calculate the center of the pointer.
         int cX, cY;
         if (mOrientation == ORIENTATION_HORIZONTAL) {
@@ -329,41 +490,525 @@ public abstract class ColorBar extends View {
         mPicker = picker;
     }
 
+    /**
+     * Set a metrics instance that receives timing and counter data of this
+     * bar. Pass {@code null} to stop collecting.
+     *
+     * @param metrics {@code PickerMetrics}
+     */
+    public void setMetrics(PickerMetrics metrics) {
+        mTracker.setMetrics(metrics);
+    }
+
+    /**
+     * Gets the metrics instance
+     *
+     * @return {@code PickerMetrics}
+     */
+    public PickerMetrics getMetrics() {
+        return mTracker.getMetrics();
+    }
+
+    /**
+     * Used by {@code InteractionRecorder} to attach itself to this bar.
+     */
+    void setInteractionRecorder(InteractionRecorder recorder, int viewId) {
+        mRecorder = recorder;
+        mRecorderViewId = viewId;
+    }
+
+    /**
+     * Move the pointer to a coordinate along the bar, like a touch does, and
+     * update the color, the picker and the listeners. Coordinates beyond the
+     * ends of the bar move the pointer to that end.
+     * <br>
+     * Touches, keys and accessibility actions all use this method.
+     *
+     * @param dimen coordinate along the bar, in the same space as
+     *              {@link #mBarPointerPosition}.
+     */
+    protected void movePointer(float dimen) {
+    }
+
+    /**
+     * Move the pointer by a number of key increments. An increment is one
+     * level with {@link #setSteps(int)}, 1/{@value #KEY_INCREMENTS} of the
+     * bar otherwise.
+     *
+     * @param increments number of increments, negative towards the start.
+     * @return {@code false} if the pointer is already at that end.
+     */
+    protected boolean stepPointer(int increments) {
+        float increment = mBarSteps >= 2
+                ? mBarLength / (float) (mBarSteps - 1)
+                : mBarLength / (float) KEY_INCREMENTS;
+        float dimen = mBarPointerPosition + increments * increment;
+        if (mBarLength <= 0 || !hasPointerMoved(dimen)) {
+            return false;
+        }
+        movePointer(dimen);
+        scheduleAccessibilityEvent();
+        recordPickerHistory();
+        return true;
+    }
+
+    /**
+     * Record the color in the history of the picker, once a change of the
+     * user is complete.
+     */
+    private void recordPickerHistory() {
+        if (mPicker != null) {
+            mPicker.recordHistory();
+        }
+    }
+
+    /**
+     * Get the color the bar selects at a position.
+     *
+     * @param fraction position relative to the bar length, 0 at the start
+     *                 of the bar, 1 at the end.
+     * @return the ARGB color.
+     */
+    protected int getColorAt(float fraction) {
+        return mColor;
+    }
+
+    /**
+     * Mark the parts of the bar whose colors don't have the minimum contrast
+     * of an evaluator against its references. Set by
+     * {@link ColorPicker#setContrastEvaluator(ContrastEvaluator)} for the
+     * bars of a picker.
+     *
+     * @param evaluator the evaluator, {@code null} to remove the marks.
+     */
+    public void setContrastEvaluator(ContrastEvaluator evaluator) {
+        mContrastEvaluator = evaluator;
+        mContrastMaskValid = false;
+        invalidate();
+    }
+
+    public ContrastEvaluator getContrastEvaluator() {
+        return mContrastEvaluator;
+    }
+
+    /**
+     * Dim the sections of the bar that fail the minimum contrast. The
+     * sections are evaluated again only when the colors of the bar or the
+     * evaluator changed.
+     */
+    private void drawContrastOverlay(Canvas canvas) {
+        int start = getColorAt(0f);
+        int middle = getColorAt(0.5f);
+        int end = getColorAt(1f);
+        int version = mContrastEvaluator.getVersion();
+        if (!mContrastMaskValid || start != mContrastStart || middle != mContrastMiddle
+                || end != mContrastEnd || version != mContrastVersion) {
+            long mask = 0;
+            for (int i = 0; i < CONTRAST_SECTIONS; i++) {
+                float fraction = (i + 0.5f) / CONTRAST_SECTIONS;
+                if (!mContrastEvaluator.passes(getColorAt(fraction))) {
+                    mask |= 1L << i;
+                }
+            }
+            mContrastMask = mask;
+            mContrastStart = start;
+            mContrastMiddle = middle;
+            mContrastEnd = end;
+            mContrastVersion = version;
+            mContrastMaskValid = true;
+        }
+
+        long mask = mContrastMask;
+        float sectionLength = mBarLength / (float) CONTRAST_SECTIONS;
+        int i = 0;
+        while (mask != 0) {
+            // Draw each run of failing sections as one rectangle.
+            i += Long.numberOfTrailingZeros(mask >>> i);
+            int run = Long.numberOfTrailingZeros(~(mask >>> i));
+            float from = mBarPointerHaloRadius + i * sectionLength;
+            float to = from + run * sectionLength;
+            if (mOrientation == ORIENTATION_HORIZONTAL) {
+                canvas.drawRect(from, mBarRect.top, to, mBarRect.bottom, mContrastOverlayPaint);
+            } else {
+                canvas.drawRect(mBarRect.left, from, mBarRect.right, to, mContrastOverlayPaint);
+            }
+            i += run;
+            mask &= i < 64 ? -1L << i : 0;
+        }
+    }
+
+    /**
+     * Get the position of the pointer relative to the bar length.
+     *
+     * @return 0 at the start of the bar, 1 at the end.
+     */
+    protected float getPointerFraction() {
+        return mBarLength > 0
+                ? (mBarPointerPosition - mBarPointerHaloRadius) / (float) mBarLength : 0;
+    }
+
+    /**
+     * Get the label announced for the bar when it has no content
+     * description.
+     *
+     * @return a string resource or 0 for none.
+     */
+    protected int getAccessibilityLabel() {
+        return 0;
+    }
+
+    /**
+     * Send one {@code TYPE_VIEW_SELECTED} event for all pointer moves within
+     * {@link #ACCESSIBILITY_EVENT_DELAY}. Nothing is posted while no
+     * accessibility service is enabled.
+     */
+    protected void scheduleAccessibilityEvent() {
+        if (mAccessibilityEventPending || !isAccessibilityEnabled(this)) {
+            return;
+        }
+        mAccessibilityEventPending = true;
+        postDelayed(mSendAccessibilityEvent, ACCESSIBILITY_EVENT_DELAY);
+    }
+
+    static boolean isAccessibilityEnabled(View view) {
+        AccessibilityManager manager = (AccessibilityManager)
+                view.getContext().getSystemService(Context.ACCESSIBILITY_SERVICE);
+        return manager != null && manager.isEnabled();
+    }
+
     @Override
-    protected Parcelable onSaveInstanceState() {
-        Parcelable superState = super.onSaveInstanceState();
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mAccessibilityEventPending) {
+            removeCallbacks(mSendAccessibilityEvent);
+            mAccessibilityEventPending = false;
+        }
+    }
+
+    @Override
+    public boolean onKeyDown(int keyCode, KeyEvent event) {
+        if (isEnabled()) {
+            int increments = 0;
+            if (mOrientation == ORIENTATION_HORIZONTAL) {
+                if (keyCode == KeyEvent.KEYCODE_DPAD_LEFT) {
+                    increments = -1;
+                } else if (keyCode == KeyEvent.KEYCODE_DPAD_RIGHT) {
+                    increments = 1;
+                }
+            } else {
+                if (keyCode == KeyEvent.KEYCODE_DPAD_UP) {
+                    increments = -1;
+                } else if (keyCode == KeyEvent.KEYCODE_DPAD_DOWN) {
+                    increments = 1;
+                }
+            }
+            // At the end of the bar the key moves the focus instead.
+            if (increments != 0 && stepPointer(increments)) {
+                return true;
+            }
+        }
+        return super.onKeyDown(keyCode, event);
+    }
+
+    @Override
+    public void onInitializeAccessibilityNodeInfo(AccessibilityNodeInfo info) {
+        super.onInitializeAccessibilityNodeInfo(info);
+        info.setClassName(ACCESSIBILITY_CLASS_NAME);
+        if (getContentDescription() == null && getAccessibilityLabel() != 0) {
+            info.setContentDescription(getResources().getString(getAccessibilityLabel()));
+        }
+        info.setRangeInfo(AccessibilityNodeInfo.RangeInfo.obtain(
+                AccessibilityNodeInfo.RangeInfo.RANGE_TYPE_PERCENT,
+                0f, 100f, getPointerFraction() * 100f));
+        if (isEnabled()) {
+            float fraction = getPointerFraction();
+            if (fraction > 0f) {
+                info.addAction(AccessibilityNodeInfo.AccessibilityAction.ACTION_SCROLL_BACKWARD);
+            }
+            if (fraction < 1f) {
+                info.addAction(AccessibilityNodeInfo.AccessibilityAction.ACTION_SCROLL_FORWARD);
+            }
+            info.addAction(AccessibilityNodeInfo.AccessibilityAction.ACTION_SET_PROGRESS);
+        }
+    }
+
+    @Override
+    public boolean performAccessibilityAction(int action, Bundle arguments) {
+        if (super.performAccessibilityAction(action, arguments)) {
+            return true;
+        }
+        if (!isEnabled()) {
+            return false;
+        }
+        if (action == AccessibilityNodeInfo.ACTION_SCROLL_FORWARD) {
+            return stepPointer(1);
+        } else if (action == AccessibilityNodeInfo.ACTION_SCROLL_BACKWARD) {
+            return stepPointer(-1);
+        } else if (action == AccessibilityNodeInfo.AccessibilityAction.ACTION_SET_PROGRESS.getId()
+                && arguments != null
+                && arguments.containsKey(AccessibilityNodeInfo.ACTION_ARGUMENT_PROGRESS_VALUE)) {
+            float percent = arguments.getFloat(AccessibilityNodeInfo.ACTION_ARGUMENT_PROGRESS_VALUE);
+            float dimen = mBarPointerHaloRadius + mBarLength * percent / 100f;
+            if (!hasPointerMoved(dimen)) {
+                return false;
+            }
+            movePointer(dimen);
+            scheduleAccessibilityEvent();
+            recordPickerHistory();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Ask the parent not to intercept the touch events. Bars driven by
+     * {@code InteractionReplayer} may have no parent.
+     *
+     * @param disallow {@code true} while this bar handles the gesture.
+     */
+    protected void requestDisallowParentIntercept(boolean disallow) {
+        ViewParent parent = getParent();
+        if (parent != null) {
+            parent.requestDisallowInterceptTouchEvent(disallow);
+        }
+    }
+
+    /**
+     * Check whether the bar shader has to be rebuilt for a new base color.
+     *
+     * @param color the base color passed to {@link #setColor(int)}.
+     * @return {@code false} if the current shader was built for the color.
+     */
+    protected boolean needsShader(int color) {
+        return !mShaderColorValid || shader == null || color != mShaderColor;
+    }
+
+    /**
+     * Use a new shader built for the given base color.
+     */
+    protected void setShader(Shader shader, int color) {
+        this.shader = shader;
+        mBarPaint.setShader(shader);
+        mTracker.shaderRebuilt();
+        mShaderColor = color;
+        mShaderColorValid = true;
+    }
+
+    /**
+     * Start following the pointer that went down with this
+     * {@code ACTION_DOWN} or {@code ACTION_POINTER_DOWN} event.
+     *
+     * @return {@code false} if another pointer is already followed.
+     */
+    protected boolean startTrackingPointer(MotionEvent event) {
+        if (mActivePointerId != MotionEvent.INVALID_POINTER_ID) {
+            return false;
+        }
+        mActivePointerId = event.getPointerId(event.getActionIndex());
+        requestDisallowParentIntercept(true);
+        return true;
+    }
 
-        Bundle state = new Bundle();
-        state.putParcelable(STATE_PARENT, superState);
-        state.putFloatArray(STATE_COLOR, mHSVColor);
-        state.putBoolean(STATE_ORIENTATION, mOrientation);
+    /**
+     * Stop following the pointer if this {@code ACTION_UP},
+     * {@code ACTION_POINTER_UP} or {@code ACTION_CANCEL} event ends it.
+     */
+    protected void stopTrackingPointer(MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_POINTER_UP
+                && event.getPointerId(event.getActionIndex()) != mActivePointerId) {
+            return;
+        }
+        mActivePointerId = MotionEvent.INVALID_POINTER_ID;
+        requestDisallowParentIntercept(false);
+        scheduleAccessibilityEvent();
+        recordPickerHistory();
+    }
+
+    /**
+     * Get the index of the followed pointer in the event.
+     *
+     * @return the index or -1 if the event doesn't contain the pointer.
+     */
+    protected int findActivePointerIndex(MotionEvent event) {
+        if (mActivePointerId == MotionEvent.INVALID_POINTER_ID) {
+            return -1;
+        }
+        return event.findPointerIndex(mActivePointerId);
+    }
+
+    /**
+     * Get the coordinate of a pointer along the bar.
+     */
+    protected float getPointerDimen(MotionEvent event, int pointerIndex) {
+        if (mOrientation == ORIENTATION_HORIZONTAL) {
+            return event.getX(pointerIndex);
+        } else {
+            return event.getY(pointerIndex);
+        }
+    }
+
+    /**
+     * Check whether a touch at the given coordinate moves the bar pointer.
+     * Touches beyond the ends of the bar move it to that end.
+     *
+     * @return {@code false} if the pointer stays where it is, nothing has to
+     * be recalculated or redrawn then.
+     */
+    protected boolean hasPointerMoved(float dimen) {
+        int position = Math.max(mBarPointerHaloRadius,
+                Math.min(mBarPointerHaloRadius + mBarLength, Math.round(dimen)));
+        return snapPosition(position) != mBarPointerPosition;
+    }
+
+    /**
+     * Snap a pointer position to the nearest level set with
+     * {@link #setSteps(int)}.
+     *
+     * @param position pointer position within the bar.
+     * @return the position of the nearest level.
+     */
+    protected int snapPosition(int position) {
+        if (mBarSteps < 2 || mBarLength <= 0) {
+            return position;
+        }
+        float levelLength = mBarLength / (float) (mBarSteps - 1);
+        int level = Math.round((position - mBarPointerHaloRadius) / levelLength);
+        return mBarPointerHaloRadius + Math.round(level * levelLength);
+    }
+
+    /**
+     * Quantize the color selected by the user. The bar is divided into
+     * levels and the pointer snaps to the nearest one, so the color and the
+     * listeners only change when another level is reached. Colors set with
+     * the setters are not snapped.
+     *
+     * @param steps number of levels, at least 2. 0 for continuous
+     *              selection, which is the default.
+     */
+    public void setSteps(int steps) {
+        if (steps != 0 && steps < 2) {
+            throw new IllegalArgumentException("steps must be 0 or at least 2");
+        }
+        mBarSteps = steps;
+    }
+
+    public int getSteps() {
+        return mBarSteps;
+    }
 
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        state.hue = mHSVColor[0];
+        state.saturation = mHSVColor[1];
+        state.value = mHSVColor[2];
+        state.pointerFraction = mBarLength > 0
+                ? (mBarPointerPosition - mBarPointerHaloRadius) / (float) mBarLength : 0;
+        state.orientation = mOrientation;
         return state;
     }
 
     @Override
     protected void onRestoreInstanceState(Parcelable state) {
-        Bundle savedState = (Bundle) state;
+        SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+
+        // Only stage the values. Shader, pointer and color are calculated
+        // in onSizeChanged(), without calling back into the ColorPicker.
+        mOrientation = savedState.orientation;
+        mHSVColor[0] = savedState.hue;
+        mHSVColor[1] = savedState.saturation;
+        mHSVColor[2] = savedState.value;
+        mRestoredPointerFraction = savedState.pointerFraction;
+
+        if (isLaidOut()) {
+            // There won't be another onSizeChanged() before the next draw.
+            onSizeChanged(getWidth(), getHeight(), getWidth(), getHeight());
+            invalidate();
+        }
+    }
 
-        Parcelable superState = savedState.getParcelable(STATE_PARENT);
-        super.onRestoreInstanceState(superState);
+    /**
+     * Move the pointer to the position staged by
+     * {@link #onRestoreInstanceState(Parcelable)}. Called by the subclasses in
+     * {@link #onSizeChanged(int, int, int, int)}, once the bar length is known.
+     *
+     * @return {@code true} if the pointer was moved, the subclass then has to
+     * calculate the color at the pointer.
+     */
+    protected boolean applyRestoredPointerPosition() {
+        if (Float.isNaN(mRestoredPointerFraction)) {
+            return false;
+        }
+        mBarPointerPosition = Math.round(mRestoredPointerFraction * mBarLength)
+                + mBarPointerHaloRadius;
+        mRestoredPointerFraction = Float.NaN;
+        return true;
+    }
+
+    /**
+     * Instance state of a bar. All bars share this class, the selected
+     * saturation, value or opacity is stored as pointer position.
+     */
+    static class SavedState extends BaseSavedState {
+        float hue;
+        float saturation;
+        float value;
+
+        /**
+         * Pointer position relative to the bar length, between 0 and 1.
+         */
+        float pointerFraction;
+
+        boolean orientation;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        SavedState(Parcel source) {
+            super(source);
+            hue = source.readFloat();
+            saturation = source.readFloat();
+            value = source.readFloat();
+            pointerFraction = source.readFloat();
+            orientation = source.readInt() != 0;
+        }
 
-        setColor(Color.HSVToColor(savedState.getFloatArray(STATE_COLOR)));
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeFloat(hue);
+            out.writeFloat(saturation);
+            out.writeFloat(value);
+            out.writeFloat(pointerFraction);
+            out.writeInt(orientation ? 1 : 0);
+        }
 
-        mOrientation = savedState.getBoolean(STATE_ORIENTATION, ORIENTATION_DEFAULT);
+        public static final Creator<SavedState> CREATOR = new Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel source) {
+                return new SavedState(source);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
     }
 
+    /**
+     * Get the end point of the bar's gradient.
+     *
+     * @return the point, reused by the next call.
+     */
     protected Point getTopLeft() {
         if (mOrientation == ORIENTATION_HORIZONTAL) {
-            return new Point(
-                    (mBarLength + mBarPointerHaloRadius),
-                    mBarThickness
-            );
+            mTopLeft.set(mBarLength + mBarPointerHaloRadius, mBarThickness);
         } else {
-            return new Point(
-                    mBarThickness,
-                    (mBarLength + mBarPointerHaloRadius)
-            );
+            mTopLeft.set(mBarThickness, mBarLength + mBarPointerHaloRadius);
         }
+        return mTopLeft;
     }
 }
\ No newline at end of file
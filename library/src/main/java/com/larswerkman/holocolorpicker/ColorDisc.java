@@ -0,0 +1,574 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.SweepGradient;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewParent;
+
+/**
+ * Displays a full HSV color disc. The angle selects the hue, the distance
+ * from the center selects the saturation. The value is set with
+ * {@link #setValue(float)}.
+ *
+ * <p>
+ * The disc is rasterized once per size by {@link RasterPipeline}, off the UI
+ * thread. Until the bitmap arrives a hue gradient is drawn instead. Touch
+ * positions are converted to colors with the same math, so the bitmap is
+ * never read back.
+ * </p>
+ *
+ * <p>
+ * The hue runs in the same direction as on {@link ColorPicker}.
+ * </p>
+ */
+public class ColorDisc extends View {
+
+    /**
+     * The radius of the disc.
+     */
+    private int mDiscRadius;
+    private int mPreferredDiscRadius;
+
+    /**
+     * The radius of the pointer.
+     */
+    private int mPointerRadius;
+
+    /**
+     * The radius of the halo of the pointer.
+     */
+    private int mPointerHaloRadius;
+
+    /**
+     * Number of pixels the origin of this view is moved in X- and Y-direction.
+     * The center of the disc is the origin of our internal coordinate system.
+     */
+    private float mTranslationOffset;
+
+    /**
+     * {@code Paint} instance used to draw the pointer.
+     */
+    private Paint mPointerPaint;
+
+    /**
+     * {@code Paint} instance used to draw the halo of the pointer.
+     */
+    private Paint mPointerHaloPaint;
+
+    /**
+     * {@code Paint} instance used to darken the disc according to the value.
+     */
+    private Paint mValuePaint;
+
+    /**
+     * The rasterized disc at full value.
+     */
+    private Bitmap mDiscBitmap;
+
+    /**
+     * The job generating {@code mDiscBitmap}, {@code null} when done.
+     */
+    private RasterPipeline.Job mRasterJob;
+
+    /**
+     * {@code Paint} instance drawing a hue gradient until the disc has been
+     * rasterized.
+     */
+    private Paint mPlaceholderPaint;
+
+    /**
+     * Time the last rasterization took.
+     */
+    private long mRasterTimeNanos;
+
+    /**
+     * Hue, saturation and value of the selected color.
+     */
+    private float[] mHSV = new float[]{0f, 1f, 1f};
+
+    /**
+     * The ARGB value of the currently selected color.
+     */
+    private int mColor;
+
+    /**
+     * Id of the pointer that moves the pointer, {@code INVALID_POINTER_ID}
+     * while the user doesn't touch the disc.
+     */
+    private int mActivePointerId = MotionEvent.INVALID_POINTER_ID;
+
+    /**
+     * {@code onColorChangedListener} instance of the onColorChangedListener
+     */
+    private ColorPicker.OnColorChangedListener onColorChangedListener;
+
+    /**
+     * Listeners added with {@code addOnColorChangedListener}, called after
+     * the one set with the setter.
+     */
+    private final ListenerList<ColorPicker.OnColorChangedListener> mColorChangedListeners =
+            new ListenerList<>(new ColorPicker.OnColorChangedListener[0]);
+
+    /**
+     * Color of the latest entry of the onColorChangedListener.
+     */
+    private int oldChangedListenerColor;
+
+    /**
+     * Collects the data reported to the {@code PickerMetrics} instance.
+     */
+    final MetricsTracker mTracker = new MetricsTracker(this, "ColorDisc");
+
+    public ColorDisc(Context context) {
+        super(context);
+        init(null, 0);
+    }
+
+    public ColorDisc(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init(attrs, 0);
+    }
+
+    public ColorDisc(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        init(attrs, defStyle);
+    }
+
+    private void init(AttributeSet attrs, int defStyle) {
+        final TypedArray a = getContext().obtainStyledAttributes(attrs,
+                R.styleable.ColorDisc, defStyle, 0);
+        final Resources b = getContext().getResources();
+
+        mDiscRadius = a.getDimensionPixelSize(
+                R.styleable.ColorDisc_color_wheel_radius,
+                b.getDimensionPixelSize(R.dimen.color_wheel_radius));
+        mPreferredDiscRadius = mDiscRadius;
+        mPointerRadius = a.getDimensionPixelSize(
+                R.styleable.ColorDisc_color_pointer_radius,
+                b.getDimensionPixelSize(R.dimen.color_pointer_radius));
+        mPointerHaloRadius = a.getDimensionPixelSize(
+                R.styleable.ColorDisc_color_pointer_halo_radius,
+                b.getDimensionPixelSize(R.dimen.color_pointer_halo_radius));
+        int pointerHaloColor = a.getColor(
+                R.styleable.ColorDisc_color_pointer_halo_color,
+                b.getColor(R.color.color_pointer_halo_color, null));
+        a.recycle();
+
+        mPointerHaloPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mPointerHaloPaint.setColor(pointerHaloColor);
+
+        mPointerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+        mValuePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mValuePaint.setColor(Color.BLACK);
+
+        mPlaceholderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mPlaceholderPaint.setShader(new SweepGradient(0, 0, ColorMath.getWheelColors(), null));
+
+        updateColor();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int intrinsicSize = 2 * (mPreferredDiscRadius + mPointerHaloRadius);
+
+        int width = resolveSize(intrinsicSize, widthMeasureSpec);
+        int height = resolveSize(intrinsicSize, heightMeasureSpec);
+
+        int min = Math.min(width, height);
+        setMeasuredDimension(min, min);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+
+        int min = Math.min(w, h);
+        mTranslationOffset = min * 0.5f;
+        mDiscRadius = Math.max(1, min / 2 - mPointerHaloRadius);
+
+        cancelRaster();
+        if (mDiscBitmap != null) {
+            mDiscBitmap.recycle();
+            mDiscBitmap = null;
+        }
+        startRaster();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // The job was cancelled when the view was detached.
+        if (mDiscBitmap == null && mRasterJob == null && getWidth() > 0) {
+            startRaster();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        cancelRaster();
+    }
+
+    /**
+     * Rasterize the disc for the current radius. The job is kept before it
+     * starts, since small discs are delivered right away.
+     */
+    private void startRaster() {
+        final int size = mDiscRadius * 2;
+        mRasterJob = new RasterPipeline.Job(size, size, ROW_RENDERER,
+                new RasterPipeline.Callback() {
+                    @Override
+                    public void onRasterReady(Bitmap bitmap, long durationNanos) {
+                        mRasterJob = null;
+                        mDiscBitmap = bitmap;
+                        mRasterTimeNanos = durationNanos;
+                        mTracker.rasterGenerated(size, size, durationNanos);
+                        invalidate();
+                    }
+                });
+        mRasterJob.start();
+    }
+
+    private void cancelRaster() {
+        if (mRasterJob != null) {
+            mRasterJob.cancel();
+            mRasterJob = null;
+        }
+    }
+
+    private static final RasterPipeline.RowRenderer ROW_RENDERER =
+            new RasterPipeline.RowRenderer() {
+                @Override
+                public void renderRows(int[] pixels, int width, int height,
+                                       int rowStart, int rowEnd) {
+                    rasterizeRows(pixels, width, height, rowStart, rowEnd);
+                }
+            };
+
+    /**
+     * Generate the rows {@code rowStart} (inclusive) to {@code rowEnd}
+     * (exclusive) of a disc with the given diameter.
+     */
+    static void rasterizeRows(int[] pixels, int size, int height, int rowStart, int rowEnd) {
+        float radius = size / 2f;
+        for (int row = rowStart; row < rowEnd; row++) {
+            float y = row + 0.5f - radius;
+            int offset = row * size;
+            for (int col = 0; col < size; col++) {
+                float x = col + 0.5f - radius;
+                float distance = (float) Math.sqrt(x * x + y * y);
+                if (distance > radius) {
+                    pixels[offset + col] = Color.TRANSPARENT;
+                    continue;
+                }
+                int rgb = ColorMath.hsvToRgb(ColorMath.pointToHue(x, y), distance / radius, 1f);
+                // Smooth the outer pixel of the edge.
+                float coverage = Math.min(1f, radius - distance);
+                pixels[offset + col] = ((int) (coverage * 0xFF) << 24) | rgb;
+            }
+        }
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        mTracker.beginDraw();
+        try {
+            super.draw(canvas);
+        } finally {
+            mTracker.endDraw();
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        canvas.translate(mTranslationOffset, mTranslationOffset);
+
+        if (mDiscBitmap != null) {
+            canvas.drawBitmap(mDiscBitmap, -mDiscRadius, -mDiscRadius, null);
+        } else {
+            canvas.drawCircle(0, 0, mDiscRadius, mPlaceholderPaint);
+        }
+        if (mHSV[2] < 1f) {
+            canvas.drawCircle(0, 0, mDiscRadius, mValuePaint);
+        }
+
+        double angle = Math.toRadians(-mHSV[0]);
+        float x = (float) (mHSV[1] * mDiscRadius * Math.cos(angle));
+        float y = (float) (mHSV[1] * mDiscRadius * Math.sin(angle));
+        canvas.drawCircle(x, y, mPointerHaloRadius, mPointerHaloPaint);
+        canvas.drawCircle(x, y, mPointerRadius, mPointerPaint);
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent event) {
+        mTracker.beginTouch();
+        try {
+            return super.dispatchTouchEvent(event);
+        } finally {
+            mTracker.endTouch();
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+                // Another pointer already moves the pointer, ignore this one.
+                if (mActivePointerId != MotionEvent.INVALID_POINTER_ID) {
+                    break;
+                }
+                // Convert coordinates to our internal coordinate system
+                int downIndex = event.getActionIndex();
+                float x = event.getX(downIndex) - mTranslationOffset;
+                float y = event.getY(downIndex) - mTranslationOffset;
+                if (Math.sqrt(x * x + y * y) > mDiscRadius + mPointerHaloRadius) {
+                    return event.getActionMasked() != MotionEvent.ACTION_DOWN;
+                }
+                mActivePointerId = event.getPointerId(downIndex);
+                requestDisallowParentIntercept(true);
+                movePointer(x, y);
+                break;
+            case MotionEvent.ACTION_MOVE:
+                int pointerIndex = mActivePointerId == MotionEvent.INVALID_POINTER_ID
+                        ? -1 : event.findPointerIndex(mActivePointerId);
+                if (pointerIndex >= 0) {
+                    movePointer(event.getX(pointerIndex) - mTranslationOffset,
+                            event.getY(pointerIndex) - mTranslationOffset);
+                }
+                break;
+            case MotionEvent.ACTION_POINTER_UP:
+                // Only the pointer moving the pointer ends the drag.
+                if (event.getPointerId(event.getActionIndex()) == mActivePointerId) {
+                    endDrag();
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                endDrag();
+                break;
+        }
+        return true;
+    }
+
+    private void endDrag() {
+        mActivePointerId = MotionEvent.INVALID_POINTER_ID;
+        requestDisallowParentIntercept(false);
+    }
+
+    private void requestDisallowParentIntercept(boolean disallow) {
+        ViewParent parent = getParent();
+        if (parent != null) {
+            parent.requestDisallowInterceptTouchEvent(disallow);
+        }
+    }
+
+    /**
+     * Move the pointer to the touched position, clamped to the disc.
+     */
+    private void movePointer(float x, float y) {
+        float hue = ColorMath.pointToHue(x, y);
+        float saturation = Math.min(1f, (float) Math.sqrt(x * x + y * y) / mDiscRadius);
+        if (hue == mHSV[0] && saturation == mHSV[1]) {
+            return;
+        }
+        mHSV[0] = hue;
+        mHSV[1] = saturation;
+        updateColor();
+    }
+
+    private void updateColor() {
+        mColor = ColorMath.hsvToColor(0xFF, mHSV[0], mHSV[1], mHSV[2]);
+        mPointerPaint.setColor(mColor);
+        mValuePaint.setAlpha(Math.round((1 - mHSV[2]) * 0xFF));
+        if (mColor != oldChangedListenerColor
+                && (onColorChangedListener != null || !mColorChangedListeners.isEmpty())) {
+            if (onColorChangedListener != null) {
+                mTracker.listenerInvoked();
+                onColorChangedListener.onColorChanged(mColor);
+            }
+            for (ColorPicker.OnColorChangedListener listener : mColorChangedListeners.get()) {
+                mTracker.listenerInvoked();
+                listener.onColorChanged(mColor);
+            }
+            oldChangedListenerColor = mColor;
+        }
+        invalidate();
+    }
+
+    /**
+     * Set the selected color.
+     *
+     * @param color The RGB value of the color, the alpha is ignored.
+     */
+    public void setColor(int color) {
+        mTracker.colorToHSV(color, mHSV);
+        updateColor();
+    }
+
+    /**
+     * Get the currently selected color.
+     *
+     * @return The ARGB value of the currently selected color.
+     */
+    public int getColor() {
+        return mColor;
+    }
+
+    /**
+     * Set the value (brightness) of the disc.
+     *
+     * @param value float between 0 and 1
+     */
+    public void setValue(float value) {
+        mHSV[2] = Math.max(0f, Math.min(1f, value));
+        updateColor();
+    }
+
+    public float getValue() {
+        return mHSV[2];
+    }
+
+    /**
+     * Get the time the last rasterization of the disc took, from starting
+     * the job until the bitmap was created.
+     *
+     * @return the time in nanoseconds, 0 while the disc is not rasterized
+     * yet.
+     */
+    public long getRasterTimeNanos() {
+        return mRasterTimeNanos;
+    }
+
+    /**
+     * Set a onColorChangedListener
+     *
+     * @param listener {@code OnColorChangedListener}
+     */
+    public void setOnColorChangedListener(ColorPicker.OnColorChangedListener listener) {
+        this.onColorChangedListener = listener;
+    }
+
+    public ColorPicker.OnColorChangedListener getOnColorChangedListener() {
+        return this.onColorChangedListener;
+    }
+
+    /**
+     * Add a listener in addition to the one set with the setter. Can be
+     * called from any thread, the listener is called on the UI thread.
+     *
+     * @param listener the listener, added once even if added again.
+     */
+    public void addOnColorChangedListener(ColorPicker.OnColorChangedListener listener) {
+        mColorChangedListeners.add(listener);
+    }
+
+    public void removeOnColorChangedListener(ColorPicker.OnColorChangedListener listener) {
+        mColorChangedListeners.remove(listener);
+    }
+
+    /**
+     * Set a metrics instance that receives timing and counter data of this
+     * disc. Pass {@code null} to stop collecting.
+     *
+     * @param metrics {@code PickerMetrics}
+     */
+    public void setMetrics(PickerMetrics metrics) {
+        mTracker.setMetrics(metrics);
+    }
+
+    public PickerMetrics getMetrics() {
+        return mTracker.getMetrics();
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        state.hue = mHSV[0];
+        state.saturation = mHSV[1];
+        state.value = mHSV[2];
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+
+        mHSV[0] = savedState.hue;
+        mHSV[1] = savedState.saturation;
+        mHSV[2] = savedState.value;
+        mColor = ColorMath.hsvToColor(0xFF, mHSV[0], mHSV[1], mHSV[2]);
+        mPointerPaint.setColor(mColor);
+        mValuePaint.setAlpha(Math.round((1 - mHSV[2]) * 0xFF));
+        oldChangedListenerColor = mColor;
+        invalidate();
+    }
+
+    /**
+     * Instance state of the disc.
+     */
+    static class SavedState extends BaseSavedState {
+        float hue;
+        float saturation;
+        float value;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        SavedState(Parcel source) {
+            super(source);
+            hue = source.readFloat();
+            saturation = source.readFloat();
+            value = source.readFloat();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeFloat(hue);
+            out.writeFloat(saturation);
+            out.writeFloat(value);
+        }
+
+        public static final Creator<SavedState> CREATOR = new Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel source) {
+                return new SavedState(source);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+}
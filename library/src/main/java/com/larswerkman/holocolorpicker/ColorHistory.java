@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+/**
+ * Undo history of a {@link ColorPicker}.
+ *
+ * <p>
+ * The entries are color snapshots as returned by
+ * {@link ColorPicker#getColorSnapshot()}, kept in a ring buffer of primitive
+ * longs. When the buffer is full the oldest entry is dropped. Recording an
+ * entry after an undo drops the entries that could be redone.
+ * </p>
+ */
+final class ColorHistory {
+
+    private long[] mEntries;
+
+    /**
+     * Index of the oldest entry in {@code mEntries}.
+     */
+    private int mStart;
+    private int mCount;
+
+    /**
+     * Position of the current entry, counted from the oldest.
+     */
+    private int mCursor = -1;
+
+    ColorHistory(int capacity) {
+        mEntries = new long[capacity];
+    }
+
+    int getCapacity() {
+        return mEntries.length;
+    }
+
+    /**
+     * Change the capacity, keeping the current entry. The oldest entries
+     * are dropped first, then the ones that could be redone.
+     */
+    void setCapacity(int capacity) {
+        int first = Math.max(0, mCursor - capacity + 1);
+        int count = Math.min(mCount - first, capacity);
+        long[] entries = new long[capacity];
+        for (int i = 0; i < count; i++) {
+            entries[i] = get(first + i);
+        }
+        mEntries = entries;
+        mStart = 0;
+        mCount = count;
+        mCursor = mCursor - first;
+    }
+
+    /**
+     * Record an entry as the current one, unless it already is.
+     */
+    void record(long entry) {
+        if (mCursor >= 0 && get(mCursor) == entry) {
+            return;
+        }
+        // Drop what could be redone.
+        mCount = mCursor + 1;
+        if (mCount == mEntries.length) {
+            mStart = (mStart + 1) % mEntries.length;
+            mCount--;
+        }
+        mEntries[(mStart + mCount) % mEntries.length] = entry;
+        mCount++;
+        mCursor = mCount - 1;
+    }
+
+    boolean canUndo() {
+        return mCursor > 0;
+    }
+
+    boolean canRedo() {
+        return mCursor < mCount - 1;
+    }
+
+    /**
+     * Step back to the previous entry. Check {@link #canUndo()} first.
+     *
+     * @return the entry that is current now.
+     */
+    long undo() {
+        return get(--mCursor);
+    }
+
+    /**
+     * Step forward to the next entry. Check {@link #canRedo()} first.
+     *
+     * @return the entry that is current now.
+     */
+    long redo() {
+        return get(++mCursor);
+    }
+
+    void clear() {
+        mStart = 0;
+        mCount = 0;
+        mCursor = -1;
+    }
+
+    private long get(int position) {
+        return mEntries[(mStart + position) % mEntries.length];
+    }
+}
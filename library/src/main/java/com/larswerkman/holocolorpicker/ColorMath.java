@@ -0,0 +1,337 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+/**
+ * The color math of the picker, the bars and the disc.
+ *
+ * <p>
+ * All methods are static, work on ARGB ints and primitive arrays and depend
+ * on no Android class, so the same results can be computed outside of a
+ * {@code View}, e.g. by another UI toolkit or on a plain JVM. Nothing is
+ * allocated, so the methods can be used in touch handlers and pixel loops.
+ * </p>
+ *
+ * <p>
+ * The HSV conversions match {@code android.graphics.Color}: hue in degrees
+ * from 0 to 360, saturation and value from 0 to 1.
+ * </p>
+ *
+ * <p>
+ * Angles on the color wheel are in radians, as returned by
+ * {@code Math.atan2(y, x)} in view coordinates. The hue grows counter
+ * clockwise, so the angle is the negated hue.
+ * </p>
+ *
+ * <p>
+ * Lab is CIE L*a*b* relative to the D50 white point, as used by ICC
+ * profiles and Photoshop: L from 0 to 100, a and b about -128 to 127.
+ * </p>
+ */
+public final class ColorMath {
+
+    /**
+     * Colors of the color wheel, from angle 0 around to 2 PI.
+     */
+    private static final int[] WHEEL_COLORS = new int[]{
+            0xFFFF0000, 0xFFFF00FF,
+            0xFF0000FF, 0xFF00FFFF,
+            0xFF00FF00, 0xFFFFFF00,
+            0xFFFF0000
+    };
+
+    /**
+     * CIE XYZ of the D50 white point.
+     */
+    private static final float D50_X = 0.96422f;
+    private static final float D50_Z = 0.82521f;
+
+    /**
+     * Linear intensity of each 8 bit sRGB component.
+     */
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+
+    static {
+        for (int i = 0; i < SRGB_TO_LINEAR.length; i++) {
+            double c = i / 255.0;
+            SRGB_TO_LINEAR[i] = (float) (c <= 0.04045
+                    ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4));
+        }
+    }
+
+    private ColorMath() {
+    }
+
+    /**
+     * Get the colors of the color wheel, e.g. for a {@code SweepGradient}.
+     *
+     * @return a new array of evenly spaced ARGB colors, the first and the
+     * last are the same.
+     */
+    public static int[] getWheelColors() {
+        return WHEEL_COLORS.clone();
+    }
+
+    /**
+     * Get the color of the color wheel at an angle.
+     *
+     * @param angle angle in radians, between -2 PI and 2 PI.
+     * @return the ARGB color.
+     */
+    public static int wheelColor(float angle) {
+        float unit = (float) (angle / (2 * Math.PI));
+        if (unit < 0) {
+            unit += 1;
+        }
+
+        if (unit <= 0) {
+            return WHEEL_COLORS[0];
+        }
+        if (unit >= 1) {
+            return WHEEL_COLORS[WHEEL_COLORS.length - 1];
+        }
+
+        float p = unit * (WHEEL_COLORS.length - 1);
+        int i = (int) p;
+        p -= i;
+        return lerpArgb(WHEEL_COLORS[i], WHEEL_COLORS[i + 1], p);
+    }
+
+    /**
+     * Interpolate each channel of two colors.
+     *
+     * @param color0   ARGB color at fraction 0.
+     * @param color1   ARGB color at fraction 1.
+     * @param fraction position between the colors.
+     * @return the ARGB color.
+     */
+    public static int lerpArgb(int color0, int color1, float fraction) {
+        int a = lerp(color0 >>> 24, color1 >>> 24, fraction);
+        int r = lerp((color0 >> 16) & 0xFF, (color1 >> 16) & 0xFF, fraction);
+        int g = lerp((color0 >> 8) & 0xFF, (color1 >> 8) & 0xFF, fraction);
+        int b = lerp(color0 & 0xFF, color1 & 0xFF, fraction);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static int lerp(int start, int end, float fraction) {
+        return start + Math.round(fraction * (end - start));
+    }
+
+    /**
+     * Convert a hue to the angle it is shown at on the color wheel.
+     *
+     * @param hue hue in degrees.
+     * @return the angle in radians.
+     */
+    public static float hueToAngle(float hue) {
+        return (float) Math.toRadians(-hue);
+    }
+
+    /**
+     * Convert an angle on the color wheel to the hue.
+     *
+     * @param angle angle in radians.
+     * @return the hue in degrees, between 0 and 360.
+     */
+    public static float angleToHue(float angle) {
+        float hue = (float) -Math.toDegrees(angle) % 360f;
+        return hue < 0 ? hue + 360f : hue;
+    }
+
+    /**
+     * Get the hue at a point relative to the center of the wheel.
+     *
+     * @return the hue in degrees, between 0 and 360.
+     */
+    public static float pointToHue(float x, float y) {
+        float hue = (float) -Math.toDegrees(Math.atan2(y, x));
+        return hue < 0 ? hue + 360f : hue;
+    }
+
+    /**
+     * Convert HSV to an RGB value without alpha.
+     *
+     * @param hue        hue in degrees. Values outside 0 to 360 are
+     *                   treated as 0, like {@code Color.HSVToColor} does.
+     * @param saturation saturation, clamped between 0 and 1.
+     * @param value      value, clamped between 0 and 1.
+     * @return the RGB value, the alpha bits are 0.
+     */
+    public static int hsvToRgb(float hue, float saturation, float value) {
+        saturation = Math.max(0f, Math.min(1f, saturation));
+        value = Math.max(0f, Math.min(1f, value));
+        float h = hue >= 0f && hue < 360f ? hue / 60f : 0f;
+        int sector = (int) h;
+        float f = h - sector;
+        float p = value * (1 - saturation);
+        float q = value * (1 - saturation * f);
+        float t = value * (1 - saturation * (1 - f));
+        float r, g, b;
+        switch (sector) {
+            case 0:
+                r = value; g = t; b = p;
+                break;
+            case 1:
+                r = q; g = value; b = p;
+                break;
+            case 2:
+                r = p; g = value; b = t;
+                break;
+            case 3:
+                r = p; g = q; b = value;
+                break;
+            case 4:
+                r = t; g = p; b = value;
+                break;
+            default:
+                r = value; g = p; b = q;
+                break;
+        }
+        return (Math.round(r * 0xFF) << 16) | (Math.round(g * 0xFF) << 8) | Math.round(b * 0xFF);
+    }
+
+    /**
+     * Convert HSV to an ARGB color.
+     *
+     * @param alpha      alpha, between 0 and 255.
+     * @param hue        hue in degrees.
+     * @param saturation saturation between 0 and 1.
+     * @param value      value between 0 and 1.
+     * @return the ARGB color.
+     * @see #hsvToRgb(float, float, float)
+     */
+    public static int hsvToColor(int alpha, float hue, float saturation, float value) {
+        return (alpha << 24) | hsvToRgb(hue, saturation, value);
+    }
+
+    /**
+     * Convert a color to HSV. The alpha is ignored.
+     *
+     * @param color ARGB color.
+     * @param hsv   receives hue, saturation and value.
+     */
+    public static void colorToHsv(int color, float[] hsv) {
+        int r = (color >> 16) & 0xFF;
+        int g = (color >> 8) & 0xFF;
+        int b = color & 0xFF;
+        int max = Math.max(r, Math.max(g, b));
+        int min = Math.min(r, Math.min(g, b));
+        int delta = max - min;
+
+        hsv[2] = max / 255f;
+        if (delta == 0) {
+            hsv[0] = 0f;
+            hsv[1] = 0f;
+            return;
+        }
+        hsv[1] = delta / (float) max;
+
+        float hue;
+        if (r == max) {
+            hue = (g - b) / (float) delta;
+        } else if (g == max) {
+            hue = 2 + (b - r) / (float) delta;
+        } else {
+            hue = 4 + (r - g) / (float) delta;
+        }
+        hue *= 60;
+        hsv[0] = hue < 0 ? hue + 360f : hue;
+    }
+
+    /**
+     * Convert Lab to an RGB value without alpha. Colors outside of sRGB are
+     * clamped.
+     *
+     * @param l lightness from 0 to 100.
+     * @param a green to red axis.
+     * @param b blue to yellow axis.
+     * @return the RGB value, the alpha bits are 0.
+     */
+    public static int labToRgb(float l, float a, float b) {
+        float fy = (l + 16f) / 116f;
+        float x = D50_X * labInverse(fy + a / 500f);
+        float y = labInverse(fy);
+        float z = D50_Z * labInverse(fy - b / 200f);
+
+        // D50 XYZ to linear sRGB, with Bradford adaptation to D65.
+        float r = 3.1338561f * x - 1.6168667f * y - 0.4906146f * z;
+        float g = -0.9787684f * x + 1.9161415f * y + 0.0334540f * z;
+        float bl = 0.0719453f * x - 0.2289914f * y + 1.4052427f * z;
+        return (encodeSrgb(r) << 16) | (encodeSrgb(g) << 8) | encodeSrgb(bl);
+    }
+
+    /**
+     * Convert a color to Lab. The alpha is ignored.
+     *
+     * @param color ARGB color.
+     * @param lab   receives L, a and b.
+     */
+    public static void colorToLab(int color, float[] lab) {
+        float r = SRGB_TO_LINEAR[(color >> 16) & 0xFF];
+        float g = SRGB_TO_LINEAR[(color >> 8) & 0xFF];
+        float b = SRGB_TO_LINEAR[color & 0xFF];
+
+        // Linear sRGB to D50 XYZ, with Bradford adaptation from D65.
+        float x = 0.4360747f * r + 0.3850649f * g + 0.1430804f * b;
+        float y = 0.2225045f * r + 0.7168786f * g + 0.0606169f * b;
+        float z = 0.0139322f * r + 0.0971045f * g + 0.7141733f * b;
+
+        float fx = labForward(x / D50_X);
+        float fy = labForward(y);
+        float fz = labForward(z / D50_Z);
+        lab[0] = 116f * fy - 16f;
+        lab[1] = 500f * (fx - fy);
+        lab[2] = 200f * (fy - fz);
+    }
+
+    private static float labForward(float t) {
+        return t > (6f / 29f) * (6f / 29f) * (6f / 29f)
+                ? (float) Math.cbrt(t) : t / (3f * (6f / 29f) * (6f / 29f)) + 4f / 29f;
+    }
+
+    private static float labInverse(float t) {
+        return t > 6f / 29f ? t * t * t : 3f * (6f / 29f) * (6f / 29f) * (t - 4f / 29f);
+    }
+
+    /**
+     * Remove the sRGB transfer function, with a table lookup.
+     *
+     * @param component sRGB component between 0 and 255.
+     * @return the linear intensity between 0 and 1.
+     */
+    static float decodeSrgb(int component) {
+        return SRGB_TO_LINEAR[component];
+    }
+
+    /**
+     * Apply the sRGB transfer function.
+     *
+     * @param linear linear intensity, clamped between 0 and 1.
+     * @return the sRGB component between 0 and 255.
+     */
+    static int encodeSrgb(float linear) {
+        if (linear <= 0f) {
+            return 0;
+        }
+        if (linear >= 1f) {
+            return 0xFF;
+        }
+        double c = linear <= 0.0031308f
+                ? 12.92 * linear : 1.055 * Math.pow(linear, 1 / 2.4) - 0.055;
+        return (int) Math.round(c * 0xFF);
+    }
+}
@@ -16,20 +16,30 @@
 
 package com.larswerkman.holocolorpicker;
 
+import android.animation.TimeInterpolator;
 import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Shader;
 import android.graphics.SweepGradient;
-import android.os.Bundle;
+import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.KeyEvent;
 import android.view.MotionEvent;
+import android.view.VelocityTracker;
 import android.view.View;
+import android.view.ViewParent;
+import android.view.accessibility.AccessibilityNodeProvider;
+
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Displays a holo-themed color picker.
@@ -37,28 +47,59 @@ import android.view.View;
  * <p>
  * Use {@link #getColor()} to retrieve the selected color. <br>
  * Use {@link #addSVBar(SVBar)} to add a Saturation/Value Bar. <br>
+ * Use {@link #addSVArea(SVArea)} to add a Saturation/Value Area. <br>
  * Use {@link #addOpacityBar(OpacityBar)} to add a Opacity Bar.
  * </p>
+ *
+ * <p>
+ * Like any view the picker must be used on the UI thread, with these
+ * exceptions, which are safe from any thread:
+ * </p>
+ * <ul>
+ * <li>{@link #getColor()} and {@link #getColorSnapshot()} read the color
+ * last shown by the picker. It is published in a single volatile field, so
+ * reading it takes no lock and allocates nothing, e.g. every frame of a
+ * render thread.</li>
+ * <li>{@link #setColorAsync(int)} sets the color on the UI thread. Colors
+ * set before the UI thread gets to it are coalesced, only the last one is
+ * set.</li>
+ * <li>Adding and removing listeners, and {@link #getColorStream()}
+ * subscriptions.</li>
+ * </ul>
  */
 public class ColorPicker extends View {
     /*
-     * Constants used to save/restore the instance state.
+     * Color harmonies, see setHarmony(int).
      */
-    private static final String STATE_PARENT = "parent";
-    private static final String STATE_ANGLE = "angle";
-    private static final String STATE_OLD_COLOR = "color";
-    private static final String STATE_SHOW_OLD_COLOR = "showColor";
+    public static final int HARMONY_NONE = 0;
+    public static final int HARMONY_COMPLEMENTARY = 1;
+    public static final int HARMONY_SPLIT_COMPLEMENTARY = 2;
+    public static final int HARMONY_ANALOGOUS = 3;
+    public static final int HARMONY_TRIADIC = 4;
+    public static final int HARMONY_TETRADIC = 5;
 
     /**
-     * Colors to construct the color wheel using {@link android.graphics.SweepGradient}.
+     * Maximum number of colors of a harmony, including the selected color.
      */
-    private static final int[] COLORS = new int[]{
-            0xFFFF0000, 0xFFFF00FF,
-            0xFF0000FF, 0xFF00FFFF,
-            0xFF00FF00, 0xFFFFFF00,
-            0xFFFF0000
+    public static final int MAX_HARMONY_COLORS = 4;
+
+    /**
+     * Hue offsets in degrees of the colors of each harmony.
+     */
+    private static final float[][] HARMONY_OFFSETS = {
+            {},
+            {180f},
+            {150f, 210f},
+            {-30f, 30f},
+            {120f, 240f},
+            {90f, 180f, 270f}
     };
 
+    /**
+     * Size of a harmony marker relative to the pointer.
+     */
+    private static final float HARMONY_MARKER_SCALE = 0.6f;
+
     /**
      * {@code Paint} instance used to draw the color wheel.
      */
@@ -118,12 +159,13 @@ public class ColorPicker extends View {
     private RectF mCenterRectangle = new RectF();
 
     /**
-     * {@code true} if the user clicked on the pointer to start the move mode. <br>
-     * {@code false} once the user stops touching the screen.
+     * Id of the pointer that moves the color pointer. <br>
+     * {@code MotionEvent.INVALID_POINTER_ID} while the user doesn't move it.
+     * Further pointers touching the wheel are ignored.
      *
      * @see #onTouchEvent(android.view.MotionEvent)
      */
-    private boolean mUserIsMovingPointer = false;
+    private int mActivePointerId = MotionEvent.INVALID_POINTER_ID;
 
     /**
      * The ARGB value of the currently selected color.
@@ -145,6 +187,31 @@ public class ColorPicker extends View {
      */
     private int mCenterNewColor;
 
+    /**
+     * {@code mCenterNewColor} in the low 32 bits and the bits of the hue
+     * in the high 32 bits, published for other threads.
+     *
+     * @see #getColorSnapshot()
+     */
+    private volatile long mColorSnapshot;
+
+    /**
+     * Color set with {@link #setColorAsync(int)} that the UI thread hasn't
+     * set yet, with {@link #PENDING_COLOR} set. 0 if there is none.
+     */
+    private final AtomicLong mPendingColor = new AtomicLong();
+    private static final long PENDING_COLOR = 1L << 32;
+
+    private final Runnable mSetPendingColor = new Runnable() {
+        @Override
+        public void run() {
+            long pending = mPendingColor.getAndSet(0);
+            if (pending != 0) {
+                setColor((int) pending);
+            }
+        }
+    };
+
     /**
      * Number of pixels the origin of this view is moved in X- and Y-direction.
      *
@@ -163,6 +230,12 @@ public class ColorPicker extends View {
      */
     private float mTranslationOffset;
 
+    /**
+     * Coordinates of the pointer's center, filled by
+     * {@link #calculatePointerPosition(float)}.
+     */
+    private final float[] mPointerPosition = new float[2];
+
     /**
      * Distance between pointer and user touch in X-direction.
      */
@@ -202,11 +275,86 @@ public class ColorPicker extends View {
      */
     private float[] mHSV = new float[3];
 
+    /**
+     * Reused by {@link #colorToAngle(int)}.
+     */
+    private final float[] mAngleHSV = new float[3];
+
+    /**
+     * HSV values of the new center color, only used for the trace counters.
+     */
+    private final float[] mTraceHSV = new float[3];
+
+    /**
+     * State of the color animation started by
+     * {@link #animateToColor(int, long, TimeInterpolator)}. The hue, saturation
+     * and value of the start and end color, the alpha of both and the HSV of
+     * the current frame.
+     */
+    private final float[] mAnimationFromHSV = new float[3];
+    private final float[] mAnimationToHSV = new float[3];
+    private final float[] mAnimationHSV = new float[3];
+    private int mAnimationFromAlpha;
+    private int mAnimationToColor;
+    private long mAnimationStartTime;
+    private long mAnimationDuration;
+    private TimeInterpolator mAnimationInterpolator;
+    private boolean mAnimating;
+
+    /**
+     * Minimum time between listener calls during a color animation, 0 to
+     * only call them when the animation ends.
+     */
+    private long mAnimationListenerInterval;
+    private long mAnimationLastListenerTime;
+
+    /**
+     * Draws the next frame of the color animation.
+     */
+    private final Runnable mAnimationFrame = new Runnable() {
+        @Override
+        public void run() {
+            if (mAnimating) {
+                onAnimationFrame(SystemClock.uptimeMillis());
+            }
+        }
+    };
+
+    /**
+     * Hue step in radians, see {@link #setHueStep(float)}. 0 means
+     * continuous.
+     */
+    private float mHueStep;
+
+    /**
+     * Fling of the color wheel pointer, see {@link #setFlingEnabled(boolean)}.
+     */
+    private boolean mFlingEnabled;
+    private float mFlingDetent;
+    private float mFlingFriction = WheelFling.DEFAULT_FRICTION;
+    private final WheelFling mFling = new WheelFling();
+    private final float[] mFlingHSV = new float[3];
+    private VelocityTracker mVelocityTracker;
+
+    private final Choreographer.FrameCallback mFlingFrame = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mFling.isFinished()) {
+                onFlingFrame(frameTimeNanos);
+            }
+        }
+    };
+
     /**
      * {@code SVBar} instance used to control the Saturation/Value bar.
      */
     private SVBar mSVbar = null;
 
+    /**
+     * {@code SVArea} instance used to control the Saturation/Value area.
+     */
+    private SVArea mSVArea = null;
+
     /**
      * {@code OpacityBar} instance used to control the Opacity bar.
      */
@@ -249,6 +397,99 @@ public class ColorPicker extends View {
      */
     private OnColorSelectedListener onColorSelectedListener;
 
+    /**
+     * Listeners added with {@link #addOnColorChangedListener} and
+     * {@link #addOnColorSelectedListener}, called after the listeners set
+     * with the setters.
+     */
+    private final ListenerList<OnColorChangedListener> mColorChangedListeners =
+            new ListenerList<>(new OnColorChangedListener[0]);
+    private final ListenerList<OnColorSelectedListener> mColorSelectedListeners =
+            new ListenerList<>(new OnColorSelectedListener[0]);
+
+    /**
+     * Harmony shown on the wheel, see {@link #setHarmony(int)}.
+     */
+    private int mHarmony;
+
+    /**
+     * The selected color followed by its harmony colors, and the positions
+     * of the harmony markers on the wheel as x and y pairs. Filled by
+     * {@link #updateHarmony()} when they are drawn, read or delivered.
+     */
+    private final int[] mHarmonyColors = new int[MAX_HARMONY_COLORS];
+    private final float[] mHarmonyPositions = new float[2 * MAX_HARMONY_COLORS];
+    private int mHarmonyCount;
+    private boolean mHarmonyDirty;
+    private final float[] mHarmonyHsv = new float[3];
+    private Paint mHarmonyPaint;
+    private final ListenerList<OnHarmonyChangedListener> mHarmonyListeners =
+            new ListenerList<>(new OnHarmonyChangedListener[0]);
+
+    /**
+     * The harmony colors last passed to the listeners, so a frame only
+     * calls them if the colors changed.
+     */
+    private final int[] mDeliveredHarmonyColors = new int[MAX_HARMONY_COLORS];
+    private int mDeliveredHarmonyCount;
+    private boolean mHarmonyFramePending;
+
+    /**
+     * Calls the harmony listeners once per frame in which the color or the
+     * harmony changed, whether the picker is drawn or not.
+     */
+    private final Choreographer.FrameCallback mHarmonyFrame = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mHarmonyFramePending = false;
+            notifyHarmonyChanged();
+        }
+    };
+
+    /**
+     * Evaluates the contrast of every color shown, see
+     * {@link #setContrastEvaluator(ContrastEvaluator)}.
+     */
+    private ContrastEvaluator mContrastEvaluator;
+
+    /**
+     * Collects the data reported to the {@code PickerMetrics} instance.
+     */
+    private final MetricsTracker mTracker = new MetricsTracker(this, "ColorPicker");
+
+    /**
+     * {@code InteractionRecorder} writing the touch events of this view and
+     * the id of this view in the recording.
+     */
+    private InteractionRecorder mRecorder;
+    private int mRecorderViewId;
+
+    /**
+     * Undo history, {@code null} while disabled.
+     *
+     * @see #setHistoryCapacity(int)
+     */
+    private ColorHistory mHistory;
+    private final float[] mHistoryHSV = new float[3];
+
+    /**
+     * Stream of the colors for {@link #getColorStream()}, {@code null} until
+     * it is requested.
+     */
+    private ColorStream mColorStream;
+
+    /**
+     * Hue increment in degrees of a key press or accessibility action while
+     * no hue step is set.
+     */
+    private static final float KEY_HUE_INCREMENT = 5f;
+
+    /**
+     * Virtual view hierarchy of the wheel and the center for accessibility
+     * services. {@code null} until a service asks for it.
+     */
+    private PickerAccessibilityProvider mAccessibilityProvider;
+
     /**
      * {@code View#OnClickListener} for middle color circle click.
      * Default implementation resets the color to the original (initial) color.
@@ -258,6 +499,7 @@ public class ColorPicker extends View {
         public void onClick(View v) {
             mCenterHaloPaint.setAlpha(0x50);
             setColor(getOldCenterColor());
+            recordHistory();
             invalidate();
         }
     };
@@ -295,6 +537,20 @@ public class ColorPicker extends View {
         public void onColorSelected(int color);
     }
 
+    /**
+     * An interface that is called with the harmony colors, on the frame after
+     * they changed, see {@link #setHarmony(int)}.
+     */
+    public interface OnHarmonyChangedListener {
+
+        /**
+         * @param colors the selected color followed by its harmony colors.
+         *               The array is reused, copy the colors to keep them.
+         * @param count  the number of colors.
+         */
+        public void onHarmonyChanged(int[] colors, int count);
+    }
+
     /**
      * Set a onColorChangedListener
      *
@@ -331,6 +587,177 @@ public class ColorPicker extends View {
         return this.onColorSelectedListener;
     }
 
+    /**
+     * Add a listener for color changes, in addition to the one set with
+     * {@link #setOnColorChangedListener(OnColorChangedListener)}. Can be
+     * called from any thread, the listener is called on the UI thread.
+     *
+     * @param listener the listener, added once even if added again.
+     */
+    public void addOnColorChangedListener(OnColorChangedListener listener) {
+        mColorChangedListeners.add(listener);
+    }
+
+    public void removeOnColorChangedListener(OnColorChangedListener listener) {
+        mColorChangedListeners.remove(listener);
+    }
+
+    /**
+     * Add a listener for selected colors, in addition to the one set with
+     * {@link #setOnColorSelectedListener(OnColorSelectedListener)}. Can be
+     * called from any thread, the listener is called on the UI thread.
+     *
+     * @param listener the listener, added once even if added again.
+     */
+    public void addOnColorSelectedListener(OnColorSelectedListener listener) {
+        mColorSelectedListeners.add(listener);
+    }
+
+    public void removeOnColorSelectedListener(OnColorSelectedListener listener) {
+        mColorSelectedListeners.remove(listener);
+    }
+
+    private boolean hasColorChangedListeners() {
+        return onColorChangedListener != null || !mColorChangedListeners.isEmpty();
+    }
+
+    /**
+     * Call the color changed listeners, if the color differs from the one
+     * they got last.
+     */
+    private void notifyColorChanged(int color) {
+        if (color == oldChangedListenerColor || !hasColorChangedListeners()) {
+            return;
+        }
+        if (onColorChangedListener != null) {
+            mTracker.listenerInvoked();
+            onColorChangedListener.onColorChanged(color);
+        }
+        for (OnColorChangedListener listener : mColorChangedListeners.get()) {
+            mTracker.listenerInvoked();
+            listener.onColorChanged(color);
+        }
+        oldChangedListenerColor = color;
+    }
+
+    /**
+     * Get the stream of the colors shown by the picker. Unlike the
+     * listeners it has any number of subscribers, each with its own thread
+     * and rate. Animation and fling frames are published too, regardless of
+     * {@link #setAnimationListenerInterval(long)}.
+     *
+     * @return the stream, created on the first call. Must be called on the
+     * UI thread.
+     */
+    public ColorStream getColorStream() {
+        if (mColorStream == null) {
+            mColorStream = new ColorStream(mCenterNewColor);
+        }
+        return mColorStream;
+    }
+
+    /**
+     * Keep an undo history of the selected colors. A color is recorded
+     * when the user releases the wheel or a bar, at the end of a fling and
+     * after a key press, so a drag is a single entry. Colors set with
+     * {@link #setColor(int)} or {@link #animateToColor} are only recorded
+     * with {@link #recordHistory()}.
+     * <br>
+     * The history is disabled by default.
+     *
+     * @param capacity maximum number of entries, the oldest are dropped. 0
+     *                 disables the history and clears it. A smaller
+     *                 capacity keeps the current color and the newest
+     *                 entries before it.
+     */
+    public void setHistoryCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        if (capacity == 0) {
+            mHistory = null;
+            return;
+        }
+        if (mHistory != null) {
+            mHistory.setCapacity(capacity);
+            return;
+        }
+        mHistory = new ColorHistory(capacity);
+        mHistory.record(mColorSnapshot);
+    }
+
+    public int getHistoryCapacity() {
+        return mHistory != null ? mHistory.getCapacity() : 0;
+    }
+
+    /**
+     * Record the current color in the history, unless it is the current
+     * entry already. Entries that could be redone are dropped.
+     */
+    public void recordHistory() {
+        if (mHistory != null) {
+            mHistory.record(mColorSnapshot);
+        }
+    }
+
+    public boolean canUndo() {
+        return mHistory != null && mHistory.canUndo();
+    }
+
+    public boolean canRedo() {
+        return mHistory != null && mHistory.canRedo();
+    }
+
+    /**
+     * Go back to the previous color of the history. The picker and the bars
+     * are updated like during an animation, only the color changed
+     * listeners are called, once.
+     *
+     * @return {@code false} if there is nothing to undo.
+     */
+    public boolean undo() {
+        if (!canUndo()) {
+            return false;
+        }
+        restoreHistoryEntry(mHistory.undo());
+        return true;
+    }
+
+    /**
+     * Go forward to the color that was undone last.
+     *
+     * @return {@code false} if there is nothing to redo.
+     * @see #undo()
+     */
+    public boolean redo() {
+        if (!canRedo()) {
+            return false;
+        }
+        restoreHistoryEntry(mHistory.redo());
+        return true;
+    }
+
+    /**
+     * Clear the history, keeping the current color as the only entry.
+     */
+    public void clearHistory() {
+        if (mHistory != null) {
+            mHistory.clear();
+            mHistory.record(mColorSnapshot);
+        }
+    }
+
+    private void restoreHistoryEntry(long entry) {
+        cancelColorAnimation();
+        cancelFling();
+        int color = snapshotColor(entry);
+        mTracker.colorToHSV(color, mHistoryHSV);
+        // The hue of the wheel, also for gray colors.
+        mHistoryHSV[0] = snapshotHue(entry);
+        syncColor(color, mHistoryHSV);
+        notifyColorChanged(color);
+    }
+
     /**
      * Color of the latest entry of the onColorChangedListener.
      */
@@ -341,6 +768,33 @@ public class ColorPicker extends View {
      */
     private int oldSelectedListenerColor;
 
+    /**
+     * Set a metrics instance that receives timing and counter data of this
+     * view. Pass {@code null} to stop collecting.
+     *
+     * @param metrics {@code PickerMetrics}
+     */
+    public void setMetrics(PickerMetrics metrics) {
+        mTracker.setMetrics(metrics);
+    }
+
+    /**
+     * Gets the metrics instance
+     *
+     * @return {@code PickerMetrics}
+     */
+    public PickerMetrics getMetrics() {
+        return mTracker.getMetrics();
+    }
+
+    /**
+     * Used by {@code InteractionRecorder} to attach itself to this view.
+     */
+    void setInteractionRecorder(InteractionRecorder recorder, int viewId) {
+        mRecorder = recorder;
+        mRecorderViewId = viewId;
+    }
+
     private void init(AttributeSet attrs, int defStyle) {
         final TypedArray a = getContext().obtainStyledAttributes(attrs,
                 R.styleable.ColorPicker, defStyle, 0);
@@ -379,13 +833,15 @@ public class ColorPicker extends View {
         mPointerColorFixed = a.getBoolean(
                 R.styleable.ColorPicker_color_pointer_fixed_color,
                 b.getBoolean(R.bool.color_pointer_fixed_color));
+        setHueStep(a.getFloat(R.styleable.ColorPicker_color_hue_step, 0f));
+        int harmony = a.getInt(R.styleable.ColorPicker_color_harmony, HARMONY_NONE);
 
         a.recycle();
 
 
         mAngle = (float) (-Math.PI / 2);
 
-        Shader s = new SweepGradient(0, 0, COLORS, null);
+        Shader s = new SweepGradient(0, 0, ColorMath.getWheelColors(), null);
 
         mColorWheelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         mColorWheelPaint.setShader(s);
@@ -399,6 +855,8 @@ public class ColorPicker extends View {
         mPointerColor.setAntiAlias(true);
         mPointerColor.setColor(calculateColor(mAngle));
 
+        mHarmonyPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
         mCenterNewPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         mCenterNewPaint.setColor(calculateColor(mAngle));
         mCenterNewPaint.setStyle(Paint.Style.FILL);
@@ -411,9 +869,22 @@ public class ColorPicker extends View {
         mCenterHaloPaint.setColor(Color.BLACK);
         mCenterHaloPaint.setAlpha(0x00);
 
-        mCenterNewColor = calculateColor(mAngle);
+        setCenterNewColor(calculateColor(mAngle));
         mCenterOldColor = calculateColor(mAngle);
         mShowCenterOldColor = true;
+        setHarmony(harmony);
+
+        setFocusable(true);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        mTracker.beginDraw();
+        try {
+            super.draw(canvas);
+        } finally {
+            mTracker.endDraw();
+        }
     }
 
     @Override
@@ -426,6 +897,16 @@ public class ColorPicker extends View {
         // Draw the color wheel.
         canvas.drawOval(mColorWheelRectangle, mColorWheelPaint);
 
+        // Draw the harmony markers below the pointer.
+        updateHarmony();
+        for (int i = 1; i < mHarmonyCount; i++) {
+            float x = mHarmonyPositions[2 * i];
+            float y = mHarmonyPositions[2 * i + 1];
+            canvas.drawCircle(x, y, mColorPointerRadius, mPointerHaloPaint);
+            mHarmonyPaint.setColor(mHarmonyColors[i]);
+            canvas.drawCircle(x, y, mColorPointerRadius * HARMONY_MARKER_SCALE, mHarmonyPaint);
+        }
+
         float[] pointerPosition = calculatePointerPosition(mAngle);
 
         // Draw the pointer's "halo"
@@ -488,6 +969,7 @@ public class ColorPicker extends View {
         mColorWheelRadius = min / 2 - mColorWheelThickness - mColorPointerHaloRadius;
         mColorWheelRectangle.set(-mColorWheelRadius, -mColorWheelRadius,
                 mColorWheelRadius, mColorWheelRadius);
+        mHarmonyDirty = true;
 
         mColorCenterRadius = (int) ((float) mPreferredColorCenterRadius * ((float) mColorWheelRadius / (float) mPreferredColorWheelRadius));
         mColorCenterHaloRadius = (int) ((float) mPreferredColorCenterHaloRadius * ((float) mColorWheelRadius / (float) mPreferredColorWheelRadius));
@@ -495,10 +977,6 @@ public class ColorPicker extends View {
                 mColorCenterRadius, mColorCenterRadius);
     }
 
-    private int ave(int start, int end, float fraction) {
-        return start + Math.round(fraction * (end - start));
-    }
-
     /**
      * Calculate the color using the supplied angle.
      *
@@ -507,32 +985,7 @@ public class ColorPicker extends View {
      * angle.
      */
     private int calculateColor(float angle) {
-        float unit = (float) (angle / (2 * Math.PI));
-        if (unit < 0) {
-            unit += 1;
-        }
-
-        if (unit <= 0) {
-            mColor = COLORS[0];
-            return mColor;
-        }
-        if (unit >= 1) {
-            mColor = COLORS[COLORS.length - 1];
-            return mColor;
-        }
-
-        float p = unit * (COLORS.length - 1);
-        int i = (int) p;
-        p -= i;
-
-        int color0 = COLORS[i];
-        int color1 = COLORS[i + 1];
-        int a = ave(Color.alpha(color0), Color.alpha(color1), p);
-        int r = ave(Color.red(color0), Color.red(color1), p);
-        int g = ave(Color.green(color0), Color.green(color1), p);
-        int b = ave(Color.blue(color0), Color.blue(color1), p);
-
-        mColor = Color.argb(a, r, g, b);
+        mColor = ColorMath.wheelColor(angle);
         return mColor;
     }
 
@@ -542,7 +995,64 @@ public class ColorPicker extends View {
      * @return The ARGB value of the currently selected color.
      */
     public int getColor() {
-        return mCenterNewColor;
+        return (int) mColorSnapshot;
+    }
+
+    /**
+     * Get the color and the hue shown by the picker in one read, from any
+     * thread. Unlike the hue of the color, the hue stays known for white,
+     * gray and black. Use {@link #snapshotColor(long)} and
+     * {@link #snapshotHue(long)} to unpack it.
+     *
+     * @return the packed color and hue.
+     */
+    public long getColorSnapshot() {
+        return mColorSnapshot;
+    }
+
+    /**
+     * Get the ARGB color of a snapshot.
+     */
+    public static int snapshotColor(long snapshot) {
+        return (int) snapshot;
+    }
+
+    /**
+     * Get the hue of a snapshot.
+     *
+     * @return the hue in degrees, between 0 and 360.
+     */
+    public static float snapshotHue(long snapshot) {
+        return Float.intBitsToFloat((int) (snapshot >>> 32));
+    }
+
+    /**
+     * Set the color from any thread. The color is set with
+     * {@link #setColor(int)} on the UI thread. When several colors are set
+     * before the UI thread gets to it, only the last one is set.
+     *
+     * @param color the ARGB color.
+     */
+    public void setColorAsync(int color) {
+        long previous = mPendingColor.getAndSet(PENDING_COLOR | (color & 0xFFFFFFFFL));
+        if (previous == 0) {
+            post(mSetPendingColor);
+        }
+    }
+
+    /**
+     * Set the color shown in the center and publish it for
+     * {@link #getColor()}.
+     */
+    private void setCenterNewColor(int color) {
+        mCenterNewColor = color;
+        mHarmonyDirty = true;
+        scheduleHarmonyFrame();
+        if (mContrastEvaluator != null) {
+            mContrastEvaluator.evaluate(color);
+        }
+        mColorSnapshot = ((long) Float.floatToRawIntBits(getHue()) << 32)
+                | (color & 0xFFFFFFFFL);
     }
 
     /**
@@ -557,48 +1067,61 @@ public class ColorPicker extends View {
      *              true for shades of grey. You have been warned!
      */
     public void setColor(int color) {
-        mColor = color;
-        mAngle = colorToAngle(color);
-        mPointerColor.setColor(color); // calculateColor(mAngle)
+        cancelColorAnimation();
+        cancelFling();
+        PickerTrace.begin("ColorPicker#setColor");
+        try {
+            mColor = color;
+            mAngle = colorToAngle(color);
+            mPointerColor.setColor(color); // calculateColor(mAngle)
+
+            // check of the instance isn't null
+            if (mOpacityBar != null) {
+                // set the value of the opacity
+                mOpacityBar.setColor(mColor);
+                mOpacityBar.setOpacity(Color.alpha(color));
+            }
 
-        // check of the instance isn't null
-        if (mOpacityBar != null) {
-            // set the value of the opacity
-            mOpacityBar.setColor(mColor);
-            mOpacityBar.setOpacity(Color.alpha(color));
-        }
+            // check if the instance isn't null
+            if (mSVbar != null) {
+                // the array mHSV will be filled with the HSV values of the color.
+                mTracker.colorToHSV(color, mHSV);
+                mSVbar.setColor(mColor);
+
+                // because of the design of the Saturation/Value bar,
+                // we can only use Saturation or Value every time.
+                // Here will be checked which we shall use.
+                if (mHSV[1] < mHSV[2]) {
+                    mSVbar.setSaturation(mHSV[1]);
+                } else if (mHSV[1] > mHSV[2]) {
+                    mSVbar.setValue(mHSV[2]);
+                }
+            }
 
-        // check if the instance isn't null
-        if (mSVbar != null) {
-            // the array mHSV will be filled with the HSV values of the color.
-            Color.colorToHSV(color, mHSV);
-            mSVbar.setColor(mColor);
-
-            // because of the design of the Saturation/Value bar,
-            // we can only use Saturation or Value every time.
-            // Here will be checked which we shall use.
-            if (mHSV[1] < mHSV[2]) {
-                mSVbar.setSaturation(mHSV[1]);
-            } else if (mHSV[1] > mHSV[2]) {
-                mSVbar.setValue(mHSV[2]);
+            if (mSVArea != null) {
+                // Only redraw the area, the listeners are called once below.
+                mTracker.colorToHSV(color, mHSV);
+                mSVArea.syncColor(color, mHSV);
             }
-        }
 
-        if (mSaturationBar != null) {
-            Color.colorToHSV(color, mHSV);
-            mSaturationBar.setColor(mColor);
-            mSaturationBar.setSaturation(mHSV[1]);
-        }
+            if (mSaturationBar != null) {
+                mTracker.colorToHSV(color, mHSV);
+                mSaturationBar.setColor(mColor);
+                mSaturationBar.setSaturation(mHSV[1]);
+            }
 
-        if (mValueBar != null && mSaturationBar == null) {
-            Color.colorToHSV(color, mHSV);
-            mValueBar.setColor(mColor);
-            mValueBar.setValue(mHSV[2]);
-        } else if (mValueBar != null) {
-            Color.colorToHSV(color, mHSV);
-            mValueBar.setValue(mHSV[2]);
+            if (mValueBar != null && mSaturationBar == null) {
+                mTracker.colorToHSV(color, mHSV);
+                mValueBar.setColor(mColor);
+                mValueBar.setValue(mHSV[2]);
+            } else if (mValueBar != null) {
+                mTracker.colorToHSV(color, mHSV);
+                mValueBar.setValue(mHSV[2]);
+            }
+            setNewCenterColor(color);
+        } finally {
+            PickerTrace.end();
         }
-        setNewCenterColor(color);
     }
 
     /**
@@ -609,22 +1132,43 @@ public class ColorPicker extends View {
      * color wheel.
      */
     private float colorToAngle(int color) {
-        float[] colors = new float[3];
-        Color.colorToHSV(color, colors);
+        mTracker.colorToHSV(color, mAngleHSV);
 
-        return (float) Math.toRadians(-colors[0]);
+        return (float) Math.toRadians(-mAngleHSV[0]);
     }
 
     @Override
-    public boolean onTouchEvent(MotionEvent event) {
-        getParent().requestDisallowInterceptTouchEvent(true);
+    public boolean dispatchTouchEvent(MotionEvent event) {
+        if (mRecorder != null) {
+            mRecorder.record(mRecorderViewId, event);
+        }
+        mTracker.beginTouch();
+        try {
+            return super.dispatchTouchEvent(event);
+        } finally {
+            mTracker.endTouch();
+        }
+    }
 
-        // Convert coordinates to our internal coordinate system
-        float x = event.getX() - mTranslationOffset;
-        float y = event.getY() - mTranslationOffset;
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        float x, y;
 
-        switch (event.getAction()) {
+        switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+                // Another pointer already moves the pointer, ignore this one.
+                if (mActivePointerId != MotionEvent.INVALID_POINTER_ID) {
+                    break;
+                }
+                finishColorAnimation();
+                stopFling();
+
+                // Convert coordinates to our internal coordinate system
+                int downIndex = event.getActionIndex();
+                x = event.getX(downIndex) - mTranslationOffset;
+                y = event.getY(downIndex) - mTranslationOffset;
+
                 // Check whether the user pressed on the pointer.
                 float[] pointerPosition = calculatePointerPosition(mAngle);
                 if (x >= (pointerPosition[0] - mColorPointerHaloRadius)
@@ -633,8 +1177,7 @@ public class ColorPicker extends View {
                         && y <= (pointerPosition[1] + mColorPointerHaloRadius)) {
                     mSlopX = x - pointerPosition[0];
                     mSlopY = y - pointerPosition[1];
-                    mUserIsMovingPointer = true;
-                    invalidate();
+                    startTrackingPointer(event, event.getPointerId(downIndex));
                 }
                 // Check whether the user pressed on the center.
                 else if (x >= -mColorCenterRadius && x <= mColorCenterRadius
@@ -648,61 +1191,315 @@ public class ColorPicker extends View {
                 else if (Math.sqrt(x * x + y * y) <= mColorWheelRadius + mColorPointerHaloRadius
                         && Math.sqrt(x * x + y * y) >= mColorWheelRadius - mColorPointerHaloRadius
                         && mTouchAnywhereOnColorWheelEnabled) {
-                    mUserIsMovingPointer = true;
-                    invalidate();
+                    mSlopX = 0;
+                    mSlopY = 0;
+                    startTrackingPointer(event, event.getPointerId(downIndex));
                 }
                 // If user did not press pointer or center, report event not handled
-                else {
-                    getParent().requestDisallowInterceptTouchEvent(false);
+                else if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
                     return false;
                 }
                 break;
             case MotionEvent.ACTION_MOVE:
-                if (mUserIsMovingPointer) {
-                    mAngle = (float) Math.atan2(y - mSlopY, x - mSlopX);
-                    setColor(calculateColor(mAngle));
-                    invalidate();
+                int pointerIndex = mActivePointerId == MotionEvent.INVALID_POINTER_ID
+                        ? -1 : event.findPointerIndex(mActivePointerId);
+                if (pointerIndex >= 0) {
+                    if (mVelocityTracker != null) {
+                        mVelocityTracker.addMovement(event);
+                    }
+                    x = event.getX(pointerIndex) - mTranslationOffset;
+                    y = event.getY(pointerIndex) - mTranslationOffset;
+                    moveWheelPointer((float) Math.atan2(y - mSlopY, x - mSlopX));
                 }
                 // If user did not press pointer or center, report event not handled
-                else {
-                    getParent().requestDisallowInterceptTouchEvent(false);
+                else if (mActivePointerId == MotionEvent.INVALID_POINTER_ID) {
                     return false;
                 }
                 break;
+            case MotionEvent.ACTION_POINTER_UP:
             case MotionEvent.ACTION_UP:
-                mUserIsMovingPointer = false;
-                mCenterHaloPaint.setAlpha(0x00);
-
-                if (onColorSelectedListener != null && mCenterNewColor != oldSelectedListenerColor) {
-                    onColorSelectedListener.onColorSelected(mCenterNewColor);
-                    oldSelectedListenerColor = mCenterNewColor;
+                if (event.getPointerId(event.getActionIndex()) == mActivePointerId) {
+                    stopTrackingPointer(event);
                 }
-
-                invalidate();
                 break;
             case MotionEvent.ACTION_CANCEL:
-                if (onColorSelectedListener != null && mCenterNewColor != oldSelectedListenerColor) {
-                    onColorSelectedListener.onColorSelected(mCenterNewColor);
-                    oldSelectedListenerColor = mCenterNewColor;
-                }
+                stopTrackingPointer(null);
                 break;
         }
         return true;
     }
 
     /**
-     * Calculate the pointer's coordinates on the color wheel using the supplied
-     * angle.
+     * Move the color pointer to an angle and update the color, the bars and
+     * the listeners. Drags, keys and accessibility actions all use this
+     * method.
+     *
+     * @param angle angle in radians, snapped to the hue step.
+     * @return {@code false} if the color didn't change.
+     */
+    private boolean moveWheelPointer(float angle) {
+        int previousColor = mColor;
+        int color = calculateColor(snapAngle(angle));
+        // setColor() redraws, nothing to do if the color didn't change.
+        if (color == previousColor) {
+            return false;
+        }
+        setWheelColor(color);
+        return true;
+    }
+
+    /**
+     * Set a color picked on the wheel. An {@code SVArea} only takes its hue
+     * and keeps the saturation and value of its pointer, everything else
+     * gets the fan-out of {@link #setColor(int)}.
+     *
+     * @param color the fully saturated color of the wheel.
+     */
+    private void setWheelColor(int color) {
+        if (mSVArea == null) {
+            setColor(color);
+            return;
+        }
+        cancelColorAnimation();
+        cancelFling();
+        mColor = color;
+        mAngle = colorToAngle(color);
+        mPointerColor.setColor(color);
+        // The area tells the opacity bar or the picker, which notifies.
+        mSVArea.setHue(getHue());
+    }
+
+    /**
+     * Turn the hue by a number of increments. An increment is the hue step
+     * set with {@link #setHueStep(float)}, {@value #KEY_HUE_INCREMENT}
+     * degrees otherwise.
+     *
+     * @param increments number of increments, positive to increase the hue.
+     * @return {@code false} if the color didn't change.
+     */
+    boolean stepHue(int increments) {
+        finishColorAnimation();
+        stopFling();
+        float increment = mHueStep > 0f
+                ? mHueStep : (float) Math.toRadians(KEY_HUE_INCREMENT);
+        // The angle runs against the hue.
+        return moveWheelPointer(wrapAngle(snapAngle(mAngle) - increments * increment));
+    }
+
+    /**
+     * Get the hue of the selected color.
+     *
+     * @return the hue in degrees, between 0 and 360.
+     */
+    float getHue() {
+        return ColorMath.angleToHue(mAngle);
+    }
+
+    /**
+     * Check whether the center shows the old color and can be clicked.
+     */
+    boolean isCenterClickable() {
+        return mShowCenterOldColor && onClickCenterListener != null;
+    }
+
+    /**
+     * Click the center, like a tap on the old color does.
+     *
+     * @return {@code false} if the center can't be clicked.
+     */
+    boolean performCenterClick() {
+        if (!isCenterClickable()) {
+            return false;
+        }
+        onClickCenterListener.onClick(this);
+        return true;
+    }
+
+    /**
+     * Find the part of the picker at a point.
+     *
+     * @return {@link PickerAccessibilityProvider#VIRTUAL_WHEEL},
+     * {@link PickerAccessibilityProvider#VIRTUAL_CENTER} or
+     * {@link View#NO_ID} if the point is on neither.
+     */
+    int getVirtualViewAt(float x, float y) {
+        x -= mTranslationOffset;
+        y -= mTranslationOffset;
+        if (x >= -mColorCenterRadius && x <= mColorCenterRadius
+                && y >= -mColorCenterRadius && y <= mColorCenterRadius
+                && isCenterClickable()) {
+            return PickerAccessibilityProvider.VIRTUAL_CENTER;
+        }
+        double distance = Math.sqrt(x * x + y * y);
+        if (distance <= mColorWheelRadius + mColorPointerHaloRadius
+                && distance >= mColorWheelRadius - mColorPointerHaloRadius) {
+            return PickerAccessibilityProvider.VIRTUAL_WHEEL;
+        }
+        return NO_ID;
+    }
+
+    /**
+     * Get the bounds of a part of the picker, relative to the view.
+     */
+    void getVirtualViewBounds(int virtualViewId, Rect bounds) {
+        int radius = virtualViewId == PickerAccessibilityProvider.VIRTUAL_CENTER
+                ? mColorCenterRadius : mColorWheelRadius + mColorPointerHaloRadius;
+        int center = Math.round(mTranslationOffset);
+        bounds.set(center - radius, center - radius, center + radius, center + radius);
+    }
+
+    @Override
+    public AccessibilityNodeProvider getAccessibilityNodeProvider() {
+        // Only created once an accessibility service asks for it.
+        if (mAccessibilityProvider == null) {
+            mAccessibilityProvider = new PickerAccessibilityProvider(this);
+        }
+        return mAccessibilityProvider;
+    }
+
+    @Override
+    public boolean dispatchHoverEvent(MotionEvent event) {
+        if (mAccessibilityProvider != null && mAccessibilityProvider.onHoverEvent(event)) {
+            return true;
+        }
+        return super.dispatchHoverEvent(event);
+    }
+
+    @Override
+    public boolean onKeyDown(int keyCode, KeyEvent event) {
+        if (isEnabled()) {
+            switch (keyCode) {
+                case KeyEvent.KEYCODE_DPAD_RIGHT:
+                case KeyEvent.KEYCODE_DPAD_UP:
+                    stepHue(1);
+                    return true;
+                case KeyEvent.KEYCODE_DPAD_LEFT:
+                case KeyEvent.KEYCODE_DPAD_DOWN:
+                    stepHue(-1);
+                    return true;
+                case KeyEvent.KEYCODE_DPAD_CENTER:
+                case KeyEvent.KEYCODE_ENTER:
+                    if (performCenterClick()) {
+                        return true;
+                    }
+                    break;
+            }
+        }
+        return super.onKeyDown(keyCode, event);
+    }
+
+    @Override
+    public boolean onKeyUp(int keyCode, KeyEvent event) {
+        if (isEnabled()) {
+            switch (keyCode) {
+                case KeyEvent.KEYCODE_DPAD_RIGHT:
+                case KeyEvent.KEYCODE_DPAD_UP:
+                case KeyEvent.KEYCODE_DPAD_LEFT:
+                case KeyEvent.KEYCODE_DPAD_DOWN:
+                    // Like lifting a finger, report the color once the key is released.
+                    notifyColorSelected();
+                    if (mAccessibilityProvider != null) {
+                        mAccessibilityProvider.sendHueChanged();
+                    }
+                    return true;
+            }
+        }
+        return super.onKeyUp(keyCode, event);
+    }
+
+    /**
+     * Start moving the color pointer with the given pointer.
+     */
+    private void startTrackingPointer(MotionEvent event, int pointerId) {
+        mActivePointerId = pointerId;
+        requestDisallowParentIntercept(true);
+        if (mFlingEnabled) {
+            if (mVelocityTracker == null) {
+                mVelocityTracker = VelocityTracker.obtain();
+            } else {
+                mVelocityTracker.clear();
+            }
+            mVelocityTracker.addMovement(event);
+        }
+    }
+
+    /**
+     * Stop moving the color pointer. Start a fling if enabled, otherwise
+     * report the selected color.
+     *
+     * @param event the event lifting the pointer, {@code null} if the
+     *              gesture was cancelled.
+     */
+    private void stopTrackingPointer(MotionEvent event) {
+        boolean flinging = false;
+        if (mVelocityTracker != null) {
+            if (event != null) {
+                mVelocityTracker.addMovement(event);
+                flinging = startFling(event, event.findPointerIndex(mActivePointerId));
+            }
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+
+        mActivePointerId = MotionEvent.INVALID_POINTER_ID;
+        requestDisallowParentIntercept(false);
+
+        // A fling reports the color it comes to rest at.
+        if (!flinging) {
+            notifyColorSelected();
+            if (mAccessibilityProvider != null) {
+                mAccessibilityProvider.sendHueChanged();
+            }
+        }
+
+        if (mCenterHaloPaint.getAlpha() != 0x00) {
+            mCenterHaloPaint.setAlpha(0x00);
+            invalidate();
+        }
+    }
+
+    void notifyColorSelected() {
+        recordHistory();
+        if (mCenterNewColor == oldSelectedListenerColor
+                || (onColorSelectedListener == null && mColorSelectedListeners.isEmpty())) {
+            return;
+        }
+        if (onColorSelectedListener != null) {
+            mTracker.listenerInvoked();
+            onColorSelectedListener.onColorSelected(mCenterNewColor);
+        }
+        for (OnColorSelectedListener listener : mColorSelectedListeners.get()) {
+            mTracker.listenerInvoked();
+            listener.onColorSelected(mCenterNewColor);
+        }
+        oldSelectedListenerColor = mCenterNewColor;
+    }
+
+    /**
+     * Ask the parent not to intercept the touch events. Views driven by
+     * {@code InteractionReplayer} may have no parent.
+     *
+     * @param disallow {@code true} while this view handles the gesture.
+     */
+    private void requestDisallowParentIntercept(boolean disallow) {
+        ViewParent parent = getParent();
+        if (parent != null) {
+            parent.requestDisallowInterceptTouchEvent(disallow);
+        }
+    }
+
+    /**
+     * Calculate the pointer's coordinates on the color wheel using the supplied
+     * angle.
      *
      * @param angle The position of the pointer expressed as angle (in rad).
      * @return The coordinates of the pointer's center in our internal
-     * coordinate system.
+     * coordinate system. The array is reused by the next call.
      */
     private float[] calculatePointerPosition(float angle) {
-        float x = (float) (mColorWheelRadius * Math.cos(angle));
-        float y = (float) (mColorWheelRadius * Math.sin(angle));
-
-        return new float[]{x, y};
+        mPointerPosition[0] = (float) (mColorWheelRadius * Math.cos(angle));
+        mPointerPosition[1] = (float) (mColorWheelRadius * Math.sin(angle));
+        return mPointerPosition;
     }
 
     /**
@@ -715,6 +1512,19 @@ public class ColorPicker extends View {
         // Give an instance of the color picker to the Saturation/Value bar.
         mSVbar.setColorPicker(this);
         mSVbar.setColor(mColor);
+        mSVbar.setContrastEvaluator(mContrastEvaluator);
+    }
+
+    /**
+     * Add a Saturation/Value area to the color wheel.
+     *
+     * @param area The instance of the Saturation/Value area.
+     */
+    public void addSVArea(SVArea area) {
+        mSVArea = area;
+        // Give an instance of the color picker to the Saturation/Value area.
+        mSVArea.setColorPicker(this);
+        mSVArea.setColor(mColor);
     }
 
     /**
@@ -727,18 +1537,33 @@ public class ColorPicker extends View {
         // Give an instance of the color picker to the Opacity bar.
         mOpacityBar.setColorPicker(this);
         mOpacityBar.setColor(mColor);
+        mOpacityBar.setContrastEvaluator(mContrastEvaluator);
     }
 
     public void addSaturationBar(SaturationBar bar) {
         mSaturationBar = bar;
         mSaturationBar.setColorPicker(this);
         mSaturationBar.setColor(mColor);
+        mSaturationBar.setContrastEvaluator(mContrastEvaluator);
     }
 
     public void addValueBar(ValueBar bar) {
         mValueBar = bar;
         mValueBar.setColorPicker(this);
         mValueBar.setColor(mColor);
+        mValueBar.setContrastEvaluator(mContrastEvaluator);
+    }
+
+    /**
+     * Called by a connected bar around its touch events, so the latency of
+     * the listeners of the picker is measured from the start of the event.
+     */
+    void beginBarTouch(View bar) {
+        mTracker.beginForwardedTouch(bar);
+    }
+
+    void endBarTouch() {
+        mTracker.endForwardedTouch();
     }
 
     /**
@@ -747,19 +1572,36 @@ public class ColorPicker extends View {
      * @param color int of the color.
      */
     public void setNewCenterColor(int color) {
-        mCenterNewColor = color;
+        setCenterNewColor(color);
         mCenterNewPaint.setColor(color);
         if (mCenterOldColor == 0) {
             mCenterOldColor = color;
             mCenterOldPaint.setColor(color);
         }
-        if (onColorChangedListener != null && color != oldChangedListenerColor) {
-            onColorChangedListener.onColorChanged(color);
-            oldChangedListenerColor = color;
+        notifyColorChanged(color);
+        if (mColorStream != null) {
+            mColorStream.publish(color);
+        }
+        if (PickerTrace.ENABLED) {
+            traceColorCounters(color);
         }
         invalidate();
     }
 
+    /**
+     * Emit the hue, saturation, value and opacity of the color as trace
+     * counters.
+     *
+     * @param color int of the color.
+     */
+    private void traceColorCounters(int color) {
+        Color.colorToHSV(color, mTraceHSV);
+        PickerTrace.counter(PickerTrace.COUNTER_HUE, Math.round(mTraceHSV[0]));
+        PickerTrace.counter(PickerTrace.COUNTER_SATURATION, Math.round(mTraceHSV[1] * 100));
+        PickerTrace.counter(PickerTrace.COUNTER_VALUE, Math.round(mTraceHSV[2] * 100));
+        PickerTrace.counter(PickerTrace.COUNTER_OPACITY, Color.alpha(color));
+    }
+
     /**
      * Change the color of the center which indicates the old color.
      *
@@ -850,6 +1692,15 @@ public class ColorPicker extends View {
         return mSaturationBar != null;
     }
 
+    /**
+     * Checks if there is a {@code SVArea} connected.
+     *
+     * @return true or false.
+     */
+    public boolean hasSVArea() {
+        return mSVArea != null;
+    }
+
     /**
      * Checks if there is a {@code SVBar} connected.
      *
@@ -861,30 +1712,73 @@ public class ColorPicker extends View {
 
     @Override
     protected Parcelable onSaveInstanceState() {
-        Parcelable superState = super.onSaveInstanceState();
-
-        Bundle state = new Bundle();
-        state.putParcelable(STATE_PARENT, superState);
-        state.putFloat(STATE_ANGLE, mAngle);
-        state.putInt(STATE_OLD_COLOR, mCenterOldColor);
-        state.putBoolean(STATE_SHOW_OLD_COLOR, mShowCenterOldColor);
-
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        state.angle = mAngle;
+        state.oldColor = mCenterOldColor;
+        state.newColor = mCenterNewColor;
+        state.showOldColor = mShowCenterOldColor;
         return state;
     }
 
     @Override
     protected void onRestoreInstanceState(Parcelable state) {
-        Bundle savedState = (Bundle) state;
+        SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+
+        // Restore the drawing state only. The bars restore their own state,
+        // and the listeners already know the restored color.
+        mAngle = savedState.angle;
+        mShowCenterOldColor = savedState.showOldColor;
+        mCenterOldColor = savedState.oldColor;
+        mCenterOldPaint.setColor(mCenterOldColor);
+        setCenterNewColor(savedState.newColor);
+        mCenterNewPaint.setColor(mCenterNewColor);
+        mPointerColor.setColor(calculateColor(mAngle));
+        oldChangedListenerColor = mCenterNewColor;
+        invalidate();
+    }
 
-        Parcelable superState = savedState.getParcelable(STATE_PARENT);
-        super.onRestoreInstanceState(superState);
+    /**
+     * Instance state of the color picker.
+     */
+    static class SavedState extends BaseSavedState {
+        float angle;
+        int oldColor;
+        int newColor;
+        boolean showOldColor;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        SavedState(Parcel source) {
+            super(source);
+            angle = source.readFloat();
+            oldColor = source.readInt();
+            newColor = source.readInt();
+            showOldColor = source.readInt() != 0;
+        }
 
-        mAngle = savedState.getFloat(STATE_ANGLE);
-        setOldCenterColor(savedState.getInt(STATE_OLD_COLOR));
-        mShowCenterOldColor = savedState.getBoolean(STATE_SHOW_OLD_COLOR);
-        int currentColor = calculateColor(mAngle);
-        mPointerColor.setColor(currentColor);
-        setNewCenterColor(currentColor);
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeFloat(angle);
+            out.writeInt(oldColor);
+            out.writeInt(newColor);
+            out.writeInt(showOldColor ? 1 : 0);
+        }
+
+        public static final Creator<SavedState> CREATOR = new Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel source) {
+                return new SavedState(source);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
     }
 
     public void setTouchAnywhereOnColorWheelEnabled(boolean TouchAnywhereOnColorWheelEnabled) {
@@ -907,6 +1801,510 @@ public class ColorPicker extends View {
         setColor(color);
     }
 
+    /**
+     * Animate to a color. The hue takes the shorter way around the wheel,
+     * saturation, value and alpha are interpolated linearly.
+     *
+     * <p>
+     * Each frame only updates what is drawn by the picker and its bars. The
+     * listeners are called when the animation ends, where the color is set
+     * with {@link #setColor(int)}, and during the animation at most as often
+     * as set with {@link #setAnimationListenerInterval(long)}.
+     * </p>
+     *
+     * <p>
+     * A running animation is replaced. {@link #setColor(int)} cancels it, a
+     * touch on the wheel and detaching the picker finish it.
+     * </p>
+     *
+     * @param color        the ARGB color to animate to.
+     * @param duration     duration of the animation in milliseconds.
+     * @param interpolator {@code TimeInterpolator} applied to the progress,
+     *                     {@code null} for a linear animation.
+     */
+    public void animateToColor(int color, long duration, TimeInterpolator interpolator) {
+        // Start from what is currently shown, also while animating.
+        int from = mAnimating ? mCenterNewColor : getColor();
+        mAnimating = false;
+        removeCallbacks(mAnimationFrame);
+        if (duration <= 0) {
+            setColor(color);
+            return;
+        }
+
+        mTracker.colorToHSV(from, mAnimationFromHSV);
+        mTracker.colorToHSV(color, mAnimationToHSV);
+        // A gray has no hue, keep the hue of the other color.
+        if (mAnimationFromHSV[1] == 0f) {
+            mAnimationFromHSV[0] = mAnimationToHSV[0];
+        } else if (mAnimationToHSV[1] == 0f) {
+            mAnimationToHSV[0] = mAnimationFromHSV[0];
+        }
+        mAnimationFromAlpha = Color.alpha(from);
+        mAnimationToColor = color;
+        mAnimationDuration = duration;
+        mAnimationInterpolator = interpolator;
+        mAnimationStartTime = SystemClock.uptimeMillis();
+        mAnimationLastListenerTime = mAnimationStartTime;
+        mAnimating = true;
+        postOnAnimation(mAnimationFrame);
+    }
+
+    /**
+     * Check whether a color animation is running.
+     *
+     * @return {@code true} until the animation ends or is cancelled.
+     */
+    public boolean isAnimatingColor() {
+        return mAnimating;
+    }
+
+    /**
+     * Stop the color animation at the current frame, without calling the
+     * listeners.
+     */
+    public void cancelColorAnimation() {
+        if (mAnimating) {
+            mAnimating = false;
+            removeCallbacks(mAnimationFrame);
+        }
+    }
+
+    /**
+     * Jump to the end of the color animation.
+     */
+    private void finishColorAnimation() {
+        if (mAnimating) {
+            setColor(mAnimationToColor);
+        }
+    }
+
+    /**
+     * Set how often the listeners are called during a color animation.
+     *
+     * @param interval minimum time between two calls in milliseconds, 0 to
+     *                 only call them when the animation ends.
+     */
+    public void setAnimationListenerInterval(long interval) {
+        mAnimationListenerInterval = interval;
+    }
+
+    public long getAnimationListenerInterval() {
+        return mAnimationListenerInterval;
+    }
+
+    private void onAnimationFrame(long now) {
+        float fraction = Math.min(1f, (now - mAnimationStartTime) / (float) mAnimationDuration);
+        if (fraction >= 1f) {
+            // Runs the full fan-out and calls the listeners once.
+            setColor(mAnimationToColor);
+            return;
+        }
+        if (mAnimationInterpolator != null) {
+            fraction = mAnimationInterpolator.getInterpolation(fraction);
+        }
+
+        float hueDelta = mAnimationToHSV[0] - mAnimationFromHSV[0];
+        if (hueDelta > 180f) {
+            hueDelta -= 360f;
+        } else if (hueDelta < -180f) {
+            hueDelta += 360f;
+        }
+        float hue = mAnimationFromHSV[0] + hueDelta * fraction;
+        if (hue < 0f) {
+            hue += 360f;
+        } else if (hue >= 360f) {
+            hue -= 360f;
+        }
+        mAnimationHSV[0] = hue;
+        mAnimationHSV[1] = mAnimationFromHSV[1]
+                + (mAnimationToHSV[1] - mAnimationFromHSV[1]) * fraction;
+        mAnimationHSV[2] = mAnimationFromHSV[2]
+                + (mAnimationToHSV[2] - mAnimationFromHSV[2]) * fraction;
+        int alpha = Math.round(mAnimationFromAlpha
+                + (Color.alpha(mAnimationToColor) - mAnimationFromAlpha) * fraction);
+        int color = mTracker.HSVToColor(alpha, mAnimationHSV);
+
+        syncColor(color, mAnimationHSV);
+        notifyAnimatedColor(color, now);
+        postOnAnimation(mAnimationFrame);
+    }
+
+    /**
+     * Call the color listener for an animation or fling frame, if the
+     * interval set with {@link #setAnimationListenerInterval(long)} has
+     * passed.
+     */
+    private void notifyAnimatedColor(int color, long now) {
+        if (mAnimationListenerInterval > 0
+                && now - mAnimationLastListenerTime >= mAnimationListenerInterval) {
+            mAnimationLastListenerTime = now;
+            notifyColorChanged(color);
+        }
+    }
+
+    /**
+     * Enable flinging the color wheel pointer. After a fast release the
+     * pointer keeps turning and slows down. The listeners are called like
+     * during {@link #animateToColor(int, long, TimeInterpolator)}.
+     *
+     * @param enabled {@code true} to enable, disabled by default.
+     */
+    public void setFlingEnabled(boolean enabled) {
+        mFlingEnabled = enabled;
+        if (!enabled) {
+            stopFling();
+        }
+    }
+
+    public boolean isFlingEnabled() {
+        return mFlingEnabled;
+    }
+
+    /**
+     * Set the detents a fling comes to rest at. A slow release also
+     * settles on the nearest detent.
+     *
+     * @param degrees hue distance between detents, 0 for no detents.
+     */
+    public void setFlingDetent(float degrees) {
+        mFlingDetent = (float) Math.toRadians(Math.max(0f, degrees));
+    }
+
+    public float getFlingDetent() {
+        return (float) Math.toDegrees(mFlingDetent);
+    }
+
+    /**
+     * Set how fast a fling slows down.
+     *
+     * @param friction decay rate of the velocity per second, the default is
+     *                 4.
+     */
+    public void setFlingFriction(float friction) {
+        if (friction <= 0f) {
+            throw new IllegalArgumentException("friction must be positive");
+        }
+        mFlingFriction = friction;
+    }
+
+    public float getFlingFriction() {
+        return mFlingFriction;
+    }
+
+    /**
+     * Check whether the pointer is flinging.
+     *
+     * @return {@code true} until the fling comes to rest or is stopped.
+     */
+    public boolean isFlinging() {
+        return !mFling.isFinished();
+    }
+
+    /**
+     * Start a fling with the velocity of the released pointer.
+     *
+     * @return {@code true} if the pointer moves on.
+     */
+    private boolean startFling(MotionEvent event, int pointerIndex) {
+        if (pointerIndex < 0) {
+            return false;
+        }
+        // Angular velocity from the tangential part of the pointer velocity.
+        mVelocityTracker.computeCurrentVelocity(1000);
+        float vx = mVelocityTracker.getXVelocity(mActivePointerId);
+        float vy = mVelocityTracker.getYVelocity(mActivePointerId);
+        float x = event.getX(pointerIndex) - mTranslationOffset - mSlopX;
+        float y = event.getY(pointerIndex) - mTranslationOffset - mSlopY;
+        float radiusSquared = x * x + y * y;
+        float velocity = radiusSquared > 0f ? (x * vy - y * vx) / radiusSquared : 0f;
+
+        if (!mFling.start(mAngle, velocity, mFlingFriction, mFlingDetent, System.nanoTime())) {
+            return false;
+        }
+        mAnimationLastListenerTime = SystemClock.uptimeMillis();
+        Choreographer.getInstance().postFrameCallback(mFlingFrame);
+        return true;
+    }
+
+    private void onFlingFrame(long frameTimeNanos) {
+        PickerTrace.begin("ColorPicker#flingFrame");
+        try {
+            float angle = snapAngle(wrapAngle(mFling.angleAt(frameTimeNanos)));
+            int color = calculateColor(angle);
+            if (mFling.isFinished()) {
+                // Runs the full fan-out and calls the listeners once.
+                setWheelColor(color);
+                notifyColorSelected();
+                return;
+            }
+            mTracker.colorToHSV(color, mFlingHSV);
+            if (mSVArea != null) {
+                // Keep the saturation and value of the area, like a drag.
+                mFlingHSV[1] = mSVArea.getSaturation();
+                mFlingHSV[2] = mSVArea.getValue();
+                color = mTracker.HSVToColor(Color.alpha(getColor()), mFlingHSV);
+            }
+            syncColor(color, mFlingHSV);
+            mAngle = angle;
+            notifyAnimatedColor(color, frameTimeNanos / 1000000);
+            Choreographer.getInstance().postFrameCallback(mFlingFrame);
+        } finally {
+            PickerTrace.end();
+        }
+    }
+
+    /**
+     * Stop the fling where it is and report the color.
+     */
+    private void stopFling() {
+        if (!mFling.isFinished()) {
+            cancelFling();
+            setWheelColor(calculateColor(mAngle));
+            notifyColorSelected();
+        }
+    }
+
+    private void cancelFling() {
+        if (!mFling.isFinished()) {
+            mFling.abort();
+            Choreographer.getInstance().removeFrameCallback(mFlingFrame);
+        }
+    }
+
+    /**
+     * Quantize the hue selected on the wheel. The pointer snaps to multiples
+     * of the step, so the color and the listeners only change when another
+     * step is reached. Colors set with {@link #setColor(int)} are not
+     * snapped.
+     *
+     * @param degrees hue step in degrees, 0 for continuous selection, which
+     *                is the default.
+     */
+    public void setHueStep(float degrees) {
+        if (degrees < 0f || degrees > 360f) {
+            throw new IllegalArgumentException("hue step must be between 0 and 360");
+        }
+        mHueStep = (float) Math.toRadians(degrees);
+    }
+
+    public float getHueStep() {
+        return (float) Math.toDegrees(mHueStep);
+    }
+
+    /**
+     * Show a color harmony on the wheel: a marker for each color that goes
+     * with the selected one. The harmony colors have the saturation, value
+     * and opacity of the selected color. The harmony listeners are called
+     * with the new colors, only the selected color for
+     * {@link #HARMONY_NONE}.
+     *
+     * @param harmony {@link #HARMONY_NONE}, which is the default,
+     *                {@link #HARMONY_COMPLEMENTARY},
+     *                {@link #HARMONY_SPLIT_COMPLEMENTARY},
+     *                {@link #HARMONY_ANALOGOUS}, {@link #HARMONY_TRIADIC} or
+     *                {@link #HARMONY_TETRADIC}.
+     */
+    public void setHarmony(int harmony) {
+        if (harmony < 0 || harmony >= HARMONY_OFFSETS.length) {
+            throw new IllegalArgumentException("Unknown harmony " + harmony);
+        }
+        mHarmony = harmony;
+        mHarmonyDirty = true;
+        scheduleHarmonyFrame();
+        invalidate();
+    }
+
+    public int getHarmony() {
+        return mHarmony;
+    }
+
+    /**
+     * Get the harmony colors.
+     *
+     * @param colors receives the selected color followed by its harmony
+     *               colors, at least {@link #MAX_HARMONY_COLORS} long.
+     * @return the number of colors.
+     */
+    public int getHarmonyColors(int[] colors) {
+        updateHarmony();
+        System.arraycopy(mHarmonyColors, 0, colors, 0, mHarmonyCount);
+        return mHarmonyCount;
+    }
+
+    /**
+     * Add a listener for the harmony colors. Can be called from any thread,
+     * the listener is called on the UI thread.
+     *
+     * @param listener the listener, added once even if added again.
+     */
+    public void addOnHarmonyChangedListener(OnHarmonyChangedListener listener) {
+        mHarmonyListeners.add(listener);
+    }
+
+    public void removeOnHarmonyChangedListener(OnHarmonyChangedListener listener) {
+        mHarmonyListeners.remove(listener);
+    }
+
+    /**
+     * Evaluate the contrast of every color shown by the picker, and mark the
+     * colors of the added bars that don't reach the minimum contrast of the
+     * evaluator.
+     *
+     * @param evaluator the evaluator, or {@code null} to stop evaluating.
+     */
+    public void setContrastEvaluator(ContrastEvaluator evaluator) {
+        mContrastEvaluator = evaluator;
+        if (mSVbar != null) {
+            mSVbar.setContrastEvaluator(evaluator);
+        }
+        if (mOpacityBar != null) {
+            mOpacityBar.setContrastEvaluator(evaluator);
+        }
+        if (mSaturationBar != null) {
+            mSaturationBar.setContrastEvaluator(evaluator);
+        }
+        if (mValueBar != null) {
+            mValueBar.setContrastEvaluator(evaluator);
+        }
+        if (evaluator != null) {
+            evaluator.evaluate(mCenterNewColor);
+        }
+    }
+
+    public ContrastEvaluator getContrastEvaluator() {
+        return mContrastEvaluator;
+    }
+
+    /**
+     * Compute the harmony colors and the positions of their markers, if the
+     * color, the harmony or the size changed since the last call. Called
+     * from {@link #onDraw(Canvas)} and the harmony frame, so a drag computes
+     * them once per frame and not per touch event.
+     */
+    private void updateHarmony() {
+        if (!mHarmonyDirty) {
+            return;
+        }
+        mHarmonyDirty = false;
+
+        float[] offsets = HARMONY_OFFSETS[mHarmony];
+        int color = mCenterNewColor;
+        ColorMath.colorToHsv(color, mHarmonyHsv);
+        // The hue of the wheel, which is kept for grays.
+        float hue = getHue();
+        mHarmonyColors[0] = color;
+        mHarmonyPositions[0] = (float) (mColorWheelRadius * Math.cos(mAngle));
+        mHarmonyPositions[1] = (float) (mColorWheelRadius * Math.sin(mAngle));
+        for (int i = 0; i < offsets.length; i++) {
+            mHarmonyColors[i + 1] = ColorMath.hsvToColor(Color.alpha(color),
+                    (hue + offsets[i] + 360f) % 360f, mHarmonyHsv[1], mHarmonyHsv[2]);
+            // Same angle math as calculatePointerPosition(float).
+            float angle = mAngle - (float) Math.toRadians(offsets[i]);
+            mHarmonyPositions[2 * i + 2] = (float) (mColorWheelRadius * Math.cos(angle));
+            mHarmonyPositions[2 * i + 3] = (float) (mColorWheelRadius * Math.sin(angle));
+        }
+        mHarmonyCount = offsets.length + 1;
+    }
+
+    /**
+     * Call the harmony listeners on the next frame, if there are any.
+     */
+    private void scheduleHarmonyFrame() {
+        if (mHarmonyFramePending || mHarmonyListeners.isEmpty()) {
+            return;
+        }
+        mHarmonyFramePending = true;
+        Choreographer.getInstance().postFrameCallback(mHarmonyFrame);
+    }
+
+    /**
+     * Call the harmony listeners if the colors changed since they were
+     * last called.
+     */
+    private void notifyHarmonyChanged() {
+        updateHarmony();
+        boolean changed = mHarmonyCount != mDeliveredHarmonyCount;
+        for (int i = 0; i < mHarmonyCount && !changed; i++) {
+            changed = mHarmonyColors[i] != mDeliveredHarmonyColors[i];
+        }
+        if (!changed) {
+            return;
+        }
+        System.arraycopy(mHarmonyColors, 0, mDeliveredHarmonyColors, 0, mHarmonyCount);
+        mDeliveredHarmonyCount = mHarmonyCount;
+        for (OnHarmonyChangedListener listener : mHarmonyListeners.get()) {
+            listener.onHarmonyChanged(mHarmonyColors, mHarmonyCount);
+        }
+    }
+
+    /**
+     * Snap an angle to the hue step set with {@link #setHueStep(float)}.
+     */
+    private float snapAngle(float angle) {
+        if (mHueStep <= 0f) {
+            return angle;
+        }
+        return Math.round(angle / mHueStep) * mHueStep;
+    }
+
+    /**
+     * Wrap an angle to the range -PI to PI.
+     */
+    private static float wrapAngle(float angle) {
+        return (float) Math.IEEEremainder(angle, 2 * Math.PI);
+    }
+
+    /**
+     * Update the drawing state of the picker and its bars to the color,
+     * without the fan-out of {@link #setColor(int)} and without calling any
+     * listener.
+     */
+    private void syncColor(int color, float[] hsv) {
+        mColor = color;
+        mAngle = (float) Math.toRadians(-hsv[0]);
+        mPointerColor.setColor(color);
+
+        if (mOpacityBar != null) {
+            mOpacityBar.syncColor(color, hsv);
+        }
+        if (mSVbar != null) {
+            mSVbar.syncColor(color, hsv);
+        }
+        if (mSVArea != null) {
+            mSVArea.syncColor(color, hsv);
+        }
+        if (mSaturationBar != null) {
+            mSaturationBar.syncColor(color, hsv);
+        }
+        if (mValueBar != null) {
+            // Like setColor(), the value bar follows the saturation bar.
+            mValueBar.syncColor(mSaturationBar != null ? mSaturationBar.getColor() : color, hsv);
+        }
+
+        setCenterNewColor(color);
+        mCenterNewPaint.setColor(color);
+        if (mColorStream != null) {
+            mColorStream.publish(color);
+        }
+        if (PickerTrace.ENABLED) {
+            traceColorCounters(color);
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // No more frames will be drawn, jump to the end.
+        finishColorAnimation();
+        if (!mFling.isFinished()) {
+            cancelFling();
+            setWheelColor(calculateColor(wrapAngle(mFling.getFinalAngle())));
+            notifyColorSelected();
+        }
+    }
+
     /**
      * Sets custom listener for middle color circle clicks.
      * The default implementation resets the selected color
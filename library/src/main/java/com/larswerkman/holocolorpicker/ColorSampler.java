@@ -0,0 +1,300 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.graphics.Bitmap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Eyedropper that picks the average color of a region of an image.
+ *
+ * <p>
+ * Creating a sampler builds a summed-area table of the image once, so the
+ * average of any region up to {@link #MAX_AREA} pixels costs four table
+ * lookups, whatever its size. The table is built in bands on the raster
+ * threads and the calling thread, which makes creating a sampler for a large
+ * image take a while: create it on a background thread.
+ * </p>
+ *
+ * <p>
+ * The red, green and blue sums of a pixel are packed into one {@code long}
+ * of 21 bits each. The sums of the whole image overflow, but because the
+ * table is linear the differences that make up a region sum are exact as
+ * long as each channel sum of the region fits its 21 bits. The table takes
+ * 8 bytes per pixel, e.g. 400 MB for a 50 megapixel image.
+ * </p>
+ *
+ * <p>
+ * The alpha of the image is ignored, the averages are opaque. A sampler is
+ * immutable and can be used from any thread.
+ * </p>
+ */
+public final class ColorSampler {
+
+    /**
+     * Largest region that can be averaged, in pixels.
+     */
+    public static final int MAX_AREA = ((1 << 21) - 1) / 0xFF;
+
+    /**
+     * Largest side of a square sample.
+     */
+    public static final int MAX_SAMPLE_SIZE = 89;
+
+    private static final int CHANNEL_BITS = 21;
+    private static final long CHANNEL_MASK = (1L << CHANNEL_BITS) - 1;
+
+    /**
+     * Number of rows or columns built by one task.
+     */
+    private static final int BAND_SIZE = 256;
+
+    /**
+     * Reads one row of an image as ARGB pixels. May be called from several
+     * threads at once.
+     */
+    interface RowSource {
+        void getRow(int y, int[] row);
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+
+    /**
+     * The table, {@code (width + 1) * (height + 1)} packed sums with a row
+     * and a column of zeros at the top and left.
+     */
+    private final long[] mTable;
+
+    /**
+     * Create a sampler of a bitmap.
+     */
+    public static ColorSampler fromBitmap(Bitmap bitmap) {
+        return new ColorSampler(bitmap.getWidth(), bitmap.getHeight(), rows(bitmap));
+    }
+
+    /**
+     * Create a sampler of ARGB pixels.
+     *
+     * @param pixels the pixels, row by row.
+     */
+    public static ColorSampler fromPixels(int[] pixels, int width, int height) {
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("Not enough pixels");
+        }
+        return new ColorSampler(width, height, rows(pixels, width));
+    }
+
+    /**
+     * Create a sampler of RGBA bytes, as written by
+     * {@code Bitmap.copyPixelsToBuffer} for {@code ARGB_8888} bitmaps.
+     *
+     * @param buffer the bytes, row by row from the buffer's position. The
+     *               position is not changed.
+     */
+    public static ColorSampler fromBuffer(final ByteBuffer buffer, final int width, int height) {
+        final int start = buffer.position();
+        if (buffer.remaining() < 4L * width * height) {
+            throw new IllegalArgumentException("Not enough pixels");
+        }
+        return new ColorSampler(width, height, new RowSource() {
+            @Override
+            public void getRow(int y, int[] row) {
+                int offset = start + 4 * y * width;
+                for (int x = 0; x < width; x++, offset += 4) {
+                    row[x] = ((buffer.get(offset) & 0xFF) << 16)
+                            | ((buffer.get(offset + 1) & 0xFF) << 8)
+                            | (buffer.get(offset + 2) & 0xFF);
+                }
+            }
+        });
+    }
+
+    static RowSource rows(final Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        return new RowSource() {
+            @Override
+            public void getRow(int y, int[] row) {
+                bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            }
+        };
+    }
+
+    static RowSource rows(final int[] pixels, final int width) {
+        return new RowSource() {
+            @Override
+            public void getRow(int y, int[] row) {
+                System.arraycopy(pixels, y * width, row, 0, width);
+            }
+        };
+    }
+
+    private ColorSampler(final int width, final int height, final RowSource source) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Empty image");
+        }
+        mWidth = width;
+        mHeight = height;
+        final int stride = width + 1;
+        final long[] table = new long[stride * (height + 1)];
+        mTable = table;
+
+        // Sums along the rows.
+        RasterPipeline.runAll((height + BAND_SIZE - 1) / BAND_SIZE, new RasterPipeline.Task() {
+            @Override
+            public void run(int band) {
+                int[] row = new int[width];
+                int end = Math.min(height, (band + 1) * BAND_SIZE);
+                for (int y = band * BAND_SIZE; y < end; y++) {
+                    source.getRow(y, row);
+                    int index = (y + 1) * stride + 1;
+                    long sum = 0;
+                    for (int x = 0; x < width; x++) {
+                        sum += pack(row[x]);
+                        table[index++] = sum;
+                    }
+                }
+            }
+        });
+
+        // Sums down the columns.
+        RasterPipeline.runAll((width + BAND_SIZE - 1) / BAND_SIZE, new RasterPipeline.Task() {
+            @Override
+            public void run(int band) {
+                int start = band * BAND_SIZE + 1;
+                int end = Math.min(width, (band + 1) * BAND_SIZE) + 1;
+                for (int y = 2; y <= height; y++) {
+                    int index = y * stride;
+                    for (int x = start; x < end; x++) {
+                        table[index + x] += table[index - stride + x];
+                    }
+                }
+            }
+        });
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Get the average color of a square centered on a pixel. The part of the
+     * square outside of the image is ignored.
+     *
+     * @param x    column of the center pixel.
+     * @param y    row of the center pixel.
+     * @param size side of the square, from 1 to {@link #MAX_SAMPLE_SIZE}.
+     * @return the opaque average color.
+     */
+    public int sample(int x, int y, int size) {
+        if (size < 1 || size > MAX_SAMPLE_SIZE) {
+            throw new IllegalArgumentException("Invalid sample size " + size);
+        }
+        int left = x - size / 2;
+        int top = y - size / 2;
+        return average(left, top, left + size, top + size);
+    }
+
+    /**
+     * Get the average color of a rectangle. The part of the rectangle outside
+     * of the image is ignored.
+     *
+     * @param left   left column, inclusive.
+     * @param top    top row, inclusive.
+     * @param right  right column, exclusive.
+     * @param bottom bottom row, exclusive.
+     * @return the opaque average color, or 0 if the rectangle is outside of
+     * the image.
+     * @throws IllegalArgumentException if the rectangle has more than
+     *                                  {@link #MAX_AREA} pixels in the image.
+     */
+    public int average(int left, int top, int right, int bottom) {
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        right = Math.min(mWidth, right);
+        bottom = Math.min(mHeight, bottom);
+        if (left >= right || top >= bottom) {
+            return 0;
+        }
+        int area = (right - left) * (bottom - top);
+        if (area > MAX_AREA) {
+            throw new IllegalArgumentException("Region larger than " + MAX_AREA + " pixels");
+        }
+        int stride = mWidth + 1;
+        long sum = mTable[bottom * stride + right] - mTable[top * stride + right]
+                - mTable[bottom * stride + left] + mTable[top * stride + left];
+        int half = area / 2;
+        int r = (int) ((sum & CHANNEL_MASK) + half) / area;
+        int g = (int) (((sum >>> CHANNEL_BITS) & CHANNEL_MASK) + half) / area;
+        int b = (int) (((sum >>> 2 * CHANNEL_BITS) & CHANNEL_MASK) + half) / area;
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Fill the pixels of a loupe: a grid of cells around a pixel, each the
+     * average color of a square of the image. With a cell size of 1 the loupe
+     * magnifies the image, with larger cells it shows a wider area of a large
+     * image at the same cost.
+     *
+     * @param x        column of the center pixel.
+     * @param y        row of the center pixel.
+     * @param cells    number of cells in a row and a column, odd so one cell
+     *                 is centered on the pixel.
+     * @param cellSize side of the square of a cell, from 1 to
+     *                 {@link #MAX_SAMPLE_SIZE}.
+     * @param pixels   receives {@code cells * cells} ARGB pixels, row by row.
+     *                 Cells outside of the image are 0.
+     */
+    public void getLoupe(int x, int y, int cells, int cellSize, int[] pixels) {
+        if (cellSize < 1 || cellSize > MAX_SAMPLE_SIZE) {
+            throw new IllegalArgumentException("Invalid cell size " + cellSize);
+        }
+        int origin = -(cells / 2) * cellSize - cellSize / 2;
+        int index = 0;
+        for (int row = 0; row < cells; row++) {
+            int top = y + origin + row * cellSize;
+            for (int column = 0; column < cells; column++) {
+                int left = x + origin + column * cellSize;
+                pixels[index++] = average(left, top, left + cellSize, top + cellSize);
+            }
+        }
+    }
+
+    /**
+     * Pick the average color of a square as the new color of a picker. The
+     * current color becomes the old center color, so the two can be
+     * compared.
+     *
+     * @see #sample(int, int, int)
+     */
+    public void pick(ColorPicker picker, int x, int y, int size) {
+        int color = sample(x, y, size);
+        picker.setOldCenterColor(picker.getColor());
+        picker.setColor(color);
+        picker.recordHistory();
+    }
+
+    private static long pack(int color) {
+        return ((color >> 16) & 0xFF) | ((long) ((color >> 8) & 0xFF) << CHANNEL_BITS)
+                | ((long) (color & 0xFF) << 2 * CHANNEL_BITS);
+    }
+}
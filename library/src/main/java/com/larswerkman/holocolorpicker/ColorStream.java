@@ -0,0 +1,361 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.os.Handler;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multicast stream of the colors of a {@link ColorPicker}, get it with
+ * {@link ColorPicker#getColorStream()}.
+ *
+ * <p>
+ * The stream receives every color the picker shows, from the wheel, its
+ * bars, animations and flings. Each subscriber gets the colors on its own
+ * {@code Executor} and chooses how to keep up with a {@link Policy}:
+ * </p>
+ * <ul>
+ * <li>{@link Policy#latest()} delivers the latest color, colors that arrive
+ * while the subscriber is busy replace each other.</li>
+ * <li>{@link Policy#sample(long)} delivers the latest color at most once per
+ * period.</li>
+ * <li>{@link Policy#buffer(int)} delivers every color in order, the oldest
+ * are dropped when the buffer is full.</li>
+ * </ul>
+ *
+ * <p>
+ * Publishing a color only puts it into the primitive buffer of each
+ * subscriber and schedules a delivery if none is pending, so a slow
+ * subscriber never blocks touch handling. Each subscriber gets one color at
+ * a time, in order.
+ * </p>
+ */
+public final class ColorStream {
+
+    /**
+     * Receives the colors of the stream.
+     */
+    public interface Subscriber {
+
+        /**
+         * Called on the executor of the subscription.
+         *
+         * @param color ARGB color.
+         */
+        void onColor(int color);
+    }
+
+    /**
+     * How a subscriber keeps up with the stream.
+     */
+    public static final class Policy {
+
+        private static final Policy LATEST = new Policy(1, 0);
+
+        final int capacity;
+        final long periodNanos;
+
+        private Policy(int capacity, long periodNanos) {
+            this.capacity = capacity;
+            this.periodNanos = periodNanos;
+        }
+
+        /**
+         * Deliver only the latest color.
+         */
+        public static Policy latest() {
+            return LATEST;
+        }
+
+        /**
+         * Deliver the latest color at most once per period.
+         *
+         * @param periodMillis minimum time between two colors.
+         */
+        public static Policy sample(long periodMillis) {
+            if (periodMillis <= 0) {
+                throw new IllegalArgumentException("period must be positive");
+            }
+            return new Policy(1, TimeUnit.MILLISECONDS.toNanos(periodMillis));
+        }
+
+        /**
+         * Deliver every color, keeping at most {@code capacity} colors that
+         * were not delivered yet. The oldest are dropped when the buffer is
+         * full.
+         *
+         * @param capacity number of colors to buffer, at least 1.
+         */
+        public static Policy buffer(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("capacity must be at least 1");
+            }
+            return new Policy(capacity, 0);
+        }
+    }
+
+    /**
+     * A subscriber of the stream.
+     */
+    public static final class Subscription implements Runnable {
+        private final ColorStream mStream;
+        private final Subscriber mSubscriber;
+        private final Executor mExecutor;
+        private final long mPeriodNanos;
+
+        /**
+         * Colors not yet delivered, a ring buffer guarded by itself.
+         */
+        private final int[] mBuffer;
+        private int mHead;
+        private int mCount;
+        private boolean mScheduled;
+        private long mDropped;
+
+        private volatile boolean mCancelled;
+        private volatile long mLastDeliveryNanos;
+
+        /**
+         * Hands a delivery timed by the {@link Timer} over to the executor.
+         */
+        private final Runnable mExecute = new Runnable() {
+            @Override
+            public void run() {
+                mExecutor.execute(Subscription.this);
+            }
+        };
+
+        Subscription(ColorStream stream, Subscriber subscriber, Policy policy,
+                     Executor executor) {
+            mStream = stream;
+            mSubscriber = subscriber;
+            mExecutor = executor;
+            mPeriodNanos = policy.periodNanos;
+            mBuffer = new int[policy.capacity];
+            mLastDeliveryNanos = System.nanoTime() - mPeriodNanos;
+        }
+
+        /**
+         * Stop the deliveries. Colors that are not delivered yet are
+         * discarded.
+         */
+        public void cancel() {
+            mCancelled = true;
+            mStream.remove(this);
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Get the number of colors that were not delivered because newer
+         * colors replaced them.
+         */
+        public long getDroppedCount() {
+            synchronized (mBuffer) {
+                return mDropped;
+            }
+        }
+
+        void offer(int color) {
+            synchronized (mBuffer) {
+                if (mCount == mBuffer.length) {
+                    mHead = (mHead + 1) % mBuffer.length;
+                    mCount--;
+                    mDropped++;
+                }
+                mBuffer[(mHead + mCount) % mBuffer.length] = color;
+                mCount++;
+                if (mScheduled) {
+                    return;
+                }
+                mScheduled = true;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            long delay = mPeriodNanos > 0
+                    ? mLastDeliveryNanos + mPeriodNanos - System.nanoTime() : 0;
+            if (delay <= 0) {
+                mExecutor.execute(this);
+            } else {
+                Timer.INSTANCE.schedule(mExecute, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Delivers the buffered colors on the executor.
+         */
+        @Override
+        public void run() {
+            while (true) {
+                int color;
+                synchronized (mBuffer) {
+                    if (mCount == 0 || mCancelled) {
+                        mScheduled = false;
+                        return;
+                    }
+                    color = mBuffer[mHead];
+                    mHead = (mHead + 1) % mBuffer.length;
+                    mCount--;
+                }
+                boolean delivered = false;
+                try {
+                    mSubscriber.onColor(color);
+                    delivered = true;
+                } finally {
+                    if (!delivered) {
+                        // The subscriber threw, keep delivering the later
+                        // colors instead of staying scheduled forever.
+                        deliveryFailed();
+                    }
+                }
+
+                if (mPeriodNanos > 0) {
+                    mLastDeliveryNanos = System.nanoTime();
+                    synchronized (mBuffer) {
+                        if (mCount == 0) {
+                            mScheduled = false;
+                            return;
+                        }
+                    }
+                    // A color arrived meanwhile, deliver it after the period.
+                    schedule();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Clears the pending delivery after the subscriber threw, or
+         * schedules the next one if colors are left.
+         */
+        private void deliveryFailed() {
+            mLastDeliveryNanos = System.nanoTime();
+            synchronized (mBuffer) {
+                if (mCount == 0 || mCancelled) {
+                    mScheduled = false;
+                    return;
+                }
+            }
+            schedule();
+        }
+    }
+
+    /**
+     * Daemon thread timing the deliveries of sampling subscriptions. It only
+     * hands the deliveries over to their executors.
+     */
+    private static final class Timer {
+        static final ScheduledThreadPoolExecutor INSTANCE =
+                new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "ColorPicker-stream");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * The subscriptions, publishing needs no lock.
+     */
+    private final ListenerList<Subscription> mSubscriptions =
+            new ListenerList<>(new Subscription[0]);
+
+    /**
+     * Guards adding a subscription with the current color against
+     * publishing a newer one, so the newer color is always offered last.
+     */
+    private final Object mLock = new Object();
+
+    private volatile int mLastColor;
+
+    ColorStream(int color) {
+        mLastColor = color;
+    }
+
+    /**
+     * Subscribe to the stream. The current color is delivered first.
+     *
+     * @param subscriber receives the colors.
+     * @param policy     how the subscriber keeps up with the stream.
+     * @param executor   executor the colors are delivered on.
+     * @return the subscription, to cancel it.
+     */
+    public Subscription subscribe(Subscriber subscriber, Policy policy, Executor executor) {
+        Subscription subscription = new Subscription(this, subscriber, policy, executor);
+        synchronized (mLock) {
+            // A color published from now on is offered after this one.
+            mSubscriptions.add(subscription);
+            subscription.offer(mLastColor);
+        }
+        return subscription;
+    }
+
+    /**
+     * Subscribe to the stream with deliveries on the thread of a
+     * {@code Handler}.
+     *
+     * @see #subscribe(Subscriber, Policy, Executor)
+     */
+    public Subscription subscribe(Subscriber subscriber, Policy policy, final Handler handler) {
+        return subscribe(subscriber, policy, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                handler.post(runnable);
+            }
+        });
+    }
+
+    /**
+     * Check whether anybody is subscribed.
+     */
+    public boolean hasSubscribers() {
+        return !mSubscriptions.isEmpty();
+    }
+
+    private void remove(Subscription subscription) {
+        mSubscriptions.remove(subscription);
+    }
+
+    /**
+     * Publish a color. Repeated colors are skipped. Called on the UI thread.
+     */
+    void publish(int color) {
+        Subscription[] subscriptions;
+        synchronized (mLock) {
+            if (color == mLastColor) {
+                return;
+            }
+            mLastColor = color;
+            subscriptions = mSubscriptions.get();
+        }
+        // A subscription added after the lock was released got this color
+        // from subscribe() and is not in the array.
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(color);
+        }
+    }
+}
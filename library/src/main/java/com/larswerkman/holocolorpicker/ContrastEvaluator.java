@@ -0,0 +1,376 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+/**
+ * Computes the contrast of a color, e.g. a text color, against reference
+ * background colors, with the WCAG 2.x contrast ratio and the APCA lightness
+ * contrast.
+ *
+ * <p>
+ * Attached to a {@link ColorPicker} with
+ * {@link ColorPicker#setContrastEvaluator(ContrastEvaluator)}, every color
+ * shown by the picker is evaluated and the bars of the picker mark the
+ * colors that don't reach the minimum contrast.
+ * </p>
+ *
+ * <p>
+ * The luminances of the references are computed once when they are set.
+ * Evaluating a color converts it with lookup tables from sRGB to linear
+ * light and allocates nothing, so it can run for every touch event of a
+ * drag. A translucent color is blended over each reference first.
+ * </p>
+ *
+ * <p>
+ * APCA contrast is positive for a dark color on a light reference and
+ * negative for a light color on a dark one. The evaluator must be used on
+ * the UI thread.
+ * </p>
+ */
+public final class ContrastEvaluator {
+
+    /**
+     * Receives the contrast of each evaluated color.
+     */
+    public interface OnContrastChangedListener {
+        void onContrastChanged(ContrastEvaluator evaluator);
+    }
+
+    /*
+     * APCA 0.0.98G-4g constants.
+     */
+    private static final float APCA_RED = 0.2126729f;
+    private static final float APCA_GREEN = 0.7151522f;
+    private static final float APCA_BLUE = 0.0721750f;
+    private static final float APCA_BLACK_THRESHOLD = 0.022f;
+    private static final float APCA_BLACK_CLAMP = 1.414f;
+    private static final float APCA_DELTA_Y_MIN = 0.0005f;
+    private static final float APCA_SCALE = 1.14f;
+    private static final float APCA_OFFSET = 0.027f;
+    private static final float APCA_LOW_CLIP = 0.1f;
+    private static final double APCA_NORMAL_BACKGROUND = 0.56;
+    private static final double APCA_NORMAL_TEXT = 0.57;
+    private static final double APCA_REVERSE_BACKGROUND = 0.65;
+    private static final double APCA_REVERSE_TEXT = 0.62;
+
+    /**
+     * Each 8 bit sRGB component to the power of 2.4, the simple transfer
+     * function of APCA.
+     */
+    private static final float[] APCA_LINEAR = new float[256];
+
+    static {
+        for (int i = 0; i < APCA_LINEAR.length; i++) {
+            APCA_LINEAR[i] = (float) Math.pow(i / 255.0, 2.4);
+        }
+    }
+
+    private int[] mReferences = new int[0];
+    private float[] mReferenceLuminances = new float[0];
+    private float[] mReferenceApcaLuminances = new float[0];
+
+    /**
+     * APCA luminance of each reference to the powers used for both
+     * polarities.
+     */
+    private float[] mReferenceApcaNormal = new float[0];
+    private float[] mReferenceApcaReverse = new float[0];
+
+    private float mMinWcagRatio = 4.5f;
+    private float mMinApcaContrast;
+
+    /**
+     * Results of the last evaluated color, per reference.
+     */
+    private int mColor;
+    private boolean mEvaluated;
+    private float[] mWcagRatios = new float[0];
+    private float[] mApcaContrasts = new float[0];
+    private boolean mPasses;
+
+    /**
+     * Changes with every change of the references or the minimums, so views
+     * can tell whether what they cached is still valid.
+     */
+    private int mVersion;
+
+    private final ListenerList<OnContrastChangedListener> mListeners =
+            new ListenerList<>(new OnContrastChangedListener[0]);
+
+    /**
+     * @param references ARGB background colors, the alpha is ignored.
+     */
+    public ContrastEvaluator(int... references) {
+        setReferences(references);
+    }
+
+    /**
+     * Set the background colors. The last color is evaluated again. Views
+     * showing the contrast are updated with their next change, invalidate
+     * them to update them at once.
+     *
+     * @param references ARGB background colors, the alpha is ignored.
+     */
+    public void setReferences(int... references) {
+        int count = references.length;
+        mReferences = new int[count];
+        mReferenceLuminances = new float[count];
+        mReferenceApcaLuminances = new float[count];
+        mReferenceApcaNormal = new float[count];
+        mReferenceApcaReverse = new float[count];
+        mWcagRatios = new float[count];
+        mApcaContrasts = new float[count];
+        for (int i = 0; i < count; i++) {
+            int reference = references[i] | 0xFF000000;
+            mReferences[i] = reference;
+            mReferenceLuminances[i] = luminance(reference);
+            float y = apcaLuminance(reference);
+            mReferenceApcaLuminances[i] = y;
+            mReferenceApcaNormal[i] = (float) Math.pow(y, APCA_NORMAL_BACKGROUND);
+            mReferenceApcaReverse[i] = (float) Math.pow(y, APCA_REVERSE_BACKGROUND);
+        }
+        changed();
+    }
+
+    public int getReferenceCount() {
+        return mReferences.length;
+    }
+
+    public int getReference(int index) {
+        return mReferences[index];
+    }
+
+    /**
+     * Set the contrast a color needs against every reference to pass.
+     *
+     * @param wcagRatio    minimum WCAG contrast ratio, from 1 to 21. 4.5 by
+     *                     default, for normal text at level AA. 0 to ignore.
+     * @param apcaContrast minimum absolute APCA contrast, e.g. 60 for body
+     *                     text. 0, the default, to ignore.
+     */
+    public void setMinimumContrast(float wcagRatio, float apcaContrast) {
+        mMinWcagRatio = wcagRatio;
+        mMinApcaContrast = apcaContrast;
+        changed();
+    }
+
+    public float getMinWcagRatio() {
+        return mMinWcagRatio;
+    }
+
+    public float getMinApcaContrast() {
+        return mMinApcaContrast;
+    }
+
+    public void addOnContrastChangedListener(OnContrastChangedListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeOnContrastChangedListener(OnContrastChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Evaluate a color against the references and call the listeners. A
+     * color that was evaluated last is not evaluated again.
+     *
+     * @param color ARGB color.
+     */
+    public void evaluate(int color) {
+        if (mEvaluated && color == mColor) {
+            return;
+        }
+        mColor = color;
+        mEvaluated = true;
+        mPasses = true;
+        for (int i = 0; i < mReferences.length; i++) {
+            int blended = blend(color, mReferences[i]);
+            float ratio = wcagRatio(luminance(blended), mReferenceLuminances[i]);
+            float contrast = apcaContrast(apcaLuminance(blended), i);
+            mWcagRatios[i] = ratio;
+            mApcaContrasts[i] = contrast;
+            mPasses &= passes(ratio, contrast);
+        }
+        for (OnContrastChangedListener listener : mListeners.get()) {
+            listener.onContrastChanged(this);
+        }
+    }
+
+    /**
+     * Get the last evaluated color.
+     */
+    public int getColor() {
+        return mColor;
+    }
+
+    /**
+     * Get the WCAG contrast ratio of the last evaluated color.
+     *
+     * @param index index of the reference.
+     * @return the ratio, from 1 to 21.
+     */
+    public float getWcagRatio(int index) {
+        return mWcagRatios[index];
+    }
+
+    /**
+     * Get the APCA lightness contrast of the last evaluated color.
+     *
+     * @param index index of the reference.
+     * @return the contrast, about -108 to 106.
+     */
+    public float getApcaContrast(int index) {
+        return mApcaContrasts[index];
+    }
+
+    /**
+     * Check whether the last evaluated color has the minimum contrast
+     * against every reference.
+     */
+    public boolean passes() {
+        return mPasses;
+    }
+
+    /**
+     * Check whether a color has the minimum contrast against every
+     * reference, without changing the last evaluated color.
+     *
+     * @param color ARGB color.
+     */
+    public boolean passes(int color) {
+        for (int i = 0; i < mReferences.length; i++) {
+            int blended = blend(color, mReferences[i]);
+            if (!passes(wcagRatio(luminance(blended), mReferenceLuminances[i]),
+                    apcaContrast(apcaLuminance(blended), i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Get the WCAG 2.x contrast ratio of two opaque colors.
+     *
+     * @return the ratio, from 1 to 21.
+     */
+    public static float wcagRatio(int color1, int color2) {
+        return wcagRatio(luminance(color1), luminance(color2));
+    }
+
+    /**
+     * Get the APCA lightness contrast of a text color on a background color,
+     * both opaque.
+     *
+     * @return the contrast, positive for dark text on a light background.
+     */
+    public static float apcaContrast(int text, int background) {
+        float y = apcaLuminance(background);
+        return apcaContrast(apcaLuminance(text), y,
+                (float) Math.pow(y, APCA_NORMAL_BACKGROUND),
+                (float) Math.pow(y, APCA_REVERSE_BACKGROUND));
+    }
+
+    /**
+     * Get the WCAG relative luminance of a color.
+     *
+     * @param color ARGB color, the alpha is ignored.
+     * @return the luminance, from 0 to 1.
+     */
+    public static float luminance(int color) {
+        return 0.2126f * ColorMath.decodeSrgb((color >> 16) & 0xFF)
+                + 0.7152f * ColorMath.decodeSrgb((color >> 8) & 0xFF)
+                + 0.0722f * ColorMath.decodeSrgb(color & 0xFF);
+    }
+
+    private boolean passes(float wcagRatio, float apcaContrast) {
+        return wcagRatio >= mMinWcagRatio && Math.abs(apcaContrast) >= mMinApcaContrast;
+    }
+
+    private void changed() {
+        mVersion++;
+        if (mEvaluated) {
+            mEvaluated = false;
+            evaluate(mColor);
+        }
+    }
+
+    private static float wcagRatio(float luminance1, float luminance2) {
+        float lighter = Math.max(luminance1, luminance2);
+        float darker = Math.min(luminance1, luminance2);
+        return (lighter + 0.05f) / (darker + 0.05f);
+    }
+
+    /**
+     * Get the screen luminance of a color as defined by APCA, with the soft
+     * clamp of near blacks.
+     */
+    private static float apcaLuminance(int color) {
+        float y = APCA_RED * APCA_LINEAR[(color >> 16) & 0xFF]
+                + APCA_GREEN * APCA_LINEAR[(color >> 8) & 0xFF]
+                + APCA_BLUE * APCA_LINEAR[color & 0xFF];
+        if (y < APCA_BLACK_THRESHOLD) {
+            y += (float) Math.pow(APCA_BLACK_THRESHOLD - y, APCA_BLACK_CLAMP);
+        }
+        return y;
+    }
+
+    /**
+     * Get the APCA contrast of a text luminance on a reference.
+     */
+    private float apcaContrast(float text, int reference) {
+        return apcaContrast(text, mReferenceApcaLuminances[reference],
+                mReferenceApcaNormal[reference], mReferenceApcaReverse[reference]);
+    }
+
+    /**
+     * Get the APCA contrast of a text luminance on a background luminance,
+     * given the background luminance to the powers of both polarities.
+     */
+    private static float apcaContrast(float text, float background,
+                                      float backgroundNormal, float backgroundReverse) {
+        if (Math.abs(background - text) < APCA_DELTA_Y_MIN) {
+            return 0f;
+        }
+        if (background > text) {
+            // Dark text on a light background.
+            float s = (backgroundNormal - (float) Math.pow(text, APCA_NORMAL_TEXT)) * APCA_SCALE;
+            return s < APCA_LOW_CLIP ? 0f : (s - APCA_OFFSET) * 100f;
+        }
+        float s = (backgroundReverse - (float) Math.pow(text, APCA_REVERSE_TEXT)) * APCA_SCALE;
+        return s > -APCA_LOW_CLIP ? 0f : (s + APCA_OFFSET) * 100f;
+    }
+
+    /**
+     * Blend a color over an opaque background, in sRGB like the
+     * {@code Canvas} does.
+     */
+    private static int blend(int color, int background) {
+        int alpha = color >>> 24;
+        if (alpha == 0xFF) {
+            return color;
+        }
+        int inverse = 0xFF - alpha;
+        int r = (((color >> 16) & 0xFF) * alpha + ((background >> 16) & 0xFF) * inverse + 127) / 0xFF;
+        int g = (((color >> 8) & 0xFF) * alpha + ((background >> 8) & 0xFF) * inverse + 127) / 0xFF;
+        int b = ((color & 0xFF) * alpha + (background & 0xFF) * inverse + 127) / 0xFF;
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+}
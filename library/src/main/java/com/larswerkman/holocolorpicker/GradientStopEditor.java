@@ -0,0 +1,378 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import java.util.Arrays;
+
+/**
+ * Edits the stops of a gradient with a single {@link ColorPicker}.
+ *
+ * <p>
+ * The editor keeps the stops in primitive arrays and edits the selected stop
+ * with the picker and its bars. Selecting another stop only sets the picker
+ * color, bars whose base color doesn't change keep their shader.
+ * </p>
+ *
+ * <p>
+ * A preview of the gradient is kept as a lookup table of
+ * {@link #LUT_SIZE} colors. When a stop changes only the part of the table
+ * between its neighbours is recalculated.
+ * </p>
+ *
+ * <p>
+ * The editor adds an {@code OnColorChangedListener} to the picker, other
+ * listeners of the picker keep being called. Call {@link #detach()} to
+ * remove it.
+ * </p>
+ */
+public class GradientStopEditor {
+
+    /**
+     * Minimum and maximum number of stops.
+     */
+    public static final int MIN_STOPS = 2;
+    public static final int MAX_STOPS = 16;
+
+    /**
+     * Number of colors in the preview lookup table.
+     */
+    public static final int LUT_SIZE = 256;
+
+    private final ColorPicker mPicker;
+
+    /**
+     * Sets the color of the selected stop when the picker changes.
+     */
+    private final ColorPicker.OnColorChangedListener mPickerListener =
+            new ColorPicker.OnColorChangedListener() {
+                @Override
+                public void onColorChanged(int color) {
+                    if (!mSelecting) {
+                        setStopColor(mSelected, color);
+                    }
+                }
+            };
+
+    private final int[] mColors = new int[MAX_STOPS];
+    private final float[] mPositions = new float[MAX_STOPS];
+    private int mCount;
+    private int mSelected;
+
+    /**
+     * {@code true} while the picker is set to the selected stop. The bars
+     * report intermediate colors meanwhile, which must not end up in the
+     * stop.
+     */
+    private boolean mSelecting;
+
+    /**
+     * The preview of the gradient.
+     */
+    private final int[] mLut = new int[LUT_SIZE];
+
+    private OnGradientChangedListener mListener;
+
+    /**
+     * Listener for changes of the gradient.
+     */
+    public interface OnGradientChangedListener {
+
+        /**
+         * Called when stops were changed, added or removed.
+         *
+         * @param editor   the editor.
+         * @param lutStart first changed index of {@link #getLut()}.
+         * @param lutEnd   last changed index of {@link #getLut()}, inclusive.
+         */
+        void onGradientChanged(GradientStopEditor editor, int lutStart, int lutEnd);
+    }
+
+    /**
+     * Create an editor and select the first stop.
+     *
+     * @param picker    the picker used to edit the selected stop.
+     * @param colors    the ARGB colors of the stops.
+     * @param positions the positions of the stops, ascending between 0 and 1.
+     * @throws IllegalArgumentException if there are less than
+     *                                  {@link #MIN_STOPS} or more than
+     *                                  {@link #MAX_STOPS} stops, or the
+     *                                  positions are invalid.
+     */
+    public GradientStopEditor(ColorPicker picker, int[] colors, float[] positions) {
+        if (colors.length != positions.length) {
+            throw new IllegalArgumentException("colors and positions must have the same length");
+        }
+        if (colors.length < MIN_STOPS || colors.length > MAX_STOPS) {
+            throw new IllegalArgumentException("Number of stops must be between "
+                    + MIN_STOPS + " and " + MAX_STOPS);
+        }
+        for (int i = 0; i < positions.length; i++) {
+            if (!(positions[i] >= 0f && positions[i] <= 1f)
+                    || (i > 0 && positions[i] < positions[i - 1])) {
+                throw new IllegalArgumentException("Positions must be ascending between 0 and 1");
+            }
+        }
+
+        mCount = colors.length;
+        System.arraycopy(colors, 0, mColors, 0, mCount);
+        System.arraycopy(positions, 0, mPositions, 0, mCount);
+        fillLut(0, LUT_SIZE - 1);
+
+        mPicker = picker;
+        picker.addOnColorChangedListener(mPickerListener);
+        selectStop(0);
+    }
+
+    /**
+     * Detach the editor from the picker, which then no longer edits the
+     * selected stop.
+     */
+    public void detach() {
+        mPicker.removeOnColorChangedListener(mPickerListener);
+    }
+
+    /**
+     * Edit another stop with the picker.
+     *
+     * @param index index of the stop.
+     */
+    public void selectStop(int index) {
+        checkIndex(index);
+        mSelected = index;
+        int color = mColors[index];
+        mSelecting = true;
+        try {
+            mPicker.setOldCenterColor(color);
+            mPicker.setColor(color);
+        } finally {
+            mSelecting = false;
+        }
+    }
+
+    public int getSelectedStop() {
+        return mSelected;
+    }
+
+    public int getStopCount() {
+        return mCount;
+    }
+
+    public int getStopColor(int index) {
+        checkIndex(index);
+        return mColors[index];
+    }
+
+    public float getStopPosition(int index) {
+        checkIndex(index);
+        return mPositions[index];
+    }
+
+    /**
+     * Set the color of a stop. Setting the color of the selected stop does not
+     * update the picker, use {@link ColorPicker#setColor(int)} for that.
+     *
+     * @param index index of the stop.
+     * @param color ARGB color.
+     */
+    public void setStopColor(int index, int color) {
+        checkIndex(index);
+        if (mColors[index] == color) {
+            return;
+        }
+        mColors[index] = color;
+        updateAround(index);
+    }
+
+    /**
+     * Move a stop. The position is clamped between the neighbouring stops.
+     *
+     * @param index    index of the stop.
+     * @param position the new position.
+     */
+    public void setStopPosition(int index, float position) {
+        checkIndex(index);
+        float min = index > 0 ? mPositions[index - 1] : 0f;
+        float max = index < mCount - 1 ? mPositions[index + 1] : 1f;
+        position = Math.max(min, Math.min(max, position));
+        if (mPositions[index] == position) {
+            return;
+        }
+        mPositions[index] = position;
+        updateAround(index);
+    }
+
+    /**
+     * Add a stop with the color the gradient has at the position.
+     *
+     * @param position position of the new stop, between 0 and 1.
+     * @return the index of the new stop, or -1 if there are already
+     * {@link #MAX_STOPS} stops.
+     */
+    public int addStop(float position) {
+        if (mCount == MAX_STOPS) {
+            return -1;
+        }
+        position = Math.max(0f, Math.min(1f, position));
+        int index = 0;
+        while (index < mCount && mPositions[index] <= position) {
+            index++;
+        }
+        int color = colorAt(position);
+        System.arraycopy(mColors, index, mColors, index + 1, mCount - index);
+        System.arraycopy(mPositions, index, mPositions, index + 1, mCount - index);
+        mColors[index] = color;
+        mPositions[index] = position;
+        mCount++;
+        if (mSelected >= index) {
+            mSelected++;
+        }
+        // The gradient looks the same, but the new color is rounded.
+        updateAround(index);
+        return index;
+    }
+
+    /**
+     * Remove a stop. If the selected stop is removed, the picker switches to
+     * the nearest remaining one.
+     *
+     * @param index index of the stop.
+     * @return {@code false} if only {@link #MIN_STOPS} stops are left.
+     */
+    public boolean removeStop(int index) {
+        checkIndex(index);
+        if (mCount == MIN_STOPS) {
+            return false;
+        }
+        int start = lutIndex(index > 0 ? mPositions[index - 1] : 0f);
+        int end = lutIndex(index < mCount - 1 ? mPositions[index + 1] : 1f);
+        System.arraycopy(mColors, index + 1, mColors, index, mCount - index - 1);
+        System.arraycopy(mPositions, index + 1, mPositions, index, mCount - index - 1);
+        mCount--;
+        fillLut(start, end);
+        notifyChanged(start, end);
+
+        if (mSelected > index) {
+            mSelected--;
+        } else if (mSelected == index) {
+            selectStop(Math.min(index, mCount - 1));
+        }
+        return true;
+    }
+
+    /**
+     * Get the colors of the stops, e.g. for a {@code LinearGradient}.
+     *
+     * @return a new array with {@link #getStopCount()} colors.
+     */
+    public int[] getColors() {
+        return Arrays.copyOf(mColors, mCount);
+    }
+
+    /**
+     * Get the positions of the stops, e.g. for a {@code LinearGradient}.
+     *
+     * @return a new array with {@link #getStopCount()} positions.
+     */
+    public float[] getPositions() {
+        return Arrays.copyOf(mPositions, mCount);
+    }
+
+    /**
+     * Get the preview of the gradient. The array is updated in place and
+     * must not be modified.
+     *
+     * @return {@link #LUT_SIZE} ARGB colors from position 0 to 1.
+     */
+    public int[] getLut() {
+        return mLut;
+    }
+
+    public void setOnGradientChangedListener(OnGradientChangedListener listener) {
+        mListener = listener;
+    }
+
+    public OnGradientChangedListener getOnGradientChangedListener() {
+        return mListener;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("Stop " + index + " of " + mCount);
+        }
+    }
+
+    /**
+     * Recalculate the part of the lookup table influenced by a stop.
+     */
+    private void updateAround(int index) {
+        int start = lutIndex(index > 0 ? mPositions[index - 1] : 0f);
+        int end = lutIndex(index < mCount - 1 ? mPositions[index + 1] : 1f);
+        fillLut(start, end);
+        notifyChanged(start, end);
+    }
+
+    private void notifyChanged(int start, int end) {
+        if (mListener != null) {
+            mListener.onGradientChanged(this, start, end);
+        }
+    }
+
+    private static int lutIndex(float position) {
+        return Math.round(position * (LUT_SIZE - 1));
+    }
+
+    /**
+     * Fill the lookup table from {@code start} to {@code end}, inclusive.
+     */
+    private void fillLut(int start, int end) {
+        int segment = 0;
+        for (int i = start; i <= end; i++) {
+            float position = i / (float) (LUT_SIZE - 1);
+            while (segment < mCount - 1 && mPositions[segment + 1] < position) {
+                segment++;
+            }
+            mLut[i] = colorAt(position, segment);
+        }
+    }
+
+    private int colorAt(float position) {
+        int segment = 0;
+        while (segment < mCount - 1 && mPositions[segment + 1] < position) {
+            segment++;
+        }
+        return colorAt(position, segment);
+    }
+
+    /**
+     * Get the color at a position that lies after the stop {@code segment}.
+     */
+    private int colorAt(float position, int segment) {
+        if (position <= mPositions[0]) {
+            return mColors[0];
+        }
+        if (segment >= mCount - 1) {
+            return mColors[mCount - 1];
+        }
+        float start = mPositions[segment];
+        float length = mPositions[segment + 1] - start;
+        if (length <= 0f) {
+            return mColors[segment + 1];
+        }
+        float p = (position - start) / length;
+        return ColorMath.lerpArgb(mColors[segment], mColors[segment + 1], p);
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records the {@code MotionEvent} stream delivered to a {@link ColorPicker}
+ * and its bars so the session can be replayed with
+ * {@link InteractionReplayer}.
+ *
+ * <p>
+ * The recording is a stream of tagged records written with a
+ * {@code DataOutputStream}:
+ * </p>
+ * <pre>
+ * header: int MAGIC, short VERSION
+ * VIEW:   byte TAG_VIEW, byte viewId, byte kind, int color, int oldColor
+ * SIZE:   byte TAG_SIZE, byte viewId, int width, int height
+ * EVENT:  byte TAG_EVENT, byte viewId, int timeMillis, short action,
+ *         byte pointerCount, pointerCount * (byte id, float x, float y)
+ * END:    byte TAG_END
+ * </pre>
+ *
+ * <p>
+ * Event times are relative to the creation of the recorder. Sizes are written
+ * before the first event and again whenever a view changes its size. Writing
+ * an event does not allocate; data is buffered and flushed on
+ * {@link #close()}.
+ * </p>
+ *
+ * <p>
+ * The recorder must be used on the UI thread. Recording stops at the first
+ * {@code IOException}, which is then available via {@link #getError()}.
+ * </p>
+ */
+public final class InteractionRecorder implements Closeable {
+
+    static final int MAGIC = 0x48435052; // "HCPR"
+    static final short VERSION = 1;
+
+    static final byte TAG_END = 0;
+    static final byte TAG_VIEW = 1;
+    static final byte TAG_SIZE = 2;
+    static final byte TAG_EVENT = 3;
+
+    /*
+     * View kinds written in the VIEW record.
+     */
+    static final byte KIND_OTHER = 0;
+    static final byte KIND_PICKER = 1;
+    static final byte KIND_SV_BAR = 2;
+    static final byte KIND_OPACITY_BAR = 3;
+    static final byte KIND_SATURATION_BAR = 4;
+    static final byte KIND_VALUE_BAR = 5;
+
+    /**
+     * Maximum number of views that can be attached to one recorder.
+     */
+    public static final int MAX_VIEWS = 16;
+
+    private final DataOutputStream mOut;
+    private final long mStartTime;
+
+    private final View[] mViews = new View[MAX_VIEWS];
+    private final int[] mWidths = new int[MAX_VIEWS];
+    private final int[] mHeights = new int[MAX_VIEWS];
+    private int mViewCount;
+
+    private IOException mError;
+    private boolean mClosed;
+
+    /**
+     * Start a recording and write its header.
+     *
+     * @param out stream receiving the recording.
+     * @param startTime time base of the recording, in the
+     *                  {@code SystemClock.uptimeMillis()} time base used by
+     *                  {@code MotionEvent#getEventTime()}.
+     * @throws IOException if the header can't be written.
+     */
+    public InteractionRecorder(OutputStream out, long startTime) throws IOException {
+        mOut = new DataOutputStream(new BufferedOutputStream(out));
+        mStartTime = startTime;
+        mOut.writeInt(MAGIC);
+        mOut.writeShort(VERSION);
+    }
+
+    /**
+     * Start recording the touch events of the color picker. The current
+     * colors are stored as initial state.
+     *
+     * @param picker the {@code ColorPicker} to record.
+     * @return the id of the view in the recording.
+     */
+    public int attach(ColorPicker picker) {
+        int id = addView(picker, KIND_PICKER, picker.getColor(), picker.getOldCenterColor());
+        picker.setInteractionRecorder(this, id);
+        return id;
+    }
+
+    /**
+     * Start recording the touch events of the bar. The current color is
+     * stored as initial state.
+     *
+     * @param bar the {@code ColorBar} to record.
+     * @return the id of the view in the recording.
+     */
+    public int attach(ColorBar bar) {
+        int id = addView(bar, kindOf(bar), bar.getColor(), 0);
+        bar.setInteractionRecorder(this, id);
+        return id;
+    }
+
+    private int addView(View view, byte kind, int color, int oldColor) {
+        if (mClosed) {
+            throw new IllegalStateException("Recorder is closed");
+        }
+        if (mViewCount == MAX_VIEWS) {
+            throw new IllegalStateException("Too many views, maximum is " + MAX_VIEWS);
+        }
+        int id = mViewCount++;
+        mViews[id] = view;
+        mWidths[id] = -1;
+        mHeights[id] = -1;
+        if (mError == null) {
+            try {
+                mOut.writeByte(TAG_VIEW);
+                mOut.writeByte(id);
+                mOut.writeByte(kind);
+                mOut.writeInt(color);
+                mOut.writeInt(oldColor);
+            } catch (IOException e) {
+                mError = e;
+            }
+        }
+        return id;
+    }
+
+    static byte kindOf(View view) {
+        if (view instanceof ColorPicker) {
+            return KIND_PICKER;
+        } else if (view instanceof SVBar) {
+            return KIND_SV_BAR;
+        } else if (view instanceof OpacityBar) {
+            return KIND_OPACITY_BAR;
+        } else if (view instanceof SaturationBar) {
+            return KIND_SATURATION_BAR;
+        } else if (view instanceof ValueBar) {
+            return KIND_VALUE_BAR;
+        }
+        return KIND_OTHER;
+    }
+
+    /**
+     * Write an event delivered to an attached view. Called from the
+     * {@code dispatchTouchEvent} of the view.
+     */
+    void record(int viewId, MotionEvent event) {
+        if (mError != null || mClosed) {
+            return;
+        }
+        View view = mViews[viewId];
+        try {
+            if (view.getWidth() != mWidths[viewId] || view.getHeight() != mHeights[viewId]) {
+                mWidths[viewId] = view.getWidth();
+                mHeights[viewId] = view.getHeight();
+                mOut.writeByte(TAG_SIZE);
+                mOut.writeByte(viewId);
+                mOut.writeInt(mWidths[viewId]);
+                mOut.writeInt(mHeights[viewId]);
+            }
+
+            int pointerCount = event.getPointerCount();
+            mOut.writeByte(TAG_EVENT);
+            mOut.writeByte(viewId);
+            mOut.writeInt((int) (event.getEventTime() - mStartTime));
+            mOut.writeShort(event.getAction());
+            mOut.writeByte(pointerCount);
+            for (int i = 0; i < pointerCount; i++) {
+                mOut.writeByte(event.getPointerId(i));
+                mOut.writeFloat(event.getX(i));
+                mOut.writeFloat(event.getY(i));
+            }
+        } catch (IOException e) {
+            mError = e;
+        }
+    }
+
+    /**
+     * Get the error that stopped the recording.
+     *
+     * @return the {@code IOException} or {@code null} if the recording
+     * succeeded so far.
+     */
+    public IOException getError() {
+        return mError;
+    }
+
+    /**
+     * Detach all views, finish the recording and close the stream.
+     *
+     * @throws IOException if the recording failed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        for (int i = 0; i < mViewCount; i++) {
+            if (mViews[i] instanceof ColorPicker) {
+                ((ColorPicker) mViews[i]).setInteractionRecorder(null, 0);
+            } else {
+                ((ColorBar) mViews[i]).setInteractionRecorder(null, 0);
+            }
+            mViews[i] = null;
+        }
+        try {
+            if (mError == null) {
+                mOut.writeByte(TAG_END);
+            }
+        } finally {
+            mOut.close();
+        }
+        if (mError != null) {
+            throw mError;
+        }
+    }
+}
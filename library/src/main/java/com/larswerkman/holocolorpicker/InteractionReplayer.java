@@ -0,0 +1,208 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.view.InputDevice;
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Replays a recording made by {@link InteractionRecorder}.
+ *
+ * <p>
+ * The views passed to {@link #replay(View...)} don't need to be attached to a
+ * window. They are sized like the recorded views, get the recorded initial
+ * colors and receive the recorded events as fast as possible, so a replay
+ * always produces the same final colors.
+ * </p>
+ */
+public final class InteractionReplayer {
+
+    /**
+     * Maximum number of pointers of a replayed event.
+     */
+    private static final int MAX_POINTERS = 16;
+
+    private final DataInputStream mIn;
+
+    private final MotionEvent.PointerProperties[] mProperties =
+            new MotionEvent.PointerProperties[MAX_POINTERS];
+    private final MotionEvent.PointerCoords[] mCoords =
+            new MotionEvent.PointerCoords[MAX_POINTERS];
+
+    /**
+     * Result of a replay.
+     */
+    public static final class Result {
+        /**
+         * Number of replayed events.
+         */
+        public int eventCount;
+
+        /**
+         * Time spent in {@code dispatchTouchEvent} for all events.
+         */
+        public long totalDispatchNanos;
+
+        /**
+         * Longest time spent in a single {@code dispatchTouchEvent}.
+         */
+        public long maxDispatchNanos;
+
+        /**
+         * Color of each view after the replay, indexed by view id.
+         */
+        public int[] finalColors;
+    }
+
+    public InteractionReplayer(InputStream in) {
+        mIn = new DataInputStream(new BufferedInputStream(in));
+        for (int i = 0; i < MAX_POINTERS; i++) {
+            mProperties[i] = new MotionEvent.PointerProperties();
+            mCoords[i] = new MotionEvent.PointerCoords();
+        }
+    }
+
+    /**
+     * Replay the recording.
+     *
+     * @param views the views to drive, in the order they were attached to
+     *              the recorder. Each view has to be of the same class as the
+     *              recorded one.
+     * @return timing and final colors of the replay.
+     * @throws IOException if the recording can't be read or doesn't match
+     *                     the views.
+     */
+    public Result replay(View... views) throws IOException {
+        if (mIn.readInt() != InteractionRecorder.MAGIC) {
+            throw new IOException("Not a color picker recording");
+        }
+        short version = mIn.readShort();
+        if (version != InteractionRecorder.VERSION) {
+            throw new IOException("Unsupported recording version " + version);
+        }
+
+        Result result = new Result();
+        long[] downTimes = new long[views.length];
+
+        try {
+            while (true) {
+                byte tag = mIn.readByte();
+                if (tag == InteractionRecorder.TAG_END) {
+                    break;
+                }
+                int viewId = mIn.readUnsignedByte();
+                if (viewId >= views.length) {
+                    throw new IOException("No view for id " + viewId);
+                }
+                View view = views[viewId];
+
+                switch (tag) {
+                    case InteractionRecorder.TAG_VIEW:
+                        byte kind = mIn.readByte();
+                        int color = mIn.readInt();
+                        int oldColor = mIn.readInt();
+                        if (InteractionRecorder.kindOf(view) != kind) {
+                            throw new IOException("View " + viewId + " doesn't match the recording");
+                        }
+                        applyInitialState(view, color, oldColor);
+                        break;
+                    case InteractionRecorder.TAG_SIZE:
+                        int width = mIn.readInt();
+                        int height = mIn.readInt();
+                        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+                        view.layout(0, 0, width, height);
+                        break;
+                    case InteractionRecorder.TAG_EVENT:
+                        long eventTime = mIn.readInt();
+                        int action = mIn.readShort();
+                        int pointerCount = mIn.readUnsignedByte();
+                        if (pointerCount == 0 || pointerCount > MAX_POINTERS) {
+                            throw new IOException("Invalid pointer count " + pointerCount);
+                        }
+                        for (int i = 0; i < pointerCount; i++) {
+                            mProperties[i].clear();
+                            mProperties[i].id = mIn.readUnsignedByte();
+                            mProperties[i].toolType = MotionEvent.TOOL_TYPE_FINGER;
+                            mCoords[i].clear();
+                            mCoords[i].x = mIn.readFloat();
+                            mCoords[i].y = mIn.readFloat();
+                            mCoords[i].pressure = 1f;
+                            mCoords[i].size = 1f;
+                        }
+                        if ((action & MotionEvent.ACTION_MASK) == MotionEvent.ACTION_DOWN) {
+                            downTimes[viewId] = eventTime;
+                        }
+                        dispatch(view, downTimes[viewId], eventTime, action, pointerCount, result);
+                        break;
+                    default:
+                        throw new IOException("Unknown record " + tag);
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated recording", e);
+        }
+
+        result.finalColors = new int[views.length];
+        for (int i = 0; i < views.length; i++) {
+            if (views[i] instanceof ColorPicker) {
+                result.finalColors[i] = ((ColorPicker) views[i]).getColor();
+            } else if (views[i] instanceof ColorBar) {
+                result.finalColors[i] = ((ColorBar) views[i]).getColor();
+            }
+        }
+        return result;
+    }
+
+    private void applyInitialState(View view, int color, int oldColor) {
+        if (view instanceof ColorPicker) {
+            ColorPicker picker = (ColorPicker) view;
+            picker.setColor(color);
+            picker.setOldCenterColor(oldColor);
+        } else if (view instanceof ColorBar) {
+            ColorBar bar = (ColorBar) view;
+            // Connected bars get their color from the picker.
+            if (bar.mPicker == null) {
+                bar.setColor(color);
+            }
+        }
+    }
+
+    private void dispatch(View view, long downTime, long eventTime, int action,
+                          int pointerCount, Result result) {
+        MotionEvent event = MotionEvent.obtain(downTime, eventTime, action, pointerCount,
+                mProperties, mCoords, 0, 0, 1f, 1f, 0, 0,
+                InputDevice.SOURCE_TOUCHSCREEN, 0);
+        try {
+            long start = System.nanoTime();
+            view.dispatchTouchEvent(event);
+            long duration = System.nanoTime() - start;
+            result.eventCount++;
+            result.totalDispatchNanos += duration;
+            result.maxDispatchNanos = Math.max(result.maxDispatchNanos, duration);
+        } finally {
+            event.recycle();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copy-on-write list of listeners.
+ *
+ * <p>
+ * The listeners are kept in an array that is never modified. Adding or
+ * removing a listener swaps in a new array with a compare-and-set, so it is
+ * safe from any thread and never blocks. Dispatching iterates over the
+ * current array and allocates nothing; a listener added or removed meanwhile
+ * takes effect with the next dispatch.
+ * </p>
+ *
+ * @param <T> the listener type.
+ */
+final class ListenerList<T> {
+
+    private final AtomicReference<T[]> mListeners;
+
+    /**
+     * @param empty an empty array of the listener type, e.g.
+     *              {@code new OnColorChangedListener[0]}.
+     */
+    ListenerList(T[] empty) {
+        mListeners = new AtomicReference<>(empty);
+    }
+
+    /**
+     * Add a listener.
+     *
+     * @return {@code false} if the listener was already added.
+     */
+    boolean add(T listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener == null");
+        }
+        while (true) {
+            T[] current = mListeners.get();
+            if (indexOf(current, listener) >= 0) {
+                return false;
+            }
+            T[] added = Arrays.copyOf(current, current.length + 1);
+            added[current.length] = listener;
+            if (mListeners.compareAndSet(current, added)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Remove a listener.
+     *
+     * @return {@code false} if the listener wasn't added.
+     */
+    boolean remove(T listener) {
+        while (true) {
+            T[] current = mListeners.get();
+            int index = indexOf(current, listener);
+            if (index < 0) {
+                return false;
+            }
+            T[] removed = Arrays.copyOf(current, current.length - 1);
+            System.arraycopy(current, index + 1, removed, index, removed.length - index);
+            if (mListeners.compareAndSet(current, removed)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Get the current listeners, to iterate over them.
+     *
+     * @return the array of listeners, which must not be modified.
+     */
+    T[] get() {
+        return mListeners.get();
+    }
+
+    boolean isEmpty() {
+        return mListeners.get().length == 0;
+    }
+
+    private static int indexOf(Object[] listeners, Object listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.view.View;
+
+/**
+ * Collects the data reported to a {@link PickerMetrics} instance.
+ *
+ * <p>
+ * Every view of the picker owns one tracker. Color conversions go through the
+ * tracker so they can be counted. While no {@code PickerMetrics} is set and
+ * {@link PickerTrace#ENABLED} is off, the begin/end methods return after a
+ * single null check.
+ * </p>
+ */
+final class MetricsTracker {
+
+    private final View mView;
+    private final String mTouchSection;
+    private final String mDrawSection;
+
+    private PickerMetrics mMetrics;
+
+    /**
+     * {@code true} while a touch event or a draw pass is being measured.
+     * Keeps the {@code Trace} sections balanced when the metrics instance is
+     * changed in the middle of an event.
+     */
+    private boolean mInTouch;
+    private boolean mInDraw;
+
+    private long mTouchStartNanos;
+    private long mDrawStartNanos;
+
+    /**
+     * The view whose touch event drives this one, e.g. a bar connected to
+     * the picker, and when its event started. {@code null} and 0 outside
+     * of such an event.
+     */
+    private View mForwardedTouchView;
+    private long mForwardedTouchStartNanos;
+
+    /*
+     * Counters for the touch event being handled. Allocations are the
+     * shaders and bitmaps created by the view.
+     */
+    private int mHsvConversions;
+    private int mListenerInvocations;
+    private int mAllocations;
+
+    MetricsTracker(View view, String name) {
+        mView = view;
+        mTouchSection = name + "#onTouchEvent";
+        mDrawSection = name + "#onDraw";
+    }
+
+    void setMetrics(PickerMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    PickerMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    void beginTouch() {
+        if (mMetrics == null && !PickerTrace.ENABLED) {
+            return;
+        }
+        PickerTrace.beginAlways(mTouchSection);
+        mInTouch = true;
+        mHsvConversions = 0;
+        mListenerInvocations = 0;
+        mAllocations = 0;
+        mTouchStartNanos = System.nanoTime();
+    }
+
+    void endTouch() {
+        if (!mInTouch) {
+            return;
+        }
+        mInTouch = false;
+        mTouchStartNanos = 0;
+        PickerTrace.endAlways();
+        if (mMetrics != null) {
+            mMetrics.onTouchEventStats(mView, mHsvConversions, mListenerInvocations,
+                    mAllocations);
+        }
+    }
+
+    /**
+     * Start measuring the listener latency of a touch event handled by
+     * another view.
+     *
+     * @param view the view handling the touch event.
+     */
+    void beginForwardedTouch(View view) {
+        if (mMetrics == null) {
+            return;
+        }
+        mForwardedTouchView = view;
+        mForwardedTouchStartNanos = System.nanoTime();
+    }
+
+    void endForwardedTouch() {
+        mForwardedTouchView = null;
+        mForwardedTouchStartNanos = 0;
+    }
+
+    void beginDraw() {
+        if (mMetrics == null && !PickerTrace.ENABLED) {
+            return;
+        }
+        PickerTrace.beginAlways(mDrawSection);
+        mInDraw = true;
+        mDrawStartNanos = System.nanoTime();
+    }
+
+    void endDraw() {
+        if (!mInDraw) {
+            return;
+        }
+        mInDraw = false;
+        long duration = System.nanoTime() - mDrawStartNanos;
+        PickerTrace.endAlways();
+        if (mMetrics != null) {
+            mMetrics.onDraw(mView, duration);
+        }
+    }
+
+    /**
+     * Records a listener invocation, called once per listener. During a
+     * touch event of this view or a forwarded one, also reports the latency
+     * between the start of the event and the invocation.
+     */
+    void listenerInvoked() {
+        mListenerInvocations++;
+        if (mMetrics == null) {
+            return;
+        }
+        if (mTouchStartNanos != 0) {
+            mMetrics.onTouchToListener(mView, System.nanoTime() - mTouchStartNanos);
+        } else if (mForwardedTouchStartNanos != 0) {
+            mMetrics.onTouchToListener(mForwardedTouchView,
+                    System.nanoTime() - mForwardedTouchStartNanos);
+        }
+    }
+
+    void shaderRebuilt() {
+        mAllocations++;
+        if (mMetrics != null) {
+            mMetrics.onShaderRebuilt(mView);
+        }
+    }
+
+    void rasterGenerated(int width, int height, long durationNanos) {
+        mAllocations++;
+        if (mMetrics != null) {
+            mMetrics.onRasterGenerated(mView, width, height, durationNanos);
+        }
+    }
+
+    /**
+     * Records a bitmap that is drawn into rather than generated pixel by
+     * pixel.
+     */
+    void bitmapCreated() {
+        mAllocations++;
+    }
+
+    void colorToHSV(int color, float[] hsv) {
+        mHsvConversions++;
+        ColorMath.colorToHsv(color, hsv);
+    }
+
+    int HSVToColor(float[] hsv) {
+        return HSVToColor(0xFF, hsv[0], hsv[1], hsv[2]);
+    }
+
+    int HSVToColor(int alpha, float[] hsv) {
+        return HSVToColor(alpha, hsv[0], hsv[1], hsv[2]);
+    }
+
+    int HSVToColor(float hue, float saturation, float value) {
+        return HSVToColor(0xFF, hue, saturation, value);
+    }
+
+    int HSVToColor(int alpha, float hue, float saturation, float value) {
+        mHsvConversions++;
+        return ColorMath.hsvToColor(alpha, hue, saturation, value);
+    }
+}
@@ -25,23 +25,24 @@ import android.graphics.LinearGradient;
 import android.graphics.Path;
 import android.graphics.Point;
 import android.graphics.Shader;
-import android.os.Bundle;
-import android.os.Parcelable;
+import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
 
 public class OpacityBar extends ColorBar {
-    /*
-     * Constants used to save/restore the instance state.
-     */
-    private static final String STATE_OPACITY = "opacity";
-
     /**
      * Interface and listener so that changes in OpacityBar are sent
      * to the host activity/fragment
      */
     private OnOpacityChangedListener onOpacityChangedListener;
 
+    /**
+     * Listeners added with {@code addOnOpacityChangedListener}, called after the one set with
+     * the setter.
+     */
+    private final ListenerList<OnOpacityChangedListener> mOpacityChangedListeners =
+            new ListenerList<>(new OnOpacityChangedListener[0]);
+
     /**
      * Opacity of the latest entry of the onOpacityChangedListener.
      */
@@ -74,6 +75,20 @@ public class OpacityBar extends ColorBar {
         return this.onOpacityChangedListener;
     }
 
+    /**
+     * Add a listener in addition to the one set with the setter. Can be
+     * called from any thread, the listener is called on the UI thread.
+     *
+     * @param listener the listener, added once even if added again.
+     */
+    public void addOnOpacityChangedListener(OnOpacityChangedListener listener) {
+        mOpacityChangedListeners.add(listener);
+    }
+
+    public void removeOnOpacityChangedListener(OnOpacityChangedListener listener) {
+        mOpacityChangedListeners.remove(listener);
+    }
+
 
     public OpacityBar(Context context) {
         super(context);
@@ -104,6 +119,8 @@ public class OpacityBar extends ColorBar {
         mValueToPosFactor = ((float) mBarLength) / 0xFF;
 
         mAlphaPatternDrawable = new AlphaPatternDrawable(mBarAlphaSquareSize);
+        // Redraw when the pattern bitmap has been generated.
+        mAlphaPatternDrawable.setCallback(this);
 
         mClipPath = new Path();
         mClipPath.addRoundRect(mBarRect, mBarCornerRadius, mBarCornerRadius, Path.Direction.CW);
@@ -113,51 +130,63 @@ public class OpacityBar extends ColorBar {
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
 
-        int x1, y1;
-        if (mOrientation == ORIENTATION_HORIZONTAL) {
-            x1 = (mBarLength + mBarPointerHaloRadius);
-            y1 = mBarThickness;
-        } else {
-            x1 = mBarThickness;
-            y1 = (mBarLength + mBarPointerHaloRadius);
-        }
-
-        // Update variables that depend of mBarLength.
-        if (!isInEditMode()) {
-            shader = new LinearGradient(mBarPointerHaloRadius, 0,
-                    x1, y1, new int[]{
-                    Color.HSVToColor(0x00, mHSVColor),
-                    Color.HSVToColor(0xFF, mHSVColor)}, null,
-                    Shader.TileMode.CLAMP);
-        } else {
-            shader = new LinearGradient(mBarPointerHaloRadius, 0,
-                    x1, y1, new int[]{
-                    0x0081ff00, 0xff81ff00}, null, Shader.TileMode.CLAMP);
-            Color.colorToHSV(0xff81ff00, mHSVColor);
-        }
-
-        mBarPaint.setShader(shader);
-        mPosToValueFactor = 0xFF / ((float) mBarLength);
-        mValueToPosFactor = ((float) mBarLength) / 0xFF;
-
-        float[] hsvColor = new float[3];
-        Color.colorToHSV(mColor, hsvColor);
-
-        if (!isInEditMode()) {
-            mBarPointerPosition = Math.round((mValueToPosFactor * Color.alpha(mColor))
-                    + mBarPointerHaloRadius);
-        } else {
-            mBarPointerPosition = mBarLength + mBarPointerHaloRadius;
+        PickerTrace.begin("OpacityBar#onSizeChanged");
+        try {
+            int x1, y1;
+            if (mOrientation == ORIENTATION_HORIZONTAL) {
+                x1 = (mBarLength + mBarPointerHaloRadius);
+                y1 = mBarThickness;
+            } else {
+                x1 = mBarThickness;
+                y1 = (mBarLength + mBarPointerHaloRadius);
+            }
+
+            // Update variables that depend of mBarLength.
+            if (!isInEditMode()) {
+                shader = new LinearGradient(mBarPointerHaloRadius, 0,
+                        x1, y1, new int[]{
+                        mTracker.HSVToColor(0x00, mHSVColor),
+                        mTracker.HSVToColor(0xFF, mHSVColor)}, null,
+                        Shader.TileMode.CLAMP);
+            } else {
+                shader = new LinearGradient(mBarPointerHaloRadius, 0,
+                        x1, y1, new int[]{
+                        0x0081ff00, 0xff81ff00}, null, Shader.TileMode.CLAMP);
+                mTracker.colorToHSV(0xff81ff00, mHSVColor);
+            }
+
+            mBarPaint.setShader(shader);
+            mTracker.shaderRebuilt();
+            mPosToValueFactor = 0xFF / ((float) mBarLength);
+            mValueToPosFactor = ((float) mBarLength) / 0xFF;
+
+            if (applyRestoredPointerPosition()) {
+                // Staged by onRestoreInstanceState(), the color follows the pointer.
+                calculateColor(mBarPointerPosition);
+                mBarPointerPaint.setColor(mColor);
+            } else if (!isInEditMode()) {
+                mBarPointerPosition = Math.round((mValueToPosFactor * Color.alpha(mColor))
+                        + mBarPointerHaloRadius);
+            } else {
+                mBarPointerPosition = mBarLength + mBarPointerHaloRadius;
+            }
+
+            mAlphaPatternDrawable.setBounds(
+                    Math.round(mBarRect.left),
+                    Math.round(mBarRect.top),
+                    Math.round(mBarRect.right),
+                    Math.round(mBarRect.bottom));
+
+            mClipPath.reset();
+            mClipPath.addRoundRect(mBarRect, mBarCornerRadius, mBarCornerRadius, Path.Direction.CCW);
+        } finally {
+            PickerTrace.end();
         }
+    }
 
-        mAlphaPatternDrawable.setBounds(
-                Math.round(mBarRect.left),
-                Math.round(mBarRect.top),
-                Math.round(mBarRect.right),
-                Math.round(mBarRect.bottom));
-
-        mClipPath.reset();
-        mClipPath.addRoundRect(mBarRect, mBarCornerRadius, mBarCornerRadius, Path.Direction.CCW);
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        return who == mAlphaPatternDrawable || super.verifyDrawable(who);
     }
 
     @Override
@@ -175,80 +204,96 @@ public class OpacityBar extends ColorBar {
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        getParent().requestDisallowInterceptTouchEvent(true);
-
-        // Convert coordinates to our internal coordinate system
+        // Coordinate of the followed pointer along the bar
         float dimen;
-        if (mOrientation == ORIENTATION_HORIZONTAL) {
-            dimen = event.getX();
-        } else {
-            dimen = event.getY();
-        }
 
-        switch (event.getAction()) {
+        switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
-                mIsMovingPointer = true;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if (!startTrackingPointer(event)) {
+                    break;
+                }
+                dimen = getPointerDimen(event, event.getActionIndex());
                 // Check whether the user pressed on (or near) the pointer
                 if (dimen >= (mBarPointerHaloRadius)
-                        && dimen <= (mBarPointerHaloRadius + mBarLength)) {
-                    mBarPointerPosition = Math.round(dimen);
-                    calculateColor(Math.round(dimen));
+                        && dimen <= (mBarPointerHaloRadius + mBarLength)
+                        && hasPointerMoved(dimen)) {
+                    mBarPointerPosition = snapPosition(Math.round(dimen));
+                    calculateColor(mBarPointerPosition);
                     mBarPointerPaint.setColor(mColor);
                     invalidate();
                 }
                 break;
             case MotionEvent.ACTION_MOVE:
-                if (mIsMovingPointer) {
-                    // Move the the pointer on the bar.
-                    if (dimen >= mBarPointerHaloRadius
-                            && dimen <= (mBarPointerHaloRadius + mBarLength)) {
-                        mBarPointerPosition = Math.round(dimen);
-                        calculateColor(Math.round(dimen));
-                        mBarPointerPaint.setColor(mColor);
-                        if (mPicker != null) {
-                            mPicker.setNewCenterColor(mColor);
-                        }
-                        invalidate();
-                    } else if (dimen < mBarPointerHaloRadius) {
-                        mBarPointerPosition = mBarPointerHaloRadius;
-                        mColor = Color.TRANSPARENT;
-                        mBarPointerPaint.setColor(mColor);
-                        if (mPicker != null) {
-                            mPicker.setNewCenterColor(mColor);
-                        }
-                        invalidate();
-                    } else if (dimen > (mBarPointerHaloRadius + mBarLength)) {
-                        mBarPointerPosition = mBarPointerHaloRadius + mBarLength;
-                        mColor = Color.HSVToColor(mHSVColor);
-                        mBarPointerPaint.setColor(mColor);
-                        if (mPicker != null) {
-                            mPicker.setNewCenterColor(mColor);
-                        }
-                        invalidate();
-                    }
-                }
-                if (onOpacityChangedListener != null && oldChangedListenerOpacity != getOpacity()) {
-                    onOpacityChangedListener.onOpacityChanged(getOpacity());
-                    oldChangedListenerOpacity = getOpacity();
+                int pointerIndex = findActivePointerIndex(event);
+                if (pointerIndex < 0) {
+                    break;
                 }
+                movePointer(getPointerDimen(event, pointerIndex));
                 break;
             case MotionEvent.ACTION_UP:
-                mIsMovingPointer = false;
+            case MotionEvent.ACTION_POINTER_UP:
+            case MotionEvent.ACTION_CANCEL:
+                stopTrackingPointer(event);
                 break;
         }
         return true;
     }
 
+    @Override
+    protected int getAccessibilityLabel() {
+        return R.string.color_bar_opacity;
+    }
+
+    @Override
+    protected void movePointer(float dimen) {
+        if (hasPointerMoved(dimen)) {
+            // Move the the pointer on the bar.
+            if (dimen >= mBarPointerHaloRadius
+                    && dimen <= (mBarPointerHaloRadius + mBarLength)) {
+                mBarPointerPosition = snapPosition(Math.round(dimen));
+                calculateColor(mBarPointerPosition);
+                mBarPointerPaint.setColor(mColor);
+                if (mPicker != null) {
+                    mPicker.setNewCenterColor(mColor);
+                }
+                invalidate();
+            } else if (dimen < mBarPointerHaloRadius) {
+                mBarPointerPosition = mBarPointerHaloRadius;
+                mColor = Color.TRANSPARENT;
+                mBarPointerPaint.setColor(mColor);
+                if (mPicker != null) {
+                    mPicker.setNewCenterColor(mColor);
+                }
+                invalidate();
+            } else if (dimen > (mBarPointerHaloRadius + mBarLength)) {
+                mBarPointerPosition = mBarPointerHaloRadius + mBarLength;
+                mColor = mTracker.HSVToColor(mHSVColor);
+                mBarPointerPaint.setColor(mColor);
+                if (mPicker != null) {
+                    mPicker.setNewCenterColor(mColor);
+                }
+                invalidate();
+            }
+        }
+        int opacity = getOpacity();
+        if (oldChangedListenerOpacity != opacity
+                && (onOpacityChangedListener != null || !mOpacityChangedListeners.isEmpty())) {
+            if (onOpacityChangedListener != null) {
+                mTracker.listenerInvoked();
+                onOpacityChangedListener.onOpacityChanged(opacity);
+            }
+            for (OnOpacityChangedListener listener : mOpacityChangedListeners.get()) {
+                mTracker.listenerInvoked();
+                listener.onOpacityChanged(opacity);
+            }
+            oldChangedListenerOpacity = opacity;
+        }
+    }
+
     @Override
     public void setColor(int color) {
-        Point topLeft = getTopLeft();
-
-        Color.colorToHSV(color, mHSVColor);
-        shader = new LinearGradient(mBarPointerHaloRadius, 0,
-                topLeft.x, topLeft.y, new int[]{
-                Color.HSVToColor(0x00, mHSVColor), color}, null,
-                Shader.TileMode.CLAMP);
-        mBarPaint.setShader(shader);
+        applyBaseColor(color);
         calculateColor(mBarPointerPosition);
         mBarPointerPaint.setColor(mColor);
         if (mPicker != null) {
@@ -263,8 +308,7 @@ public class OpacityBar extends ColorBar {
      * @param opacity float between 0 and 255
      */
     public void setOpacity(int opacity) {
-        mBarPointerPosition = Math.round((mValueToPosFactor * opacity))
-                + mBarPointerHaloRadius;
+        mBarPointerPosition = opacityToPosition(opacity);
         calculateColor(mBarPointerPosition);
         mBarPointerPaint.setColor(mColor);
         if (mPicker != null) {
@@ -285,10 +329,48 @@ public class OpacityBar extends ColorBar {
     }
 
     /**
-     * Calculate the color selected by the pointer on the bar.
+     * Set the hue, saturation and value the opacity is applied to, and
+     * rebuild the transparent-to-opaque gradient if the color changed.
      *
-     * @param coord Coordinate of the pointer.
+     * @param color the color whose opacity the bar changes.
      */
+    private void applyBaseColor(int color) {
+        mTracker.colorToHSV(color, mHSVColor);
+        if (needsShader(color)) {
+            Point topLeft = getTopLeft();
+            setShader(new LinearGradient(mBarPointerHaloRadius, 0,
+                    topLeft.x, topLeft.y, new int[]{
+                    mTracker.HSVToColor(0x00, mHSVColor), color}, null,
+                    Shader.TileMode.CLAMP), color);
+        }
+    }
+
+    private int opacityToPosition(int opacity) {
+        return Math.round((mValueToPosFactor * opacity))
+                + mBarPointerHaloRadius;
+    }
+
+    @Override
+    protected void syncColor(int color, float[] hsv) {
+        applyBaseColor(color);
+        mBarPointerPosition = opacityToPosition(Color.alpha(color));
+        calculateColor(mBarPointerPosition);
+        mBarPointerPaint.setColor(mColor);
+        invalidate();
+    }
+
+    @Override
+    protected int getColorAt(float fraction) {
+        int alpha = Math.round(fraction * 0xFF);
+        // Snapped like calculateColor(int).
+        if (alpha > 250) {
+            alpha = 0xFF;
+        } else if (alpha < 5) {
+            return Color.TRANSPARENT;
+        }
+        return ColorMath.hsvToColor(alpha, mHSVColor[0], mHSVColor[1], mHSVColor[2]);
+    }
+
     private void calculateColor(int coord) {
         coord = coord - mBarPointerHaloRadius;
         if (coord < 0) {
@@ -297,28 +379,13 @@ public class OpacityBar extends ColorBar {
             coord = mBarLength;
         }
 
-        mColor = Color.HSVToColor(
+        mColor = mTracker.HSVToColor(
                 Math.round(mPosToValueFactor * coord),
                 mHSVColor);
     		if (Color.alpha(mColor) > 250) {
-    		    mColor = Color.HSVToColor(mHSVColor);
+    		    mColor = mTracker.HSVToColor(mHSVColor);
     		} else if (Color.alpha(mColor) < 5) {
     		    mColor = Color.TRANSPARENT;
     		}
     }
-
-    @Override
-    protected Parcelable onSaveInstanceState() {
-        Bundle state = (Bundle) super.onSaveInstanceState();
-        state.putInt(STATE_OPACITY, getOpacity());
-        return state;
-    }
-
-    @Override
-
-    protected void onRestoreInstanceState(Parcelable state) {
-        super.onRestoreInstanceState(state);
-        setOpacity(((Bundle) state).getInt(STATE_OPACITY));
-    }
-
-}
\ No newline at end of file
+}
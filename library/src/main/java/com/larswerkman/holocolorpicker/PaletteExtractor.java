@@ -0,0 +1,316 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Finds the dominant colors of an image, e.g. to seed a {@link ColorPicker}
+ * and a {@link SwatchStore} from an artwork.
+ *
+ * <p>
+ * The image is sampled on a grid of at most {@link #MAX_SAMPLES} pixels,
+ * which are counted in a histogram of 15 bit colors. The histogram is built
+ * in row bands on the raster threads and the calling thread. The occupied
+ * bins are then clustered with weighted k-means in Lab, so colors that look
+ * alike end up together. The clustering starts from the most common bin and
+ * adds the bins farthest from the chosen ones, so the same image always
+ * gives the same colors.
+ * </p>
+ *
+ * <p>
+ * Pixels with less than half opacity are skipped. Extracting is slow for
+ * large images, call it on a background thread.
+ * </p>
+ */
+public final class PaletteExtractor {
+
+    /**
+     * Maximum number of pixels sampled from an image.
+     */
+    public static final int MAX_SAMPLES = 1 << 18;
+
+    /**
+     * Maximum number of k-means iterations.
+     */
+    private static final int MAX_ITERATIONS = 16;
+
+    /**
+     * Clustering stops when no center moves farther than this, in Lab.
+     */
+    private static final float CONVERGED_DISTANCE = 0.5f;
+
+    private static final int BINS = 1 << 15;
+
+    private PaletteExtractor() {
+    }
+
+    /**
+     * Extract the dominant colors of a bitmap.
+     *
+     * @see #extract(int[], int, int, int[], float[])
+     */
+    public static int extract(Bitmap bitmap, int[] colors, float[] shares) {
+        return extract(ColorSampler.rows(bitmap), bitmap.getWidth(), bitmap.getHeight(),
+                colors, shares);
+    }
+
+    /**
+     * Extract the dominant colors of ARGB pixels.
+     *
+     * @param pixels the pixels, row by row.
+     * @param colors receives the opaque colors, most common first. Its length
+     *               is the number of colors to extract.
+     * @param shares receives the share of each color in the image, between 0
+     *               and 1. May be {@code null}.
+     * @return the number of colors, less than requested if the image has
+     * fewer distinct colors.
+     */
+    public static int extract(int[] pixels, int width, int height, int[] colors, float[] shares) {
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("Not enough pixels");
+        }
+        return extract(ColorSampler.rows(pixels, width), width, height, colors, shares);
+    }
+
+    /**
+     * Seed a picker and a swatch store with extracted colors: the most
+     * common color becomes the old center color and all colors become recent
+     * colors, the most common first.
+     *
+     * @param picker the picker, may be {@code null}.
+     * @param store  the store, may be {@code null}.
+     * @param colors the colors, most common first.
+     * @param count  number of colors.
+     * @throws IOException if the store can't be written.
+     */
+    public static void seed(ColorPicker picker, SwatchStore store, int[] colors, int count)
+            throws IOException {
+        if (count == 0) {
+            return;
+        }
+        if (picker != null) {
+            picker.setOldCenterColor(colors[0]);
+        }
+        if (store != null) {
+            for (int i = count - 1; i >= 0; i--) {
+                store.addRecent(colors[i]);
+            }
+        }
+    }
+
+    private static int extract(final ColorSampler.RowSource source, final int width,
+                               int height, int[] colors, float[] shares) {
+        if (colors.length == 0 || width <= 0 || height <= 0) {
+            return 0;
+        }
+        final int step = (int) Math.ceil(Math.sqrt((double) width * height / MAX_SAMPLES));
+        final int rows = (height + step - 1) / step;
+        final int bands = Math.min(rows, RasterPipeline.MAX_THREADS + 1);
+
+        // count, red, green and blue sums of each bin, per band.
+        final int[][] histograms = new int[bands][];
+        RasterPipeline.runAll(bands, new RasterPipeline.Task() {
+            @Override
+            public void run(int band) {
+                int[] histogram = new int[4 * BINS];
+                int[] row = new int[width];
+                for (int i = band; i < rows; i += bands) {
+                    source.getRow(i * step, row);
+                    for (int x = 0; x < width; x += step) {
+                        int color = row[x];
+                        if (color >>> 24 < 0x80) {
+                            continue;
+                        }
+                        int r = (color >> 16) & 0xFF;
+                        int g = (color >> 8) & 0xFF;
+                        int b = color & 0xFF;
+                        int bin = 4 * (((r >> 3) << 10) | ((g >> 3) << 5) | (b >> 3));
+                        histogram[bin]++;
+                        histogram[bin + 1] += r;
+                        histogram[bin + 2] += g;
+                        histogram[bin + 3] += b;
+                    }
+                }
+                histograms[band] = histogram;
+            }
+        });
+        int[] histogram = histograms[0];
+        for (int band = 1; band < bands; band++) {
+            int[] other = histograms[band];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other[i];
+            }
+        }
+
+        // The occupied bins, as mean colors in Lab.
+        int binCount = 0;
+        for (int i = 0; i < histogram.length; i += 4) {
+            if (histogram[i] > 0) {
+                binCount++;
+            }
+        }
+        if (binCount == 0) {
+            return 0;
+        }
+        float[] labs = new float[3 * binCount];
+        int[] weights = new int[binCount];
+        float[] lab = new float[3];
+        long total = 0;
+        for (int i = 0, bin = 0; i < histogram.length; i += 4) {
+            int count = histogram[i];
+            if (count == 0) {
+                continue;
+            }
+            int half = count / 2;
+            int color = (((histogram[i + 1] + half) / count) << 16)
+                    | (((histogram[i + 2] + half) / count) << 8)
+                    | ((histogram[i + 3] + half) / count);
+            ColorMath.colorToLab(color, lab);
+            System.arraycopy(lab, 0, labs, 3 * bin, 3);
+            weights[bin++] = count;
+            total += count;
+        }
+
+        int k = Math.min(colors.length, binCount);
+        float[] centers = new float[3 * k];
+        initCenters(labs, weights, centers, k);
+        long[] clusterWeights = new long[k];
+        cluster(labs, weights, centers, clusterWeights, k);
+
+        // Most common first, empty clusters dropped.
+        int count = 0;
+        for (int i = 0; i < k; i++) {
+            int best = -1;
+            for (int j = 0; j < k; j++) {
+                if (clusterWeights[j] > 0
+                        && (best < 0 || clusterWeights[j] > clusterWeights[best])) {
+                    best = j;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            colors[count] = 0xFF000000 | ColorMath.labToRgb(
+                    centers[3 * best], centers[3 * best + 1], centers[3 * best + 2]);
+            if (shares != null) {
+                shares[count] = clusterWeights[best] / (float) total;
+            }
+            clusterWeights[best] = 0;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Choose the most common bin, then repeatedly the bin with the largest
+     * weighted distance to the chosen ones.
+     */
+    private static void initCenters(float[] labs, int[] weights, float[] centers, int k) {
+        int bins = weights.length;
+        float[] distances = new float[bins];
+        int first = 0;
+        for (int i = 1; i < bins; i++) {
+            if (weights[i] > weights[first]) {
+                first = i;
+            }
+        }
+        System.arraycopy(labs, 3 * first, centers, 0, 3);
+        for (int i = 0; i < bins; i++) {
+            distances[i] = distance(labs, 3 * i, centers, 0);
+        }
+        for (int c = 1; c < k; c++) {
+            int next = 0;
+            float nextScore = -1f;
+            for (int i = 0; i < bins; i++) {
+                float score = distances[i] * weights[i];
+                if (score > nextScore) {
+                    nextScore = score;
+                    next = i;
+                }
+            }
+            System.arraycopy(labs, 3 * next, centers, 3 * c, 3);
+            for (int i = 0; i < bins; i++) {
+                distances[i] = Math.min(distances[i], distance(labs, 3 * i, centers, 3 * c));
+            }
+        }
+    }
+
+    /**
+     * Weighted k-means.
+     *
+     * @param clusterWeights receives the total weight of each cluster.
+     */
+    private static void cluster(float[] labs, int[] weights, float[] centers,
+                                long[] clusterWeights, int k) {
+        int bins = weights.length;
+        double[] sums = new double[3 * k];
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            Arrays.fill(sums, 0);
+            Arrays.fill(clusterWeights, 0);
+            for (int i = 0; i < bins; i++) {
+                int nearest = 0;
+                float nearestDistance = Float.MAX_VALUE;
+                for (int c = 0; c < k; c++) {
+                    float d = distance(labs, 3 * i, centers, 3 * c);
+                    if (d < nearestDistance) {
+                        nearestDistance = d;
+                        nearest = c;
+                    }
+                }
+                int weight = weights[i];
+                sums[3 * nearest] += (double) labs[3 * i] * weight;
+                sums[3 * nearest + 1] += (double) labs[3 * i + 1] * weight;
+                sums[3 * nearest + 2] += (double) labs[3 * i + 2] * weight;
+                clusterWeights[nearest] += weight;
+            }
+
+            float maxMove = 0f;
+            for (int c = 0; c < k; c++) {
+                if (clusterWeights[c] == 0) {
+                    continue;
+                }
+                float l = (float) (sums[3 * c] / clusterWeights[c]);
+                float a = (float) (sums[3 * c + 1] / clusterWeights[c]);
+                float b = (float) (sums[3 * c + 2] / clusterWeights[c]);
+                float dl = l - centers[3 * c];
+                float da = a - centers[3 * c + 1];
+                float db = b - centers[3 * c + 2];
+                maxMove = Math.max(maxMove, dl * dl + da * da + db * db);
+                centers[3 * c] = l;
+                centers[3 * c + 1] = a;
+                centers[3 * c + 2] = b;
+            }
+            if (maxMove < CONVERGED_DISTANCE * CONVERGED_DISTANCE) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Squared distance in Lab.
+     */
+    private static float distance(float[] labs, int i, float[] centers, int c) {
+        float dl = labs[i] - centers[c];
+        float da = labs[i + 1] - centers[c + 1];
+        float db = labs[i + 2] - centers[c + 2];
+        return dl * dl + da * da + db * db;
+    }
+}
@@ -0,0 +1,626 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads the colors of Adobe swatch exchange (ASE), GIMP palette (GPL) and
+ * Photoshop color swatch (ACO) files.
+ *
+ * <p>
+ * Opening a file makes one pass over it to count the colors and to remember
+ * where every page of {@link #PAGE_SIZE} colors starts. The colors are only
+ * decoded when they are read, page by page or in any range, into a primitive
+ * {@code int[]}. Nothing is allocated per color and the file is read through
+ * one buffer, so palettes with many thousands of colors can be shown without
+ * loading them completely.
+ * </p>
+ *
+ * <p>
+ * Colors are returned as opaque ARGB colors, except GIMP palettes with
+ * RGBA channels. Names and groups are skipped. CMYK, Lab, HSB and gray
+ * colors are converted to sRGB without a color profile, colors in other
+ * color spaces are read as 0.
+ * </p>
+ *
+ * <p>
+ * A reader is not thread-safe.
+ * </p>
+ */
+public final class PaletteReader implements Closeable {
+
+    public static final int FORMAT_ASE = 1;
+    public static final int FORMAT_GPL = 2;
+    public static final int FORMAT_ACO = 3;
+
+    /**
+     * Number of colors in a page.
+     */
+    public static final int PAGE_SIZE = 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    static final int ASE_MAGIC = 0x41534546; // "ASEF"
+    static final int ASE_BLOCK_COLOR = 0x0001;
+
+    /*
+     * Color models of ASE color entries.
+     */
+    static final int ASE_MODEL_RGB = 0x52474220; // "RGB "
+    static final int ASE_MODEL_CMYK = 0x434D594B; // "CMYK"
+    static final int ASE_MODEL_LAB = 0x4C414220; // "LAB "
+    static final int ASE_MODEL_GRAY = 0x47726179; // "Gray"
+
+    /*
+     * Color spaces of ACO colors.
+     */
+    static final int ACO_SPACE_RGB = 0;
+    static final int ACO_SPACE_HSB = 1;
+    static final int ACO_SPACE_CMYK = 2;
+    static final int ACO_SPACE_LAB = 7;
+    static final int ACO_SPACE_GRAY = 8;
+
+    static final byte[] GPL_HEADER = {'G', 'I', 'M', 'P', ' ', 'P', 'a', 'l', 'e', 't', 't', 'e'};
+    private static final byte[] GPL_CHANNELS_RGBA =
+            {'C', 'h', 'a', 'n', 'n', 'e', 'l', 's', ':', ' ', 'R', 'G', 'B', 'A'};
+
+    private final FileChannel mChannel;
+    private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * Offset in the file of the first byte in {@code mBuffer}.
+     */
+    private long mBufferOffset;
+
+    private final int mFormat;
+    private int mColorCount;
+
+    /**
+     * Offset in the file of the first color of each page.
+     */
+    private long[] mPageOffsets = new long[16];
+
+    /**
+     * Whether the ACO colors are followed by names, in version 2 files.
+     */
+    private boolean mAcoNames;
+
+    /**
+     * Whether the GPL colors have an alpha channel.
+     */
+    private boolean mGplAlpha;
+
+    /**
+     * Open a palette file.
+     *
+     * @param file an ASE, GPL or ACO file.
+     * @return the reader, to be closed with {@link #close()}.
+     * @throws IOException if the file can't be read or has no known format.
+     */
+    public static PaletteReader open(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            return new PaletteReader(in.getChannel());
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read a palette from a channel, e.g. of a file descriptor from a content
+     * provider. The format is detected from the content. The channel is read
+     * with absolute positions, so its position is not changed.
+     *
+     * @param channel the channel, closed by {@link #close()}.
+     * @throws IOException if the channel can't be read or has no known
+     *                     format.
+     */
+    public PaletteReader(FileChannel channel) throws IOException {
+        mChannel = channel;
+        mBuffer.limit(0);
+        mFormat = detectFormat();
+        switch (mFormat) {
+            case FORMAT_ASE:
+                indexAse();
+                break;
+            case FORMAT_GPL:
+                indexGpl();
+                break;
+            default:
+                indexAco();
+                break;
+        }
+    }
+
+    public int getFormat() {
+        return mFormat;
+    }
+
+    public int getColorCount() {
+        return mColorCount;
+    }
+
+    public int getPageCount() {
+        return (mColorCount + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    /**
+     * Read a page of colors.
+     *
+     * @param page   the page, from 0 to {@link #getPageCount()} - 1.
+     * @param colors receives the colors, at least {@link #PAGE_SIZE} long.
+     * @return the number of colors, less than {@link #PAGE_SIZE} for the
+     * last page.
+     */
+    public int readPage(int page, int[] colors) throws IOException {
+        return read(page * PAGE_SIZE, colors, 0, PAGE_SIZE);
+    }
+
+    /**
+     * Read a range of colors.
+     *
+     * @param index  index of the first color.
+     * @param colors receives the colors.
+     * @param offset index in {@code colors} of the first color.
+     * @param count  maximum number of colors to read.
+     * @return the number of colors read, less than {@code count} at the end
+     * of the palette.
+     */
+    public int read(int index, int[] colors, int offset, int count) throws IOException {
+        if (index < 0 || offset < 0 || count < 0 || offset + count > colors.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        count = Math.min(count, mColorCount - index);
+        if (count <= 0) {
+            return 0;
+        }
+        int page = index / PAGE_SIZE;
+        seek(mPageOffsets[page]);
+        for (int i = page * PAGE_SIZE; i < index; i++) {
+            skipColor();
+        }
+        for (int i = 0; i < count; i++) {
+            colors[offset + i] = readColor();
+        }
+        return count;
+    }
+
+    /**
+     * Read all colors.
+     *
+     * @return a new array with {@link #getColorCount()} colors.
+     */
+    public int[] readAll() throws IOException {
+        int[] colors = new int[mColorCount];
+        read(0, colors, 0, mColorCount);
+        return colors;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+    private int detectFormat() throws IOException {
+        if (!request(4)) {
+            throw new IOException("Unknown palette format");
+        }
+        int magic = mBuffer.getInt(mBuffer.position());
+        if (magic == ASE_MAGIC) {
+            return FORMAT_ASE;
+        }
+        if ((magic & 0xFFFFFF00) == 0xEFBBBF00) {
+            // UTF-8 byte order mark, written by some editors.
+            seek(3);
+        }
+        if (startsWith(GPL_HEADER)) {
+            return FORMAT_GPL;
+        }
+        int version = magic >>> 16;
+        if (version == 1 || version == 2) {
+            return FORMAT_ACO;
+        }
+        throw new IOException("Unknown palette format");
+    }
+
+    private void addPage(long offset) {
+        int page = mColorCount / PAGE_SIZE;
+        if (page == mPageOffsets.length) {
+            mPageOffsets = Arrays.copyOf(mPageOffsets, page * 2);
+        }
+        mPageOffsets[page] = offset;
+    }
+
+    /*
+     * ASE: int magic, short major, short minor, int blockCount, then blocks of
+     * short type, int length and length bytes. A color block holds
+     * short nameLength, nameLength UTF-16 chars, int model, float components
+     * and short type.
+     */
+
+    private void indexAse() throws IOException {
+        skip(8);
+        long blocks = getInt() & 0xFFFFFFFFL;
+        long size = size();
+        for (long i = 0; i < blocks; i++) {
+            long offset = position();
+            if (!request(6)) {
+                // Some writers count blocks they don't write.
+                break;
+            }
+            int type = getShort();
+            long length = getInt() & 0xFFFFFFFFL;
+            if (type == ASE_BLOCK_COLOR) {
+                if (mColorCount % PAGE_SIZE == 0) {
+                    addPage(offset);
+                }
+                mColorCount++;
+            }
+            skip(length);
+            if (position() > size) {
+                throw new EOFException("Truncated palette");
+            }
+        }
+    }
+
+    private int readAseColor() throws IOException {
+        while (true) {
+            int type = getShort();
+            long length = getInt() & 0xFFFFFFFFL;
+            long end = position() + length;
+            if (type != ASE_BLOCK_COLOR) {
+                seek(end);
+                continue;
+            }
+            skip(2L * getShort());
+            int model = getInt();
+            int color;
+            switch (model) {
+                case ASE_MODEL_RGB:
+                    color = 0xFF000000 | (unit(getFloat()) << 16)
+                            | (unit(getFloat()) << 8) | unit(getFloat());
+                    break;
+                case ASE_MODEL_CMYK:
+                    color = cmykToColor(getFloat(), getFloat(), getFloat(), getFloat());
+                    break;
+                case ASE_MODEL_LAB:
+                    color = 0xFF000000 | ColorMath.labToRgb(getFloat() * 100f, getFloat(), getFloat());
+                    break;
+                case ASE_MODEL_GRAY:
+                    color = grayToColor(unit(getFloat()));
+                    break;
+                default:
+                    color = 0;
+                    break;
+            }
+            seek(end);
+            return color;
+        }
+    }
+
+    private void skipAseColor() throws IOException {
+        while (true) {
+            int type = getShort();
+            long length = getInt() & 0xFFFFFFFFL;
+            skip(length);
+            if (type == ASE_BLOCK_COLOR) {
+                return;
+            }
+        }
+    }
+
+    /*
+     * ACO: short version, short count, then count colors of short space and
+     * four short components. Version 2 adds int nameLength and nameLength
+     * UTF-16 chars after every color. Version 1 files may be followed by a
+     * version 2 section with the same colors, which is ignored.
+     */
+
+    private void indexAco() throws IOException {
+        int version = getShort();
+        int count = getShort();
+        mAcoNames = version == 2;
+        if (!mAcoNames) {
+            if (size() < 4 + 10L * count) {
+                throw new EOFException("Truncated palette");
+            }
+            mPageOffsets = new long[(count + PAGE_SIZE - 1) / PAGE_SIZE + 1];
+            for (int page = 0; page < mPageOffsets.length; page++) {
+                mPageOffsets[page] = 4 + 10L * PAGE_SIZE * page;
+            }
+            mColorCount = count;
+            return;
+        }
+        long size = size();
+        for (int i = 0; i < count; i++) {
+            if (mColorCount % PAGE_SIZE == 0) {
+                addPage(position());
+            }
+            skipAcoColor();
+            mColorCount++;
+        }
+        if (position() > size) {
+            throw new EOFException("Truncated palette");
+        }
+    }
+
+    private int readAcoColor() throws IOException {
+        int space = getShort();
+        int w = getShort();
+        int x = getShort();
+        int y = getShort();
+        int z = getShort();
+        if (mAcoNames) {
+            skip(2 * (getInt() & 0xFFFFFFFFL));
+        }
+        switch (space) {
+            case ACO_SPACE_RGB:
+                return 0xFF000000 | ((w >> 8) << 16) | ((x >> 8) << 8) | (y >> 8);
+            case ACO_SPACE_HSB:
+                return ColorMath.hsvToColor(0xFF, w * 360f / 65536f, x / 65535f, y / 65535f);
+            case ACO_SPACE_CMYK:
+                // 0 is full ink.
+                return cmykToColor(1f - w / 65535f, 1f - x / 65535f,
+                        1f - y / 65535f, 1f - z / 65535f);
+            case ACO_SPACE_LAB:
+                return 0xFF000000 | ColorMath.labToRgb(w / 100f, (short) x / 100f, (short) y / 100f);
+            case ACO_SPACE_GRAY:
+                // 0 is white, 10000 full black.
+                return grayToColor(0xFF - Math.round(Math.min(w, 10000) * 0xFF / 10000f));
+            default:
+                return 0;
+        }
+    }
+
+    private void skipAcoColor() throws IOException {
+        skip(10);
+        if (mAcoNames) {
+            skip(2 * (getInt() & 0xFFFFFFFFL));
+        }
+    }
+
+    /*
+     * GPL: the line "GIMP Palette", header lines like "Name: ..." or
+     * "Channels: RGBA", comments starting with '#' and color lines with
+     * decimal components separated by white space, followed by a name.
+     */
+
+    private void indexGpl() throws IOException {
+        skipLine();
+        while (true) {
+            long offset = position();
+            int c = skipBlanks();
+            if (c < 0) {
+                break;
+            }
+            if (c >= '0' && c <= '9') {
+                if (mColorCount % PAGE_SIZE == 0) {
+                    addPage(offset);
+                }
+                mColorCount++;
+            } else if (c == 'C' && startsWith(GPL_CHANNELS_RGBA)) {
+                mGplAlpha = true;
+            }
+            skipLine();
+        }
+    }
+
+    private int readGplColor() throws IOException {
+        while (true) {
+            int c = skipBlanks();
+            if (c < 0) {
+                throw new EOFException("Truncated palette");
+            }
+            if (c >= '0' && c <= '9') {
+                int r = readDecimal();
+                int g = readDecimal();
+                int b = readDecimal();
+                int a = mGplAlpha ? readDecimal() : 0xFF;
+                skipLine();
+                return (a << 24) | (r << 16) | (g << 8) | b;
+            }
+            skipLine();
+        }
+    }
+
+    private void skipGplColor() throws IOException {
+        while (true) {
+            int c = skipBlanks();
+            if (c < 0) {
+                throw new EOFException("Truncated palette");
+            }
+            skipLine();
+            if (c >= '0' && c <= '9') {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skip spaces and tabs.
+     *
+     * @return the next byte, which is not consumed, or -1 at the end.
+     */
+    private int skipBlanks() throws IOException {
+        while (request(1)) {
+            int c = mBuffer.get(mBuffer.position());
+            if (c != ' ' && c != '\t') {
+                return c;
+            }
+            mBuffer.get();
+        }
+        return -1;
+    }
+
+    private void skipLine() throws IOException {
+        while (request(1)) {
+            if (mBuffer.get() == '\n') {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read a decimal component between blanks, clamped to 255.
+     */
+    private int readDecimal() throws IOException {
+        skipBlanks();
+        int value = 0;
+        while (request(1)) {
+            int c = mBuffer.get(mBuffer.position());
+            if (c < '0' || c > '9') {
+                break;
+            }
+            mBuffer.get();
+            value = Math.min(0xFF, value * 10 + c - '0');
+        }
+        return value;
+    }
+
+    private int readColor() throws IOException {
+        switch (mFormat) {
+            case FORMAT_ASE:
+                return readAseColor();
+            case FORMAT_GPL:
+                return readGplColor();
+            default:
+                return readAcoColor();
+        }
+    }
+
+    private void skipColor() throws IOException {
+        switch (mFormat) {
+            case FORMAT_ASE:
+                skipAseColor();
+                break;
+            case FORMAT_GPL:
+                skipGplColor();
+                break;
+            default:
+                skipAcoColor();
+                break;
+        }
+    }
+
+    private static int unit(float component) {
+        return Math.round(Math.max(0f, Math.min(1f, component)) * 0xFF);
+    }
+
+    private static int grayToColor(int gray) {
+        return 0xFF000000 | (gray << 16) | (gray << 8) | gray;
+    }
+
+    /**
+     * Convert CMYK ink coverage between 0 and 1 to a color, without a
+     * profile.
+     */
+    private static int cmykToColor(float c, float m, float y, float k) {
+        float white = 1f - Math.max(0f, Math.min(1f, k));
+        return 0xFF000000 | (unit((1f - c) * white) << 16)
+                | (unit((1f - m) * white) << 8) | unit((1f - y) * white);
+    }
+
+    /*
+     * Buffered reading with absolute positions. The buffer is kept in read
+     * mode, its position is the current position in the file.
+     */
+
+    private long size() throws IOException {
+        return mChannel.size();
+    }
+
+    private long position() {
+        return mBufferOffset + mBuffer.position();
+    }
+
+    private void seek(long offset) throws IOException {
+        if (offset >= mBufferOffset && offset <= mBufferOffset + mBuffer.limit()) {
+            mBuffer.position((int) (offset - mBufferOffset));
+        } else {
+            mBufferOffset = offset;
+            mBuffer.position(0).limit(0);
+        }
+    }
+
+    private void skip(long count) throws IOException {
+        seek(position() + count);
+    }
+
+    /**
+     * Make sure {@code count} bytes are buffered, unless the end is reached.
+     *
+     * @return {@code false} at the end.
+     */
+    private boolean request(int count) throws IOException {
+        if (mBuffer.remaining() >= count) {
+            return true;
+        }
+        mBufferOffset += mBuffer.position();
+        mBuffer.compact();
+        while (mBuffer.position() < count) {
+            int read = mChannel.read(mBuffer, mBufferOffset + mBuffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        mBuffer.flip();
+        return mBuffer.remaining() >= count;
+    }
+
+    private void require(int count) throws IOException {
+        if (!request(count)) {
+            throw new EOFException("Truncated palette");
+        }
+    }
+
+    private int getShort() throws IOException {
+        require(2);
+        return mBuffer.getShort() & 0xFFFF;
+    }
+
+    private int getInt() throws IOException {
+        require(4);
+        return mBuffer.getInt();
+    }
+
+    private float getFloat() throws IOException {
+        require(4);
+        return mBuffer.getFloat();
+    }
+
+    private boolean startsWith(byte[] prefix) throws IOException {
+        if (!request(prefix.length)) {
+            return false;
+        }
+        int position = mBuffer.position();
+        for (int i = 0; i < prefix.length; i++) {
+            if (mBuffer.get(position + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
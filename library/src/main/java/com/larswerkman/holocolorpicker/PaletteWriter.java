@@ -0,0 +1,223 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes colors as Adobe swatch exchange (ASE), GIMP palette (GPL) or
+ * Photoshop color swatch (ACO) files, which can be read again with
+ * {@link PaletteReader}.
+ *
+ * <p>
+ * The colors are encoded from a primitive {@code int[]} into one buffer that
+ * is written to the channel whenever it is full, so large palettes are
+ * written without allocating per color. The colors are written as RGB, the
+ * alpha is dropped. ASE and GPL colors are named by their hex code.
+ * </p>
+ */
+public final class PaletteWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Length of the name of an ASE color, "#RRGGBB" and the terminating 0.
+     */
+    private static final int ASE_NAME_LENGTH = 8;
+
+    /**
+     * Length of an ASE color block after its header.
+     */
+    private static final int ASE_BLOCK_LENGTH = 2 + 2 * ASE_NAME_LENGTH + 4 + 3 * 4 + 2;
+
+    /**
+     * Longest GPL color line, "255 255 255\t#RRGGBB\n".
+     */
+    private static final int GPL_LINE_LENGTH = 20;
+
+    private static final byte[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7',
+            '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    private PaletteWriter() {
+    }
+
+    /**
+     * Write a palette file.
+     *
+     * @param file   the file, replaced if it exists.
+     * @param format {@link PaletteReader#FORMAT_ASE},
+     *               {@link PaletteReader#FORMAT_GPL} or
+     *               {@link PaletteReader#FORMAT_ACO}.
+     * @param name   name of the palette, only written to GPL files. May be
+     *               {@code null}.
+     * @param colors ARGB colors.
+     * @throws IOException if the file can't be written.
+     */
+    public static void write(File file, int format, String name, int[] colors)
+            throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            write(out.getChannel(), format, name, colors, 0, colors.length);
+        }
+    }
+
+    /**
+     * Write a palette to a channel, which is not closed.
+     *
+     * @param channel the channel.
+     * @param format  {@link PaletteReader#FORMAT_ASE},
+     *                {@link PaletteReader#FORMAT_GPL} or
+     *                {@link PaletteReader#FORMAT_ACO}.
+     * @param name    name of the palette, only written to GPL files. May be
+     *                {@code null}.
+     * @param colors  ARGB colors.
+     * @param offset  index of the first color.
+     * @param count   number of colors, at most 65535 for ACO.
+     * @throws IOException if the channel can't be written.
+     */
+    public static void write(WritableByteChannel channel, int format, String name,
+                             int[] colors, int offset, int count) throws IOException {
+        if (offset < 0 || count < 0 || offset + count > colors.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        switch (format) {
+            case PaletteReader.FORMAT_ASE:
+                writeAse(channel, buffer, colors, offset, count);
+                break;
+            case PaletteReader.FORMAT_GPL:
+                writeGpl(channel, buffer, name, colors, offset, count);
+                break;
+            case PaletteReader.FORMAT_ACO:
+                writeAco(channel, buffer, colors, offset, count);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown palette format " + format);
+        }
+        drain(channel, buffer);
+    }
+
+    private static void writeAse(WritableByteChannel channel, ByteBuffer buffer,
+                                 int[] colors, int offset, int count) throws IOException {
+        buffer.putInt(PaletteReader.ASE_MAGIC);
+        buffer.putShort((short) 1);
+        buffer.putShort((short) 0);
+        buffer.putInt(count);
+        for (int i = offset; i < offset + count; i++) {
+            if (buffer.remaining() < 6 + ASE_BLOCK_LENGTH) {
+                drain(channel, buffer);
+            }
+            int color = colors[i];
+            buffer.putShort((short) PaletteReader.ASE_BLOCK_COLOR);
+            buffer.putInt(ASE_BLOCK_LENGTH);
+            buffer.putShort((short) ASE_NAME_LENGTH);
+            buffer.putChar('#');
+            for (int shift = 20; shift >= 0; shift -= 4) {
+                buffer.putChar((char) HEX_DIGITS[(color >> shift) & 0xF]);
+            }
+            buffer.putChar((char) 0);
+            buffer.putInt(PaletteReader.ASE_MODEL_RGB);
+            buffer.putFloat(((color >> 16) & 0xFF) / 255f);
+            buffer.putFloat(((color >> 8) & 0xFF) / 255f);
+            buffer.putFloat((color & 0xFF) / 255f);
+            // Normal, not a global or spot color.
+            buffer.putShort((short) 2);
+        }
+    }
+
+    private static void writeGpl(WritableByteChannel channel, ByteBuffer buffer, String name,
+                                 int[] colors, int offset, int count) throws IOException {
+        buffer.put(PaletteReader.GPL_HEADER);
+        buffer.put((byte) '\n');
+        if (name != null) {
+            byte[] bytes = ("Name: " + name.replace('\n', ' ') + "\n")
+                    .getBytes(StandardCharsets.UTF_8);
+            int i = 0;
+            while (i < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    drain(channel, buffer);
+                }
+                int length = Math.min(buffer.remaining(), bytes.length - i);
+                buffer.put(bytes, i, length);
+                i += length;
+            }
+        }
+        for (int i = offset; i < offset + count; i++) {
+            if (buffer.remaining() < GPL_LINE_LENGTH) {
+                drain(channel, buffer);
+            }
+            int color = colors[i];
+            putDecimal(buffer, (color >> 16) & 0xFF);
+            buffer.put((byte) ' ');
+            putDecimal(buffer, (color >> 8) & 0xFF);
+            buffer.put((byte) ' ');
+            putDecimal(buffer, color & 0xFF);
+            buffer.put((byte) '\t');
+            buffer.put((byte) '#');
+            for (int shift = 20; shift >= 0; shift -= 4) {
+                buffer.put(HEX_DIGITS[(color >> shift) & 0xF]);
+            }
+            buffer.put((byte) '\n');
+        }
+    }
+
+    private static void writeAco(WritableByteChannel channel, ByteBuffer buffer,
+                                 int[] colors, int offset, int count) throws IOException {
+        if (count > 0xFFFF) {
+            throw new IllegalArgumentException("ACO files hold at most 65535 colors");
+        }
+        buffer.putShort((short) 1);
+        buffer.putShort((short) count);
+        for (int i = offset; i < offset + count; i++) {
+            if (buffer.remaining() < 10) {
+                drain(channel, buffer);
+            }
+            int color = colors[i];
+            buffer.putShort((short) PaletteReader.ACO_SPACE_RGB);
+            // 0xAB becomes 0xABAB, so 0xFF is full intensity.
+            buffer.putShort((short) (((color >> 16) & 0xFF) * 0x101));
+            buffer.putShort((short) (((color >> 8) & 0xFF) * 0x101));
+            buffer.putShort((short) ((color & 0xFF) * 0x101));
+            buffer.putShort((short) 0);
+        }
+    }
+
+    private static void putDecimal(ByteBuffer buffer, int value) {
+        if (value >= 100) {
+            buffer.put((byte) ('0' + value / 100));
+        }
+        if (value >= 10) {
+            buffer.put((byte) ('0' + value / 10 % 10));
+        }
+        buffer.put((byte) ('0' + value % 10));
+    }
+
+    private static void drain(WritableByteChannel channel, ByteBuffer buffer)
+            throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
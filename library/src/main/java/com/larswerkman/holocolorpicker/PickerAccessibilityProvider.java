@@ -0,0 +1,236 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.graphics.Rect;
+import android.os.Bundle;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewParent;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.accessibility.AccessibilityNodeProvider;
+
+/**
+ * Virtual view hierarchy of a {@link ColorPicker} for accessibility
+ * services.
+ *
+ * <p>
+ * The wheel is exposed as an adjustable node like a {@code SeekBar} over the
+ * hue, the center as a button while it shows the old color. Nodes are only
+ * created when a service asks for them and events are only sent for
+ * finished changes, e.g. once at the end of a drag, not for every color on
+ * the way.
+ * </p>
+ */
+final class PickerAccessibilityProvider extends AccessibilityNodeProvider {
+
+    static final int VIRTUAL_WHEEL = 0;
+    static final int VIRTUAL_CENTER = 1;
+
+    private static final String BUTTON_CLASS_NAME = "android.widget.Button";
+
+    private final ColorPicker mPicker;
+    private final Rect mTempRect = new Rect();
+    private final int[] mTempLocation = new int[2];
+
+    private int mFocusedVirtualView = View.NO_ID;
+    private int mHoveredVirtualView = View.NO_ID;
+
+    PickerAccessibilityProvider(ColorPicker picker) {
+        mPicker = picker;
+    }
+
+    @Override
+    public AccessibilityNodeInfo createAccessibilityNodeInfo(int virtualViewId) {
+        if (virtualViewId == HOST_VIEW_ID) {
+            AccessibilityNodeInfo info = AccessibilityNodeInfo.obtain(mPicker);
+            mPicker.onInitializeAccessibilityNodeInfo(info);
+            info.addChild(mPicker, VIRTUAL_WHEEL);
+            if (mPicker.isCenterClickable()) {
+                info.addChild(mPicker, VIRTUAL_CENTER);
+            }
+            return info;
+        }
+        if (virtualViewId != VIRTUAL_WHEEL && virtualViewId != VIRTUAL_CENTER) {
+            return null;
+        }
+
+        AccessibilityNodeInfo info = AccessibilityNodeInfo.obtain(mPicker, virtualViewId);
+        info.setSource(mPicker, virtualViewId);
+        info.setParent(mPicker);
+        info.setPackageName(mPicker.getContext().getPackageName());
+        info.setEnabled(mPicker.isEnabled());
+        info.setVisibleToUser(true);
+        info.setFocusable(true);
+
+        mPicker.getVirtualViewBounds(virtualViewId, mTempRect);
+        info.setBoundsInParent(mTempRect);
+        mPicker.getLocationOnScreen(mTempLocation);
+        mTempRect.offset(mTempLocation[0], mTempLocation[1]);
+        info.setBoundsInScreen(mTempRect);
+
+        boolean focused = mFocusedVirtualView == virtualViewId;
+        info.setAccessibilityFocused(focused);
+        info.addAction(focused
+                ? AccessibilityNodeInfo.AccessibilityAction.ACTION_CLEAR_ACCESSIBILITY_FOCUS
+                : AccessibilityNodeInfo.AccessibilityAction.ACTION_ACCESSIBILITY_FOCUS);
+
+        if (virtualViewId == VIRTUAL_WHEEL) {
+            info.setClassName(ColorBar.ACCESSIBILITY_CLASS_NAME);
+            info.setContentDescription(getLabel(R.string.color_picker_hue));
+            info.setRangeInfo(AccessibilityNodeInfo.RangeInfo.obtain(
+                    AccessibilityNodeInfo.RangeInfo.RANGE_TYPE_FLOAT,
+                    0f, 360f, mPicker.getHue()));
+            if (mPicker.isEnabled()) {
+                info.setScrollable(true);
+                info.addAction(AccessibilityNodeInfo.AccessibilityAction.ACTION_SCROLL_FORWARD);
+                info.addAction(AccessibilityNodeInfo.AccessibilityAction.ACTION_SCROLL_BACKWARD);
+            }
+        } else {
+            info.setClassName(BUTTON_CLASS_NAME);
+            info.setContentDescription(getLabel(R.string.color_picker_center));
+            if (mPicker.isEnabled()) {
+                info.setClickable(true);
+                info.addAction(AccessibilityNodeInfo.AccessibilityAction.ACTION_CLICK);
+            }
+        }
+        return info;
+    }
+
+    @Override
+    public boolean performAction(int virtualViewId, int action, Bundle arguments) {
+        if (virtualViewId == HOST_VIEW_ID) {
+            return mPicker.performAccessibilityAction(action, arguments);
+        }
+        switch (action) {
+            case AccessibilityNodeInfo.ACTION_ACCESSIBILITY_FOCUS:
+                if (mFocusedVirtualView == virtualViewId) {
+                    return false;
+                }
+                if (mFocusedVirtualView != View.NO_ID) {
+                    sendEvent(mFocusedVirtualView,
+                            AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUS_CLEARED);
+                }
+                mFocusedVirtualView = virtualViewId;
+                mPicker.invalidate();
+                sendEvent(virtualViewId, AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUSED);
+                return true;
+            case AccessibilityNodeInfo.ACTION_CLEAR_ACCESSIBILITY_FOCUS:
+                if (mFocusedVirtualView != virtualViewId) {
+                    return false;
+                }
+                mFocusedVirtualView = View.NO_ID;
+                mPicker.invalidate();
+                sendEvent(virtualViewId, AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUS_CLEARED);
+                return true;
+        }
+        if (!mPicker.isEnabled()) {
+            return false;
+        }
+        if (virtualViewId == VIRTUAL_WHEEL) {
+            int increments;
+            if (action == AccessibilityNodeInfo.ACTION_SCROLL_FORWARD) {
+                increments = 1;
+            } else if (action == AccessibilityNodeInfo.ACTION_SCROLL_BACKWARD) {
+                increments = -1;
+            } else {
+                return false;
+            }
+            if (!mPicker.stepHue(increments)) {
+                return false;
+            }
+            mPicker.notifyColorSelected();
+            sendHueChanged();
+            return true;
+        }
+        if (virtualViewId == VIRTUAL_CENTER
+                && action == AccessibilityNodeInfo.ACTION_CLICK
+                && mPicker.performCenterClick()) {
+            sendEvent(VIRTUAL_CENTER, AccessibilityEvent.TYPE_VIEW_CLICKED);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Move the hover to the part of the picker under the pointer, for touch
+     * exploration.
+     *
+     * @return {@code true} if the pointer is on the wheel or the center.
+     */
+    boolean onHoverEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_HOVER_ENTER:
+            case MotionEvent.ACTION_HOVER_MOVE:
+                int virtualViewId = mPicker.getVirtualViewAt(event.getX(), event.getY());
+                setHoveredVirtualView(virtualViewId);
+                return virtualViewId != View.NO_ID;
+            case MotionEvent.ACTION_HOVER_EXIT:
+                if (mHoveredVirtualView != View.NO_ID) {
+                    setHoveredVirtualView(View.NO_ID);
+                    return true;
+                }
+                return false;
+        }
+        return false;
+    }
+
+    /**
+     * Announce the new hue. Called once per finished change.
+     */
+    void sendHueChanged() {
+        sendEvent(VIRTUAL_WHEEL, AccessibilityEvent.TYPE_VIEW_SELECTED);
+    }
+
+    private void setHoveredVirtualView(int virtualViewId) {
+        if (mHoveredVirtualView == virtualViewId) {
+            return;
+        }
+        int previous = mHoveredVirtualView;
+        mHoveredVirtualView = virtualViewId;
+        if (virtualViewId != View.NO_ID) {
+            sendEvent(virtualViewId, AccessibilityEvent.TYPE_VIEW_HOVER_ENTER);
+        }
+        if (previous != View.NO_ID) {
+            sendEvent(previous, AccessibilityEvent.TYPE_VIEW_HOVER_EXIT);
+        }
+    }
+
+    private void sendEvent(int virtualViewId, int eventType) {
+        ViewParent parent = mPicker.getParent();
+        if (parent == null || !ColorBar.isAccessibilityEnabled(mPicker)) {
+            return;
+        }
+        AccessibilityEvent event = AccessibilityEvent.obtain(eventType);
+        event.setSource(mPicker, virtualViewId);
+        event.setPackageName(mPicker.getContext().getPackageName());
+        event.setEnabled(mPicker.isEnabled());
+        if (virtualViewId == VIRTUAL_WHEEL) {
+            event.setClassName(ColorBar.ACCESSIBILITY_CLASS_NAME);
+            event.setContentDescription(getLabel(R.string.color_picker_hue));
+        } else {
+            event.setClassName(BUTTON_CLASS_NAME);
+            event.setContentDescription(getLabel(R.string.color_picker_center));
+        }
+        parent.requestSendAccessibilityEvent(mPicker, event);
+    }
+
+    private CharSequence getLabel(int resId) {
+        return mPicker.getResources().getString(resId);
+    }
+}
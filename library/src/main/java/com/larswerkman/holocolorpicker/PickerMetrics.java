@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.view.View;
+
+/**
+ * Receives timing and counter data from the picker internals.
+ *
+ * <p>
+ * Set an instance with {@link ColorPicker#setMetrics(PickerMetrics)} or
+ * {@link ColorBar#setMetrics(PickerMetrics)}. While no metrics instance is
+ * set the views skip all measurements. While one is set, touch handling and
+ * drawing are also wrapped in {@code android.os.Trace} sections so they show
+ * up in systrace/Perfetto captures.
+ * </p>
+ *
+ * <p>
+ * All callbacks are invoked on the UI thread.
+ * </p>
+ */
+public interface PickerMetrics {
+
+    /**
+     * Called when a color listener is invoked while handling a touch event.
+     *
+     * @param view         the view that handled the touch event.
+     * @param latencyNanos time between the start of the touch dispatch and
+     *                     the listener invocation.
+     */
+    void onTouchToListener(View view, long latencyNanos);
+
+    /**
+     * Called after the view has been drawn.
+     *
+     * @param view          the view that was drawn.
+     * @param durationNanos time spent in {@code draw(Canvas)}.
+     */
+    void onDraw(View view, long durationNanos);
+
+    /**
+     * Called whenever the view creates a new {@code Shader}.
+     *
+     * @param view the view that rebuilt its shader.
+     */
+    void onShaderRebuilt(View view);
+
+    /**
+     * Called after each touch event with the counters collected while the
+     * event was handled.
+     *
+     * @param view                the view that handled the touch event.
+     * @param hsvConversions      number of RGB/HSV conversions.
+     * @param listenerInvocations number of listener invocations.
+     * @param allocations         number of shaders and bitmaps created by the
+     *                            view.
+     */
+    void onTouchEventStats(View view, int hsvConversions, int listenerInvocations,
+                           int allocations);
+
+    /**
+     * Called after a view generated a bitmap pixel by pixel.
+     *
+     * @param view          the view that generated the bitmap.
+     * @param width         width of the bitmap.
+     * @param height        height of the bitmap.
+     * @param durationNanos time spent generating the pixels.
+     */
+    default void onRasterGenerated(View view, int width, int height, long durationNanos) {
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+/**
+ * Holds the color of a picker as hue, saturation, value and opacity,
+ * independent of any view.
+ *
+ * <p>
+ * The state is meant for pickers drawn by another UI toolkit, e.g. a
+ * Compose port, that share {@link ColorMath} with {@link ColorPicker}. Like
+ * the wheel of the picker it keeps the hue of white, gray and black, and
+ * the saturation of black, so dragging through them loses nothing.
+ * </p>
+ *
+ * <p>
+ * The listeners get the components that changed. A hue change only
+ * changes the gradients of the bars, a saturation or value change only the
+ * pointers, so a UI can redraw just those. Nothing is allocated when the
+ * state changes. The state must be used on the UI thread.
+ * </p>
+ */
+public final class PickerState {
+
+    /*
+     * Components passed to OnStateChangedListener.
+     */
+    public static final int CHANGED_HUE = 1;
+    public static final int CHANGED_SATURATION = 1 << 1;
+    public static final int CHANGED_VALUE = 1 << 2;
+    public static final int CHANGED_ALPHA = 1 << 3;
+
+    /**
+     * Receives the changes of the state.
+     */
+    public interface OnStateChangedListener {
+
+        /**
+         * @param state   the state.
+         * @param changed the changed components, a combination of
+         *                {@link #CHANGED_HUE}, {@link #CHANGED_SATURATION},
+         *                {@link #CHANGED_VALUE} and {@link #CHANGED_ALPHA}.
+         */
+        void onStateChanged(PickerState state, int changed);
+    }
+
+    private float mHue;
+    private float mSaturation;
+    private float mValue;
+    private int mAlpha;
+
+    /**
+     * The ARGB color of the components.
+     */
+    private int mColor;
+
+    /**
+     * Incremented with every change, so a UI can tell whether what it drew
+     * is current.
+     */
+    private int mVersion;
+
+    private final float[] mHSV = new float[3];
+
+    private final ListenerList<OnStateChangedListener> mListeners =
+            new ListenerList<>(new OnStateChangedListener[0]);
+
+    /**
+     * @param color the initial ARGB color.
+     */
+    public PickerState(int color) {
+        ColorMath.colorToHsv(color, mHSV);
+        mHue = mHSV[0];
+        mSaturation = mHSV[1];
+        mValue = mHSV[2];
+        mAlpha = color >>> 24;
+        mColor = color;
+    }
+
+    public void addOnStateChangedListener(OnStateChangedListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeOnStateChangedListener(OnStateChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Set the color. The hue is kept for colors without one, and the
+     * saturation for black.
+     *
+     * @param color the ARGB color.
+     */
+    public void setColor(int color) {
+        ColorMath.colorToHsv(color, mHSV);
+        float hue = mHSV[0];
+        float saturation = mHSV[1];
+        if (mHSV[2] == 0f) {
+            hue = mHue;
+            saturation = mSaturation;
+        } else if (saturation == 0f) {
+            hue = mHue;
+        }
+        set(color >>> 24, hue, saturation, mHSV[2]);
+    }
+
+    /**
+     * Set all components.
+     *
+     * @param alpha      opacity from 0 to 255.
+     * @param hue        hue in degrees, wrapped to 0 to 360.
+     * @param saturation saturation, clamped between 0 and 1.
+     * @param value      value, clamped between 0 and 1.
+     */
+    public void set(int alpha, float hue, float saturation, float value) {
+        alpha = Math.max(0, Math.min(0xFF, alpha));
+        hue %= 360f;
+        if (hue < 0f) {
+            hue += 360f;
+        }
+        saturation = Math.max(0f, Math.min(1f, saturation));
+        value = Math.max(0f, Math.min(1f, value));
+
+        int changed = 0;
+        if (hue != mHue) {
+            changed |= CHANGED_HUE;
+        }
+        if (saturation != mSaturation) {
+            changed |= CHANGED_SATURATION;
+        }
+        if (value != mValue) {
+            changed |= CHANGED_VALUE;
+        }
+        if (alpha != mAlpha) {
+            changed |= CHANGED_ALPHA;
+        }
+        if (changed == 0) {
+            return;
+        }
+        mHue = hue;
+        mSaturation = saturation;
+        mValue = value;
+        mAlpha = alpha;
+        mColor = ColorMath.hsvToColor(alpha, hue, saturation, value);
+        mVersion++;
+        for (OnStateChangedListener listener : mListeners.get()) {
+            listener.onStateChanged(this, changed);
+        }
+    }
+
+    public void setHue(float hue) {
+        set(mAlpha, hue, mSaturation, mValue);
+    }
+
+    public void setSaturation(float saturation) {
+        set(mAlpha, mHue, saturation, mValue);
+    }
+
+    public void setValue(float value) {
+        set(mAlpha, mHue, mSaturation, value);
+    }
+
+    public void setAlpha(int alpha) {
+        set(alpha, mHue, mSaturation, mValue);
+    }
+
+    /**
+     * @return the hue in degrees, between 0 and 360.
+     */
+    public float getHue() {
+        return mHue;
+    }
+
+    public float getSaturation() {
+        return mSaturation;
+    }
+
+    public float getValue() {
+        return mValue;
+    }
+
+    public int getAlpha() {
+        return mAlpha;
+    }
+
+    /**
+     * @return the ARGB color.
+     */
+    public int getColor() {
+        return mColor;
+    }
+
+    /**
+     * Get the fully saturated, opaque color of the hue, e.g. for the
+     * gradients of the bars.
+     */
+    public int getHueColor() {
+        return ColorMath.hsvToColor(0xFF, mHue, 1f, 1f);
+    }
+
+    public int getVersion() {
+        return mVersion;
+    }
+}
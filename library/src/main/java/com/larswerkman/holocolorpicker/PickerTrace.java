@@ -0,0 +1,123 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Emits systrace/Perfetto sections and counters for the picker internals.
+ *
+ * <p>
+ * Everything is gated by {@link #ENABLED}, which follows the debug flag of the
+ * library build. In release builds the flag is {@code false} and R8 removes
+ * the calls together with the string constants passed to them.
+ * </p>
+ *
+ * <p>
+ * Section names are string constants so that tracing never allocates.
+ * Sections must be closed on the thread that opened them, in reverse order.
+ * </p>
+ */
+final class PickerTrace {
+
+    static final boolean ENABLED = BuildConfig.DEBUG;
+
+    /*
+     * Counter names.
+     */
+    static final String COUNTER_HUE = "ColorPicker:hue";
+    static final String COUNTER_SATURATION = "ColorPicker:saturation";
+    static final String COUNTER_VALUE = "ColorPicker:value";
+    static final String COUNTER_OPACITY = "ColorPicker:opacity";
+
+    /**
+     * Receives the sections and counters. Replaced by tests to record them.
+     */
+    interface Sink {
+        void beginSection(String sectionName);
+
+        void endSection();
+
+        void setCounter(String counterName, long value);
+    }
+
+    private static final Sink SYSTEM_SINK = new Sink() {
+        @Override
+        public void beginSection(String sectionName) {
+            Trace.beginSection(sectionName);
+        }
+
+        @Override
+        public void endSection() {
+            Trace.endSection();
+        }
+
+        @Override
+        public void setCounter(String counterName, long value) {
+            Trace.setCounter(counterName, value);
+        }
+    };
+
+    private static Sink sSink = SYSTEM_SINK;
+
+    private PickerTrace() {
+    }
+
+    /**
+     * Send the sections and counters to a sink instead of
+     * {@code android.os.Trace}.
+     *
+     * @param sink the sink, {@code null} for {@code android.os.Trace}.
+     */
+    static void setSink(Sink sink) {
+        sSink = sink != null ? sink : SYSTEM_SINK;
+    }
+
+    static void begin(String sectionName) {
+        if (ENABLED) {
+            sSink.beginSection(sectionName);
+        }
+    }
+
+    static void end() {
+        if (ENABLED) {
+            sSink.endSection();
+        }
+    }
+
+    /**
+     * Begin a section even if {@link #ENABLED} is off, for the sections
+     * opened while a {@code PickerMetrics} instance is set.
+     */
+    static void beginAlways(String sectionName) {
+        sSink.beginSection(sectionName);
+    }
+
+    static void endAlways() {
+        sSink.endSection();
+    }
+
+    /**
+     * Emit a counter value. Counters need API 29, older devices ignore them.
+     */
+    static void counter(String counterName, long value) {
+        if (ENABLED && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            sSink.setCounter(counterName, value);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Generates bitmaps pixel by pixel off the UI thread.
+ *
+ * <p>
+ * A bitmap is split into bands of {@link #ROWS_PER_BAND} rows. The bands run
+ * on a shared executor with at most {@link #MAX_THREADS} threads, so several
+ * views resizing at once don't start more threads. When all bands of a job
+ * are done the bitmap is created and delivered on the UI thread.
+ * </p>
+ *
+ * <p>
+ * Bitmaps smaller than {@link #SYNC_PIXELS} pixels are generated on the
+ * calling thread, since handing them off costs more than generating them.
+ * </p>
+ */
+final class RasterPipeline {
+
+    /**
+     * Number of rows generated by one task.
+     */
+    static final int ROWS_PER_BAND = 32;
+
+    /**
+     * Bitmaps with fewer pixels are generated synchronously.
+     */
+    static final int SYNC_PIXELS = 64 * 64;
+
+    /**
+     * Maximum number of threads generating pixels.
+     */
+    static final int MAX_THREADS =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+    private static final ThreadPoolExecutor sExecutor = new ThreadPoolExecutor(
+            MAX_THREADS, MAX_THREADS, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable,
+                            "ColorPicker-raster-" + sThreadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                }
+            });
+
+    static {
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Holds the handler of the main thread, created when a job first
+     * delivers, so {@link #runAll(int, Task)} works without a main looper.
+     */
+    private static final class MainHandler {
+        static final Handler INSTANCE = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Generates the pixels of a range of rows. Called on a worker thread,
+     * must not touch any view state.
+     */
+    interface RowRenderer {
+
+        /**
+         * Fill the rows {@code rowStart} (inclusive) to {@code rowEnd}
+         * (exclusive).
+         *
+         * @param pixels ARGB pixels of the whole bitmap, row by row.
+         * @param width  width of the bitmap.
+         * @param height height of the bitmap.
+         */
+        void renderRows(int[] pixels, int width, int height, int rowStart, int rowEnd);
+    }
+
+    /**
+     * One of several tasks run by {@link #runAll(int, Task)}.
+     */
+    interface Task {
+        void run(int index);
+    }
+
+    /**
+     * Receives the finished bitmap on the UI thread. Not called if the job
+     * was cancelled.
+     */
+    interface Callback {
+        void onRasterReady(Bitmap bitmap, long durationNanos);
+    }
+
+    /**
+     * A raster job. It is created without running, so the caller can keep
+     * it before {@link #start()} delivers a small bitmap.
+     */
+    static final class Job implements Runnable {
+        private final int mWidth;
+        private final int mHeight;
+        private final RowRenderer mRenderer;
+        private final Callback mCallback;
+        private final AtomicInteger mRemainingBands;
+        private final long mStartTime;
+
+        /**
+         * The pixels, allocated by the first band so a large bitmap isn't
+         * allocated on the UI thread.
+         */
+        private volatile int[] mPixels;
+
+        /**
+         * The first exception thrown by a band, thrown again on the UI
+         * thread by {@link #run()}.
+         */
+        private final AtomicReference<Throwable> mError = new AtomicReference<>();
+
+        private volatile boolean mCancelled;
+        private Bitmap mBitmap;
+        private long mDurationNanos;
+
+        /**
+         * @param width    width of the bitmap.
+         * @param height   height of the bitmap.
+         * @param renderer generates the pixels.
+         * @param callback receives the bitmap.
+         */
+        Job(int width, int height, RowRenderer renderer, Callback callback) {
+            mWidth = width;
+            mHeight = height;
+            mRenderer = renderer;
+            mCallback = callback;
+            mRemainingBands = new AtomicInteger(bandCount(height));
+            mStartTime = System.nanoTime();
+        }
+
+        /**
+         * Start generating the bitmap. Must be called on the UI thread, once.
+         * Small bitmaps are generated and delivered before this method
+         * returns.
+         */
+        void start() {
+            int bands = bandCount(mHeight);
+            if (mWidth * mHeight < SYNC_PIXELS) {
+                for (int band = 0; band < bands; band++) {
+                    if (renderBand(band)) {
+                        run();
+                    }
+                }
+                return;
+            }
+            for (int band = 0; band < bands; band++) {
+                final int index = band;
+                sExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (renderBand(index)) {
+                            MainHandler.INSTANCE.post(Job.this);
+                        }
+                    }
+                });
+            }
+        }
+
+        /**
+         * Stop the job. Bands that haven't started are skipped and the
+         * callback won't be called. Must be called on the UI thread.
+         */
+        void cancel() {
+            mCancelled = true;
+        }
+
+        boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Generate one band. A band that throws is recorded, the others are
+         * skipped and the exception is thrown by {@link #run()}.
+         *
+         * @return {@code true} if this was the last band and the bitmap has
+         * been created or a band failed.
+         */
+        boolean renderBand(int band) {
+            try {
+                if (!mCancelled && mError.get() == null) {
+                    int rowStart = band * ROWS_PER_BAND;
+                    mRenderer.renderRows(pixels(), mWidth, mHeight, rowStart,
+                            Math.min(mHeight, rowStart + ROWS_PER_BAND));
+                }
+            } catch (Throwable e) {
+                mError.compareAndSet(null, e);
+            }
+            // Counted whether the band failed or not, so the job always ends.
+            if (mRemainingBands.decrementAndGet() != 0 || mCancelled) {
+                return false;
+            }
+            if (mError.get() == null) {
+                try {
+                    mBitmap = Bitmap.createBitmap(pixels(), mWidth, mHeight,
+                            Bitmap.Config.ARGB_8888);
+                    mDurationNanos = System.nanoTime() - mStartTime;
+                } catch (Throwable e) {
+                    mError.compareAndSet(null, e);
+                }
+            }
+            return true;
+        }
+
+        private int[] pixels() {
+            int[] pixels = mPixels;
+            if (pixels == null) {
+                synchronized (this) {
+                    pixels = mPixels;
+                    if (pixels == null) {
+                        pixels = new int[mWidth * mHeight];
+                        mPixels = pixels;
+                    }
+                }
+            }
+            return pixels;
+        }
+
+        /**
+         * Delivers the result on the UI thread, or throws the exception of a
+         * failed band.
+         */
+        @Override
+        public void run() {
+            if (mCancelled) {
+                if (mBitmap != null) {
+                    mBitmap.recycle();
+                }
+                return;
+            }
+            Throwable e = mError.get();
+            if (e != null) {
+                rethrow(e);
+            }
+            mCallback.onRasterReady(mBitmap, mDurationNanos);
+        }
+    }
+
+    private RasterPipeline() {
+    }
+
+    static int bandCount(int height) {
+        return (height + ROWS_PER_BAND - 1) / ROWS_PER_BAND;
+    }
+
+    /**
+     * Run tasks on the raster threads and the calling thread and wait until
+     * all of them are done. Must not be called on a raster thread.
+     *
+     * @param count number of tasks.
+     * @param task  runs the task of an index from 0 to {@code count} - 1.
+     * @throws RuntimeException if a task threw it, after all tasks ended.
+     */
+    static void runAll(final int count, final Task task) {
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        int helpers = Math.min(MAX_THREADS, count - 1);
+        final CountDownLatch done = new CountDownLatch(Math.max(0, helpers));
+        final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int index;
+                while ((index = next.getAndIncrement()) < count) {
+                    try {
+                        task.run(index);
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            }
+        };
+        for (int i = 0; i < helpers; i++) {
+            sExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    worker.run();
+                    done.countDown();
+                }
+            });
+        }
+        worker.run();
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Throwable e = error.get();
+        if (e != null) {
+            rethrow(e);
+        }
+    }
+
+    private static void rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new RuntimeException(e);
+    }
+}
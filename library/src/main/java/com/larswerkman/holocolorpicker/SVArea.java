@@ -0,0 +1,545 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ComposeShader;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Shader;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewParent;
+
+/**
+ * Displays a square to select saturation (horizontal) and value (vertical)
+ * of the hue selected on the {@link ColorPicker}.
+ *
+ * <p>
+ * The gradient is rendered into a cached tile bitmap by composing a
+ * saturation and a value gradient. The tile is only rendered again when the
+ * hue changes, and the bitmap is reused until the size changes.
+ * </p>
+ *
+ * <p>
+ * Use {@link ColorPicker#addSVArea(SVArea)} to connect the area.
+ * </p>
+ */
+public class SVArea extends View {
+
+    /**
+     * The size of the square.
+     */
+    private int mAreaSize;
+    private int mPreferredAreaSize;
+
+    /**
+     * The radius of the pointer.
+     */
+    private int mPointerRadius;
+
+    /**
+     * The radius of the halo of the pointer. The square is inset by this
+     * radius so the pointer is never clipped.
+     */
+    private int mPointerHaloRadius;
+
+    /**
+     * {@code Paint} instance used to draw the pointer.
+     */
+    private Paint mPointerPaint;
+
+    /**
+     * {@code Paint} instance used to draw the halo of the pointer.
+     */
+    private Paint mPointerHaloPaint;
+
+    /**
+     * {@code Paint} instance used to render the tile.
+     */
+    private Paint mTilePaint;
+
+    /**
+     * Vertical white to black gradient. Doesn't depend on the hue, so it
+     * is only created when the size changes.
+     */
+    private Shader mValueShader;
+
+    /**
+     * Cached rendering of the square for {@link #mTileHue}.
+     */
+    private Bitmap mTile;
+    private Canvas mTileCanvas;
+
+    /**
+     * The hue the tile was rendered for, {@code NaN} if the tile has to be
+     * rendered.
+     */
+    private float mTileHue = Float.NaN;
+
+    /**
+     * Fully saturated color of the tile hue, reused on every render.
+     */
+    private final float[] mTileHSV = new float[]{0f, 1f, 1f};
+
+    /**
+     * Hue, saturation and value of the selected color.
+     */
+    private float[] mHSV = new float[]{0f, 1f, 1f};
+
+    /**
+     * The ARGB value of the currently selected color.
+     */
+    private int mColor;
+
+    /**
+     * Id of the pointer that moves the pointer, {@code INVALID_POINTER_ID}
+     * while the user doesn't touch the area.
+     */
+    private int mActivePointerId = MotionEvent.INVALID_POINTER_ID;
+
+    /**
+     * {@code ColorPicker} instance used to control the ColorPicker.
+     */
+    private ColorPicker mPicker = null;
+
+    /**
+     * Collects the data reported to the {@code PickerMetrics} instance.
+     */
+    final MetricsTracker mTracker = new MetricsTracker(this, "SVArea");
+
+    public SVArea(Context context) {
+        super(context);
+        init(null, 0);
+    }
+
+    public SVArea(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init(attrs, 0);
+    }
+
+    public SVArea(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        init(attrs, defStyle);
+    }
+
+    private void init(AttributeSet attrs, int defStyle) {
+        final TypedArray a = getContext().obtainStyledAttributes(attrs,
+                R.styleable.SVArea, defStyle, 0);
+        final Resources b = getContext().getResources();
+
+        mAreaSize = a.getDimensionPixelSize(R.styleable.SVArea_sv_area_size,
+                b.getDimensionPixelSize(R.dimen.sv_area_size));
+        mPreferredAreaSize = mAreaSize;
+        mPointerRadius = a.getDimensionPixelSize(
+                R.styleable.SVArea_sv_area_pointer_radius,
+                b.getDimensionPixelSize(R.dimen.sv_area_pointer_radius));
+        mPointerHaloRadius = a.getDimensionPixelSize(
+                R.styleable.SVArea_sv_area_pointer_halo_radius,
+                b.getDimensionPixelSize(R.dimen.sv_area_pointer_halo_radius));
+        int pointerHaloColor = a.getColor(
+                R.styleable.SVArea_sv_area_pointer_halo_color,
+                b.getColor(R.color.sv_area_pointer_halo_color, null));
+        a.recycle();
+
+        mPointerHaloPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mPointerHaloPaint.setColor(pointerHaloColor);
+
+        mPointerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+        mTilePaint = new Paint();
+
+        mColor = Color.HSVToColor(mHSV);
+        mPointerPaint.setColor(mColor);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int intrinsicSize = mPreferredAreaSize + (mPointerHaloRadius * 2);
+
+        int width = resolveSize(intrinsicSize, widthMeasureSpec);
+        int height = resolveSize(intrinsicSize, heightMeasureSpec);
+
+        int min = Math.min(width, height);
+        setMeasuredDimension(min, min);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+
+        PickerTrace.begin("SVArea#onSizeChanged");
+        try {
+            mAreaSize = Math.max(1, Math.min(w, h) - (mPointerHaloRadius * 2));
+
+            mValueShader = new LinearGradient(0, 0, 0, mAreaSize,
+                    Color.WHITE, Color.BLACK, Shader.TileMode.CLAMP);
+            mTracker.shaderRebuilt();
+
+            if (mTile == null || mTile.getWidth() != mAreaSize) {
+                if (mTile != null) {
+                    mTile.recycle();
+                }
+                mTile = Bitmap.createBitmap(mAreaSize, mAreaSize, Bitmap.Config.ARGB_8888);
+                mTileCanvas = new Canvas(mTile);
+                mTracker.bitmapCreated();
+            }
+            mTileHue = Float.NaN;
+        } finally {
+            PickerTrace.end();
+        }
+    }
+
+    /**
+     * Render the tile for the current hue. The bitmap and the value gradient
+     * are reused, only the saturation gradient depends on the hue.
+     */
+    private void renderTile() {
+        PickerTrace.begin("SVArea#renderTile");
+        try {
+            mTileHSV[0] = mHSV[0];
+            Shader saturationShader = new LinearGradient(0, 0, mAreaSize, 0,
+                    Color.WHITE, mTracker.HSVToColor(mTileHSV), Shader.TileMode.CLAMP);
+            mTilePaint.setShader(new ComposeShader(mValueShader, saturationShader,
+                    PorterDuff.Mode.MULTIPLY));
+            mTracker.shaderRebuilt();
+            mTileCanvas.drawRect(0, 0, mAreaSize, mAreaSize, mTilePaint);
+            mTilePaint.setShader(null);
+            mTileHue = mHSV[0];
+        } finally {
+            PickerTrace.end();
+        }
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        mTracker.beginDraw();
+        try {
+            super.draw(canvas);
+        } finally {
+            mTracker.endDraw();
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mTile == null) {
+            return;
+        }
+        if (mTileHue != mHSV[0]) {
+            renderTile();
+        }
+        canvas.drawBitmap(mTile, mPointerHaloRadius, mPointerHaloRadius, null);
+
+        float cX = mPointerHaloRadius + mHSV[1] * mAreaSize;
+        float cY = mPointerHaloRadius + (1 - mHSV[2]) * mAreaSize;
+        canvas.drawCircle(cX, cY, mPointerHaloRadius, mPointerHaloPaint);
+        canvas.drawCircle(cX, cY, mPointerRadius, mPointerPaint);
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent event) {
+        ColorPicker picker = mPicker;
+        mTracker.beginTouch();
+        if (picker != null) {
+            picker.beginBarTouch(this);
+        }
+        try {
+            return super.dispatchTouchEvent(event);
+        } finally {
+            if (picker != null) {
+                picker.endBarTouch();
+            }
+            mTracker.endTouch();
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+                // Another pointer already moves the pointer, ignore this one.
+                if (mActivePointerId == MotionEvent.INVALID_POINTER_ID) {
+                    int downIndex = event.getActionIndex();
+                    mActivePointerId = event.getPointerId(downIndex);
+                    requestDisallowParentIntercept(true);
+                    movePointer(event.getX(downIndex), event.getY(downIndex));
+                }
+                break;
+            case MotionEvent.ACTION_MOVE:
+                int pointerIndex = mActivePointerId == MotionEvent.INVALID_POINTER_ID
+                        ? -1 : event.findPointerIndex(mActivePointerId);
+                if (pointerIndex >= 0) {
+                    movePointer(event.getX(pointerIndex), event.getY(pointerIndex));
+                }
+                break;
+            case MotionEvent.ACTION_POINTER_UP:
+                // Only the pointer moving the pointer ends the drag.
+                if (event.getPointerId(event.getActionIndex()) == mActivePointerId) {
+                    endDrag();
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                endDrag();
+                break;
+        }
+        return true;
+    }
+
+    private void endDrag() {
+        mActivePointerId = MotionEvent.INVALID_POINTER_ID;
+        requestDisallowParentIntercept(false);
+        if (mPicker != null) {
+            mPicker.recordHistory();
+        }
+    }
+
+    private void requestDisallowParentIntercept(boolean disallow) {
+        ViewParent parent = getParent();
+        if (parent != null) {
+            parent.requestDisallowInterceptTouchEvent(disallow);
+        }
+    }
+
+    /**
+     * Move the pointer to the touched position, clamped to the square.
+     */
+    private void movePointer(float x, float y) {
+        float saturation = Math.max(0f, Math.min(1f, (x - mPointerHaloRadius) / mAreaSize));
+        float value = Math.max(0f, Math.min(1f, 1 - (y - mPointerHaloRadius) / mAreaSize));
+        if (saturation == mHSV[1] && value == mHSV[2]) {
+            return;
+        }
+        mHSV[1] = saturation;
+        mHSV[2] = value;
+        updateColor();
+    }
+
+    /**
+     * Show the color without calling back into the {@code ColorPicker}. Used
+     * for animation frames and by {@link ColorPicker#setColor(int)}, which
+     * calls the listeners itself.
+     *
+     * @param color the picker's color, for its opacity.
+     * @param hsv   hue, saturation and value of the color.
+     */
+    void syncColor(int color, float[] hsv) {
+        mHSV[0] = hsv[0];
+        mHSV[1] = hsv[1];
+        mHSV[2] = hsv[2];
+        mColor = mTracker.HSVToColor(Color.alpha(color), mHSV);
+        mPointerPaint.setColor(mColor | 0xFF000000);
+        invalidate();
+    }
+
+    /**
+     * Update the color and tell the picker once. The color keeps the opacity
+     * of the picker's color.
+     */
+    private void updateColor() {
+        int alpha = mPicker != null ? Color.alpha(mPicker.getColor()) : 0xFF;
+        mColor = mTracker.HSVToColor(alpha, mHSV);
+        mPointerPaint.setColor(mColor | 0xFF000000);
+        if (mPicker != null) {
+            if (mPicker.hasOpacityBar()) {
+                // The opacity bar applies its opacity and tells the picker.
+                mPicker.changeOpacityBarColor(mColor);
+            } else {
+                mPicker.setNewCenterColor(mColor);
+            }
+        }
+        invalidate();
+    }
+
+    /**
+     * Set the hue of the area. Saturation and value stay where the pointer
+     * is.
+     *
+     * @param color color whose hue is shown by the area.
+     */
+    public void setColor(int color) {
+        float saturation = mHSV[1];
+        float value = mHSV[2];
+        mTracker.colorToHSV(color, mHSV);
+        mHSV[1] = saturation;
+        mHSV[2] = value;
+        updateColor();
+    }
+
+    /**
+     * Set the hue of the area and tell the picker once. Saturation and value
+     * stay where the pointer is, like the bars keep their pointers when the
+     * wheel turns.
+     *
+     * @param hue hue in degrees, between 0 and 360.
+     */
+    void setHue(float hue) {
+        mHSV[0] = hue;
+        updateColor();
+    }
+
+    float getSaturation() {
+        return mHSV[1];
+    }
+
+    float getValue() {
+        return mHSV[2];
+    }
+
+    /**
+     * Move the pointer to the given saturation and value.
+     *
+     * @param saturation float between 0 and 1
+     * @param value      float between 0 and 1
+     */
+    public void setSaturationValue(float saturation, float value) {
+        mHSV[1] = saturation;
+        mHSV[2] = value;
+        updateColor();
+    }
+
+    /**
+     * Set the hue, the saturation and the value at once, telling the picker
+     * once.
+     *
+     * @param hue        hue in degrees, between 0 and 360.
+     * @param saturation float between 0 and 1
+     * @param value      float between 0 and 1
+     */
+    public void setHsv(float hue, float saturation, float value) {
+        mHSV[0] = hue;
+        mHSV[1] = saturation;
+        mHSV[2] = value;
+        updateColor();
+    }
+
+    /**
+     * Get the currently selected color.
+     *
+     * @return The ARGB value of the currently selected color.
+     */
+    public int getColor() {
+        return mColor;
+    }
+
+    /**
+     * Adds a {@code ColorPicker} instance to the area. <br>
+     * <br>
+     * WARNING: Don't change the color picker. it is done already when the
+     * area is added to the ColorPicker
+     *
+     * @param picker
+     * @see ColorPicker#addSVArea(SVArea)
+     */
+    public void setColorPicker(ColorPicker picker) {
+        mPicker = picker;
+    }
+
+    /**
+     * Set a metrics instance that receives timing and counter data of this
+     * area. Pass {@code null} to stop collecting.
+     *
+     * @param metrics {@code PickerMetrics}
+     */
+    public void setMetrics(PickerMetrics metrics) {
+        mTracker.setMetrics(metrics);
+    }
+
+    /**
+     * Gets the metrics instance
+     *
+     * @return {@code PickerMetrics}
+     */
+    public PickerMetrics getMetrics() {
+        return mTracker.getMetrics();
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        state.hue = mHSV[0];
+        state.saturation = mHSV[1];
+        state.value = mHSV[2];
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+
+        // The tile is rendered on the next draw, the picker restores its
+        // own color.
+        mHSV[0] = savedState.hue;
+        mHSV[1] = savedState.saturation;
+        mHSV[2] = savedState.value;
+        mColor = mTracker.HSVToColor(mHSV);
+        mPointerPaint.setColor(mColor);
+        invalidate();
+    }
+
+    /**
+     * Instance state of the area.
+     */
+    static class SavedState extends BaseSavedState {
+        float hue;
+        float saturation;
+        float value;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        SavedState(Parcel source) {
+            super(source);
+            hue = source.readFloat();
+            saturation = source.readFloat();
+            value = source.readFloat();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeFloat(hue);
+            out.writeFloat(saturation);
+            out.writeFloat(value);
+        }
+
+        public static final Creator<SavedState> CREATOR = new Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel source) {
+                return new SavedState(source);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+}
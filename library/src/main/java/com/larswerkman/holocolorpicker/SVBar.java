@@ -21,20 +21,11 @@ import android.graphics.Color;
 import android.graphics.LinearGradient;
 import android.graphics.Point;
 import android.graphics.Shader;
-import android.os.Bundle;
-import android.os.Parcelable;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
 
 public class SVBar extends ColorBar {
 
-    /*
-     * Constants used to save/restore the instance state.
-     */
-    private static final String STATE_SATURATION = "saturation";
-    private static final String STATE_VALUE = "value";
-
-
     public SVBar(Context context) {
         super(context);
     }
@@ -61,112 +52,136 @@ public class SVBar extends ColorBar {
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
 
-        // Update variables that depend of mBarLength.
-        Point topLeft = getTopLeft();
-        if (!isInEditMode()) {
-            shader = new LinearGradient(mBarPointerHaloRadius, 0,
-                    topLeft.x, topLeft.y, new int[]{
-                    0xffffffff, Color.HSVToColor(mHSVColor), 0xff000000},
-                    null, Shader.TileMode.CLAMP);
-        } else {
-            shader = new LinearGradient(mBarPointerHaloRadius, 0,
-                    topLeft.x, topLeft.y, new int[]{
-                    0xffffffff, 0xff81ff00, 0xff000000}, null,
-                    Shader.TileMode.CLAMP);
-            Color.colorToHSV(0xff81ff00, mHSVColor);
-        }
+        PickerTrace.begin("SVBar#onSizeChanged");
+        try {
+            // Update variables that depend of mBarLength.
+            Point topLeft = getTopLeft();
+            if (!isInEditMode()) {
+                shader = new LinearGradient(mBarPointerHaloRadius, 0,
+                        topLeft.x, topLeft.y, new int[]{
+                        0xffffffff, mTracker.HSVToColor(mHSVColor), 0xff000000},
+                        null, Shader.TileMode.CLAMP);
+            } else {
+                shader = new LinearGradient(mBarPointerHaloRadius, 0,
+                        topLeft.x, topLeft.y, new int[]{
+                        0xffffffff, 0xff81ff00, 0xff000000}, null,
+                        Shader.TileMode.CLAMP);
+                mTracker.colorToHSV(0xff81ff00, mHSVColor);
+            }
 
-        mBarPaint.setShader(shader);
-        mPosToValueFactor = 1 / ((float) mBarLength / 2);
-        mValueToPosFactor = ((float) mBarLength / 2) / 1;
-        float[] hsvColor = new float[3];
-        Color.colorToHSV(mColor, hsvColor);
-        if (hsvColor[1] < hsvColor[2]) {
-            mBarPointerPosition = Math.round((mValueToPosFactor * hsvColor[1])
-                    + mBarPointerHaloRadius);
-        } else {
-            mBarPointerPosition = Math
-                    .round((mValueToPosFactor * (1 - hsvColor[2]))
-                            + mBarPointerHaloRadius + (mBarLength / 2));
-        }
-        if (isInEditMode()) {
-            mBarPointerPosition = (mBarLength / 2) + mBarPointerHaloRadius;
+            mBarPaint.setShader(shader);
+            mTracker.shaderRebuilt();
+            mPosToValueFactor = 1 / ((float) mBarLength / 2);
+            mValueToPosFactor = ((float) mBarLength / 2) / 1;
+            if (applyRestoredPointerPosition()) {
+                // Staged by onRestoreInstanceState(), the color follows the pointer.
+                calculateColor(mBarPointerPosition);
+                mBarPointerPaint.setColor(mColor);
+            } else if (!isInEditMode()) {
+                float[] hsvColor = mTempHSV;
+                mTracker.colorToHSV(mColor, hsvColor);
+                if (hsvColor[1] < hsvColor[2]) {
+                    mBarPointerPosition = Math.round((mValueToPosFactor * hsvColor[1])
+                            + mBarPointerHaloRadius);
+                } else {
+                    mBarPointerPosition = Math
+                            .round((mValueToPosFactor * (1 - hsvColor[2]))
+                                    + mBarPointerHaloRadius + (mBarLength / 2));
+                }
+            } else {
+                mBarPointerPosition = (mBarLength / 2) + mBarPointerHaloRadius;
+            }
+        } finally {
+            PickerTrace.end();
         }
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        getParent().requestDisallowInterceptTouchEvent(true);
-
-        // Convert coordinates to our internal coordinate system
+        // Coordinate of the followed pointer along the bar
         float dimen;
-        if (mOrientation == ORIENTATION_HORIZONTAL) {
-            dimen = event.getX();
-        } else {
-            dimen = event.getY();
-        }
 
-        switch (event.getAction()) {
+        switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
-                mIsMovingPointer = true;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if (!startTrackingPointer(event)) {
+                    break;
+                }
+                dimen = getPointerDimen(event, event.getActionIndex());
                 // Check whether the user pressed on the pointer
                 if (dimen >= (mBarPointerHaloRadius)
-                        && dimen <= (mBarPointerHaloRadius + mBarLength)) {
-                    mBarPointerPosition = Math.round(dimen);
-                    calculateColor(Math.round(dimen));
+                        && dimen <= (mBarPointerHaloRadius + mBarLength)
+                        && hasPointerMoved(dimen)) {
+                    mBarPointerPosition = snapPosition(Math.round(dimen));
+                    calculateColor(mBarPointerPosition);
                     mBarPointerPaint.setColor(mColor);
                     invalidate();
                 }
                 break;
             case MotionEvent.ACTION_MOVE:
-                if (mIsMovingPointer) {
-                    // Move the the pointer on the bar.
-                    if (dimen >= mBarPointerHaloRadius
-                            && dimen <= (mBarPointerHaloRadius + mBarLength)) {
-                        mBarPointerPosition = Math.round(dimen);
-                        calculateColor(Math.round(dimen));
-                        mBarPointerPaint.setColor(mColor);
-                        if (mPicker != null) {
-                            mPicker.setNewCenterColor(mColor);
-                            mPicker.changeOpacityBarColor(mColor);
-                        }
-                        invalidate();
-                    } else if (dimen < mBarPointerHaloRadius) {
-                        mBarPointerPosition = mBarPointerHaloRadius;
-                        mColor = Color.WHITE;
-                        mBarPointerPaint.setColor(mColor);
-                        if (mPicker != null) {
-                            mPicker.setNewCenterColor(mColor);
-                            mPicker.changeOpacityBarColor(mColor);
-                        }
-                        invalidate();
-                    } else if (dimen > (mBarPointerHaloRadius + mBarLength)) {
-                        mBarPointerPosition = mBarPointerHaloRadius + mBarLength;
-                        mColor = Color.BLACK;
-                        mBarPointerPaint.setColor(mColor);
-                        if (mPicker != null) {
-                            mPicker.setNewCenterColor(mColor);
-                            mPicker.changeOpacityBarColor(mColor);
-                        }
-                        invalidate();
-                    }
+                int pointerIndex = findActivePointerIndex(event);
+                if (pointerIndex < 0) {
+                    break;
                 }
+                movePointer(getPointerDimen(event, pointerIndex));
                 break;
             case MotionEvent.ACTION_UP:
-                mIsMovingPointer = false;
+            case MotionEvent.ACTION_POINTER_UP:
+            case MotionEvent.ACTION_CANCEL:
+                stopTrackingPointer(event);
                 break;
         }
         return true;
     }
 
+    @Override
+    protected int getAccessibilityLabel() {
+        return R.string.color_bar_sv;
+    }
+
+    @Override
+    protected void movePointer(float dimen) {
+        if (hasPointerMoved(dimen)) {
+            // Move the the pointer on the bar.
+            if (dimen >= mBarPointerHaloRadius
+                    && dimen <= (mBarPointerHaloRadius + mBarLength)) {
+                mBarPointerPosition = snapPosition(Math.round(dimen));
+                calculateColor(mBarPointerPosition);
+                mBarPointerPaint.setColor(mColor);
+                if (mPicker != null) {
+                    mPicker.setNewCenterColor(mColor);
+                    mPicker.changeOpacityBarColor(mColor);
+                }
+                invalidate();
+            } else if (dimen < mBarPointerHaloRadius) {
+                mBarPointerPosition = mBarPointerHaloRadius;
+                mColor = Color.WHITE;
+                mBarPointerPaint.setColor(mColor);
+                if (mPicker != null) {
+                    mPicker.setNewCenterColor(mColor);
+                    mPicker.changeOpacityBarColor(mColor);
+                }
+                invalidate();
+            } else if (dimen > (mBarPointerHaloRadius + mBarLength)) {
+                mBarPointerPosition = mBarPointerHaloRadius + mBarLength;
+                mColor = Color.BLACK;
+                mBarPointerPaint.setColor(mColor);
+                if (mPicker != null) {
+                    mPicker.setNewCenterColor(mColor);
+                    mPicker.changeOpacityBarColor(mColor);
+                }
+                invalidate();
+            }
+        }
+    }
+
     /**
      * Set the pointer on the bar. With the saturation value.
      *
      * @param saturation float between 0 and 1
      */
     public void setSaturation(float saturation) {
-        mBarPointerPosition = Math.round((mValueToPosFactor * saturation)
-                + mBarPointerHaloRadius);
+        mBarPointerPosition = saturationToPosition(saturation);
         calculateColor(mBarPointerPosition);
         mBarPointerPaint.setColor(mColor);
         // Check whether the Saturation/Value bar is added to the ColorPicker
@@ -184,8 +199,7 @@ public class SVBar extends ColorBar {
      * @param value float between 0 and 1
      */
     public void setValue(float value) {
-        mBarPointerPosition = Math.round((mValueToPosFactor * (1 - value))
-                + mBarPointerHaloRadius + (mBarLength / 2f));
+        mBarPointerPosition = valueToPosition(value);
         calculateColor(mBarPointerPosition);
         mBarPointerPaint.setColor(mColor);
         // Check whether the Saturation/Value bar is added to the ColorPicker
@@ -199,13 +213,7 @@ public class SVBar extends ColorBar {
 
     @Override
     public void setColor(int color) {
-        Point topLeft = getTopLeft();
-
-        Color.colorToHSV(color, mHSVColor);
-        shader = new LinearGradient(mBarPointerHaloRadius, 0,
-                topLeft.x, topLeft.y, new int[]{Color.WHITE, color, Color.BLACK}, null,
-                Shader.TileMode.CLAMP);
-        mBarPaint.setShader(shader);
+        applyBaseColor(color);
         calculateColor(mBarPointerPosition);
         mBarPointerPaint.setColor(mColor);
         if (mPicker != null) {
@@ -217,57 +225,67 @@ public class SVBar extends ColorBar {
     }
 
     /**
-     * Calculate the color selected by the pointer on the bar.
+     * Set the base hue of the bar, and rebuild the white-to-color-to-black
+     * gradient if the color changed.
      *
-     * @param coord Coordinate of the pointer.
+     * @param color the color shown in the middle of the bar.
      */
-    private void calculateColor(int coord) {
-        coord = coord - mBarPointerHaloRadius;
-        if (coord > (mBarLength / 2) && (coord < mBarLength)) {
-            mColor = Color
-                    .HSVToColor(new float[]{
-                            mHSVColor[0], 1f, 1 - (mPosToValueFactor * (coord - (mBarLength / 2)))
-                    });
-        } else if (coord > 0 && coord < mBarLength) {
-            mColor = Color.HSVToColor(new float[]{
-                    mHSVColor[0], (mPosToValueFactor * coord), 1f
-            });
-        } else if (coord == (mBarLength / 2)) {
-            mColor = Color.HSVToColor(new float[]{
-                    mHSVColor[0], 1f, 1f
-            });
-        } else if (coord <= 0) {
-            mColor = Color.WHITE;
-        } else if (coord >= mBarLength) {
-            mColor = Color.BLACK;
+    private void applyBaseColor(int color) {
+        mTracker.colorToHSV(color, mHSVColor);
+        if (needsShader(color)) {
+            Point topLeft = getTopLeft();
+            setShader(new LinearGradient(mBarPointerHaloRadius, 0,
+                    topLeft.x, topLeft.y, new int[]{Color.WHITE, color, Color.BLACK}, null,
+                    Shader.TileMode.CLAMP), color);
         }
     }
 
-    @Override
-    protected Parcelable onSaveInstanceState() {
-        Bundle state = (Bundle) super.onSaveInstanceState();
+    private int saturationToPosition(float saturation) {
+        return Math.round((mValueToPosFactor * saturation)
+                + mBarPointerHaloRadius);
+    }
 
-        float[] hsvColor = new float[3];
-        Color.colorToHSV(mColor, hsvColor);
-        if (hsvColor[1] < hsvColor[2]) {
-            state.putFloat(STATE_SATURATION, hsvColor[1]);
-        } else {
-            state.putFloat(STATE_VALUE, hsvColor[2]);
-        }
+    private int valueToPosition(float value) {
+        return Math.round((mValueToPosFactor * (1 - value))
+                + mBarPointerHaloRadius + (mBarLength / 2f));
+    }
 
-        return state;
+    @Override
+    protected void syncColor(int color, float[] hsv) {
+        applyBaseColor(color);
+        // Same choice as ColorPicker#setColor(int).
+        if (hsv[1] < hsv[2]) {
+            mBarPointerPosition = saturationToPosition(hsv[1]);
+        } else if (hsv[1] > hsv[2]) {
+            mBarPointerPosition = valueToPosition(hsv[2]);
+        }
+        calculateColor(mBarPointerPosition);
+        mBarPointerPaint.setColor(mColor);
+        invalidate();
     }
 
     @Override
-    protected void onRestoreInstanceState(Parcelable state) {
-        super.onRestoreInstanceState(state);
+    protected int getColorAt(float fraction) {
+        // White to the full hue in the first half, then to black.
+        if (fraction <= 0.5f) {
+            return ColorMath.hsvToColor(0xFF, mHSVColor[0], 2 * fraction, 1f);
+        }
+        return ColorMath.hsvToColor(0xFF, mHSVColor[0], 1f, 2 - 2 * fraction);
+    }
 
-        Bundle savedState = (Bundle) state;
-        setColor(Color.HSVToColor(savedState.getFloatArray(STATE_COLOR)));
-        if (savedState.containsKey(STATE_SATURATION)) {
-            setSaturation(savedState.getFloat(STATE_SATURATION));
-        } else {
-            setValue(savedState.getFloat(STATE_VALUE));
+    private void calculateColor(int coord) {
+        coord = coord - mBarPointerHaloRadius;
+        if (coord > (mBarLength / 2) && (coord < mBarLength)) {
+            mColor = mTracker.HSVToColor(
+                    mHSVColor[0], 1f, 1 - (mPosToValueFactor * (coord - (mBarLength / 2))));
+        } else if (coord > 0 && coord < mBarLength) {
+            mColor = mTracker.HSVToColor(mHSVColor[0], (mPosToValueFactor * coord), 1f);
+        } else if (coord == (mBarLength / 2)) {
+            mColor = mTracker.HSVToColor(mHSVColor[0], 1f, 1f);
+        } else if (coord <= 0) {
+            mColor = Color.WHITE;
+        } else if (coord >= mBarLength) {
+            mColor = Color.BLACK;
         }
     }
-}
\ No newline at end of file
+}
@@ -21,18 +21,11 @@ import android.graphics.Color;
 import android.graphics.LinearGradient;
 import android.graphics.Point;
 import android.graphics.Shader;
-import android.os.Bundle;
-import android.os.Parcelable;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
 
 public class SaturationBar extends ColorBar {
 
-    /*
-     * Constants used to save/restore the instance state.
-     */
-    private static final String STATE_SATURATION = "saturation";
-
     /**
      * Saturation of the latest entry of the onSaturationChangedListener.
      */
@@ -44,6 +37,13 @@ public class SaturationBar extends ColorBar {
      */
     private OnSaturationChangedListener onSaturationChangedListener;
 
+    /**
+     * Listeners added with {@code addOnSaturationChangedListener}, called after the one set with
+     * the setter.
+     */
+    private final ListenerList<OnSaturationChangedListener> mSaturationChangedListeners =
+            new ListenerList<>(new OnSaturationChangedListener[0]);
+
 
     public interface OnSaturationChangedListener {
         public void onSaturationChanged(int saturation);
@@ -57,6 +57,20 @@ public class SaturationBar extends ColorBar {
         return this.onSaturationChangedListener;
     }
 
+    /**
+     * Add a listener in addition to the one set with the setter. Can be
+     * called from any thread, the listener is called on the UI thread.
+     *
+     * @param listener the listener, added once even if added again.
+     */
+    public void addOnSaturationChangedListener(OnSaturationChangedListener listener) {
+        mSaturationChangedListeners.add(listener);
+    }
+
+    public void removeOnSaturationChangedListener(OnSaturationChangedListener listener) {
+        mSaturationChangedListeners.remove(listener);
+    }
+
 
     public SaturationBar(Context context) {
         super(context);
@@ -82,118 +96,142 @@ public class SaturationBar extends ColorBar {
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
 
-        // Update variables that depend of mBarLength.
-        Point topLeft = getTopLeft();
-        if (!isInEditMode()) {
-            shader = new LinearGradient(mBarPointerHaloRadius, 0,
-                    topLeft.x, topLeft.y, new int[]{
-                    Color.WHITE,
-                    Color.HSVToColor(0xFF, mHSVColor)}, null,
-                    Shader.TileMode.CLAMP);
-        } else {
-            shader = new LinearGradient(mBarPointerHaloRadius, 0,
-                    topLeft.x, topLeft.y, new int[]{
-                    Color.WHITE, 0xff81ff00}, null, Shader.TileMode.CLAMP);
-            Color.colorToHSV(0xff81ff00, mHSVColor);
-        }
-
-        mBarPaint.setShader(shader);
-        mPosToValueFactor = 1 / ((float) mBarLength);
-        mValueToPosFactor = ((float) mBarLength) / 1;
-
-        float[] hsvColor = new float[3];
-        Color.colorToHSV(mColor, hsvColor);
-
-        if (!isInEditMode()) {
-            mBarPointerPosition = Math.round((mValueToPosFactor * hsvColor[1])
-                    + mBarPointerHaloRadius);
-        } else {
-            mBarPointerPosition = mBarLength + mBarPointerHaloRadius;
+        PickerTrace.begin("SaturationBar#onSizeChanged");
+        try {
+            // Update variables that depend of mBarLength.
+            Point topLeft = getTopLeft();
+            if (!isInEditMode()) {
+                shader = new LinearGradient(mBarPointerHaloRadius, 0,
+                        topLeft.x, topLeft.y, new int[]{
+                        Color.WHITE,
+                        mTracker.HSVToColor(0xFF, mHSVColor)}, null,
+                        Shader.TileMode.CLAMP);
+            } else {
+                shader = new LinearGradient(mBarPointerHaloRadius, 0,
+                        topLeft.x, topLeft.y, new int[]{
+                        Color.WHITE, 0xff81ff00}, null, Shader.TileMode.CLAMP);
+                mTracker.colorToHSV(0xff81ff00, mHSVColor);
+            }
+
+            mBarPaint.setShader(shader);
+            mTracker.shaderRebuilt();
+            mPosToValueFactor = 1 / ((float) mBarLength);
+            mValueToPosFactor = ((float) mBarLength) / 1;
+
+            if (applyRestoredPointerPosition()) {
+                // Staged by onRestoreInstanceState(), the color follows the pointer.
+                calculateColor(mBarPointerPosition);
+                mBarPointerPaint.setColor(mColor);
+            } else if (!isInEditMode()) {
+                float[] hsvColor = mTempHSV;
+                mTracker.colorToHSV(mColor, hsvColor);
+                mBarPointerPosition = Math.round((mValueToPosFactor * hsvColor[1])
+                        + mBarPointerHaloRadius);
+            } else {
+                mBarPointerPosition = mBarLength + mBarPointerHaloRadius;
+            }
+        } finally {
+            PickerTrace.end();
         }
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        getParent().requestDisallowInterceptTouchEvent(true);
-
-        // Convert coordinates to our internal coordinate system
+        // Coordinate of the followed pointer along the bar
         float dimen;
-        if (mOrientation == ORIENTATION_HORIZONTAL) {
-            dimen = event.getX();
-        } else {
-            dimen = event.getY();
-        }
 
-        switch (event.getAction()) {
+        switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
-                mIsMovingPointer = true;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if (!startTrackingPointer(event)) {
+                    break;
+                }
+                dimen = getPointerDimen(event, event.getActionIndex());
                 // Check whether the user pressed on (or near) the pointer
                 if (dimen >= (mBarPointerHaloRadius)
-                        && dimen <= (mBarPointerHaloRadius + mBarLength)) {
-                    mBarPointerPosition = Math.round(dimen);
-                    calculateColor(Math.round(dimen));
+                        && dimen <= (mBarPointerHaloRadius + mBarLength)
+                        && hasPointerMoved(dimen)) {
+                    mBarPointerPosition = snapPosition(Math.round(dimen));
+                    calculateColor(mBarPointerPosition);
                     mBarPointerPaint.setColor(mColor);
                     invalidate();
                 }
                 break;
             case MotionEvent.ACTION_MOVE:
-                if (mIsMovingPointer) {
-                    // Move the the pointer on the bar.
-                    if (dimen >= mBarPointerHaloRadius
-                            && dimen <= (mBarPointerHaloRadius + mBarLength)) {
-                        mBarPointerPosition = Math.round(dimen);
-                        calculateColor(Math.round(dimen));
-                        mBarPointerPaint.setColor(mColor);
-                        if (mPicker != null) {
-                            mPicker.setNewCenterColor(mColor);
-                            mPicker.changeValueBarColor(mColor);
-                            mPicker.changeOpacityBarColor(mColor);
-                        }
-                        invalidate();
-                    } else if (dimen < mBarPointerHaloRadius) {
-                        mBarPointerPosition = mBarPointerHaloRadius;
-                        mColor = Color.WHITE;
-                        mBarPointerPaint.setColor(mColor);
-                        if (mPicker != null) {
-                            mPicker.setNewCenterColor(mColor);
-                            mPicker.changeValueBarColor(mColor);
-                            mPicker.changeOpacityBarColor(mColor);
-                        }
-                        invalidate();
-                    } else if (dimen > (mBarPointerHaloRadius + mBarLength)) {
-                        mBarPointerPosition = mBarPointerHaloRadius + mBarLength;
-                        mColor = Color.HSVToColor(mHSVColor);
-                        mBarPointerPaint.setColor(mColor);
-                        if (mPicker != null) {
-                            mPicker.setNewCenterColor(mColor);
-                            mPicker.changeValueBarColor(mColor);
-                            mPicker.changeOpacityBarColor(mColor);
-                        }
-                        invalidate();
-                    }
-                }
-                if (onSaturationChangedListener != null && oldChangedListenerSaturation != mColor) {
-                    onSaturationChangedListener.onSaturationChanged(mColor);
-                    oldChangedListenerSaturation = mColor;
+                int pointerIndex = findActivePointerIndex(event);
+                if (pointerIndex < 0) {
+                    break;
                 }
+                movePointer(getPointerDimen(event, pointerIndex));
                 break;
             case MotionEvent.ACTION_UP:
-                mIsMovingPointer = false;
+            case MotionEvent.ACTION_POINTER_UP:
+            case MotionEvent.ACTION_CANCEL:
+                stopTrackingPointer(event);
                 break;
         }
         return true;
     }
 
+    @Override
+    protected int getAccessibilityLabel() {
+        return R.string.color_bar_saturation;
+    }
+
+    @Override
+    protected void movePointer(float dimen) {
+        if (hasPointerMoved(dimen)) {
+            // Move the the pointer on the bar.
+            if (dimen >= mBarPointerHaloRadius
+                    && dimen <= (mBarPointerHaloRadius + mBarLength)) {
+                mBarPointerPosition = snapPosition(Math.round(dimen));
+                calculateColor(mBarPointerPosition);
+                mBarPointerPaint.setColor(mColor);
+                if (mPicker != null) {
+                    mPicker.setNewCenterColor(mColor);
+                    mPicker.changeValueBarColor(mColor);
+                    mPicker.changeOpacityBarColor(mColor);
+                }
+                invalidate();
+            } else if (dimen < mBarPointerHaloRadius) {
+                mBarPointerPosition = mBarPointerHaloRadius;
+                mColor = Color.WHITE;
+                mBarPointerPaint.setColor(mColor);
+                if (mPicker != null) {
+                    mPicker.setNewCenterColor(mColor);
+                    mPicker.changeValueBarColor(mColor);
+                    mPicker.changeOpacityBarColor(mColor);
+                }
+                invalidate();
+            } else if (dimen > (mBarPointerHaloRadius + mBarLength)) {
+                mBarPointerPosition = mBarPointerHaloRadius + mBarLength;
+                mColor = mTracker.HSVToColor(mHSVColor);
+                mBarPointerPaint.setColor(mColor);
+                if (mPicker != null) {
+                    mPicker.setNewCenterColor(mColor);
+                    mPicker.changeValueBarColor(mColor);
+                    mPicker.changeOpacityBarColor(mColor);
+                }
+                invalidate();
+            }
+        }
+        if (oldChangedListenerSaturation != mColor
+                && (onSaturationChangedListener != null || !mSaturationChangedListeners.isEmpty())) {
+            if (onSaturationChangedListener != null) {
+                mTracker.listenerInvoked();
+                onSaturationChangedListener.onSaturationChanged(mColor);
+            }
+            for (OnSaturationChangedListener listener : mSaturationChangedListeners.get()) {
+                mTracker.listenerInvoked();
+                listener.onSaturationChanged(mColor);
+            }
+            oldChangedListenerSaturation = mColor;
+        }
+    }
+
     @Override
     public void setColor(int color) {
-        Point topLeft = getTopLeft();
-
-        Color.colorToHSV(color, mHSVColor);
-        shader = new LinearGradient(mBarPointerHaloRadius, 0,
-                topLeft.x, topLeft.y, new int[]{
-                Color.WHITE, color}, null,
-                Shader.TileMode.CLAMP);
-        mBarPaint.setShader(shader);
+        applyBaseColor(color);
         calculateColor(mBarPointerPosition);
         mBarPointerPaint.setColor(mColor);
         if (mPicker != null) {
@@ -212,8 +250,7 @@ public class SaturationBar extends ColorBar {
      * @param saturation float between 0 and 1
      */
     public void setSaturation(float saturation) {
-        mBarPointerPosition = Math.round((mValueToPosFactor * saturation))
-                + mBarPointerHaloRadius;
+        mBarPointerPosition = saturationToPosition(saturation);
         calculateColor(mBarPointerPosition);
         mBarPointerPaint.setColor(mColor);
         if (mPicker != null) {
@@ -225,38 +262,48 @@ public class SaturationBar extends ColorBar {
     }
 
     /**
-     * Calculate the color selected by the pointer on the bar.
+     * Set the base hue of the bar, and rebuild the white-to-color gradient if
+     * the color changed.
      *
-     * @param coord Coordinate of the pointer.
+     * @param color the fully saturated end of the bar.
      */
-    private void calculateColor(int coord) {
-        coord = coord - mBarPointerHaloRadius;
-        if (coord < 0) {
-            coord = 0;
-        } else if (coord > mBarLength) {
-            coord = mBarLength;
+    private void applyBaseColor(int color) {
+        mTracker.colorToHSV(color, mHSVColor);
+        if (needsShader(color)) {
+            Point topLeft = getTopLeft();
+            setShader(new LinearGradient(mBarPointerHaloRadius, 0,
+                    topLeft.x, topLeft.y, new int[]{
+                    Color.WHITE, color}, null,
+                    Shader.TileMode.CLAMP), color);
         }
-        mColor = Color.HSVToColor(
-                new float[]{mHSVColor[0], (mPosToValueFactor * coord), 1f});
     }
 
-    @Override
-    protected Parcelable onSaveInstanceState() {
-        Bundle state = (Bundle) super.onSaveInstanceState();
-
-        float[] hsvColor = new float[3];
-        Color.colorToHSV(mColor, hsvColor);
-        state.putFloat(STATE_SATURATION, hsvColor[1]);
+    private int saturationToPosition(float saturation) {
+        return Math.round((mValueToPosFactor * saturation))
+                + mBarPointerHaloRadius;
+    }
 
-        return state;
+    @Override
+    protected void syncColor(int color, float[] hsv) {
+        applyBaseColor(color);
+        mBarPointerPosition = saturationToPosition(hsv[1]);
+        calculateColor(mBarPointerPosition);
+        mBarPointerPaint.setColor(mColor);
+        invalidate();
     }
 
     @Override
-    protected void onRestoreInstanceState(Parcelable state) {
-        super.onRestoreInstanceState(state);
+    protected int getColorAt(float fraction) {
+        return ColorMath.hsvToColor(0xFF, mHSVColor[0], fraction, 1f);
+    }
 
-        Bundle savedState = (Bundle) state;
-        setColor(Color.HSVToColor(savedState.getFloatArray(STATE_COLOR)));
-        setSaturation(savedState.getFloat(STATE_SATURATION));
+    private void calculateColor(int coord) {
+        coord = coord - mBarPointerHaloRadius;
+        if (coord < 0) {
+            coord = 0;
+        } else if (coord > mBarLength) {
+            coord = mBarLength;
+        }
+        mColor = mTracker.HSVToColor(mHSVColor[0], (mPosToValueFactor * coord), 1f);
     }
 }
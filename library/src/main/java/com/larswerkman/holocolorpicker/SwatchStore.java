@@ -0,0 +1,430 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Recent and favorite colors, stored in a small memory-mapped file.
+ *
+ * <p>
+ * The file has a fixed layout of ints: a header, then the recent colors,
+ * most recent first, then the favorite colors in the order they were
+ * added. Opening the store maps the file, so the colors are read without
+ * parsing, and an update only writes the ints that move.
+ * </p>
+ *
+ * <p>
+ * Recent colors are kept least recently used first out: a color that is
+ * already in the list moves to the front instead of being added twice.
+ * </p>
+ *
+ * <p>
+ * Every access holds a lock on the file, shared for reading and exclusive
+ * for writing, so several processes can use the same file. Within a
+ * process there is one store per file, use {@link #open(File, int, int)}
+ * to get it. The methods are thread-safe.
+ * </p>
+ */
+public final class SwatchStore implements Closeable {
+
+    private static final int MAGIC = 0x48435357; // "HCSW"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_RECENT_CAPACITY = 8;
+    private static final int OFFSET_FAVORITE_CAPACITY = 12;
+    private static final int OFFSET_STAMP = 16;
+    private static final int OFFSET_RECENT_COUNT = 20;
+    private static final int OFFSET_RECENT = 24;
+
+    private static final Map<String, SwatchStore> sStores = new HashMap<>();
+
+    private final String mPath;
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final MappedByteBuffer mBuffer;
+    private final int mRecentCapacity;
+    private final int mFavoriteCapacity;
+    private final int mFavoriteCountOffset;
+    private final int mFavoriteOffset;
+    private int mOpenCount;
+
+    /**
+     * Open the store of a file, creating the file if needed. An existing
+     * file is never reset, its colors stay until they are removed.
+     *
+     * @param file             the file.
+     * @param recentCapacity   maximum number of recent colors.
+     * @param favoriteCapacity maximum number of favorite colors.
+     * @return the store, to be closed with {@link #close()}. Opening the
+     * same file again returns the same store.
+     * @throws IOException if the file can't be opened or mapped, isn't a
+     *                     swatch file, or was created with other capacities.
+     */
+    public static SwatchStore open(File file, int recentCapacity, int favoriteCapacity)
+            throws IOException {
+        if (recentCapacity < 1 || favoriteCapacity < 0) {
+            throw new IllegalArgumentException("Invalid capacities");
+        }
+        String path = file.getCanonicalPath();
+        synchronized (sStores) {
+            SwatchStore store = sStores.get(path);
+            if (store == null) {
+                store = new SwatchStore(path, file, recentCapacity, favoriteCapacity);
+                sStores.put(path, store);
+            } else if (store.mRecentCapacity != recentCapacity
+                    || store.mFavoriteCapacity != favoriteCapacity) {
+                throw new IllegalStateException(
+                        "The file is already open with other capacities");
+            }
+            store.mOpenCount++;
+            return store;
+        }
+    }
+
+    private SwatchStore(String path, File file, int recentCapacity, int favoriteCapacity)
+            throws IOException {
+        mPath = path;
+        mRecentCapacity = recentCapacity;
+        mFavoriteCapacity = favoriteCapacity;
+        mFavoriteCountOffset = OFFSET_RECENT + 4 * recentCapacity;
+        mFavoriteOffset = mFavoriteCountOffset + 4;
+        int size = mFavoriteOffset + 4 * favoriteCapacity;
+
+        mFile = new RandomAccessFile(file, "rw");
+        try {
+            mChannel = mFile.getChannel();
+            FileLock lock = mChannel.lock();
+            try {
+                // Checked before mapping, which would grow the file.
+                boolean valid = checkHeader(file, size);
+                if (!valid) {
+                    // Left longer by an interrupted initialization.
+                    mChannel.truncate(size);
+                }
+                mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                if (!valid) {
+                    for (int offset = 0; offset < size; offset += 4) {
+                        mBuffer.putInt(offset, 0);
+                    }
+                    mBuffer.putInt(OFFSET_VERSION, FORMAT_VERSION);
+                    mBuffer.putInt(OFFSET_RECENT_CAPACITY, recentCapacity);
+                    mBuffer.putInt(OFFSET_FAVORITE_CAPACITY, favoriteCapacity);
+                    // Written last, so a half initialized file is invalid.
+                    mBuffer.putInt(OFFSET_MAGIC, MAGIC);
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Check the header of the file. Called with the exclusive lock held.
+     *
+     * @return {@code false} if the file is new, or its initialization was
+     * interrupted.
+     * @throws IOException if the file has other content or capacities.
+     */
+    private boolean checkHeader(File file, int size) throws IOException {
+        long length = mChannel.size();
+        ByteBuffer header = ByteBuffer.allocate(OFFSET_STAMP);
+        while (header.hasRemaining()) {
+            if (mChannel.read(header, header.position()) <= 0) {
+                break;
+            }
+        }
+        int magic = header.hasRemaining() ? 0 : header.getInt(OFFSET_MAGIC);
+        if (magic != MAGIC) {
+            if (magic != 0 || !isZero(header)) {
+                throw new IOException(file + " is not a swatch file");
+            }
+            // Empty, or the magic was never written.
+            return false;
+        }
+        if (header.getInt(OFFSET_VERSION) != FORMAT_VERSION) {
+            throw new IOException(file + " has an unknown format version "
+                    + header.getInt(OFFSET_VERSION));
+        }
+        int recentCapacity = header.getInt(OFFSET_RECENT_CAPACITY);
+        int favoriteCapacity = header.getInt(OFFSET_FAVORITE_CAPACITY);
+        if (recentCapacity != mRecentCapacity || favoriteCapacity != mFavoriteCapacity) {
+            throw new IOException(file + " holds " + recentCapacity + " recent and "
+                    + favoriteCapacity + " favorite colors, not " + mRecentCapacity
+                    + " and " + mFavoriteCapacity);
+        }
+        if (length != size) {
+            throw new IOException(file + " is " + length + " bytes, not " + size);
+        }
+        return true;
+    }
+
+    /**
+     * Check that the bytes read into a buffer are all 0.
+     */
+    private static boolean isZero(ByteBuffer buffer) {
+        for (int i = 0; i < buffer.position(); i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getRecentCapacity() {
+        return mRecentCapacity;
+    }
+
+    public int getFavoriteCapacity() {
+        return mFavoriteCapacity;
+    }
+
+    /**
+     * Get a number that changes with every update of the file, also by
+     * other processes. Compare it to decide whether colors read earlier
+     * are still current.
+     */
+    public synchronized int getStamp() throws IOException {
+        FileLock lock = lockShared();
+        try {
+            return mBuffer.getInt(OFFSET_STAMP);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Move a color to the front of the recent colors. If the list is full
+     * the least recently used color is dropped.
+     *
+     * @param color ARGB color.
+     */
+    public synchronized void addRecent(int color) throws IOException {
+        FileLock lock = lockExclusive();
+        try {
+            int count = count(OFFSET_RECENT_COUNT, mRecentCapacity);
+            int index = indexOf(OFFSET_RECENT, count, color);
+            if (index == 0) {
+                return;
+            }
+            int end;
+            if (index > 0) {
+                end = index;
+            } else {
+                end = Math.min(count, mRecentCapacity - 1);
+                mBuffer.putInt(OFFSET_RECENT_COUNT, end + 1);
+            }
+            for (int i = end; i > 0; i--) {
+                mBuffer.putInt(OFFSET_RECENT + 4 * i, mBuffer.getInt(OFFSET_RECENT + 4 * (i - 1)));
+            }
+            mBuffer.putInt(OFFSET_RECENT, color);
+            touch();
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Copy the recent colors, most recent first.
+     *
+     * @param colors receives the colors, at least
+     *               {@link #getRecentCapacity()} long.
+     * @return the number of colors.
+     */
+    public int getRecent(int[] colors) throws IOException {
+        return getRecent(colors, 0);
+    }
+
+    /**
+     * Copy the recent colors, most recent first, behind other colors.
+     *
+     * @param colors receives the colors, at least {@code start} +
+     *               {@link #getRecentCapacity()} long.
+     * @param start  index of the first recent color in {@code colors}.
+     * @return the number of colors.
+     */
+    public synchronized int getRecent(int[] colors, int start) throws IOException {
+        FileLock lock = lockShared();
+        try {
+            return read(count(OFFSET_RECENT_COUNT, mRecentCapacity), OFFSET_RECENT,
+                    colors, start);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Add a favorite color at the end of the favorites.
+     *
+     * @param color ARGB color.
+     * @return {@code false} if the color already is a favorite or there are
+     * {@link #getFavoriteCapacity()} favorites.
+     */
+    public synchronized boolean addFavorite(int color) throws IOException {
+        FileLock lock = lockExclusive();
+        try {
+            int count = count(mFavoriteCountOffset, mFavoriteCapacity);
+            if (count == mFavoriteCapacity || indexOf(mFavoriteOffset, count, color) >= 0) {
+                return false;
+            }
+            mBuffer.putInt(mFavoriteOffset + 4 * count, color);
+            mBuffer.putInt(mFavoriteCountOffset, count + 1);
+            touch();
+            return true;
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Remove a favorite color.
+     *
+     * @return {@code false} if the color isn't a favorite.
+     */
+    public synchronized boolean removeFavorite(int color) throws IOException {
+        FileLock lock = lockExclusive();
+        try {
+            int count = count(mFavoriteCountOffset, mFavoriteCapacity);
+            int index = indexOf(mFavoriteOffset, count, color);
+            if (index < 0) {
+                return false;
+            }
+            for (int i = index; i < count - 1; i++) {
+                mBuffer.putInt(mFavoriteOffset + 4 * i, mBuffer.getInt(mFavoriteOffset + 4 * (i + 1)));
+            }
+            mBuffer.putInt(mFavoriteCountOffset, count - 1);
+            touch();
+            return true;
+        } finally {
+            lock.release();
+        }
+    }
+
+    public synchronized boolean isFavorite(int color) throws IOException {
+        FileLock lock = lockShared();
+        try {
+            return indexOf(mFavoriteOffset, count(mFavoriteCountOffset, mFavoriteCapacity), color) >= 0;
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Copy the favorite colors.
+     *
+     * @param colors receives the colors, at least
+     *               {@link #getFavoriteCapacity()} long.
+     * @return the number of colors.
+     */
+    public synchronized int getFavorites(int[] colors) throws IOException {
+        FileLock lock = lockShared();
+        try {
+            return read(count(mFavoriteCountOffset, mFavoriteCapacity), mFavoriteOffset,
+                    colors, 0);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Remove all recent and favorite colors.
+     */
+    public synchronized void clear() throws IOException {
+        FileLock lock = lockExclusive();
+        try {
+            mBuffer.putInt(OFFSET_RECENT_COUNT, 0);
+            mBuffer.putInt(mFavoriteCountOffset, 0);
+            touch();
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Write the changes to the storage device. Other processes see the
+     * changes without it, it is only needed to survive a system crash.
+     */
+    public synchronized void flush() {
+        mBuffer.force();
+    }
+
+    /**
+     * Close the store once it was closed as often as it was opened.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (sStores) {
+            if (mOpenCount == 0 || --mOpenCount > 0) {
+                return;
+            }
+            sStores.remove(mPath);
+        }
+        synchronized (this) {
+            mBuffer.force();
+            mFile.close();
+        }
+    }
+
+    private FileLock lockShared() throws IOException {
+        return mChannel.lock(0, Long.MAX_VALUE, true);
+    }
+
+    private FileLock lockExclusive() throws IOException {
+        return mChannel.lock();
+    }
+
+    private void touch() {
+        mBuffer.putInt(OFFSET_STAMP, mBuffer.getInt(OFFSET_STAMP) + 1);
+    }
+
+    /**
+     * Read a count, clamped in case another writer left garbage.
+     */
+    private int count(int countOffset, int capacity) {
+        return Math.max(0, Math.min(capacity, mBuffer.getInt(countOffset)));
+    }
+
+    private int read(int count, int offset, int[] colors, int start) {
+        for (int i = 0; i < count; i++) {
+            colors[start + i] = mBuffer.getInt(offset + 4 * i);
+        }
+        return count;
+    }
+
+    private int indexOf(int offset, int count, int color) {
+        for (int i = 0; i < count; i++) {
+            if (mBuffer.getInt(offset + 4 * i) == color) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
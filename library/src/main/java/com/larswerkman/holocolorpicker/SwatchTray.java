@@ -0,0 +1,344 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+
+import java.io.IOException;
+
+/**
+ * Displays the favorite and recent colors of a {@link SwatchStore} in a row,
+ * favorites first.
+ *
+ * <p>
+ * Connected to a {@link ColorPicker} with
+ * {@link #setColorPicker(ColorPicker)}, every color selected on the picker
+ * becomes the most recent color. Tapping a swatch shows the current color as
+ * the old color of the picker and sets the swatch color. A long press adds
+ * the color to the favorites or removes it.
+ * </p>
+ *
+ * <p>
+ * The colors are read from the store when the tray is attached and after
+ * every change, and only if the store changed since the last read.
+ * </p>
+ */
+public class SwatchTray extends View {
+
+    /**
+     * Diameter of a swatch and the space between two swatches.
+     */
+    private int mSwatchSize;
+    private int mSwatchSpacing;
+
+    private Paint mSwatchPaint;
+
+    /**
+     * Ring marking the favorites.
+     */
+    private Paint mFavoritePaint;
+
+    private SwatchStore mStore;
+    private ColorPicker mPicker;
+
+    /**
+     * The colors read from the store, favorites first.
+     */
+    private int[] mColors = new int[0];
+    private int mFavoriteCount;
+    private int mColorCount;
+
+    /**
+     * {@link SwatchStore#getStamp()} of the colors, to skip reading them
+     * again when the store didn't change.
+     */
+    private int mStamp;
+    private boolean mStampValid;
+
+    /**
+     * The first error of the store, which is not used after that.
+     */
+    private IOException mError;
+
+    /**
+     * Index of the touched swatch, -1 while there is none.
+     */
+    private int mTouchedSwatch = -1;
+    private boolean mLongPressed;
+
+    private final Runnable mLongPress = new Runnable() {
+        @Override
+        public void run() {
+            if (mTouchedSwatch >= 0) {
+                mLongPressed = true;
+                toggleFavorite(mColors[mTouchedSwatch]);
+            }
+        }
+    };
+
+    private final ColorPicker.OnColorSelectedListener mRecentRecorder =
+            new ColorPicker.OnColorSelectedListener() {
+                @Override
+                public void onColorSelected(int color) {
+                    addRecent(color);
+                }
+            };
+
+    public SwatchTray(Context context) {
+        super(context);
+        init(null, 0);
+    }
+
+    public SwatchTray(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init(attrs, 0);
+    }
+
+    public SwatchTray(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        init(attrs, defStyle);
+    }
+
+    private void init(AttributeSet attrs, int defStyle) {
+        final TypedArray a = getContext().obtainStyledAttributes(attrs,
+                R.styleable.SwatchTray, defStyle, 0);
+        final Resources b = getContext().getResources();
+
+        mSwatchSize = a.getDimensionPixelSize(R.styleable.SwatchTray_swatch_size,
+                b.getDimensionPixelSize(R.dimen.swatch_size));
+        mSwatchSpacing = a.getDimensionPixelSize(R.styleable.SwatchTray_swatch_spacing,
+                b.getDimensionPixelSize(R.dimen.swatch_spacing));
+        int favoriteColor = a.getColor(R.styleable.SwatchTray_swatch_favorite_color,
+                b.getColor(R.color.swatch_favorite_color, null));
+        a.recycle();
+
+        mSwatchPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+        mFavoritePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mFavoritePaint.setStyle(Paint.Style.STROKE);
+        mFavoritePaint.setStrokeWidth(Math.max(1, mSwatchSize / 12));
+        mFavoritePaint.setColor(favoriteColor);
+    }
+
+    /**
+     * Show the colors of a store.
+     *
+     * @param store the store, which stays owned by the caller.
+     */
+    public void setSwatchStore(SwatchStore store) {
+        mStore = store;
+        mError = null;
+        mStampValid = false;
+        if (store != null) {
+            mColors = new int[store.getFavoriteCapacity() + store.getRecentCapacity()];
+        } else {
+            mColors = new int[0];
+            mColorCount = 0;
+            mFavoriteCount = 0;
+        }
+        reload();
+        requestLayout();
+    }
+
+    public SwatchStore getSwatchStore() {
+        return mStore;
+    }
+
+    /**
+     * Connect the tray to a picker. The colors selected on the picker are
+     * added to the recent colors and tapped swatches are set on the
+     * picker.
+     *
+     * @param picker the picker, {@code null} to disconnect.
+     */
+    public void setColorPicker(ColorPicker picker) {
+        if (mPicker != null) {
+            mPicker.removeOnColorSelectedListener(mRecentRecorder);
+        }
+        mPicker = picker;
+        if (picker != null) {
+            picker.addOnColorSelectedListener(mRecentRecorder);
+        }
+    }
+
+    /**
+     * Get the error that stopped the tray from using the store.
+     *
+     * @return the {@code IOException} or {@code null} if there was none.
+     */
+    public IOException getError() {
+        return mError;
+    }
+
+    /**
+     * Read the colors again if the store was changed, e.g. by another
+     * process.
+     */
+    public void reload() {
+        if (mStore == null || mError != null) {
+            return;
+        }
+        try {
+            int stamp = mStore.getStamp();
+            if (mStampValid && stamp == mStamp) {
+                return;
+            }
+            mFavoriteCount = mStore.getFavorites(mColors);
+            // Read behind the favorites, mColors has room for both.
+            int recentCount = mStore.getRecent(mColors, mFavoriteCount);
+            mColorCount = mFavoriteCount + recentCount;
+            mStamp = stamp;
+            mStampValid = true;
+        } catch (IOException e) {
+            mError = e;
+        }
+        invalidate();
+    }
+
+    private void addRecent(int color) {
+        if (mStore == null || mError != null) {
+            return;
+        }
+        try {
+            mStore.addRecent(color);
+        } catch (IOException e) {
+            mError = e;
+        }
+        reload();
+    }
+
+    private void toggleFavorite(int color) {
+        if (mStore == null || mError != null) {
+            return;
+        }
+        try {
+            if (!mStore.removeFavorite(color)) {
+                mStore.addFavorite(color);
+            }
+        } catch (IOException e) {
+            mError = e;
+        }
+        reload();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        reload();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int slots = Math.max(1, mColors.length);
+        int intrinsicWidth = slots * mSwatchSize + (slots - 1) * mSwatchSpacing;
+
+        int width = resolveSize(intrinsicWidth, widthMeasureSpec);
+        int height = resolveSize(mSwatchSize, heightMeasureSpec);
+        setMeasuredDimension(width, height);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        float radius = mSwatchSize / 2f;
+        float cy = getHeight() / 2f;
+        float ringRadius = radius - mFavoritePaint.getStrokeWidth() / 2;
+        for (int i = 0; i < mColorCount; i++) {
+            float cx = i * (mSwatchSize + mSwatchSpacing) + radius;
+            if (cx - radius > getWidth()) {
+                break;
+            }
+            mSwatchPaint.setColor(mColors[i]);
+            canvas.drawCircle(cx, cy, radius, mSwatchPaint);
+            if (i < mFavoriteCount) {
+                canvas.drawCircle(cx, cy, ringRadius, mFavoritePaint);
+            }
+        }
+    }
+
+    /**
+     * Get the swatch at a position.
+     *
+     * @return the index in {@code mColors} or -1.
+     */
+    private int findSwatch(float x, float y) {
+        if (y < 0 || y > getHeight() || x < 0) {
+            return -1;
+        }
+        int index = (int) (x / (mSwatchSize + mSwatchSpacing));
+        if (index >= mColorCount || x - index * (mSwatchSize + mSwatchSpacing) > mSwatchSize) {
+            return -1;
+        }
+        return index;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mTouchedSwatch = findSwatch(event.getX(), event.getY());
+                if (mTouchedSwatch < 0) {
+                    return false;
+                }
+                mLongPressed = false;
+                postDelayed(mLongPress, ViewConfiguration.getLongPressTimeout());
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (mTouchedSwatch >= 0
+                        && findSwatch(event.getX(), event.getY()) != mTouchedSwatch) {
+                    removeCallbacks(mLongPress);
+                    mTouchedSwatch = -1;
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+                removeCallbacks(mLongPress);
+                if (mTouchedSwatch >= 0 && !mLongPressed) {
+                    selectSwatch(mColors[mTouchedSwatch]);
+                }
+                mTouchedSwatch = -1;
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                removeCallbacks(mLongPress);
+                mTouchedSwatch = -1;
+                break;
+        }
+        return true;
+    }
+
+    private void selectSwatch(int color) {
+        if (mPicker != null) {
+            mPicker.setOldCenterColor(mPicker.getColor());
+            mPicker.setColor(color);
+            mPicker.recordHistory();
+        }
+        addRecent(color);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(mLongPress);
+        mTouchedSwatch = -1;
+    }
+}
@@ -21,22 +21,23 @@ import android.graphics.Color;
 import android.graphics.LinearGradient;
 import android.graphics.Point;
 import android.graphics.Shader;
-import android.os.Bundle;
-import android.os.Parcelable;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
 
 public class ValueBar extends ColorBar {
-	/*
-	 * Constants used to save/restore the instance state.
-	 */
-	private static final String STATE_VALUE = "value";
 
     /**
      * Interface and listener so that changes in ValueBar are sent
      * to the host activity/fragment
      */
     private OnValueChangedListener onValueChangedListener;
+
+    /**
+     * Listeners added with {@code addOnValueChangedListener}, called after the one set with
+     * the setter.
+     */
+    private final ListenerList<OnValueChangedListener> mValueChangedListeners =
+            new ListenerList<>(new OnValueChangedListener[0]);
     
 	/**
      * Value of the latest entry of the onValueChangedListener.
@@ -56,6 +57,20 @@ public class ValueBar extends ColorBar {
         return this.onValueChangedListener;
     }
 
+    /**
+     * Add a listener in addition to the one set with the setter. Can be
+     * called from any thread, the listener is called on the UI thread.
+     *
+     * @param listener the listener, added once even if added again.
+     */
+    public void addOnValueChangedListener(OnValueChangedListener listener) {
+        mValueChangedListeners.add(listener);
+    }
+
+    public void removeOnValueChangedListener(OnValueChangedListener listener) {
+        mValueChangedListeners.remove(listener);
+    }
+
 
 	public ValueBar(Context context) {
 		super(context);
@@ -83,116 +98,140 @@ public class ValueBar extends ColorBar {
 	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
 		super.onSizeChanged(w, h, oldw, oldh);
 
-		// Update variables that depend of mBarLength.
-		Point topLeft = getTopLeft();
-		if (!isInEditMode()) {
-			shader = new LinearGradient(mBarPointerHaloRadius, 0,
-					topLeft.x, topLeft.y,
-					new int[] { Color.HSVToColor(0xFF, mHSVColor), Color.BLACK },
-					null, Shader.TileMode.CLAMP);
-		} else {
-			shader = new LinearGradient(mBarPointerHaloRadius, 0,
-					topLeft.x, topLeft.y,
-					new int[] { 0xff81ff00, Color.BLACK }, null,
-					Shader.TileMode.CLAMP);
-			Color.colorToHSV(0xff81ff00, mHSVColor);
-		}
-
-		mBarPaint.setShader(shader);
-		mPosToValueFactor = 1 / ((float) mBarLength);
-		mValueToPosFactor = ((float) mBarLength) / 1;
+		PickerTrace.begin("ValueBar#onSizeChanged");
+		try {
+			// Update variables that depend of mBarLength.
+			Point topLeft = getTopLeft();
+			if (!isInEditMode()) {
+				shader = new LinearGradient(mBarPointerHaloRadius, 0,
+						topLeft.x, topLeft.y,
+						new int[] { mTracker.HSVToColor(0xFF, mHSVColor), Color.BLACK },
+						null, Shader.TileMode.CLAMP);
+			} else {
+				shader = new LinearGradient(mBarPointerHaloRadius, 0,
+						topLeft.x, topLeft.y,
+						new int[] { 0xff81ff00, Color.BLACK }, null,
+						Shader.TileMode.CLAMP);
+				mTracker.colorToHSV(0xff81ff00, mHSVColor);
+			}
 
-		float[] hsvColor = new float[3];
-		Color.colorToHSV(mColor, hsvColor);
+			mBarPaint.setShader(shader);
+			mTracker.shaderRebuilt();
+			mPosToValueFactor = 1 / ((float) mBarLength);
+			mValueToPosFactor = ((float) mBarLength) / 1;
 
-		if (!isInEditMode()) {
-			mBarPointerPosition = Math
-					.round((mBarLength - (mValueToPosFactor * hsvColor[2]))
-							+ mBarPointerHaloRadius);
-		} else {
-			mBarPointerPosition = mBarPointerHaloRadius;
+			if (applyRestoredPointerPosition()) {
+				// Staged by onRestoreInstanceState(), the color follows the pointer.
+				calculateColor(mBarPointerPosition);
+				mBarPointerPaint.setColor(mColor);
+			} else if (!isInEditMode()) {
+				float[] hsvColor = mTempHSV;
+				mTracker.colorToHSV(mColor, hsvColor);
+				mBarPointerPosition = Math
+						.round((mBarLength - (mValueToPosFactor * hsvColor[2]))
+								+ mBarPointerHaloRadius);
+			} else {
+				mBarPointerPosition = mBarPointerHaloRadius;
+			}
+		} finally {
+			PickerTrace.end();
 		}
 	}
 
 	@Override
 	public boolean onTouchEvent(MotionEvent event) {
-		getParent().requestDisallowInterceptTouchEvent(true);
-
-		// Convert coordinates to our internal coordinate system
+		// Coordinate of the followed pointer along the bar
 		float dimen;
-		if (mOrientation == ORIENTATION_HORIZONTAL) {
-			dimen = event.getX();
-		}
-		else {
-			dimen = event.getY();
-		}
 
-		switch (event.getAction()) {
+		switch (event.getActionMasked()) {
 		case MotionEvent.ACTION_DOWN:
-		    	mIsMovingPointer = true;
+		case MotionEvent.ACTION_POINTER_DOWN:
+			if (!startTrackingPointer(event)) {
+				break;
+			}
+			dimen = getPointerDimen(event, event.getActionIndex());
 			// Check whether the user pressed on (or near) the pointer
 			if (dimen >= (mBarPointerHaloRadius)
-					&& dimen <= (mBarPointerHaloRadius + mBarLength)) {
-				mBarPointerPosition = Math.round(dimen);
-				calculateColor(Math.round(dimen));
+					&& dimen <= (mBarPointerHaloRadius + mBarLength)
+					&& hasPointerMoved(dimen)) {
+				mBarPointerPosition = snapPosition(Math.round(dimen));
+				calculateColor(mBarPointerPosition);
 				mBarPointerPaint.setColor(mColor);
 				invalidate();
 			}
 			break;
 		case MotionEvent.ACTION_MOVE:
-			if (mIsMovingPointer) {
-				// Move the the pointer on the bar.
-				if (dimen >= mBarPointerHaloRadius
-						&& dimen <= (mBarPointerHaloRadius + mBarLength)) {
-					mBarPointerPosition = Math.round(dimen);
-					calculateColor(Math.round(dimen));
-					mBarPointerPaint.setColor(mColor);
-					if (mPicker != null) {
-						mPicker.setNewCenterColor(mColor);
-						mPicker.changeOpacityBarColor(mColor);
-					}
-					invalidate();
-				} else if (dimen < mBarPointerHaloRadius) {
-					mBarPointerPosition = mBarPointerHaloRadius;
-					mColor = Color.HSVToColor(mHSVColor);
-					mBarPointerPaint.setColor(mColor);
-					if (mPicker != null) {
-						mPicker.setNewCenterColor(mColor);
-						mPicker.changeOpacityBarColor(mColor);
-					}
-					invalidate();
-				} else if (dimen > (mBarPointerHaloRadius + mBarLength)) {
-					mBarPointerPosition = mBarPointerHaloRadius + mBarLength;
-					mColor = Color.BLACK;
-					mBarPointerPaint.setColor(mColor);
-					if (mPicker != null) {
-						mPicker.setNewCenterColor(mColor);
-						mPicker.changeOpacityBarColor(mColor);
-					}
-					invalidate();
-				}
-			}
-			if(onValueChangedListener != null && oldChangedListenerValue != mColor){
-	            onValueChangedListener.onValueChanged(mColor);
-	            oldChangedListenerValue = mColor;
+			int pointerIndex = findActivePointerIndex(event);
+			if (pointerIndex < 0) {
+				break;
 			}
+			movePointer(getPointerDimen(event, pointerIndex));
 			break;
 		case MotionEvent.ACTION_UP:
-			mIsMovingPointer = false;
+		case MotionEvent.ACTION_POINTER_UP:
+		case MotionEvent.ACTION_CANCEL:
+			stopTrackingPointer(event);
 			break;
 		}
 		return true;
 	}
 
+	@Override
+	protected int getAccessibilityLabel() {
+		return R.string.color_bar_value;
+	}
+
+	@Override
+	protected void movePointer(float dimen) {
+		if (hasPointerMoved(dimen)) {
+			// Move the the pointer on the bar.
+			if (dimen >= mBarPointerHaloRadius
+					&& dimen <= (mBarPointerHaloRadius + mBarLength)) {
+				mBarPointerPosition = snapPosition(Math.round(dimen));
+				calculateColor(mBarPointerPosition);
+				mBarPointerPaint.setColor(mColor);
+				if (mPicker != null) {
+					mPicker.setNewCenterColor(mColor);
+					mPicker.changeOpacityBarColor(mColor);
+				}
+				invalidate();
+			} else if (dimen < mBarPointerHaloRadius) {
+				mBarPointerPosition = mBarPointerHaloRadius;
+				mColor = mTracker.HSVToColor(mHSVColor);
+				mBarPointerPaint.setColor(mColor);
+				if (mPicker != null) {
+					mPicker.setNewCenterColor(mColor);
+					mPicker.changeOpacityBarColor(mColor);
+				}
+				invalidate();
+			} else if (dimen > (mBarPointerHaloRadius + mBarLength)) {
+				mBarPointerPosition = mBarPointerHaloRadius + mBarLength;
+				mColor = Color.BLACK;
+				mBarPointerPaint.setColor(mColor);
+				if (mPicker != null) {
+					mPicker.setNewCenterColor(mColor);
+					mPicker.changeOpacityBarColor(mColor);
+				}
+				invalidate();
+			}
+		}
+		if (oldChangedListenerValue != mColor
+				&& (onValueChangedListener != null || !mValueChangedListeners.isEmpty())) {
+			if (onValueChangedListener != null) {
+				mTracker.listenerInvoked();
+				onValueChangedListener.onValueChanged(mColor);
+			}
+			for (OnValueChangedListener listener : mValueChangedListeners.get()) {
+				mTracker.listenerInvoked();
+				listener.onValueChanged(mColor);
+			}
+			oldChangedListenerValue = mColor;
+		}
+	}
+
 	@Override
 	public void setColor(int color) {
-		Point topLeft = getTopLeft();
-		
-		Color.colorToHSV(color, mHSVColor);
-		shader = new LinearGradient(mBarPointerHaloRadius, 0,
-				topLeft.x, topLeft.y, new int[] {
-						color, Color.BLACK }, null, Shader.TileMode.CLAMP);
-		mBarPaint.setShader(shader);
+		applyBaseColor(color);
 		calculateColor(mBarPointerPosition);
 		mBarPointerPaint.setColor(mColor);
 		if (mPicker != null) {
@@ -209,9 +248,7 @@ public class ValueBar extends ColorBar {
 	 * @param value float between 0 and 1
 	 */
 	public void setValue(float value) {
-		mBarPointerPosition = Math
-				.round((mBarLength - (mValueToPosFactor * value))
-						+ mBarPointerHaloRadius);
+		mBarPointerPosition = valueToPosition(value);
 		calculateColor(mBarPointerPosition);
 		mBarPointerPaint.setColor(mColor);
 		if (mPicker != null) {
@@ -222,10 +259,40 @@ public class ValueBar extends ColorBar {
 	}
 
 	/**
-	 * Calculate the color selected by the pointer on the bar.
+	 * Set the base hue of the bar, and rebuild the color-to-black gradient if
+	 * the color changed.
 	 *
-	 * @param coord Coordinate of the pointer.
+	 * @param color the brightest end of the bar.
 	 */
+	private void applyBaseColor(int color) {
+		mTracker.colorToHSV(color, mHSVColor);
+		if (needsShader(color)) {
+			Point topLeft = getTopLeft();
+			setShader(new LinearGradient(mBarPointerHaloRadius, 0,
+					topLeft.x, topLeft.y, new int[] {
+							color, Color.BLACK }, null, Shader.TileMode.CLAMP), color);
+		}
+	}
+
+	private int valueToPosition(float value) {
+		return Math.round((mBarLength - (mValueToPosFactor * value))
+				+ mBarPointerHaloRadius);
+	}
+
+	@Override
+	protected void syncColor(int color, float[] hsv) {
+		applyBaseColor(color);
+		mBarPointerPosition = valueToPosition(hsv[2]);
+		calculateColor(mBarPointerPosition);
+		mBarPointerPaint.setColor(mColor);
+		invalidate();
+	}
+
+	@Override
+	protected int getColorAt(float fraction) {
+		return ColorMath.hsvToColor(0xFF, mHSVColor[0], mHSVColor[1], 1 - fraction);
+	}
+
 	private void calculateColor(int coord) {
 	    coord = coord - mBarPointerHaloRadius;
 	    if (coord < 0) {
@@ -233,28 +300,7 @@ public class ValueBar extends ColorBar {
 	    } else if (coord > mBarLength) {
 	    	coord = mBarLength;
 	    }
-	    mColor = Color.HSVToColor(new float[] { mHSVColor[0],
-		    				    mHSVColor[1],
-		    				    (float) (1 - (mPosToValueFactor * coord)) });
+	    mColor = mTracker.HSVToColor(mHSVColor[0], mHSVColor[1],
+		    				    1 - (mPosToValueFactor * coord));
     }
-
-	@Override
-	protected Parcelable onSaveInstanceState() {
-		Bundle state = (Bundle) super.onSaveInstanceState();
-
-		float[] hsvColor = new float[3];
-		Color.colorToHSV(mColor, hsvColor);
-		state.putFloat(STATE_VALUE, hsvColor[2]);
-
-		return state;
-	}
-
-	@Override
-	protected void onRestoreInstanceState(Parcelable state) {
-		super.onRestoreInstanceState(state);
-
-		Bundle savedState = (Bundle) state;
-		setColor(Color.HSVToColor(savedState.getFloatArray(STATE_COLOR)));
-		setValue(savedState.getFloat(STATE_VALUE));
-	}
 }
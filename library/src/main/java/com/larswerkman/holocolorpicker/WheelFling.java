@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+/**
+ * Angular fling of the color wheel pointer.
+ *
+ * <p>
+ * The velocity decays exponentially, so the angle approaches
+ * {@code start + velocity / friction}. With detents the end angle is
+ * rounded to the nearest detent and the fling distance is scaled to land on
+ * it, so the motion stays smooth. The angle of a frame is a closed-form
+ * function of the time; there is no state to integrate and nothing is
+ * allocated per frame.
+ * </p>
+ */
+final class WheelFling {
+
+    /**
+     * Default decay rate of the velocity, per second.
+     */
+    static final float DEFAULT_FRICTION = 4f;
+
+    /**
+     * Releases slower than this (in rad/s) don't fling, but still settle on
+     * a detent.
+     */
+    static final float MIN_VELOCITY = (float) (Math.PI / 2);
+
+    /**
+     * The fling ends once less than this part of the distance is left.
+     */
+    private static final float REST_FRACTION = 0.002f;
+
+    private float mStartAngle;
+    private float mDistance;
+    private float mFriction;
+    private long mStartTimeNanos;
+    private boolean mFinished = true;
+
+    /**
+     * Start a fling.
+     *
+     * @param angle         start angle in radians.
+     * @param velocity      angular velocity in rad/s.
+     * @param friction      decay rate of the velocity, per second.
+     * @param detent        distance between detents in radians, 0 for none.
+     * @param timeNanos     start time, in the {@code System.nanoTime()} base.
+     * @return {@code false} if there is nothing to animate.
+     */
+    boolean start(float angle, float velocity, float friction, float detent, long timeNanos) {
+        if (Math.abs(velocity) < MIN_VELOCITY) {
+            velocity = 0f;
+        }
+        float end = angle + velocity / friction;
+        if (detent > 0f) {
+            end = Math.round(end / detent) * detent;
+        }
+        mStartAngle = angle;
+        mDistance = end - angle;
+        mFriction = friction;
+        mStartTimeNanos = timeNanos;
+        mFinished = Math.abs(mDistance) < 1e-4f;
+        return !mFinished;
+    }
+
+    /**
+     * Get the angle at a time. Marks the fling finished once it is at rest,
+     * the end angle is returned then.
+     *
+     * @param timeNanos time in the {@code System.nanoTime()} base.
+     * @return the angle in radians.
+     */
+    float angleAt(long timeNanos) {
+        float seconds = Math.max(0, timeNanos - mStartTimeNanos) / 1e9f;
+        float remaining = (float) Math.exp(-mFriction * seconds);
+        if (remaining < REST_FRACTION) {
+            mFinished = true;
+            return getFinalAngle();
+        }
+        return mStartAngle + mDistance * (1 - remaining);
+    }
+
+    /**
+     * Get the angle the fling comes to rest at.
+     */
+    float getFinalAngle() {
+        return mStartAngle + mDistance;
+    }
+
+    boolean isFinished() {
+        return mFinished;
+    }
+
+    void abort() {
+        mFinished = true;
+    }
+}
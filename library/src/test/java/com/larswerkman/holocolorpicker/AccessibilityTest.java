@@ -0,0 +1,191 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.content.Context;
+import android.view.KeyEvent;
+import android.view.View;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.accessibility.AccessibilityNodeProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the virtual nodes of the picker, the key and action steps of the
+ * picker and the bars, and that the node follows the steps of the wheel.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AccessibilityTest {
+
+    private static final int SIZE = 300;
+
+    /**
+     * Degrees a key or a scroll action turns the wheel without a hue step.
+     */
+    private static final float HUE_STEP = 5f;
+    private static final int STEPS_PER_TURN = (int) (360f / HUE_STEP);
+
+    /**
+     * The hue is read back from the 8 bit color the step resulted in.
+     */
+    private static final float HUE_TOLERANCE = 0.25f;
+
+    private final List<Integer> mColors = new ArrayList<>();
+    private ColorPicker mPicker;
+    private SaturationBar mBar;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        mPicker = new ColorPicker(context);
+        mBar = new SaturationBar(context);
+        mPicker.addSaturationBar(mBar);
+        mPicker.setColor(0xFFFF0000);
+        mPicker.addOnColorChangedListener(new ColorPicker.OnColorChangedListener() {
+            @Override
+            public void onColorChanged(int color) {
+                mColors.add(color);
+            }
+        });
+        layOut(mPicker);
+        layOut(mBar);
+    }
+
+    @Test
+    public void wheelNodeIsAdjustableHue() {
+        AccessibilityNodeInfo info = mPicker.getAccessibilityNodeProvider()
+                .createAccessibilityNodeInfo(PickerAccessibilityProvider.VIRTUAL_WHEEL);
+
+        assertEquals(ColorBar.ACCESSIBILITY_CLASS_NAME, info.getClassName());
+        assertEquals(0f, info.getRangeInfo().getMin(), 0f);
+        assertEquals(360f, info.getRangeInfo().getMax(), 0f);
+        assertEquals(0f, info.getRangeInfo().getCurrent(), 1e-3f);
+        assertTrue(info.getActionList().contains(
+                AccessibilityNodeInfo.AccessibilityAction.ACTION_SCROLL_FORWARD));
+    }
+
+    @Test
+    public void centerNodeOnlyWhileClickable() {
+        AccessibilityNodeProvider provider = mPicker.getAccessibilityNodeProvider();
+        assertEquals(2, provider.createAccessibilityNodeInfo(View.NO_ID).getChildCount());
+
+        mPicker.setShowOldCenterColor(false);
+        assertEquals(1, provider.createAccessibilityNodeInfo(View.NO_ID).getChildCount());
+        assertFalse(provider.performAction(PickerAccessibilityProvider.VIRTUAL_CENTER,
+                AccessibilityNodeInfo.ACTION_CLICK, null));
+
+        // Clicking the old color sets it again, like a tap.
+        mPicker.setShowOldCenterColor(true);
+        mPicker.setColor(0xFF00FF00);
+        assertTrue(provider.performAction(PickerAccessibilityProvider.VIRTUAL_CENTER,
+                AccessibilityNodeInfo.ACTION_CLICK, null));
+        assertEquals(mPicker.getOldCenterColor(), mPicker.getColor());
+    }
+
+    @Test
+    public void scrollActionStepsHueOnce() {
+        assertTrue(mPicker.getAccessibilityNodeProvider().performAction(
+                PickerAccessibilityProvider.VIRTUAL_WHEEL,
+                AccessibilityNodeInfo.ACTION_SCROLL_FORWARD, null));
+
+        assertEquals(HUE_STEP, mPicker.getHue(), HUE_TOLERANCE);
+        assertEquals(1, mColors.size());
+    }
+
+    @Test
+    public void dpadStepsHueLikeScroll() {
+        KeyEvent right = new KeyEvent(KeyEvent.ACTION_DOWN, KeyEvent.KEYCODE_DPAD_RIGHT);
+        assertTrue(mPicker.onKeyDown(KeyEvent.KEYCODE_DPAD_RIGHT, right));
+        assertTrue(mPicker.onKeyDown(KeyEvent.KEYCODE_DPAD_RIGHT, right));
+        assertEquals(2 * HUE_STEP, mPicker.getHue(), HUE_TOLERANCE);
+
+        KeyEvent left = new KeyEvent(KeyEvent.ACTION_DOWN, KeyEvent.KEYCODE_DPAD_LEFT);
+        assertTrue(mPicker.onKeyDown(KeyEvent.KEYCODE_DPAD_LEFT, left));
+        assertEquals(HUE_STEP, mPicker.getHue(), HUE_TOLERANCE);
+        assertEquals(3, mColors.size());
+    }
+
+    @Test
+    public void barStepsByTwentieth() {
+        // Fully saturated, the pointer is at the end of the bar.
+        assertEquals(1f, mBar.getPointerFraction(), 1e-3f);
+        assertFalse(mBar.performAccessibilityAction(
+                AccessibilityNodeInfo.ACTION_SCROLL_FORWARD, null));
+
+        assertTrue(mBar.performAccessibilityAction(
+                AccessibilityNodeInfo.ACTION_SCROLL_BACKWARD, null));
+        assertEquals(0.95f, mBar.getPointerFraction(), 0.01f);
+
+        KeyEvent left = new KeyEvent(KeyEvent.ACTION_DOWN, KeyEvent.KEYCODE_DPAD_LEFT);
+        assertTrue(mBar.onKeyDown(KeyEvent.KEYCODE_DPAD_LEFT, left));
+        assertEquals(0.9f, mBar.getPointerFraction(), 0.01f);
+        assertEquals(2, mColors.size());
+    }
+
+    @Test
+    public void barNodeReportsPercent() {
+        AccessibilityNodeInfo info = AccessibilityNodeInfo.obtain(mBar);
+        mBar.onInitializeAccessibilityNodeInfo(info);
+
+        assertEquals(ColorBar.ACCESSIBILITY_CLASS_NAME, info.getClassName());
+        assertEquals(AccessibilityNodeInfo.RangeInfo.RANGE_TYPE_PERCENT,
+                info.getRangeInfo().getType());
+        assertEquals(100f, info.getRangeInfo().getCurrent(), 0.5f);
+        assertFalse(info.getActionList().contains(
+                AccessibilityNodeInfo.AccessibilityAction.ACTION_SCROLL_FORWARD));
+    }
+
+    @Test
+    public void keyStepsTurnTheWheelAround() {
+        AccessibilityNodeProvider provider = mPicker.getAccessibilityNodeProvider();
+        KeyEvent right = new KeyEvent(KeyEvent.ACTION_DOWN, KeyEvent.KEYCODE_DPAD_RIGHT);
+        float previous = mPicker.getHue();
+        for (int i = 0; i < STEPS_PER_TURN; i++) {
+            assertTrue(mPicker.onKeyDown(KeyEvent.KEYCODE_DPAD_RIGHT, right));
+            float hue = mPicker.getHue();
+            assertEquals("Step " + i, HUE_STEP, ((hue - previous) % 360f + 360f) % 360f,
+                    2 * HUE_TOLERANCE);
+            previous = hue;
+
+            // The node follows every step.
+            AccessibilityNodeInfo info = provider.createAccessibilityNodeInfo(
+                    PickerAccessibilityProvider.VIRTUAL_WHEEL);
+            assertEquals("Step " + i, hue, info.getRangeInfo().getCurrent(), 1e-3f);
+            info.recycle();
+        }
+        assertEquals(STEPS_PER_TURN, mColors.size());
+    }
+
+    private static void layOut(View view) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.AT_MOST),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.AT_MOST));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.app.Activity;
+import android.graphics.Color;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link ColorPicker#setColorAsync(int)} and the color snapshot
+ * read by other threads, with a picker in an activity so that posted
+ * colors run.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AsyncColorTest {
+
+    private static final int RED = 0xFFFF0000;
+    private static final int GREEN = 0xFF00FF00;
+
+    private ColorPicker mPicker;
+    private SVBar mSVBar;
+    private final List<Integer> mChanges = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        mPicker = new ColorPicker(activity);
+        mSVBar = new SVBar(activity);
+        OpacityBar opacityBar = new OpacityBar(activity);
+        // Only the picker posts, the bars are left unattached.
+        activity.setContentView(mPicker);
+        mPicker.addSVBar(mSVBar);
+        mPicker.addOpacityBar(opacityBar);
+        mPicker.setColor(RED);
+        ShadowLooper.idleMainLooper();
+        mPicker.addOnColorChangedListener(new ColorPicker.OnColorChangedListener() {
+            @Override
+            public void onColorChanged(int color) {
+                mChanges.add(color);
+            }
+        });
+    }
+
+    @Test
+    public void transparentBlackIsAColor() {
+        // Packed without the pending bit it would read as "nothing pending".
+        mPicker.setColorAsync(0x00000000);
+        assertEquals(RED, mPicker.getColor());
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(0x00000000, mPicker.getColor());
+    }
+
+    @Test
+    public void colorsSetBeforeTheUiThreadRunsAreCoalesced() throws InterruptedException {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                mPicker.setColorAsync(0xFF336699);
+                mPicker.setColorAsync(0xFF00FF00);
+                mPicker.setColorAsync(0xFF0000FF);
+            }
+        });
+        thread.start();
+        thread.join();
+        assertTrue(mChanges.isEmpty());
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(Arrays.asList(0xFF0000FF), mChanges);
+        assertEquals(0xFF0000FF, mPicker.getColor());
+
+        // A color set after the UI thread ran is posted again.
+        mPicker.setColorAsync(RED);
+        ShadowLooper.idleMainLooper();
+        assertEquals(Arrays.asList(0xFF0000FF, RED), mChanges);
+    }
+
+    @Test
+    public void snapshotHoldsColorAndHue() {
+        mPicker.setColor(0x80336699);
+        long snapshot = mPicker.getColorSnapshot();
+        float[] hsv = new float[3];
+        Color.colorToHSV(0x80336699, hsv);
+
+        assertEquals(mPicker.getColor(), ColorPicker.snapshotColor(snapshot));
+        assertEquals(0x80336699, ColorPicker.snapshotColor(snapshot));
+        assertEquals(hsv[0], ColorPicker.snapshotHue(snapshot), 0.5f);
+    }
+
+    @Test
+    public void snapshotKeepsTheHueOfBlack() {
+        mPicker.setColor(GREEN);
+        mSVBar.setValue(0f);
+        long snapshot = mPicker.getColorSnapshot();
+        float[] hsv = new float[3];
+        Color.colorToHSV(ColorPicker.snapshotColor(snapshot), hsv);
+
+        assertEquals(0xFF000000, ColorPicker.snapshotColor(snapshot));
+        // The color has no hue, the wheel still points at green.
+        assertEquals(0f, hsv[0], 0f);
+        assertEquals(120f, ColorPicker.snapshotHue(snapshot), 0.5f);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the pixels of the disc against the touch math, and that a 1080px
+ * disc takes no longer than a generous bound.
+ */
+public class ColorDiscTest {
+
+    private static final int SIZE = 201;
+
+    @Test
+    public void knownPixels() {
+        int[] pixels = rasterize(SIZE);
+        int center = SIZE / 2;
+
+        assertEquals(0xFFFFFFFF, pixel(pixels, SIZE, center, center));
+        // Hue 0 is to the right and runs counterclockwise, like the wheel.
+        // The pixel centers are half a pixel off the axes and the edge.
+        assertRgb(0xFF0000, pixel(pixels, SIZE, SIZE - 2, center));
+        assertRgb(0x00FFFF, pixel(pixels, SIZE, 1, center));
+        assertRgb(0x80FF00, pixel(pixels, SIZE, center, 1));
+        assertRgb(0x7F00FF, pixel(pixels, SIZE, center, SIZE - 2));
+    }
+
+    @Test
+    public void outsideIsTransparentAndEdgeIsSmoothed() {
+        int[] pixels = rasterize(SIZE);
+        assertEquals(0, pixel(pixels, SIZE, 0, 0));
+        assertEquals(0, pixel(pixels, SIZE, SIZE - 1, SIZE - 1));
+
+        int edgeAlpha = pixel(pixels, SIZE, SIZE - 1, SIZE / 2) >>> 24;
+        assertEquals(0x7F, edgeAlpha);
+        assertEquals(0xFF, pixel(pixels, SIZE, SIZE - 2, SIZE / 2) >>> 24);
+    }
+
+    @Test
+    public void pixelsMatchTouchedColor() {
+        int[] pixels = rasterize(SIZE);
+        float radius = SIZE / 2f;
+        for (int row = 0; row < SIZE; row += 7) {
+            for (int col = 0; col < SIZE; col += 7) {
+                int argb = pixel(pixels, SIZE, col, row);
+                if ((argb >>> 24) != 0xFF) {
+                    continue;
+                }
+                // What ColorDisc.movePointer picks for a touch on the pixel center.
+                float x = col + 0.5f - radius;
+                float y = row + 0.5f - radius;
+                float saturation = Math.min(1f, (float) Math.sqrt(x * x + y * y) / radius);
+                int touched = ColorMath.hsvToRgb(ColorMath.pointToHue(x, y), saturation, 1f);
+                assertEquals(touched, argb & 0xFFFFFF);
+            }
+        }
+    }
+
+    @Test
+    public void bandsMatchWholeDisc() {
+        int size = 3 * RasterPipeline.ROWS_PER_BAND + 5;
+        int[] whole = rasterize(size);
+        int[] banded = new int[size * size];
+        for (int band = RasterPipeline.bandCount(size) - 1; band >= 0; band--) {
+            int rowStart = band * RasterPipeline.ROWS_PER_BAND;
+            ColorDisc.rasterizeRows(banded, size, size, rowStart,
+                    Math.min(size, rowStart + RasterPipeline.ROWS_PER_BAND));
+        }
+        assertArrayEquals(whole, banded);
+    }
+
+    @Test
+    public void disc1080IsRasterizedInTime() {
+        int size = 1080;
+        int[] pixels = new int[size * size];
+        long fastest = Long.MAX_VALUE;
+        for (int pass = 0; pass < 3; pass++) {
+            long start = System.nanoTime();
+            ColorDisc.rasterizeRows(pixels, size, size, 0, size);
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+        // About 90 ms on one thread of a desktop, the bound only catches
+        // gross regressions.
+        assertTrue("1080px disc took " + fastest / 1000000 + " ms",
+                fastest < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static void assertRgb(int expected, int argb) {
+        for (int shift = 0; shift < 24; shift += 8) {
+            int difference = ((expected >> shift) & 0xFF) - ((argb >> shift) & 0xFF);
+            if (Math.abs(difference) > 5) {
+                assertEquals(Integer.toHexString(expected),
+                        Integer.toHexString(argb & 0xFFFFFF));
+            }
+        }
+    }
+
+    private static int[] rasterize(int size) {
+        int[] pixels = new int[size * size];
+        ColorDisc.rasterizeRows(pixels, size, size, 0, size);
+        return pixels;
+    }
+
+    private static int pixel(int[] pixels, int size, int col, int row) {
+        return pixels[row * size + col];
+    }
+}
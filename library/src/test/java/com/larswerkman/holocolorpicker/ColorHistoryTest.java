@@ -0,0 +1,195 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the ring buffer of {@link ColorHistory} and the undo and redo of
+ * a picker with an SV bar.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ColorHistoryTest {
+
+    private static final int RED = 0xFFFF0000;
+    private static final int GREEN = 0xFF00FF00;
+    private static final int BLUE = 0xFF0000FF;
+
+    private ColorPicker mPicker;
+    private SVBar mSVBar;
+    private int mChanges;
+
+    @Before
+    public void setUp() {
+        mPicker = new ColorPicker(RuntimeEnvironment.getApplication());
+        mSVBar = new SVBar(RuntimeEnvironment.getApplication());
+        mPicker.addSVBar(mSVBar);
+        mPicker.setColor(RED);
+        mPicker.addOnColorChangedListener(new ColorPicker.OnColorChangedListener() {
+            @Override
+            public void onColorChanged(int color) {
+                mChanges++;
+            }
+        });
+    }
+
+    @Test
+    public void fullBufferDropsTheOldest() {
+        ColorHistory history = history(3, 1, 2, 3, 4, 5);
+
+        assertEquals(4, history.undo());
+        assertEquals(3, history.undo());
+        assertFalse(history.canUndo());
+        assertEquals(4, history.redo());
+        assertEquals(5, history.redo());
+        assertFalse(history.canRedo());
+    }
+
+    @Test
+    public void recordAfterUndoDropsRedo() {
+        ColorHistory history = history(3, 1, 2, 3);
+        history.undo();
+        history.undo();
+        history.record(9);
+
+        assertFalse(history.canRedo());
+        assertEquals(1, history.undo());
+        assertEquals(9, history.redo());
+        assertFalse(history.canRedo());
+    }
+
+    @Test
+    public void currentEntryIsNotRecordedTwice() {
+        ColorHistory history = history(3, 1, 2, 2);
+
+        assertEquals(1, history.undo());
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void shrinkKeepsCurrentAndOlderEntries() {
+        ColorHistory history = history(5, 1, 2, 3, 4, 5);
+        history.undo();
+        history.undo();
+        history.setCapacity(2);
+
+        assertEquals(2, history.getCapacity());
+        assertFalse(history.canRedo());
+        assertEquals(2, history.undo());
+        assertFalse(history.canUndo());
+
+        // With room left, what could be redone is kept.
+        history = history(5, 1, 2, 3);
+        history.undo();
+        history.undo();
+        history.setCapacity(2);
+        assertFalse(history.canUndo());
+        assertEquals(2, history.redo());
+        assertFalse(history.canRedo());
+    }
+
+    @Test
+    public void growKeepsWrappedEntries() {
+        ColorHistory history = history(3, 1, 2, 3, 4);
+        history.setCapacity(4);
+        history.record(5);
+        history.record(6);
+
+        assertEquals(5, history.undo());
+        assertEquals(4, history.undo());
+        assertEquals(3, history.undo());
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void undoAndRedoRestoreThePicker() {
+        mPicker.setHistoryCapacity(4);
+        mPicker.setColor(GREEN);
+        mPicker.recordHistory();
+        mPicker.setColor(BLUE);
+        mPicker.recordHistory();
+        mChanges = 0;
+
+        assertTrue(mPicker.undo());
+        assertEquals(GREEN, mPicker.getColor());
+        assertEquals(GREEN, mSVBar.getColor());
+        assertEquals(120f, mPicker.getHue(), 0.5f);
+        assertTrue(mPicker.undo());
+        assertEquals(RED, mPicker.getColor());
+        assertFalse(mPicker.undo());
+        assertTrue(mPicker.redo());
+        assertEquals(GREEN, mPicker.getColor());
+        // One call per step, not one per bar.
+        assertEquals(3, mChanges);
+    }
+
+    @Test
+    public void undoKeepsTheHueOfBlack() {
+        mPicker.setHistoryCapacity(4);
+        mPicker.setColor(GREEN);
+        mSVBar.setValue(0f);
+        mPicker.recordHistory();
+        assertEquals(0xFF000000, mPicker.getColor());
+        mPicker.setColor(BLUE);
+        mPicker.recordHistory();
+
+        mPicker.undo();
+        assertEquals(0xFF000000, mPicker.getColor());
+        assertEquals(120f, ColorPicker.snapshotHue(mPicker.getColorSnapshot()), 0.5f);
+        assertEquals(120f, mPicker.getHue(), 0.5f);
+    }
+
+    @Test
+    public void historyCapacity() {
+        assertEquals(0, mPicker.getHistoryCapacity());
+        assertFalse(mPicker.undo());
+
+        mPicker.setHistoryCapacity(4);
+        for (int color : new int[]{GREEN, BLUE, 0xFF808000}) {
+            mPicker.setColor(color);
+            mPicker.recordHistory();
+        }
+        mPicker.setHistoryCapacity(2);
+        assertEquals(2, mPicker.getHistoryCapacity());
+        assertTrue(mPicker.undo());
+        assertEquals(BLUE, mPicker.getColor());
+        assertFalse(mPicker.canUndo());
+
+        mPicker.setHistoryCapacity(0);
+        assertFalse(mPicker.canRedo());
+        assertFalse(mPicker.redo());
+        assertEquals(BLUE, mPicker.getColor());
+    }
+
+    private static ColorHistory history(int capacity, long... entries) {
+        ColorHistory history = new ColorHistory(capacity);
+        for (long entry : entries) {
+            history.record(entry);
+        }
+        return history;
+    }
+}
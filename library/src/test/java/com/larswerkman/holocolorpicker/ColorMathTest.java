@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ColorMathTest {
+
+    @Test
+    public void hsvToColorKnownValues() {
+        assertEquals(0xFFFF0000, ColorMath.hsvToColor(0xFF, 0f, 1f, 1f));
+        assertEquals(0xFF00FF00, ColorMath.hsvToColor(0xFF, 120f, 1f, 1f));
+        assertEquals(0xFF0000FF, ColorMath.hsvToColor(0xFF, 240f, 1f, 1f));
+        assertEquals(0xFFFFFF00, ColorMath.hsvToColor(0xFF, 60f, 1f, 1f));
+        assertEquals(0xFF336699, ColorMath.hsvToColor(0xFF, 210f, 2 / 3f, 0.6f));
+        assertEquals(0x80806040, ColorMath.hsvToColor(0x80, 30f, 0.5f, 0.5f));
+        assertEquals(0xFFFFFFFF, ColorMath.hsvToColor(0xFF, 77f, 0f, 1f));
+        assertEquals(0xFF000000, ColorMath.hsvToColor(0xFF, 77f, 1f, 0f));
+    }
+
+    @Test
+    public void hsvToRgbTreatsHueOutOfRangeAsZero() {
+        // Like android.graphics.Color.HSVToColor.
+        assertEquals(0xFF0000, ColorMath.hsvToRgb(360f, 1f, 1f));
+        assertEquals(0xFF0000, ColorMath.hsvToRgb(-30f, 1f, 1f));
+        assertEquals(0xFF0000, ColorMath.hsvToRgb(0f, 2f, 3f));
+    }
+
+    @Test
+    public void colorToHsvKnownValues() {
+        float[] hsv = new float[3];
+        ColorMath.colorToHsv(0xFF336699, hsv);
+        assertArrayEquals(new float[]{210f, 2 / 3f, 0.6f}, hsv, 1e-6f);
+        ColorMath.colorToHsv(0xFFFF00FF, hsv);
+        assertArrayEquals(new float[]{300f, 1f, 1f}, hsv, 1e-6f);
+        ColorMath.colorToHsv(0x80808080, hsv);
+        assertArrayEquals(new float[]{0f, 0f, 128 / 255f}, hsv, 1e-6f);
+    }
+
+    @Test
+    public void hsvRoundTripIsExact() {
+        float[] hsv = new float[3];
+        for (int rgb = 0; rgb <= 0xFFFFFF; rgb++) {
+            ColorMath.colorToHsv(rgb, hsv);
+            int back = ColorMath.hsvToRgb(hsv[0], hsv[1], hsv[2]);
+            if (back != rgb) {
+                assertEquals(Integer.toHexString(rgb), Integer.toHexString(back));
+            }
+        }
+    }
+
+    @Test
+    public void colorToLabKnownValues() {
+        // D50 references, as shown by Photoshop and ICC color pickers.
+        float[] lab = new float[3];
+        ColorMath.colorToLab(0xFFFFFFFF, lab);
+        assertArrayEquals(new float[]{100f, 0f, 0f}, lab, 0.01f);
+        ColorMath.colorToLab(0xFF000000, lab);
+        assertArrayEquals(new float[]{0f, 0f, 0f}, lab, 0.01f);
+        ColorMath.colorToLab(0xFFFF0000, lab);
+        assertArrayEquals(new float[]{54.29f, 80.80f, 69.89f}, lab, 0.05f);
+        ColorMath.colorToLab(0xFF00FF00, lab);
+        assertArrayEquals(new float[]{87.82f, -79.29f, 80.99f}, lab, 0.05f);
+        ColorMath.colorToLab(0xFF0000FF, lab);
+        assertArrayEquals(new float[]{29.57f, 68.30f, -112.03f}, lab, 0.05f);
+        ColorMath.colorToLab(0xFF808080, lab);
+        assertArrayEquals(new float[]{53.59f, 0f, 0f}, lab, 0.05f);
+    }
+
+    @Test
+    public void labRoundTripIsExact() {
+        float[] lab = new float[3];
+        for (int rgb = 0; rgb <= 0xFFFFFF; rgb++) {
+            ColorMath.colorToLab(rgb, lab);
+            int back = ColorMath.labToRgb(lab[0], lab[1], lab[2]);
+            if (back != rgb) {
+                assertEquals(Integer.toHexString(rgb), Integer.toHexString(back));
+            }
+        }
+    }
+
+    @Test
+    public void labToRgbClampsOutOfGamut() {
+        assertEquals(0xFFFFFF, ColorMath.labToRgb(120f, 0f, 0f));
+        assertEquals(0x000000, ColorMath.labToRgb(-10f, 0f, 0f));
+    }
+
+    @Test
+    public void srgbTransferRoundTrip() {
+        for (int component = 0; component <= 0xFF; component++) {
+            assertEquals(component, ColorMath.encodeSrgb(ColorMath.decodeSrgb(component)));
+        }
+        assertEquals(0.2159f, ColorMath.decodeSrgb(0x80), 1e-4f);
+    }
+
+    @Test
+    public void wheelAngles() {
+        for (float hue = 0f; hue < 360f; hue += 7.5f) {
+            assertEquals(hue, ColorMath.angleToHue(ColorMath.hueToAngle(hue)), 1e-3f);
+        }
+        assertEquals(90f, ColorMath.pointToHue(0f, -1f), 1e-4f);
+        assertEquals(270f, ColorMath.pointToHue(0f, 1f), 1e-4f);
+        assertEquals(0xFFFF0000, ColorMath.wheelColor(0f));
+        assertEquals(0xFF00FF00, ColorMath.wheelColor(ColorMath.hueToAngle(120f)));
+    }
+
+    @Test
+    public void lerpArgbEnds() {
+        assertEquals(0x00000000, ColorMath.lerpArgb(0x00000000, 0xFFFFFFFF, 0f));
+        assertEquals(0xFFFFFFFF, ColorMath.lerpArgb(0x00000000, 0xFFFFFFFF, 1f));
+        assertEquals(0x80808080, ColorMath.lerpArgb(0x00000000, 0xFFFFFFFF, 0.5f));
+    }
+}
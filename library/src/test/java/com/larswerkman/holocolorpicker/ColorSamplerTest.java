@@ -0,0 +1,195 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the averages of the summed-area table against summing the pixels,
+ * also where the sums of a large image overflow.
+ */
+public class ColorSamplerTest {
+
+    // More than one band of rows and of columns.
+    private static final int WIDTH = 700;
+    private static final int HEIGHT = 530;
+
+    private static final int SAMPLES = 10000;
+
+    @Test
+    public void averagesMatchBruteForce() {
+        int[] pixels = randomPixels(WIDTH, HEIGHT, 1);
+        ColorSampler sampler = ColorSampler.fromPixels(pixels, WIDTH, HEIGHT);
+        Random random = new Random(2);
+        for (int i = 0; i < 2000; i++) {
+            int width = 1 + random.nextInt(ColorSampler.MAX_SAMPLE_SIZE);
+            int height = 1 + random.nextInt(ColorSampler.MAX_AREA / width);
+            // Some rectangles stick out of the image.
+            int left = random.nextInt(WIDTH + 40) - 20;
+            int top = random.nextInt(HEIGHT + 40) - 20;
+            assertEquals(bruteForce(pixels, left, top, left + width, top + height),
+                    sampler.average(left, top, left + width, top + height));
+        }
+    }
+
+    @Test
+    public void samplesAreCenteredSquares() {
+        int[] pixels = randomPixels(WIDTH, HEIGHT, 3);
+        ColorSampler sampler = ColorSampler.fromPixels(pixels, WIDTH, HEIGHT);
+
+        assertEquals(0xFF000000 | pixels[10 * WIDTH + 20], sampler.sample(20, 10, 1));
+        assertEquals(bruteForce(pixels, 18, 8, 23, 13), sampler.sample(20, 10, 5));
+        assertEquals(bruteForce(pixels, 0, 0, 45, 45), sampler.sample(0, 0, 89));
+    }
+
+    @Test
+    public void largestAreaIsExact() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixels, 0xFFFFFFFF);
+        ColorSampler sampler = ColorSampler.fromPixels(pixels, WIDTH, HEIGHT);
+
+        // 32 * 257 is MAX_AREA, every channel sum is just below 2^21.
+        assertEquals(ColorSampler.MAX_AREA, 32 * 257);
+        assertEquals(0xFFFFFFFF, sampler.average(100, 100, 132, 357));
+        // Only the part in the image counts.
+        assertEquals(0xFFFFFFFF, sampler.average(-100, -100, 60, 60));
+    }
+
+    @Test
+    public void largerAreaThrows() {
+        ColorSampler sampler = ColorSampler.fromPixels(new int[WIDTH * HEIGHT], WIDTH, HEIGHT);
+        try {
+            sampler.average(0, 0, 32, 258);
+            fail("Averaged more than MAX_AREA pixels");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            sampler.sample(100, 100, ColorSampler.MAX_SAMPLE_SIZE + 1);
+            fail("Sampled a square larger than MAX_SAMPLE_SIZE");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, sampler.average(WIDTH, 0, WIDTH + 10, 10));
+    }
+
+    @Test
+    public void loupeCells() {
+        int[] pixels = randomPixels(WIDTH, HEIGHT, 4);
+        ColorSampler sampler = ColorSampler.fromPixels(pixels, WIDTH, HEIGHT);
+        int[] loupe = new int[9];
+
+        // Cells of one pixel magnify the image.
+        sampler.getLoupe(50, 60, 3, 1, loupe);
+        for (int row = 0; row < 3; row++) {
+            for (int column = 0; column < 3; column++) {
+                assertEquals(0xFF000000 | pixels[(59 + row) * WIDTH + 49 + column],
+                        loupe[row * 3 + column]);
+            }
+        }
+
+        // The center cell is the sample of the pixel, cells outside are 0.
+        sampler.getLoupe(2, 2, 3, 5, loupe);
+        assertEquals(sampler.sample(2, 2, 5), loupe[4]);
+        assertEquals(bruteForce(pixels, 5, 5, 10, 10), loupe[8]);
+        assertEquals(0, loupe[0]);
+        assertEquals(0, loupe[2]);
+    }
+
+    @Test
+    public void bufferMatchesPixels() {
+        int[] pixels = randomPixels(WIDTH, HEIGHT, 5);
+        ByteBuffer buffer = ByteBuffer.allocate(3 + 4 * WIDTH * HEIGHT);
+        buffer.position(3);
+        for (int pixel : pixels) {
+            // RGBA, as copied from an ARGB_8888 bitmap.
+            buffer.putInt((pixel << 8) | (pixel >>> 24));
+        }
+        buffer.position(3);
+        ColorSampler fromBuffer = ColorSampler.fromBuffer(buffer, WIDTH, HEIGHT);
+        ColorSampler fromPixels = ColorSampler.fromPixels(pixels, WIDTH, HEIGHT);
+        assertEquals(3, buffer.position());
+
+        int[] expected = new int[49];
+        int[] actual = new int[49];
+        fromPixels.getLoupe(350, 260, 7, 9, expected);
+        fromBuffer.getLoupe(350, 260, 7, 9, actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void largeWhiteImageSamplesWhite() {
+        // The sums of a white 3 MP image wrap around many times.
+        int width = 2000;
+        int height = 1500;
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, 0xFFFFFFFF);
+        ColorSampler sampler = ColorSampler.fromPixels(pixels, width, height);
+
+        assertEquals(0xFFFFFFFF, sampler.sample(width - 1, height - 1,
+                ColorSampler.MAX_SAMPLE_SIZE));
+        Random random = new Random(7);
+        for (int i = 0; i < SAMPLES; i++) {
+            assertEquals(0xFFFFFFFF, sampler.sample(random.nextInt(width),
+                    random.nextInt(height), ColorSampler.MAX_SAMPLE_SIZE));
+        }
+    }
+
+    /**
+     * The rounded average of the part of a rectangle in the image, summed
+     * pixel by pixel.
+     */
+    private static int bruteForce(int[] pixels, int left, int top, int right, int bottom) {
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        right = Math.min(WIDTH, right);
+        bottom = Math.min(HEIGHT, bottom);
+        if (left >= right || top >= bottom) {
+            return 0;
+        }
+        long r = 0;
+        long g = 0;
+        long b = 0;
+        for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x++) {
+                int pixel = pixels[y * WIDTH + x];
+                r += (pixel >> 16) & 0xFF;
+                g += (pixel >> 8) & 0xFF;
+                b += pixel & 0xFF;
+            }
+        }
+        long area = (long) (right - left) * (bottom - top);
+        return 0xFF000000 | (int) ((r + area / 2) / area) << 16
+                | (int) ((g + area / 2) / area) << 8 | (int) ((b + area / 2) / area);
+    }
+
+    private static int[] randomPixels(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            // The alpha is ignored.
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ColorStreamTest {
+
+    /**
+     * Runs the deliveries when the test asks for it.
+     */
+    private static final class QueueExecutor implements Executor {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        /**
+         * Run the queued deliveries, returning the number that threw.
+         */
+        int runAll() {
+            int failures = 0;
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (IllegalStateException e) {
+                    failures++;
+                }
+            }
+            return failures;
+        }
+    }
+
+    private static final class RecordingSubscriber implements ColorStream.Subscriber {
+        final List<Integer> colors = new ArrayList<>();
+        int throwOn = -1;
+
+        @Override
+        public void onColor(int color) {
+            colors.add(color);
+            if (color == throwOn) {
+                throw new IllegalStateException("subscriber failed");
+            }
+        }
+    }
+
+    @Test
+    public void bufferDeliversEveryColorInOrder() {
+        ColorStream stream = new ColorStream(0);
+        QueueExecutor executor = new QueueExecutor();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        stream.subscribe(subscriber, ColorStream.Policy.buffer(8), executor);
+
+        stream.publish(1);
+        stream.publish(2);
+        stream.publish(2);
+        stream.publish(3);
+        // One delivery for all of them.
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+
+        assertEquals(Arrays.asList(0, 1, 2, 3), subscriber.colors);
+    }
+
+    @Test
+    public void latestReplacesPendingColors() {
+        ColorStream stream = new ColorStream(0);
+        QueueExecutor executor = new QueueExecutor();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        ColorStream.Subscription subscription =
+                stream.subscribe(subscriber, ColorStream.Policy.latest(), executor);
+
+        for (int color = 1; color <= 10; color++) {
+            stream.publish(color);
+        }
+        executor.runAll();
+
+        assertEquals(Arrays.asList(10), subscriber.colors);
+        assertEquals(10, subscription.getDroppedCount());
+    }
+
+    @Test
+    public void throwingSubscriberKeepsReceivingColors() {
+        ColorStream stream = new ColorStream(0);
+        QueueExecutor executor = new QueueExecutor();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        subscriber.throwOn = 1;
+        stream.subscribe(subscriber, ColorStream.Policy.buffer(8), executor);
+
+        stream.publish(1);
+        stream.publish(2);
+        assertEquals(1, executor.runAll());
+        // The color buffered behind the failed one is delivered as well.
+        assertEquals(Arrays.asList(0, 1, 2), subscriber.colors);
+
+        stream.publish(3);
+        assertEquals(0, executor.runAll());
+        assertEquals(Arrays.asList(0, 1, 2, 3), subscriber.colors);
+    }
+
+    @Test
+    public void throwingSubscriberDoesNotStopOthers() {
+        ColorStream stream = new ColorStream(0);
+        QueueExecutor executor = new QueueExecutor();
+        RecordingSubscriber failing = new RecordingSubscriber();
+        failing.throwOn = 1;
+        RecordingSubscriber other = new RecordingSubscriber();
+        stream.subscribe(failing, ColorStream.Policy.latest(), executor);
+        stream.subscribe(other, ColorStream.Policy.latest(), executor);
+        executor.runAll();
+
+        stream.publish(1);
+        assertEquals(1, executor.runAll());
+        stream.publish(2);
+        assertEquals(0, executor.runAll());
+
+        assertEquals(Arrays.asList(0, 1, 2), failing.colors);
+        assertEquals(Arrays.asList(0, 1, 2), other.colors);
+    }
+
+    @Test
+    public void cancelledSubscriptionGetsNothing() {
+        ColorStream stream = new ColorStream(0);
+        QueueExecutor executor = new QueueExecutor();
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        ColorStream.Subscription subscription =
+                stream.subscribe(subscriber, ColorStream.Policy.buffer(4), executor);
+        subscription.cancel();
+        stream.publish(1);
+        executor.runAll();
+
+        assertTrue(subscriber.colors.isEmpty());
+        assertTrue(subscription.isCancelled());
+        assertFalse(stream.hasSubscribers());
+    }
+
+    @Test
+    public void subscribingWhilePublishingEndsWithTheLastColor() throws InterruptedException {
+        final int colors = 200;
+        Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        for (int round = 0; round < 2000; round++) {
+            final ColorStream stream = new ColorStream(0);
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread publisher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    start.countDown();
+                    for (int color = 1; color <= colors; color++) {
+                        stream.publish(color);
+                    }
+                }
+            });
+            publisher.start();
+            start.await();
+
+            final List<Integer> delivered = Collections.synchronizedList(new ArrayList<Integer>());
+            stream.subscribe(new ColorStream.Subscriber() {
+                @Override
+                public void onColor(int color) {
+                    delivered.add(color);
+                }
+            }, ColorStream.Policy.buffer(colors + 1), direct);
+            publisher.join();
+
+            // No color offered by subscribe() may overtake a newer one.
+            for (int i = 1; i < delivered.size(); i++) {
+                assertTrue("Round " + round + ": " + delivered,
+                        delivered.get(i) > delivered.get(i - 1));
+            }
+            assertEquals(colors, (int) delivered.get(delivered.size() - 1));
+        }
+    }
+}
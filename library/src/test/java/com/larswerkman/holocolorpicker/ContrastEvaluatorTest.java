@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the contrast against published WCAG and APCA values, and when the
+ * evaluator calls its listeners.
+ */
+public class ContrastEvaluatorTest {
+
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+
+    private int mCalls;
+
+    @Test
+    public void wcagRatios() {
+        assertEquals(21f, ContrastEvaluator.wcagRatio(BLACK, WHITE), 1e-3f);
+        assertEquals(21f, ContrastEvaluator.wcagRatio(WHITE, BLACK), 1e-3f);
+        assertEquals(1f, ContrastEvaluator.wcagRatio(0xFF336699, 0xFF336699), 1e-6f);
+        // Just below AA, the usual example.
+        assertEquals(4.478f, ContrastEvaluator.wcagRatio(0xFF777777, WHITE), 1e-3f);
+    }
+
+    @Test
+    public void apcaContrasts() {
+        // Values of the APCA 0.0.98G reference implementation.
+        assertEquals(106.04f, ContrastEvaluator.apcaContrast(BLACK, WHITE), 0.01f);
+        assertEquals(-107.88f, ContrastEvaluator.apcaContrast(WHITE, BLACK), 0.01f);
+        assertEquals(63.06f, ContrastEvaluator.apcaContrast(0xFF888888, WHITE), 0.01f);
+        assertEquals(0f, ContrastEvaluator.apcaContrast(0xFF888888, 0xFF888888), 0f);
+    }
+
+    @Test
+    public void translucentColorIsBlendedOverEachReference() {
+        ContrastEvaluator evaluator = new ContrastEvaluator(WHITE, BLACK);
+        evaluator.evaluate(0x80000000);
+
+        // Half black is 7F gray over white and stays black over black.
+        assertEquals(ContrastEvaluator.wcagRatio(0xFF7F7F7F, WHITE),
+                evaluator.getWcagRatio(0), 1e-6f);
+        assertEquals(ContrastEvaluator.apcaContrast(0xFF7F7F7F, WHITE),
+                evaluator.getApcaContrast(0), 1e-4f);
+        assertEquals(1f, evaluator.getWcagRatio(1), 1e-6f);
+        assertEquals(0f, evaluator.getApcaContrast(1), 0f);
+    }
+
+    @Test
+    public void referenceAlphaIsIgnored() {
+        ContrastEvaluator evaluator = new ContrastEvaluator(0x00FFFFFF);
+        assertEquals(WHITE, evaluator.getReference(0));
+        evaluator.evaluate(BLACK);
+        assertEquals(21f, evaluator.getWcagRatio(0), 1e-3f);
+    }
+
+    @Test
+    public void passesNeedsEveryReference() {
+        ContrastEvaluator evaluator = new ContrastEvaluator(WHITE);
+        evaluator.evaluate(0xFF777777);
+        assertFalse(evaluator.passes());
+        evaluator.evaluate(0xFF767676);
+        assertTrue(evaluator.passes());
+
+        // Only APCA: #888 reaches 60 on white but not 4.5:1.
+        evaluator.setMinimumContrast(0f, 60f);
+        assertTrue(evaluator.passes(0xFF888888));
+        assertFalse(evaluator.passes(0xFF999999));
+        assertEquals(0xFF767676, evaluator.getColor());
+
+        // #777 reaches 4.5:1 on black but not on white, #767676 on both.
+        evaluator.setMinimumContrast(4.5f, 0f);
+        evaluator.setReferences(WHITE, BLACK);
+        assertFalse(evaluator.passes(0xFF777777));
+        assertTrue(evaluator.passes());
+        assertTrue(new ContrastEvaluator().passes(0xFF777777));
+    }
+
+    @Test
+    public void listenersAreCalledOncePerChange() {
+        ContrastEvaluator evaluator = new ContrastEvaluator(WHITE);
+        ContrastEvaluator.OnContrastChangedListener listener =
+                new ContrastEvaluator.OnContrastChangedListener() {
+                    @Override
+                    public void onContrastChanged(ContrastEvaluator evaluator) {
+                        mCalls++;
+                    }
+                };
+        evaluator.addOnContrastChangedListener(listener);
+
+        evaluator.evaluate(0xFF336699);
+        evaluator.evaluate(0xFF336699);
+        assertEquals(1, mCalls);
+
+        // Changing the minimums or the references evaluates the color again.
+        int version = evaluator.getVersion();
+        evaluator.setMinimumContrast(7f, 0f);
+        evaluator.setReferences(BLACK);
+        assertEquals(3, mCalls);
+        assertEquals(version + 2, evaluator.getVersion());
+        assertEquals(ContrastEvaluator.wcagRatio(0xFF336699, BLACK),
+                evaluator.getWcagRatio(0), 1e-6f);
+
+        evaluator.removeOnContrastChangedListener(listener);
+        evaluator.evaluate(WHITE);
+        assertEquals(3, mCalls);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the incremental updates of the lookup table match a full
+ * recalculation, and how the editor shares the picker with other
+ * listeners.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class GradientStopEditorTest {
+
+    private ColorPicker mPicker;
+    private GradientStopEditor mEditor;
+
+    /**
+     * Changed range reported by the last call of the listener, -1 if it
+     * wasn't called.
+     */
+    private int mLutStart;
+    private int mLutEnd;
+    private int mPickerChanges;
+
+    @Before
+    public void setUp() {
+        mPicker = new ColorPicker(RuntimeEnvironment.getApplication());
+        mPicker.addOnColorChangedListener(new ColorPicker.OnColorChangedListener() {
+            @Override
+            public void onColorChanged(int color) {
+                mPickerChanges++;
+            }
+        });
+        mEditor = new GradientStopEditor(mPicker,
+                new int[]{0xFFFF0000, 0x8000FF00, 0xFF0000FF},
+                new float[]{0f, 0.4f, 1f});
+        mEditor.setOnGradientChangedListener(new GradientStopEditor.OnGradientChangedListener() {
+            @Override
+            public void onGradientChanged(GradientStopEditor editor, int lutStart, int lutEnd) {
+                mLutStart = lutStart;
+                mLutEnd = lutEnd;
+            }
+        });
+    }
+
+    @Test
+    public void lutIsCalculatedFromTheStops() {
+        int[] lut = mEditor.getLut();
+        assertEquals(GradientStopEditor.LUT_SIZE, lut.length);
+        assertEquals(0xFFFF0000, lut[0]);
+        assertEquals(0xFF0000FF, lut[GradientStopEditor.LUT_SIZE - 1]);
+        assertEquals(0x8000FF00, lut[Math.round(0.4f * (GradientStopEditor.LUT_SIZE - 1))]);
+    }
+
+    @Test
+    public void incrementalUpdatesMatchFullRecalculation() {
+        Random random = new Random(1);
+        for (int i = 0; i < 500; i++) {
+            int[] before = mEditor.getLut().clone();
+            mLutStart = -1;
+            int count = mEditor.getStopCount();
+            switch (random.nextInt(4)) {
+                case 0:
+                    mEditor.setStopColor(random.nextInt(count), random.nextInt());
+                    break;
+                case 1:
+                    mEditor.setStopPosition(random.nextInt(count), random.nextFloat());
+                    break;
+                case 2:
+                    mEditor.addStop(random.nextFloat());
+                    break;
+                default:
+                    mEditor.removeStop(random.nextInt(count));
+                    break;
+            }
+
+            int[] lut = mEditor.getLut();
+            assertArrayEquals("Edit " + i, fullLut(), lut);
+            // Nothing changed outside the reported range.
+            for (int index = 0; index < lut.length; index++) {
+                if (index < mLutStart || index > mLutEnd) {
+                    assertEquals("Edit " + i + " at " + index, before[index], lut[index]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void addStopKeepsTheGradientAndNotifies() {
+        int[] before = mEditor.getLut().clone();
+        mLutStart = -1;
+        int index = mEditor.addStop(0.7f);
+
+        assertEquals(2, index);
+        assertEquals(4, mEditor.getStopCount());
+        assertEquals(Math.round(0.4f * (GradientStopEditor.LUT_SIZE - 1)), mLutStart);
+        assertEquals(GradientStopEditor.LUT_SIZE - 1, mLutEnd);
+        // Off by at most one per channel, the new stop color is rounded.
+        int[] lut = mEditor.getLut();
+        for (int i = 0; i < lut.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                int difference = ((before[i] >> shift) & 0xFF) - ((lut[i] >> shift) & 0xFF);
+                assertTrue(Math.abs(difference) <= 1);
+            }
+        }
+    }
+
+    @Test
+    public void pickerEditsTheSelectedStop() {
+        mEditor.selectStop(1);
+        assertEquals(0x8000FF00, mPicker.getColor());
+        mPickerChanges = 0;
+
+        mPicker.setColor(0xFF336699);
+        assertEquals(0xFF336699, mEditor.getStopColor(1));
+        // The other listeners of the picker are still called.
+        assertEquals(1, mPickerChanges);
+
+        mEditor.detach();
+        mPicker.setColor(0xFF996633);
+        assertEquals(0xFF336699, mEditor.getStopColor(1));
+        assertEquals(2, mPickerChanges);
+    }
+
+    /**
+     * The lookup table of a new editor with the same stops.
+     */
+    private int[] fullLut() {
+        ColorPicker picker = new ColorPicker(RuntimeEnvironment.getApplication());
+        return new GradientStopEditor(picker, mEditor.getColors(), mEditor.getPositions())
+                .getLut();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the harmony listeners are called once per frame in which the
+ * colors changed, without the picker being drawn.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class HarmonyTest {
+
+    private final List<int[]> mHarmonies = new ArrayList<>();
+    private ColorPicker mPicker;
+
+    @Before
+    public void setUp() {
+        mPicker = new ColorPicker(RuntimeEnvironment.getApplication());
+        mPicker.setColor(0xFFFF0000);
+        mPicker.addOnHarmonyChangedListener(new ColorPicker.OnHarmonyChangedListener() {
+            @Override
+            public void onHarmonyChanged(int[] colors, int count) {
+                mHarmonies.add(Arrays.copyOf(colors, count));
+            }
+        });
+    }
+
+    @Test
+    public void setHarmonyNotifiesOnNextFrame() {
+        mPicker.setHarmony(ColorPicker.HARMONY_COMPLEMENTARY);
+        assertTrue(mHarmonies.isEmpty());
+
+        nextFrame();
+        assertEquals(1, mHarmonies.size());
+        assertArrayEquals(new int[]{0xFFFF0000, 0xFF00FFFF}, mHarmonies.get(0));
+    }
+
+    @Test
+    public void colorChangesOfOneFrameNotifyOnce() {
+        mPicker.setHarmony(ColorPicker.HARMONY_COMPLEMENTARY);
+        mPicker.setColor(0xFF00FF00);
+        mPicker.setColor(0x800000FF);
+
+        nextFrame();
+        assertEquals(1, mHarmonies.size());
+        assertArrayEquals(new int[]{0x800000FF, 0x80FFFF00}, mHarmonies.get(0));
+    }
+
+    @Test
+    public void switchingToNoneNotifies() {
+        mPicker.setHarmony(ColorPicker.HARMONY_TRIADIC);
+        nextFrame();
+        assertEquals(3, mHarmonies.get(0).length);
+
+        mPicker.setHarmony(ColorPicker.HARMONY_NONE);
+        nextFrame();
+        assertEquals(2, mHarmonies.size());
+        assertArrayEquals(new int[]{0xFFFF0000}, mHarmonies.get(1));
+    }
+
+    @Test
+    public void unchangedColorsDoNotNotify() {
+        mPicker.setHarmony(ColorPicker.HARMONY_ANALOGOUS);
+        nextFrame();
+
+        mPicker.setColor(0xFFFF0000);
+        mPicker.setHarmony(ColorPicker.HARMONY_ANALOGOUS);
+        nextFrame();
+        assertEquals(1, mHarmonies.size());
+    }
+
+    @Test
+    public void getterDoesNotNotify() {
+        mPicker.setHarmony(ColorPicker.HARMONY_TETRADIC);
+        int[] colors = new int[ColorPicker.MAX_HARMONY_COLORS];
+        assertEquals(4, mPicker.getHarmonyColors(colors));
+        assertTrue(mHarmonies.isEmpty());
+
+        nextFrame();
+        assertEquals(1, mHarmonies.size());
+        assertArrayEquals(Arrays.copyOf(colors, 4), mHarmonies.get(0));
+    }
+
+    private static void nextFrame() {
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+}
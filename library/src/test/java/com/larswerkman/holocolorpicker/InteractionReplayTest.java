@@ -0,0 +1,176 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.content.Context;
+import android.view.MotionEvent;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Records touches on a picker with an SV bar and an opacity bar, replays
+ * them into new views and checks that they end with the same colors.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class InteractionReplayTest {
+
+    private static final int SIZE = 300;
+    private static final int START_COLOR = 0xFF336699;
+
+    private byte[] mRecording;
+    private int[] mRecordedColors;
+
+    @Before
+    public void setUp() throws IOException {
+        View[] views = newViews();
+        ColorPicker picker = (ColorPicker) views[0];
+        for (View view : views) {
+            layOut(view);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InteractionRecorder recorder = new InteractionRecorder(out, 0);
+        assertEquals(0, recorder.attach(picker));
+        assertEquals(1, recorder.attach((ColorBar) views[1]));
+        assertEquals(2, recorder.attach((ColorBar) views[2]));
+
+        // Turn the wheel, then drag both bars.
+        float center = picker.getWidth() / 2f;
+        float radius = center
+                - picker.getResources().getDimensionPixelSize(R.dimen.color_wheel_thickness)
+                - picker.getResources().getDimensionPixelSize(R.dimen.color_pointer_halo_radius);
+        float hue = picker.getHue();
+        double angle = ColorMath.hueToAngle(hue);
+        float x = center + radius * (float) Math.cos(angle);
+        float y = center + radius * (float) Math.sin(angle);
+        drag(picker, 0, x, y, center - radius * 0.6f, center + radius * 0.8f);
+        assertNotEquals(hue, picker.getHue(), 1f);
+        for (int i = 1; i < views.length; i++) {
+            View bar = views[i];
+            float barY = bar.getHeight() / 2f;
+            drag(bar, 100 * i, bar.getWidth() / 2f, barY, bar.getWidth() / 3f, barY);
+        }
+        recorder.close();
+
+        mRecording = out.toByteArray();
+        mRecordedColors = colors(views);
+    }
+
+    @Test
+    public void replayReachesTheRecordedColors() throws IOException {
+        View[] views = newViews();
+        // The recording lays the views out and sets the initial colors.
+        ((ColorPicker) views[0]).setColor(0xFFFFFF00);
+
+        InteractionReplayer.Result result =
+                new InteractionReplayer(new ByteArrayInputStream(mRecording)).replay(views);
+
+        // Each drag is a down, three moves and an up.
+        assertEquals(3 * 5, result.eventCount);
+        assertArrayEquals(mRecordedColors, result.finalColors);
+        assertArrayEquals(mRecordedColors, colors(views));
+    }
+
+    @Test
+    public void viewsMustMatchTheRecording() {
+        View[] views = newViews();
+        View swapped = views[1];
+        views[1] = views[2];
+        views[2] = swapped;
+        assertReplayFails(mRecording, views);
+        assertReplayFails(mRecording, views[0]);
+    }
+
+    @Test
+    public void truncatedRecordingFails() {
+        assertReplayFails(Arrays.copyOf(mRecording, mRecording.length - 5), newViews());
+    }
+
+    private static void assertReplayFails(byte[] recording, View... views) {
+        try {
+            new InteractionReplayer(new ByteArrayInputStream(recording)).replay(views);
+            fail("Replayed into views that don't match");
+        } catch (IOException expected) {
+        }
+    }
+
+    /**
+     * A picker with an SV bar and an opacity bar, in the order they are
+     * attached to the recorder.
+     */
+    private static View[] newViews() {
+        Context context = RuntimeEnvironment.getApplication();
+        ColorPicker picker = new ColorPicker(context);
+        SVBar svBar = new SVBar(context);
+        OpacityBar opacityBar = new OpacityBar(context);
+        picker.addSVBar(svBar);
+        picker.addOpacityBar(opacityBar);
+        picker.setColor(START_COLOR);
+        return new View[]{picker, svBar, opacityBar};
+    }
+
+    private static int[] colors(View[] views) {
+        return new int[]{
+                ((ColorPicker) views[0]).getColor(),
+                ((ColorBar) views[1]).getColor(),
+                ((ColorBar) views[2]).getColor()
+        };
+    }
+
+    /**
+     * Press at one point and move to another in three steps, 16 ms apart.
+     */
+    private static void drag(View view, long downTime, float fromX, float fromY,
+                             float toX, float toY) {
+        touch(view, downTime, downTime, MotionEvent.ACTION_DOWN, fromX, fromY);
+        for (int step = 1; step <= 3; step++) {
+            touch(view, downTime, downTime + 16 * step, MotionEvent.ACTION_MOVE,
+                    fromX + (toX - fromX) * step / 3, fromY + (toY - fromY) * step / 3);
+        }
+        touch(view, downTime, downTime + 64, MotionEvent.ACTION_UP, toX, toY);
+    }
+
+    private static void touch(View view, long downTime, long eventTime, int action,
+                              float x, float y) {
+        MotionEvent event = MotionEvent.obtain(downTime, eventTime, action, x, y, 0);
+        view.dispatchTouchEvent(event);
+        event.recycle();
+    }
+
+    private static void layOut(View view) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.AT_MOST),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.AT_MOST));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ListenerListTest {
+
+    private static final int THREADS = 4;
+    private static final int ITERATIONS = 20000;
+
+    private final ListenerList<Object> mList = new ListenerList<>(new Object[0]);
+
+    @Test
+    public void addAndRemoveKeepTheOrder() {
+        Object a = new Object();
+        Object b = new Object();
+        Object c = new Object();
+        assertTrue(mList.isEmpty());
+
+        assertTrue(mList.add(a));
+        assertTrue(mList.add(b));
+        assertTrue(mList.add(c));
+        assertFalse(mList.isEmpty());
+        assertArrayEquals(new Object[]{a, b, c}, mList.get());
+
+        assertTrue(mList.remove(b));
+        assertArrayEquals(new Object[]{a, c}, mList.get());
+        assertTrue(mList.remove(a));
+        assertTrue(mList.remove(c));
+        assertTrue(mList.isEmpty());
+    }
+
+    @Test
+    public void duplicatesAndMissingListeners() {
+        Object a = new Object();
+        assertTrue(mList.add(a));
+        assertFalse(mList.add(a));
+        assertEquals(1, mList.get().length);
+
+        assertFalse(mList.remove(new Object()));
+        assertFalse(mList.remove(null));
+        assertTrue(mList.remove(a));
+        assertFalse(mList.remove(a));
+        try {
+            mList.add(null);
+            fail("Added null");
+        } catch (NullPointerException expected) {
+        }
+    }
+
+    @Test
+    public void dispatchedArrayIsNeverModified() {
+        Object a = new Object();
+        Object b = new Object();
+        mList.add(a);
+        Object[] dispatching = mList.get();
+
+        mList.add(b);
+        mList.remove(a);
+        assertArrayEquals(new Object[]{a}, dispatching);
+        assertArrayEquals(new Object[]{b}, mList.get());
+
+        // A failed add or remove keeps the same array.
+        Object[] current = mList.get();
+        mList.add(b);
+        mList.remove(a);
+        assertSame(current, mList.get());
+    }
+
+    @Test
+    public void concurrentAddAndRemoveLoseNothing() throws InterruptedException {
+        final Object[][] kept = new Object[THREADS][2];
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger lost = new AtomicInteger();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final Object[] own = kept[t];
+            own[0] = new Object();
+            own[1] = new Object();
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    mList.add(own[0]);
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        Object temporary = new Object();
+                        if (!mList.add(temporary) || !mList.remove(temporary)) {
+                            lost.incrementAndGet();
+                        }
+                    }
+                    mList.add(own[1]);
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, lost.get());
+        Set<Object> expected = new HashSet<>();
+        for (Object[] own : kept) {
+            expected.addAll(Arrays.asList(own));
+        }
+        Object[] listeners = mList.get();
+        assertEquals(2 * THREADS, listeners.length);
+        assertEquals(expected, new HashSet<>(Arrays.asList(listeners)));
+    }
+}
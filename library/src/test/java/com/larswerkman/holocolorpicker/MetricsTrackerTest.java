@@ -0,0 +1,166 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the trace sections of the tracker stay balanced when the
+ * metrics instance changes in the middle of an event.
+ */
+public class MetricsTrackerTest {
+
+    /**
+     * Records the sections as "parent/child" paths when they are closed.
+     */
+    static final class RecordingSink implements PickerTrace.Sink {
+        final Deque<String> open = new ArrayDeque<>();
+        final List<String> closed = new ArrayList<>();
+
+        @Override
+        public void beginSection(String sectionName) {
+            String parent = open.peek();
+            open.push(parent == null ? sectionName : parent + "/" + sectionName);
+        }
+
+        @Override
+        public void endSection() {
+            if (open.isEmpty()) {
+                fail("endSection() without beginSection()");
+            }
+            closed.add(open.pop());
+        }
+
+        @Override
+        public void setCounter(String counterName, long value) {
+        }
+    }
+
+    private static final class CountingMetrics implements PickerMetrics {
+        int touchStats;
+        int draws;
+
+        @Override
+        public void onTouchToListener(View view, long latencyNanos) {
+        }
+
+        @Override
+        public void onDraw(View view, long durationNanos) {
+            draws++;
+        }
+
+        @Override
+        public void onShaderRebuilt(View view) {
+        }
+
+        @Override
+        public void onTouchEventStats(View view, int hsvConversions,
+                                      int listenerInvocations, int allocations) {
+            touchStats++;
+        }
+    }
+
+    private RecordingSink mSink;
+    private MetricsTracker mTracker;
+
+    @Before
+    public void setUp() {
+        mSink = new RecordingSink();
+        PickerTrace.setSink(mSink);
+        mTracker = new MetricsTracker(null, "ColorPicker");
+    }
+
+    @After
+    public void tearDown() {
+        PickerTrace.setSink(null);
+    }
+
+    @Test
+    public void metricsSetDuringTouchEvent() {
+        CountingMetrics metrics = new CountingMetrics();
+        mTracker.beginTouch();
+        mTracker.setMetrics(metrics);
+        mTracker.endTouch();
+        assertBalanced();
+
+        // The next event is measured.
+        mTracker.beginTouch();
+        mTracker.endTouch();
+        assertBalanced();
+        assertEquals(PickerTrace.ENABLED ? 2 : 1, metrics.touchStats);
+    }
+
+    @Test
+    public void metricsRemovedDuringTouchEventAndDraw() {
+        CountingMetrics metrics = new CountingMetrics();
+        mTracker.setMetrics(metrics);
+        mTracker.beginTouch();
+        mTracker.setMetrics(null);
+        mTracker.endTouch();
+
+        mTracker.setMetrics(metrics);
+        mTracker.beginDraw();
+        mTracker.setMetrics(null);
+        mTracker.endDraw();
+
+        assertBalanced();
+        assertEquals(Arrays.asList("ColorPicker#onTouchEvent", "ColorPicker#onDraw"),
+                mSink.closed);
+        assertEquals(0, metrics.touchStats);
+        assertEquals(0, metrics.draws);
+    }
+
+    @Test
+    public void metricsReplacedDuringDraw() {
+        CountingMetrics first = new CountingMetrics();
+        CountingMetrics second = new CountingMetrics();
+        mTracker.setMetrics(first);
+        mTracker.beginDraw();
+        mTracker.setMetrics(second);
+        mTracker.endDraw();
+
+        assertBalanced();
+        assertEquals(0, first.draws);
+        assertEquals(1, second.draws);
+    }
+
+    @Test
+    public void unmatchedEndIsIgnored() {
+        mTracker.endTouch();
+        mTracker.endDraw();
+        assertBalanced();
+        assertTrue(mSink.closed.isEmpty());
+    }
+
+    private void assertBalanced() {
+        assertTrue("Open sections " + mSink.open, mSink.open.isEmpty());
+    }
+}
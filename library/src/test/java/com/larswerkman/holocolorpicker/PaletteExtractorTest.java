@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the colors extracted from generated images, also from an image
+ * much larger than the pixels that are sampled.
+ */
+public class PaletteExtractorTest {
+
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 400;
+
+    /**
+     * A color may be off by one after the round trip through Lab.
+     */
+    private static final int CHANNEL_TOLERANCE = 1;
+
+    /**
+     * The colors of the bands of {@link #noisyImage}.
+     */
+    private static final int[] BANDS = {
+            0x3060C0, 0xE0A020, 0x20A040, 0xF0F0F0, 0x402018, 0xC02060
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void sameImageGivesSameColors() {
+        int[] pixels = noisyImage(WIDTH, HEIGHT, 1);
+        int[] colors = new int[8];
+        float[] shares = new float[8];
+        int count = PaletteExtractor.extract(pixels, WIDTH, HEIGHT, colors, shares);
+        assertEquals(8, count);
+
+        for (int i = 0; i < 3; i++) {
+            int[] again = new int[8];
+            float[] againShares = new float[8];
+            assertEquals(count, PaletteExtractor.extract(pixels, WIDTH, HEIGHT, again, againShares));
+            assertArrayEquals(colors, again);
+            assertArrayEquals(shares, againShares, 0f);
+        }
+
+        // Most common first, and the shares add up to the whole image.
+        float total = 0f;
+        for (int i = 0; i < count; i++) {
+            assertTrue(i == 0 || shares[i] <= shares[i - 1]);
+            assertEquals(0xFF, colors[i] >>> 24);
+            total += shares[i];
+        }
+        assertEquals(1f, total, 1e-4f);
+    }
+
+    @Test
+    public void twoColorsShareTheImage() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixels, 0, pixels.length / 2, 0xFFE02020);
+        Arrays.fill(pixels, pixels.length / 2, pixels.length, 0xFF2040C0);
+        int[] colors = new int[5];
+        float[] shares = new float[5];
+
+        assertEquals(2, PaletteExtractor.extract(pixels, WIDTH, HEIGHT, colors, shares));
+        // Both halves are equally common, either may come first.
+        int red = ((colors[0] >> 16) & 0xFF) > 0x80 ? 0 : 1;
+        assertColor(0xFFE02020, colors[red]);
+        assertColor(0xFF2040C0, colors[1 - red]);
+        assertEquals(0.5f, shares[0], 0.01f);
+        assertEquals(0.5f, shares[1], 0.01f);
+    }
+
+    @Test
+    public void translucentPixelsAreSkipped() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixels, 0x7F00FF00);
+        int[] colors = new int[4];
+        assertEquals(0, PaletteExtractor.extract(pixels, WIDTH, HEIGHT, colors, null));
+
+        // A quarter at half opacity is all that is counted.
+        Arrays.fill(pixels, 0, pixels.length / 4, 0x80FF8000);
+        float[] shares = new float[4];
+        assertEquals(1, PaletteExtractor.extract(pixels, WIDTH, HEIGHT, colors, shares));
+        assertColor(0xFFFF8000, colors[0]);
+        assertEquals(1f, shares[0], 1e-6f);
+    }
+
+    @Test
+    public void seedAddsMostCommonLast() throws IOException {
+        SwatchStore store = SwatchStore.open(mFolder.newFile(), 4, 4);
+        try {
+            PaletteExtractor.seed(null, store, new int[]{1, 2, 3}, 3);
+            int[] recent = new int[4];
+            assertEquals(3, store.getRecent(recent));
+            assertArrayEquals(new int[]{1, 2, 3, 0}, recent);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void largeImageSharesMatchTheBands() {
+        // Much larger than the pixels that are sampled.
+        int width = 2000;
+        int height = 1500;
+        int[] pixels = noisyImage(width, height, 2);
+        int[] colors = new int[BANDS.length];
+        float[] shares = new float[BANDS.length];
+
+        assertEquals(BANDS.length, PaletteExtractor.extract(pixels, width, height, colors, shares));
+        for (int i = 0; i < BANDS.length; i++) {
+            assertEquals(1f / BANDS.length, shares[i], 0.02f);
+        }
+    }
+
+    /**
+     * An image of a few horizontal bands of different colors with noise,
+     * so it fills many bins.
+     */
+    private static int[] noisyImage(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int base = BANDS[y * BANDS.length / height];
+            for (int x = 0; x < width; x++) {
+                int color = 0xFF000000;
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int channel = ((base >> shift) & 0xFF) + random.nextInt(41) - 20;
+                    color |= Math.max(0, Math.min(0xFF, channel)) << shift;
+                }
+                pixels[y * width + x] = color;
+            }
+        }
+        return pixels;
+    }
+
+    private static void assertColor(int expected, int actual) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            int difference = ((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF);
+            if (Math.abs(difference) > CHANNEL_TOLERANCE) {
+                assertEquals(Integer.toHexString(expected), Integer.toHexString(actual));
+            }
+        }
+    }
+}
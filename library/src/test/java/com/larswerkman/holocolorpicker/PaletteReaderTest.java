@@ -0,0 +1,224 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Reads palettes written by {@link PaletteWriter} and by hand, up to the
+ * largest palette an ACO file can hold.
+ */
+public class PaletteReaderTest {
+
+    private static final int[] FORMATS = {
+            PaletteReader.FORMAT_ASE, PaletteReader.FORMAT_GPL, PaletteReader.FORMAT_ACO
+    };
+
+    private static final String[] FORMAT_NAMES = {null, "ASE", "GPL", "ACO"};
+
+    /**
+     * The most colors an ACO file can hold.
+     */
+    private static final int MAX_COLORS = 65535;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void roundTripAroundPageBoundary() throws IOException {
+        for (int format : FORMATS) {
+            for (int count = PaletteReader.PAGE_SIZE - 1; count <= PaletteReader.PAGE_SIZE + 1; count++) {
+                int[] colors = opaqueColors(count, format * 31 + count);
+                File file = mFolder.newFile();
+                PaletteWriter.write(file, format, "Test", colors);
+
+                try (PaletteReader reader = PaletteReader.open(file)) {
+                    assertEquals(format, reader.getFormat());
+                    assertEquals(count, reader.getColorCount());
+                    assertEquals(count > PaletteReader.PAGE_SIZE ? 2 : 1, reader.getPageCount());
+                    assertArrayEquals(colors, reader.readAll());
+
+                    int[] page = new int[PaletteReader.PAGE_SIZE];
+                    int last = reader.getPageCount() - 1;
+                    int length = reader.readPage(last, page);
+                    assertEquals(count - last * PaletteReader.PAGE_SIZE, length);
+                    assertArrayEquals(Arrays.copyOfRange(colors, last * PaletteReader.PAGE_SIZE, count),
+                            Arrays.copyOf(page, length));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void readAtAnyIndex() throws IOException {
+        int[] colors = opaqueColors(3000, 7);
+        for (int format : FORMATS) {
+            File file = mFolder.newFile();
+            PaletteWriter.write(file, format, null, colors);
+
+            try (PaletteReader reader = PaletteReader.open(file)) {
+                int[] read = new int[12];
+                // Within a page, across a page and past the end.
+                assertEquals(10, reader.read(1500, read, 2, 10));
+                assertArrayEquals(Arrays.copyOfRange(colors, 1500, 1510),
+                        Arrays.copyOfRange(read, 2, 12));
+                assertEquals(12, reader.read(2040, read, 0, 12));
+                assertArrayEquals(Arrays.copyOfRange(colors, 2040, 2052), read);
+                assertEquals(5, reader.read(2995, read, 0, 12));
+                assertEquals(colors[2999], read[4]);
+                assertEquals(0, reader.read(3000, read, 0, 12));
+            }
+        }
+    }
+
+    @Test
+    public void gplWithByteOrderMark() throws IOException {
+        File file = write(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF},
+                "GIMP Palette\nName: Marked\n#\n255 0 0\tRed\n  0 128 255 Blue\n"
+                        .getBytes(StandardCharsets.UTF_8));
+
+        try (PaletteReader reader = PaletteReader.open(file)) {
+            assertEquals(PaletteReader.FORMAT_GPL, reader.getFormat());
+            assertArrayEquals(new int[]{0xFFFF0000, 0xFF0080FF}, reader.readAll());
+        }
+    }
+
+    @Test
+    public void gplWithAlphaChannel() throws IOException {
+        File file = write("GIMP Palette\nChannels: RGBA\n255 0 0 128 Red\n0 0 0 0 Clear\n"
+                .getBytes(StandardCharsets.UTF_8));
+
+        try (PaletteReader reader = PaletteReader.open(file)) {
+            assertArrayEquals(new int[]{0x80FF0000, 0x00000000}, reader.readAll());
+        }
+    }
+
+    @Test
+    public void acoVersion2SkipsNames() throws IOException {
+        int count = PaletteReader.PAGE_SIZE + 1;
+        int[] colors = opaqueColors(count, 3);
+        File file = write(acoVersion2(colors));
+
+        try (PaletteReader reader = PaletteReader.open(file)) {
+            assertEquals(PaletteReader.FORMAT_ACO, reader.getFormat());
+            assertEquals(count, reader.getColorCount());
+            assertArrayEquals(colors, reader.readAll());
+
+            int[] read = new int[1];
+            reader.read(count - 1, read, 0, 1);
+            assertEquals(colors[count - 1], read[0]);
+        }
+    }
+
+    @Test
+    public void truncatedFilesThrow() throws IOException {
+        int[] colors = opaqueColors(10, 5);
+        byte[][] files = new byte[3][];
+        for (int i = 0; i < 2; i++) {
+            File file = mFolder.newFile();
+            PaletteWriter.write(file, i == 0 ? PaletteReader.FORMAT_ASE : PaletteReader.FORMAT_ACO,
+                    null, colors);
+            files[i] = Files.readAllBytes(file.toPath());
+        }
+        files[2] = acoVersion2(colors);
+
+        for (byte[] bytes : files) {
+            // Cut in the last color, and in the header.
+            for (int length : new int[]{bytes.length - 3, 10}) {
+                File file = write(Arrays.copyOf(bytes, length));
+                try (PaletteReader reader = PaletteReader.open(file)) {
+                    reader.readAll();
+                    fail("Read a truncated palette of " + length + " bytes");
+                } catch (EOFException expected) {
+                }
+            }
+        }
+    }
+
+    @Test
+    public void largestPaletteIsReadWhole() throws IOException {
+        int[] colors = opaqueColors(MAX_COLORS, 11);
+        for (int format : FORMATS) {
+            File file = mFolder.newFile();
+            PaletteWriter.write(file, format, null, colors);
+
+            try (PaletteReader reader = PaletteReader.open(file)) {
+                assertEquals(FORMAT_NAMES[format], MAX_COLORS, reader.getColorCount());
+                assertArrayEquals(FORMAT_NAMES[format], colors, reader.readAll());
+            }
+        }
+    }
+
+    /**
+     * An ACO version 2 file, with every color named by its index.
+     */
+    private static byte[] acoVersion2(int[] colors) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + colors.length * (10 + 4 + 2 * 8));
+        buffer.putShort((short) 2);
+        buffer.putShort((short) colors.length);
+        for (int i = 0; i < colors.length; i++) {
+            buffer.putShort((short) PaletteReader.ACO_SPACE_RGB);
+            buffer.putShort((short) (((colors[i] >> 16) & 0xFF) * 0x101));
+            buffer.putShort((short) (((colors[i] >> 8) & 0xFF) * 0x101));
+            buffer.putShort((short) ((colors[i] & 0xFF) * 0x101));
+            buffer.putShort((short) 0);
+            String name = "C" + i;
+            buffer.putInt(name.length() + 1);
+            for (int c = 0; c < name.length(); c++) {
+                buffer.putChar(name.charAt(c));
+            }
+            buffer.putChar((char) 0);
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private File write(byte[]... parts) throws IOException {
+        File file = mFolder.newFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            for (byte[] part : parts) {
+                out.write(part);
+            }
+        }
+        return file;
+    }
+
+    private static int[] opaqueColors(int count, long seed) {
+        Random random = new Random(seed);
+        int[] colors = new int[count];
+        for (int i = 0; i < count; i++) {
+            colors[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return colors;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.content.Context;
+import android.view.MotionEvent;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the listener latency and counts reported to the metrics of a
+ * picker, also when a connected bar is dragged.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PickerMetricsTest {
+
+    private static final int SIZE = 300;
+
+    /**
+     * Records the views of the latencies and the listener counts of the
+     * touch events.
+     */
+    private static final class RecordingMetrics implements PickerMetrics {
+        final List<View> latencyViews = new ArrayList<>();
+        final List<Integer> listenerInvocations = new ArrayList<>();
+
+        @Override
+        public void onTouchToListener(View view, long latencyNanos) {
+            assertTrue(latencyNanos >= 0);
+            latencyViews.add(view);
+        }
+
+        @Override
+        public void onDraw(View view, long durationNanos) {
+        }
+
+        @Override
+        public void onShaderRebuilt(View view) {
+        }
+
+        @Override
+        public void onTouchEventStats(View view, int hsvConversions,
+                                      int listenerInvocations, int allocations) {
+            this.listenerInvocations.add(listenerInvocations);
+        }
+    }
+
+    private static final ColorPicker.OnColorChangedListener NO_OP =
+            new ColorPicker.OnColorChangedListener() {
+                @Override
+                public void onColorChanged(int color) {
+                }
+            };
+
+    private RecordingMetrics mMetrics;
+    private ColorPicker mPicker;
+    private SaturationBar mSaturationBar;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        mPicker = new ColorPicker(context);
+        mSaturationBar = new SaturationBar(context);
+        mPicker.addSaturationBar(mSaturationBar);
+        mPicker.setColor(0xFFFF0000);
+        mPicker.setOnColorChangedListener(NO_OP);
+        mPicker.addOnColorChangedListener(new ColorPicker.OnColorChangedListener() {
+            @Override
+            public void onColorChanged(int color) {
+            }
+        });
+        // Only the picker is measured.
+        mMetrics = new RecordingMetrics();
+        mPicker.setMetrics(mMetrics);
+    }
+
+    @Test
+    public void everyListenerCallIsCounted() {
+        layOut(mPicker);
+        float center = mPicker.getWidth() / 2f;
+        float radius = center
+                - mPicker.getResources().getDimensionPixelSize(R.dimen.color_wheel_thickness)
+                - mPicker.getResources().getDimensionPixelSize(R.dimen.color_pointer_halo_radius);
+
+        touch(mPicker, MotionEvent.ACTION_DOWN, center + radius, center);
+        touch(mPicker, MotionEvent.ACTION_MOVE, center, center + radius);
+
+        // Both color changed listeners on the move, nothing on the down.
+        assertEquals(0, (int) mMetrics.listenerInvocations.get(0));
+        assertEquals(2, (int) mMetrics.listenerInvocations.get(1));
+        assertEquals(2, mMetrics.latencyViews.size());
+        assertSame(mPicker, mMetrics.latencyViews.get(0));
+    }
+
+    @Test
+    public void barDragReportsThePickerListeners() {
+        layOut(mSaturationBar);
+        float y = mSaturationBar.getHeight() / 2f;
+
+        touch(mSaturationBar, MotionEvent.ACTION_DOWN, mSaturationBar.getWidth() / 2f, y);
+        touch(mSaturationBar, MotionEvent.ACTION_MOVE, mSaturationBar.getWidth() / 3f, y);
+        touch(mSaturationBar, MotionEvent.ACTION_UP, mSaturationBar.getWidth() / 3f, y);
+
+        // Measured from the start of the bar's event, reported for the bar.
+        assertEquals(2, mMetrics.latencyViews.size());
+        for (View view : mMetrics.latencyViews) {
+            assertSame(mSaturationBar, view);
+        }
+
+        // Outside of the bar's events nothing is measured.
+        mMetrics.latencyViews.clear();
+        mSaturationBar.setSaturation(0.2f);
+        assertTrue(mMetrics.latencyViews.isEmpty());
+    }
+
+    private static void touch(View view, int action, float x, float y) {
+        MotionEvent event = MotionEvent.obtain(0, 0, action, x, y, 0);
+        view.dispatchTouchEvent(event);
+        event.recycle();
+    }
+
+    private static void layOut(View view) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.AT_MOST),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.AT_MOST));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+}
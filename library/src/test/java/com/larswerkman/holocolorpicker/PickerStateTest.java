@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PickerStateTest {
+
+    private final List<Integer> mChanges = new ArrayList<>();
+    private final PickerState.OnStateChangedListener mListener =
+            new PickerState.OnStateChangedListener() {
+                @Override
+                public void onStateChanged(PickerState state, int changed) {
+                    mChanges.add(changed);
+                }
+            };
+
+    private PickerState mState;
+
+    @Before
+    public void setUp() {
+        mState = new PickerState(0x80FF0000);
+        mState.addOnStateChangedListener(mListener);
+    }
+
+    @Test
+    public void initialColor() {
+        assertEquals(0x80FF0000, mState.getColor());
+        assertEquals(0f, mState.getHue(), 0f);
+        assertEquals(1f, mState.getSaturation(), 0f);
+        assertEquals(1f, mState.getValue(), 0f);
+        assertEquals(0x80, mState.getAlpha());
+        assertEquals(0, mState.getVersion());
+    }
+
+    @Test
+    public void listenersGetTheChangedComponents() {
+        mState.setHue(120f);
+        mState.setSaturation(0.5f);
+        mState.setValue(0.5f);
+        mState.setAlpha(0xFF);
+        mState.setColor(0xFF0000FF);
+        // Setting the same state again changes nothing.
+        mState.setColor(0xFF0000FF);
+        mState.setHue(600f);
+
+        assertEquals(Arrays.asList(
+                PickerState.CHANGED_HUE,
+                PickerState.CHANGED_SATURATION,
+                PickerState.CHANGED_VALUE,
+                PickerState.CHANGED_ALPHA,
+                PickerState.CHANGED_HUE | PickerState.CHANGED_SATURATION
+                        | PickerState.CHANGED_VALUE), mChanges);
+        assertEquals(5, mState.getVersion());
+        assertEquals(ColorMath.hsvToColor(0xFF, 240f, 1f, 1f), mState.getColor());
+
+        mState.removeOnStateChangedListener(mListener);
+        mState.setHue(10f);
+        assertEquals(5, mChanges.size());
+        assertEquals(6, mState.getVersion());
+    }
+
+    @Test
+    public void grayAndBlackKeepHueAndSaturation() {
+        mState.set(0xFF, 200f, 0.6f, 0.8f);
+        int hueColor = mState.getHueColor();
+
+        mState.setColor(0xFF808080);
+        assertEquals(200f, mState.getHue(), 0f);
+        assertEquals(0f, mState.getSaturation(), 0f);
+        assertEquals(0xFF808080, mState.getColor());
+        assertEquals(hueColor, mState.getHueColor());
+
+        mState.setSaturation(0.6f);
+        mState.setColor(0xFF000000);
+        assertEquals(200f, mState.getHue(), 0f);
+        assertEquals(0.6f, mState.getSaturation(), 0f);
+        assertEquals(0xFF000000, mState.getColor());
+
+        // The pointer of the value moves, the gradients stay.
+        assertEquals(PickerState.CHANGED_VALUE, (int) mChanges.get(mChanges.size() - 1));
+    }
+
+    @Test
+    public void componentsAreClamped() {
+        mState.set(300, -30f, 2f, -1f);
+
+        assertEquals(0xFF, mState.getAlpha());
+        assertEquals(330f, mState.getHue(), 1e-4f);
+        assertEquals(1f, mState.getSaturation(), 0f);
+        assertEquals(0f, mState.getValue(), 0f);
+        assertEquals(0xFF000000, mState.getColor());
+        assertTrue(mState.getHue() < 360f);
+    }
+}
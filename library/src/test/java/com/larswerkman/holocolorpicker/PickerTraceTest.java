@@ -0,0 +1,189 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.MotionEvent;
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives a picker with an SV bar and an opacity bar and checks the trace
+ * sections the views open, nested as "parent/child" paths in the order
+ * they are closed.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PickerTraceTest {
+
+    private static final int SIZE = 300;
+
+    /**
+     * Set on every view, so touch and draw sections are opened even if
+     * {@link PickerTrace#ENABLED} is off.
+     */
+    private static final PickerMetrics METRICS = new PickerMetrics() {
+        @Override
+        public void onTouchToListener(View view, long latencyNanos) {
+        }
+
+        @Override
+        public void onDraw(View view, long durationNanos) {
+        }
+
+        @Override
+        public void onShaderRebuilt(View view) {
+        }
+
+        @Override
+        public void onTouchEventStats(View view, int hsvConversions,
+                                      int listenerInvocations, int allocations) {
+        }
+    };
+
+    private MetricsTrackerTest.RecordingSink mSink;
+    private ColorPicker mPicker;
+    private SVBar mSVBar;
+    private OpacityBar mOpacityBar;
+
+    @Before
+    public void setUp() {
+        mSink = new MetricsTrackerTest.RecordingSink();
+        PickerTrace.setSink(mSink);
+
+        Context context = RuntimeEnvironment.getApplication();
+        mPicker = new ColorPicker(context);
+        mSVBar = new SVBar(context);
+        mOpacityBar = new OpacityBar(context);
+        mPicker.addSVBar(mSVBar);
+        mPicker.addOpacityBar(mOpacityBar);
+        mPicker.setMetrics(METRICS);
+        mSVBar.setMetrics(METRICS);
+        mOpacityBar.setMetrics(METRICS);
+        mPicker.setColor(0xFFFF0000);
+        mSink.closed.clear();
+    }
+
+    @After
+    public void tearDown() {
+        PickerTrace.setSink(null);
+    }
+
+    @Test
+    public void setColor() {
+        mPicker.setColor(0xFF336699);
+
+        assertSections(traced("ColorPicker#setColor"));
+    }
+
+    @Test
+    public void barsSizeChanged() {
+        layOut(mSVBar);
+        layOut(mOpacityBar);
+
+        assertSections(traced("SVBar#onSizeChanged", "OpacityBar#onSizeChanged"));
+    }
+
+    @Test
+    public void wheelDragNestsSetColor() {
+        layOut(mPicker);
+        float center = mPicker.getWidth() / 2f;
+        float radius = center
+                - mPicker.getResources().getDimensionPixelSize(R.dimen.color_wheel_thickness)
+                - mPicker.getResources().getDimensionPixelSize(R.dimen.color_pointer_halo_radius);
+        mSink.closed.clear();
+
+        // Press the pointer of red, right of the center, and turn the wheel.
+        touch(mPicker, MotionEvent.ACTION_DOWN, center + radius, center);
+        touch(mPicker, MotionEvent.ACTION_MOVE, center, center + radius);
+        touch(mPicker, MotionEvent.ACTION_UP, center, center + radius);
+
+        List<String> expected = new ArrayList<>();
+        expected.add("ColorPicker#onTouchEvent");
+        expected.addAll(traced("ColorPicker#onTouchEvent/ColorPicker#setColor"));
+        expected.add("ColorPicker#onTouchEvent");
+        expected.add("ColorPicker#onTouchEvent");
+        assertSections(expected);
+    }
+
+    @Test
+    public void barDragOnlyTracesTheBar() {
+        layOut(mSVBar);
+        mSink.closed.clear();
+
+        float y = mSVBar.getHeight() / 2f;
+        touch(mSVBar, MotionEvent.ACTION_DOWN, mSVBar.getWidth() / 3f, y);
+        touch(mSVBar, MotionEvent.ACTION_MOVE, mSVBar.getWidth() / 2f, y);
+        touch(mSVBar, MotionEvent.ACTION_UP, mSVBar.getWidth() / 2f, y);
+
+        // The bar tells the picker without setColor() and its fan-out.
+        assertSections(Arrays.asList(
+                "SVBar#onTouchEvent", "SVBar#onTouchEvent", "SVBar#onTouchEvent"));
+    }
+
+    @Test
+    public void drawIsItsOwnSection() {
+        layOut(mPicker);
+        mSink.closed.clear();
+
+        mPicker.draw(new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888)));
+
+        assertSections(Collections.singletonList("ColorPicker#onDraw"));
+    }
+
+    /**
+     * The sections that are only opened with tracing enabled.
+     */
+    private static List<String> traced(String... sections) {
+        return PickerTrace.ENABLED
+                ? Arrays.asList(sections) : Collections.<String>emptyList();
+    }
+
+    private void assertSections(List<String> expected) {
+        assertTrue("Open sections " + mSink.open, mSink.open.isEmpty());
+        assertEquals(expected, mSink.closed);
+    }
+
+    private static void touch(View view, int action, float x, float y) {
+        MotionEvent event = MotionEvent.obtain(0, 0, action, x, y, 0);
+        view.dispatchTouchEvent(event);
+        event.recycle();
+    }
+
+    private static void layOut(View view) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.AT_MOST),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.AT_MOST));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+}
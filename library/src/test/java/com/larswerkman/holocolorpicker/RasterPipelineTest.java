@@ -0,0 +1,236 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that raster jobs deliver their bitmap once or throw the failure
+ * of a band, and that the alpha pattern shows the bitmap as soon as it is
+ * delivered.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class RasterPipelineTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Records what is drawn instead of drawing it.
+     */
+    private static final class RecordingCanvas extends Canvas {
+        final List<Bitmap> bitmaps = new ArrayList<>();
+        int rects;
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+            bitmaps.add(bitmap);
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+            bitmaps.add(bitmap);
+        }
+
+        @Override
+        public void drawRect(Rect r, Paint paint) {
+            rects++;
+        }
+    }
+
+    private static final class RecordingCallback implements RasterPipeline.Callback {
+        final List<Bitmap> bitmaps = new ArrayList<>();
+
+        @Override
+        public void onRasterReady(Bitmap bitmap, long durationNanos) {
+            bitmaps.add(bitmap);
+        }
+    }
+
+    private static final RasterPipeline.RowRenderer FILL =
+            new RasterPipeline.RowRenderer() {
+                @Override
+                public void renderRows(int[] pixels, int width, int height,
+                                       int rowStart, int rowEnd) {
+                    for (int i = rowStart * width; i < rowEnd * width; i++) {
+                        pixels[i] = 0xFF336699;
+                    }
+                }
+            };
+
+    @Test
+    public void smallJobIsDeliveredByStart() {
+        RecordingCallback callback = new RecordingCallback();
+        RasterPipeline.Job job = new RasterPipeline.Job(16, 16, FILL, callback);
+        assertTrue(callback.bitmaps.isEmpty());
+
+        job.start();
+
+        assertEquals(1, callback.bitmaps.size());
+        assertEquals(16, callback.bitmaps.get(0).getWidth());
+        assertEquals(0xFF336699, callback.bitmaps.get(0).getPixel(15, 15));
+    }
+
+    @Test
+    public void largeJobIsDeliveredOnMainThread() {
+        RecordingCallback callback = new RecordingCallback();
+        RasterPipeline.Job job = new RasterPipeline.Job(200, 100, FILL, callback);
+        job.start();
+        // Delivered by the main looper, not by start().
+        assertTrue(callback.bitmaps.isEmpty());
+
+        idleUntil(callback, 1);
+        assertEquals(100, callback.bitmaps.get(0).getHeight());
+    }
+
+    @Test
+    public void cancelledJobIsNotDelivered() throws InterruptedException {
+        RecordingCallback callback = new RecordingCallback();
+        RasterPipeline.Job job = new RasterPipeline.Job(200, 200, FILL, callback);
+        job.start();
+        job.cancel();
+
+        // Give the bands the time to finish, then run whatever they posted.
+        Thread.sleep(200);
+        ShadowLooper.idleMainLooper();
+        assertTrue(callback.bitmaps.isEmpty());
+        assertTrue(job.isCancelled());
+    }
+
+    @Test
+    public void smallFailingJobThrowsFromStart() {
+        RecordingCallback callback = new RecordingCallback();
+        RasterPipeline.Job job = new RasterPipeline.Job(16, 16, failingBand(0), callback);
+        try {
+            job.start();
+            fail("A failing band was not thrown");
+        } catch (IllegalStateException expected) {
+        }
+        assertTrue(callback.bitmaps.isEmpty());
+    }
+
+    @Test
+    public void largeFailingJobThrowsOnMainThread() {
+        RecordingCallback callback = new RecordingCallback();
+        RasterPipeline.Job job = new RasterPipeline.Job(200, 200, failingBand(2), callback);
+        job.start();
+
+        // The other bands still finish, so the job ends and throws.
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                ShadowLooper.idleMainLooper();
+            } catch (IllegalStateException expected) {
+                assertTrue(callback.bitmaps.isEmpty());
+                return;
+            }
+            Thread.yield();
+        }
+        fail("A failing band was not thrown on the main thread");
+    }
+
+    @Test
+    public void smallPatternIsDrawnRightAway() {
+        AlphaPatternDrawable drawable = new AlphaPatternDrawable(5);
+        drawable.setBounds(0, 0, 40, 20);
+
+        RecordingCanvas canvas = new RecordingCanvas();
+        drawable.draw(canvas);
+
+        assertEquals(1, canvas.bitmaps.size());
+        assertEquals(0, canvas.rects);
+    }
+
+    @Test
+    public void newPatternRecyclesTheOldOne() {
+        AlphaPatternDrawable drawable = new AlphaPatternDrawable(5);
+        drawable.setBounds(0, 0, 40, 20);
+        RecordingCanvas canvas = new RecordingCanvas();
+        drawable.draw(canvas);
+        Bitmap first = canvas.bitmaps.get(0);
+
+        drawable.setBounds(0, 0, 20, 40);
+        drawable.draw(canvas);
+        Bitmap second = canvas.bitmaps.get(1);
+
+        assertNotSame(first, second);
+        assertTrue(first.isRecycled());
+        assertFalse(second.isRecycled());
+    }
+
+    @Test
+    public void largePatternShowsPlaceholderUntilDelivered() {
+        AlphaPatternDrawable drawable = new AlphaPatternDrawable(5);
+        RecordingCanvas canvas = new RecordingCanvas();
+
+        drawable.setBounds(0, 0, 400, 300);
+        drawable.draw(canvas);
+        assertEquals(1, canvas.rects);
+        assertTrue(canvas.bitmaps.isEmpty());
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (canvas.bitmaps.isEmpty() && System.currentTimeMillis() < deadline) {
+            ShadowLooper.idleMainLooper();
+            drawable.draw(canvas);
+        }
+        assertEquals(400, canvas.bitmaps.get(0).getWidth());
+    }
+
+    /**
+     * Fills the rows like {@link #FILL}, but throws in one band.
+     */
+    private static RasterPipeline.RowRenderer failingBand(final int band) {
+        return new RasterPipeline.RowRenderer() {
+            @Override
+            public void renderRows(int[] pixels, int width, int height,
+                                   int rowStart, int rowEnd) {
+                if (rowStart == band * RasterPipeline.ROWS_PER_BAND) {
+                    throw new IllegalStateException("Band " + band);
+                }
+                FILL.renderRows(pixels, width, height, rowStart, rowEnd);
+            }
+        };
+    }
+
+    private static void idleUntil(RecordingCallback callback, int count) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (callback.bitmaps.size() < count && System.currentTimeMillis() < deadline) {
+            ShadowLooper.idleMainLooper();
+            Thread.yield();
+        }
+        assertEquals(count, callback.bitmaps.size());
+    }
+}
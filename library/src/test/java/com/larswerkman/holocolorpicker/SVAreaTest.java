@@ -0,0 +1,209 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.view.MotionEvent;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the listeners of a picker with a Saturation/Value area are
+ * called once per change, with the opacity of the picker, and that the tile
+ * is only rendered again when the hue changes.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SVAreaTest {
+
+    private static final int SIZE = 240;
+    private static final int FRAMES = 200;
+
+    private static final class CountingMetrics implements PickerMetrics {
+        int shaders;
+        int draws;
+
+        @Override
+        public void onTouchToListener(View view, long latencyNanos) {
+        }
+
+        @Override
+        public void onDraw(View view, long durationNanos) {
+            draws++;
+        }
+
+        @Override
+        public void onShaderRebuilt(View view) {
+            shaders++;
+        }
+
+        @Override
+        public void onTouchEventStats(View view, int hsvConversions,
+                                      int listenerInvocations, int allocations) {
+        }
+    }
+
+    private final List<Integer> mColors = new ArrayList<>();
+    private ColorPicker mPicker;
+    private SVArea mArea;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        mPicker = new ColorPicker(context);
+        mArea = new SVArea(context);
+        mPicker.addSVArea(mArea);
+        mPicker.addOnColorChangedListener(new ColorPicker.OnColorChangedListener() {
+            @Override
+            public void onColorChanged(int color) {
+                mColors.add(color);
+            }
+        });
+    }
+
+    @Test
+    public void setColorNotifiesOnce() {
+        mPicker.setColor(0x80336699);
+
+        assertEquals(1, mColors.size());
+        assertEquals(0x80336699, (int) mColors.get(0));
+        assertEquals(0x80336699, mArea.getColor());
+    }
+
+    @Test
+    public void setHsvNotifiesOnceAndKeepsOpacity() {
+        mPicker.setColor(0x80336699);
+        mColors.clear();
+
+        mArea.setHsv(120f, 1f, 1f);
+
+        assertEquals(1, mColors.size());
+        assertEquals(0x8000FF00, (int) mColors.get(0));
+        assertEquals(0x8000FF00, mPicker.getColor());
+    }
+
+    @Test
+    public void setSaturationValueKeepsOpacity() {
+        mPicker.setColor(0x40FF0000);
+        mColors.clear();
+
+        mArea.setSaturationValue(1f, 0.6f);
+
+        assertEquals(1, mColors.size());
+        assertEquals(0x40990000, (int) mColors.get(0));
+    }
+
+    @Test
+    public void wheelDragKeepsSaturationAndValue() {
+        mPicker.setColor(0xFFFF0000);
+        mArea.setSaturationValue(0.4f, 0.7f);
+        mPicker.measure(View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+        mPicker.layout(0, 0, SIZE, SIZE);
+        mColors.clear();
+
+        float center = SIZE / 2f;
+        float radius = center
+                - mPicker.getResources().getDimensionPixelSize(R.dimen.color_wheel_thickness)
+                - mPicker.getResources().getDimensionPixelSize(R.dimen.color_pointer_halo_radius);
+        // The pointer of red is right of the center, a quarter turn down is
+        // hue 270.
+        touch(MotionEvent.ACTION_DOWN, center + radius, center);
+        touch(MotionEvent.ACTION_MOVE, center, center + radius);
+        touch(MotionEvent.ACTION_UP, center, center + radius);
+
+        assertEquals(0.4f, mArea.getSaturation(), 0f);
+        assertEquals(0.7f, mArea.getValue(), 0f);
+        assertEquals(1, mColors.size());
+        float[] hsv = new float[3];
+        Color.colorToHSV(mPicker.getColor(), hsv);
+        assertEquals(270f, hsv[0], 1f);
+        assertEquals(0.4f, hsv[1], 0.01f);
+        assertEquals(0.7f, hsv[2], 0.01f);
+        assertEquals(mArea.getColor(), mPicker.getColor());
+    }
+
+    @Test
+    public void tileIsRenderedOncePerHue() {
+        Canvas canvas = layOut();
+        CountingMetrics metrics = new CountingMetrics();
+        mArea.setMetrics(metrics);
+
+        mArea.draw(canvas);
+        assertEquals(1, metrics.shaders);
+
+        // Moving the pointer only redraws the cached tile.
+        mArea.setSaturationValue(0.25f, 0.75f);
+        mArea.draw(canvas);
+        mArea.draw(canvas);
+        assertEquals(1, metrics.shaders);
+
+        mArea.setHsv(200f, 0.25f, 0.75f);
+        mArea.draw(canvas);
+        assertEquals(2, metrics.shaders);
+    }
+
+    @Test
+    public void dragRendersNoTile() {
+        Canvas canvas = layOut();
+        CountingMetrics metrics = new CountingMetrics();
+        mArea.setMetrics(metrics);
+        mArea.draw(canvas);
+
+        for (int i = 0; i < FRAMES; i++) {
+            mArea.setSaturationValue(i / (float) FRAMES, 1f - i / (float) FRAMES);
+            mArea.draw(canvas);
+        }
+        assertEquals(1, metrics.shaders);
+        assertEquals(FRAMES + 1, metrics.draws);
+
+        // Each hue renders the tile once, however often it is drawn.
+        for (int i = 1; i <= FRAMES; i++) {
+            mArea.setHsv(i * 360f / (FRAMES + 1), 0.5f, 0.5f);
+            mArea.draw(canvas);
+            mArea.draw(canvas);
+        }
+        assertEquals(FRAMES + 1, metrics.shaders);
+    }
+
+    private void touch(int action, float x, float y) {
+        MotionEvent event = MotionEvent.obtain(0, 0, action, x, y, 0);
+        mPicker.onTouchEvent(event);
+        event.recycle();
+    }
+
+    private Canvas layOut() {
+        mArea.measure(View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+        mArea.layout(0, 0, SIZE, SIZE);
+        return new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.view.AbsSavedState;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the {@code SavedState} classes survive a parcel and are smaller
+ * than the {@code Bundle}s with string keys they replaced.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SavedStateTest {
+
+    @Test
+    public void colorBarStateRoundTrip() {
+        ColorBar.SavedState state = barState();
+        Parcel parcel = marshal(state);
+        ColorBar.SavedState restored = ColorBar.SavedState.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+
+        assertEquals(state.hue, restored.hue, 0f);
+        assertEquals(state.saturation, restored.saturation, 0f);
+        assertEquals(state.value, restored.value, 0f);
+        assertEquals(state.pointerFraction, restored.pointerFraction, 0f);
+        assertEquals(state.orientation, restored.orientation);
+    }
+
+    @Test
+    public void colorPickerStateRoundTrip() {
+        ColorPicker.SavedState state = pickerState();
+        Parcel parcel = marshal(state);
+        ColorPicker.SavedState restored =
+                ColorPicker.SavedState.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+
+        assertEquals(state.angle, restored.angle, 0f);
+        assertEquals(state.oldColor, restored.oldColor);
+        assertEquals(state.newColor, restored.newColor);
+        assertEquals(state.showOldColor, restored.showOldColor);
+    }
+
+    @Test
+    public void colorBarStateIsSmallerThanBundle() {
+        int compact = size(barState());
+        int bundle = size(barBundle());
+        assertTrue(compact + " bytes, Bundle: " + bundle + " bytes", compact < bundle);
+    }
+
+    @Test
+    public void colorPickerStateIsSmallerThanBundle() {
+        int compact = size(pickerState());
+        int bundle = size(pickerBundle());
+        assertTrue(compact + " bytes, Bundle: " + bundle + " bytes", compact < bundle);
+    }
+
+    private static ColorBar.SavedState barState() {
+        ColorBar.SavedState state = new ColorBar.SavedState(AbsSavedState.EMPTY_STATE);
+        state.hue = 210f;
+        state.saturation = 0.5f;
+        state.value = 0.75f;
+        state.pointerFraction = 0.25f;
+        state.orientation = true;
+        return state;
+    }
+
+    /**
+     * The state SVBar saved before, with the keys of ColorBar and SVBar.
+     */
+    private static Bundle barBundle() {
+        Bundle state = new Bundle();
+        state.putParcelable("parent", AbsSavedState.EMPTY_STATE);
+        state.putFloatArray("color", new float[]{210f, 0.5f, 0.75f});
+        state.putBoolean("orientation", true);
+        state.putFloat("saturation", 0.5f);
+        return state;
+    }
+
+    private static ColorPicker.SavedState pickerState() {
+        ColorPicker.SavedState state = new ColorPicker.SavedState(AbsSavedState.EMPTY_STATE);
+        state.angle = 1.5f;
+        state.oldColor = 0xFF336699;
+        state.newColor = 0x80FF0000;
+        state.showOldColor = true;
+        return state;
+    }
+
+    /**
+     * The state ColorPicker saved before, without the new color it didn't
+     * keep.
+     */
+    private static Bundle pickerBundle() {
+        Bundle state = new Bundle();
+        state.putParcelable("parent", AbsSavedState.EMPTY_STATE);
+        state.putFloat("angle", 1.5f);
+        state.putInt("color", 0xFF336699);
+        state.putBoolean("showColor", true);
+        return state;
+    }
+
+    private static Parcel marshal(Parcelable state) {
+        Parcel parcel = Parcel.obtain();
+        state.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        return parcel;
+    }
+
+    private static int size(Parcelable state) {
+        Parcel parcel = marshal(state);
+        int size = parcel.dataSize();
+        parcel.recycle();
+        return size;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SwatchStoreTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void recentColorsAreLeastRecentlyUsedFirstOut() throws IOException {
+        SwatchStore store = SwatchStore.open(mFolder.newFile(), 3, 2);
+        try {
+            store.addRecent(1);
+            store.addRecent(2);
+            store.addRecent(3);
+            store.addRecent(1);
+            store.addRecent(4);
+
+            int[] recent = new int[3];
+            assertEquals(3, store.getRecent(recent));
+            assertArrayEquals(new int[]{4, 1, 3}, recent);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void recentColorsAreReadBehindOtherColors() throws IOException {
+        SwatchStore store = SwatchStore.open(mFolder.newFile(), 3, 2);
+        try {
+            store.addFavorite(7);
+            store.addRecent(1);
+            store.addRecent(2);
+
+            int[] colors = new int[5];
+            int favorites = store.getFavorites(colors);
+            int recent = store.getRecent(colors, favorites);
+            assertEquals(1, favorites);
+            assertEquals(2, recent);
+            assertArrayEquals(new int[]{7, 2, 1, 0, 0}, colors);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void colorsAreKeptAcrossOpens() throws IOException {
+        File file = mFolder.newFile();
+        SwatchStore store = SwatchStore.open(file, 4, 4);
+        store.addRecent(0xFF336699);
+        store.addFavorite(0x80FF0000);
+        store.close();
+
+        store = SwatchStore.open(file, 4, 4);
+        try {
+            int[] colors = new int[4];
+            assertEquals(1, store.getRecent(colors));
+            assertEquals(0xFF336699, colors[0]);
+            assertTrue(store.isFavorite(0x80FF0000));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void otherCapacitiesThrowAndKeepTheFile() throws IOException {
+        File file = mFolder.newFile();
+        SwatchStore store = SwatchStore.open(file, 4, 4);
+        store.addRecent(0xFF336699);
+        store.close();
+        byte[] before = Files.readAllBytes(file.toPath());
+
+        try {
+            SwatchStore.open(file, 8, 4).close();
+            fail("Opened with other capacities");
+        } catch (IOException expected) {
+            // The message names the capacities of the file.
+            assertTrue(expected.getMessage(), expected.getMessage().contains("4 recent"));
+        }
+        assertArrayEquals(before, Files.readAllBytes(file.toPath()));
+
+        store = SwatchStore.open(file, 4, 4);
+        try {
+            int[] colors = new int[4];
+            assertEquals(1, store.getRecent(colors));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void otherFilesAreNotOverwritten() throws IOException {
+        File file = mFolder.newFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write("GIMP Palette\n".getBytes("UTF-8"));
+        }
+        long length = file.length();
+
+        try {
+            SwatchStore.open(file, 4, 4).close();
+            fail("Opened a palette as swatch file");
+        } catch (IOException expected) {
+        }
+        assertEquals(length, file.length());
+    }
+
+    @Test
+    public void interruptedInitializationIsRepeated() throws IOException {
+        File file = mFolder.newFile();
+        // The magic is written last, a file of zeros was never finished.
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[64]);
+        }
+
+        SwatchStore store = SwatchStore.open(file, 4, 4);
+        try {
+            assertEquals(0, store.getRecent(new int[4]));
+            store.addRecent(1);
+        } finally {
+            store.close();
+        }
+
+        store = SwatchStore.open(file, 4, 4);
+        try {
+            assertEquals(1, store.getRecent(new int[4]));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void sameFileGivesSameStore() throws IOException {
+        File file = mFolder.newFile();
+        SwatchStore first = SwatchStore.open(file, 2, 2);
+        SwatchStore second = SwatchStore.open(file, 2, 2);
+        try {
+            assertSame(first, second);
+            try {
+                SwatchStore.open(file, 3, 2);
+                fail("Opened with other capacities");
+            } catch (IllegalStateException expected) {
+            }
+        } finally {
+            second.close();
+            first.close();
+        }
+        assertFalse(file.length() == 0);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2012 Lars Werkman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.larswerkman.holocolorpicker;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WheelFlingTest {
+
+    private static final long SECOND = 1000000000L;
+    private static final long FRAME = SECOND / 60;
+    private static final float DETENT = (float) Math.toRadians(30);
+
+    @Test
+    public void restsAtVelocityOverFriction() {
+        WheelFling fling = new WheelFling();
+        assertTrue(fling.start(1f, 8f, 4f, 0f, 0L));
+        assertEquals(3f, fling.getFinalAngle(), 1e-6f);
+        assertFalse(fling.isFinished());
+    }
+
+    @Test
+    public void roundsToNearestDetent() {
+        WheelFling fling = new WheelFling();
+        // 0.1 + 10 / 4 = 2.6 rad, 149 degrees: the nearest detent is 150.
+        assertTrue(fling.start(0.1f, 10f, 4f, DETENT, 0L));
+        assertEquals(5 * DETENT, fling.getFinalAngle(), 1e-5f);
+
+        // Backwards: 0.1 - 2.5 = -2.4 rad, -137.5 degrees: -150 is nearest.
+        assertTrue(fling.start(0.1f, -10f, 4f, DETENT, 0L));
+        assertEquals(-5 * DETENT, fling.getFinalAngle(), 1e-5f);
+    }
+
+    @Test
+    public void slowReleaseDoesNotFling() {
+        WheelFling fling = new WheelFling();
+        float slow = WheelFling.MIN_VELOCITY * 0.9f;
+        assertFalse(fling.start(1f, slow, 4f, 0f, 0L));
+        assertTrue(fling.isFinished());
+        assertEquals(1f, fling.getFinalAngle(), 0f);
+
+        assertTrue(fling.start(1f, WheelFling.MIN_VELOCITY, 4f, 0f, 0L));
+        assertEquals(1f + WheelFling.MIN_VELOCITY / 4f, fling.getFinalAngle(), 1e-6f);
+    }
+
+    @Test
+    public void slowReleaseSettlesOnDetent() {
+        WheelFling fling = new WheelFling();
+        float angle = DETENT * 2.3f;
+        assertTrue(fling.start(angle, WheelFling.MIN_VELOCITY * 0.5f, 4f, DETENT, 0L));
+        assertEquals(2 * DETENT, fling.getFinalAngle(), 1e-5f);
+
+        // Already on a detent, nothing to animate.
+        assertFalse(fling.start(2 * DETENT, 0f, 4f, DETENT, 0L));
+    }
+
+    @Test
+    public void endsOnceRestFractionIsLeft() {
+        WheelFling fling = new WheelFling();
+        float friction = 4f;
+        fling.start(0f, 8f, friction, 0f, 0L);
+        // exp(-friction * t) drops below 0.002 at t = ln(500) / friction.
+        long rest = (long) (Math.log(500) / friction * SECOND);
+
+        float before = fling.angleAt(rest - FRAME);
+        assertFalse(fling.isFinished());
+        assertTrue(before < fling.getFinalAngle());
+        assertTrue(fling.getFinalAngle() - before < 0.01f);
+
+        assertEquals(fling.getFinalAngle(), fling.angleAt(rest + FRAME), 0f);
+        assertTrue(fling.isFinished());
+    }
+
+    @Test
+    public void approachesEndMonotonically() {
+        WheelFling fling = new WheelFling();
+        fling.start(0f, -12f, 4f, DETENT, 0L);
+        float previous = fling.angleAt(0L);
+        assertEquals(0f, previous, 0f);
+        for (long time = FRAME; !fling.isFinished(); time += FRAME) {
+            float angle = fling.angleAt(time);
+            assertTrue(angle <= previous);
+            assertTrue(angle >= fling.getFinalAngle());
+            previous = angle;
+        }
+        assertEquals(fling.getFinalAngle(), previous, 0f);
+    }
+
+    @Test
+    public void frameStepDoesNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        WheelFling fling = new WheelFling();
+        int frames = 200000;
+        float sink = runFrames(fling, frames);
+
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        sink += runFrames(fling, frames);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        assertFalse(Float.isNaN(sink));
+        // A single object per frame would take megabytes.
+        assertTrue("Allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+    /**
+     * Run flings of about one second, 60 frames each.
+     */
+    private static float runFrames(WheelFling fling, int frames) {
+        float sum = 0f;
+        long time = 0L;
+        for (int i = 0; i < frames; i++) {
+            if (fling.isFinished()) {
+                fling.start(0f, 20f, 4f, DETENT, time);
+            }
+            time += FRAME;
+            sum += fling.angleAt(time);
+        }
+        return sum;
+    }
+}